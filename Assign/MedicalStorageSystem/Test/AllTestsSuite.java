@@ -8,11 +8,21 @@ public class AllTestsSuite {
         try {
             StorageItemTest.main(args);
             StorageVehicleTest.main(args);
+            SkuDictionaryTest.main(args);
+            OffHeapArenaTest.main(args);
             TaskTest.main(args);
         } catch (Exception e) {
             System.err.println("Model tests failed: " + e.getMessage());
         }
 
+        // === REPOSITORY TESTS ===
+        try {
+            RepositoryTest.main(args);
+            RepositoryStoreTest.main(args);
+        } catch (Exception e) {
+            System.err.println("Repository tests failed: " + e.getMessage());
+        }
+
         // === SERVICE TESTS ===
         try {
             StorageServiceTest.main(args);
@@ -24,7 +34,22 @@ public class AllTestsSuite {
         // === UTIL TESTS ===
         try {
             LogManagerTest.main(args);
+            LogChannelCacheTest.main(args);
+            LogLineEncoderTest.main(args);
+            LogCatalogTest.main(args);
+            LogReaderTest.main(args);
+            LogSearchTest.main(args);
+            LogTimeIndexTest.main(args);
+            LogRotatorTest.main(args);
+            LogFollowerTest.main(args);
             MetadataManagerTest.main(args);
+            MetadataAppenderTest.main(args);
+            MetadataIndexTest.main(args);
+            MetadataCompactorTest.main(args);
+            ParallelZipArchiverTest.main(args);
+            IncrementalArchiverTest.main(args);
+            DedupArchiveStoreTest.main(args);
+            ArchiveReaderTest.main(args);
         } catch (Exception e) {
             System.err.println("Utility tests failed: " + e.getMessage());
         }
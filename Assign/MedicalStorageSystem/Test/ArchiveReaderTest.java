@@ -0,0 +1,149 @@
+import med.supply.system.util.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+public class ArchiveReaderTest {
+    public static void main(String[] args) {
+        System.out.println("Running ArchiveReader tests...");
+        PathsConfig cfg = new PathsConfig();
+        try {
+            cfg.ensure();
+            Path src = Files.createTempDirectory("arch_src_");
+            Path van = Files.createDirectories(src.resolve("vehicles").resolve("Van_Arch"));
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 5000; i++) {
+                sb.append("[VEHICLE:Van_Arch] line ").append(i).append(i % 1000 == 0 ? " ALERT-9" : " ok").append('\n');
+            }
+            Files.writeString(van.resolve("2025-06-01.log"), sb.toString());
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(van.resolve("2025-05-31.1.log.gz")))) {
+                out.write("[VEHICLE:Van_Arch] rotated ALERT-9\n".getBytes(StandardCharsets.UTF_8));
+            }
+            Files.createDirectories(src.resolve("charging").resolve("St_Arch"));
+            Files.writeString(src.resolve("charging/St_Arch/2025-06-01.log"), "[CHARGING:St_Arch] full\n");
+            Files.createDirectories(src.resolve("system"));
+            Files.writeString(src.resolve("system/2025-06-02.log"), "[SYSTEM] boot\n");
+            Files.writeString(src.resolve("notes.txt"), "not a log\n");
+
+            Path archives = Files.createTempDirectory("arch_zips_");
+            Path meta = Files.createTempFile("meta_arch_", ".csv");
+            MetadataManager.archiveZip(src, archives.resolve("logs-001.zip"), meta);
+
+            try (ArchiveCatalog catalog = new ArchiveCatalog(archives, cfg)) {
+                testEntryIndex(catalog, src);
+                testLineRange(catalog);
+                testUnifiedSearch(cfg, catalog);
+                testCatalogFollowsDirectory(catalog, src, archives);
+                testLeaseKeepsReadersOpen(catalog, archives);
+            }
+
+            System.out.println(" All ArchiveReader tests finished.");
+        } catch (AssertionError e) {
+            System.err.println("ArchiveReader test failed: " + e.getMessage());
+            e.printStackTrace();
+        } catch (IOException e) {
+            System.err.println(" IOException during ArchiveReader tests: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    // ---------- TEST 1 ----------
+    private static void testEntryIndex(ArchiveCatalog catalog, Path src) throws IOException {
+        ArchiveReader r = catalog.readers().get(0);
+        assert r.entries().size() == 4 : "Expected 4 daily logs, got " + r.entries().size();
+        assert r.byEquipment("Van_Arch").size() == 2 : "Equipment index wrong";
+        assert r.byDate(LocalDate.of(2025, 6, 1)).size() == 2 : "Date index wrong";
+        assert r.byKind(LogKind.SYSTEM).size() == 1 : "Kind index wrong";
+        assert catalog.findByEquipmentOrDate("system").size() == 1 : "'system' lookup wrong";
+        assert catalog.findByEquipmentOrDate("2025-05-31").size() == 1 : "Date lookup wrong";
+        for (ArchiveReader.Entry e : r.entries()) {
+            try (InputStream in = r.open(e)) {
+                byte[] expected = e.name.endsWith(".gz")
+                        ? "[VEHICLE:Van_Arch] rotated ALERT-9\n".getBytes(StandardCharsets.UTF_8)
+                        : Files.readAllBytes(src.resolve(e.name));
+                assert Arrays.equals(in.readAllBytes(), expected) : "Content mismatch in " + e;
+            }
+        }
+        System.out.println("Test 1 passed (entry index by equipment, date and kind; entries read in place)");
+    }
+
+    // ---------- TEST 2 ----------
+    private static void testLineRange(ArchiveCatalog catalog) throws IOException {
+        ArchiveReader r = catalog.readers().get(0);
+        ArchiveReader.Entry e = r.byDate(LocalDate.of(2025, 6, 1)).stream()
+                .filter(x -> "Van_Arch".equals(x.equipment)).findFirst().orElseThrow();
+        List<String> lines = r.readLines(e, 2500, 10);
+        assert lines.size() == 10 : "Expected 10 lines, got " + lines.size();
+        assert lines.get(0).equals("[VEHICLE:Van_Arch] line 2500 ok") : "Wrong first line: " + lines.get(0);
+        assert r.readLines(e, 4995, 10).size() == 5 : "Range past the end not truncated";
+        System.out.println("Test 2 passed (line ranges streamed from the archive)");
+    }
+
+    // ---------- TEST 3 ----------
+    private static void testUnifiedSearch(PathsConfig cfg, ArchiveCatalog archives) throws IOException {
+        LogCatalog live = new LogCatalog(cfg);
+        Path liveLog = cfg.logsVehicles.resolve("Van_Arch").resolve("2025-06-03.log");
+        Files.createDirectories(liveLog.getParent());
+        Files.writeString(liveLog, "[VEHICLE:Van_Arch] live ALERT-9\n");
+        live.add(liveLog);
+
+        LogSearch search = new LogSearch(live, archives);
+        LogSearch.Query q = LogSearch.Query.literal("ALERT-9").withEquipment("Van_Arch");
+        assert search.search(q).size() == 1 : "Archives searched without withArchives()";
+
+        List<LogSearch.Match> all = search.search(q.withArchives());
+        assert all.size() == 7 : "Expected 1 live + 6 archived matches, got " + all.size();
+        long archived = all.stream().filter(m -> m.archive != null).count();
+        assert archived == 6 : "Archived matches not marked: " + archived;
+        LogSearch.Match m = all.stream().filter(x -> x.archive != null && x.lineNumber == 1001).findFirst().orElseThrow();
+        assert m.line.endsWith("line 1000 ALERT-9") : "Archived line number wrong: " + m;
+
+        List<LogSearch.Match> dated = search.search(q.withArchives().between(LocalDate.of(2025, 5, 31), LocalDate.of(2025, 5, 31)));
+        assert dated.size() == 1 && dated.get(0).line.contains("rotated") : "Date filter on archives wrong: " + dated;
+        System.out.println("Test 3 passed (live and archived logs searched through one query)");
+    }
+
+    // ---------- TEST 4 ----------
+    private static void testCatalogFollowsDirectory(ArchiveCatalog catalog, Path src, Path archives)
+            throws IOException {
+        new ParallelZipArchiver(2, 6).archive(src, archives.resolve("logs-002.zip"));
+        assert catalog.readers().size() == 2 : "New archive not picked up";
+        assert catalog.findByEquipmentOrDate("St_Arch").size() == 2 : "Lookup should span both archives";
+        Files.delete(archives.resolve("logs-001.zip"));
+        assert catalog.readers().size() == 1 : "Deleted archive still listed";
+        System.out.println("Test 4 passed (catalog follows archives added and removed)");
+    }
+
+    // ---------- TEST 5 ----------
+    private static void testLeaseKeepsReadersOpen(ArchiveCatalog catalog, Path archives) throws IOException {
+        Path zip = archives.resolve("logs-002.zip");
+        ArchiveReader held;
+        ArchiveReader.Entry e;
+        try (ArchiveCatalog.Lease lease = catalog.acquire()) {
+            held = lease.reader(zip);
+            e = held.byEquipment("St_Arch").get(0);
+            // the file changes mid-search: the catalog replaces its reader, the lease keeps the old one
+            Files.setLastModifiedTime(zip, FileTime.fromMillis(Files.getLastModifiedTime(zip).toMillis() + 60_000));
+            assert catalog.readers().get(0) != held : "Changed archive not reopened";
+            assert held.readLines(e, 0, 1).equals(List.of("[CHARGING:St_Arch] full")) : "Leased reader closed in use";
+        }
+        try {
+            held.readLines(e, 0, 1);
+            assert false : "Replaced reader not closed with its last lease";
+        } catch (IOException expected) {
+            // ok
+        }
+        try (ArchiveCatalog.Lease lease = catalog.acquire()) {
+            assert lease.reader(zip).readLines(e, 0, 1).size() == 1 : "Current reader unusable";
+        }
+        System.out.println("Test 5 passed (leased readers stay open until the lease is closed)");
+    }
+}
@@ -0,0 +1,125 @@
+import med.supply.system.util.DedupArchiveStore;
+import med.supply.system.util.MetadataManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+public class DedupArchiveStoreTest {
+    public static void main(String[] args) {
+        System.out.println("Running DedupArchiveStore tests...");
+        try {
+            Path src = Files.createTempDirectory("dedup_src_");
+            Path storeRoot = Files.createTempDirectory("dedup_store_");
+            Path meta = Files.createTempFile("meta_dedup_", ".csv");
+            Random rnd = new Random(7);
+            for (int v = 0; v < 3; v++) {
+                Path dir = Files.createDirectories(src.resolve("vehicles").resolve("Van_" + v));
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < 5000; i++) {
+                    sb.append("[VEHICLE:Van_").append(v).append("] temp ").append(rnd.nextInt(1000)).append('\n');
+                }
+                Files.writeString(dir.resolve("2025-04-01.log"), sb.toString());
+            }
+            DedupArchiveStore store = new DedupArchiveStore(storeRoot);
+
+            DedupArchiveStore.Result first = MetadataManager.archiveDedup(src, store, "logs-001", meta);
+            assert first.newChunks == first.chunks : "Fresh store reused chunks: " + first;
+            assert first.bytesStored < first.bytesIn : "Chunks not compressed: " + first;
+            assert Files.readString(meta).contains("dedup archive of") : "Metadata missing ARCHIVE entry";
+            System.out.println("Test 1 passed (first archive stores every chunk once: " + first + ")");
+
+            testCopiesAndShiftsDeduplicate(src, store, meta);
+            testExportMatchesArchiveZip(src, store, meta);
+            testRestoreAndDelete(src, store);
+
+            System.out.println(" All DedupArchiveStore tests finished.");
+        } catch (AssertionError e) {
+            System.err.println("DedupArchiveStore test failed: " + e.getMessage());
+            e.printStackTrace();
+        } catch (IOException e) {
+            System.err.println(" IOException during DedupArchiveStore tests: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    // ---------- TEST 2 ----------
+    private static void testCopiesAndShiftsDeduplicate(Path src, DedupArchiveStore store, Path meta)
+            throws IOException {
+        // a moved copy, and a copy with a line inserted at the front (every offset shifts)
+        Path original = src.resolve("vehicles/Van_0/2025-04-01.log");
+        Files.createDirectories(src.resolve("moved"));
+        Files.copy(original, src.resolve("moved/2025-04-01.log"));
+        Files.writeString(src.resolve("moved/shifted.log"), "[SYSTEM] header line\n" + Files.readString(original));
+
+        DedupArchiveStore.Result r = MetadataManager.archiveDedup(src, store, "logs-002", meta);
+        assert r.files == 5 : "Expected 5 files, got " + r.files;
+        // everything but the chunk around the inserted line is already stored
+        assert r.newChunks <= 2 : "Copies were not deduplicated: " + r;
+        assert r.bytesStored < r.bytesIn / 20 : "Second archive stored too much: " + r;
+        System.out.println("Test 2 passed (copies and shifted copies reuse chunks: " + r + ")");
+    }
+
+    // ---------- TEST 3 ----------
+    private static void testExportMatchesArchiveZip(Path src, DedupArchiveStore store, Path meta)
+            throws IOException {
+        Path out = Files.createTempDirectory("dedup_zip_");
+        Path exported = MetadataManager.exportDedupZip(store, "logs-002", out.resolve("export.zip"), meta);
+        Path reference = MetadataManager.archiveZip(src, out.resolve("reference.zip"), meta);
+        assert zipContents(exported).equals(zipContents(reference)) : "Export differs from archiveZip output";
+        System.out.println("Test 3 passed (export has the same entries and content as archiveZip)");
+    }
+
+    // ---------- TEST 4 ----------
+    private static void testRestoreAndDelete(Path src, DedupArchiveStore store) throws IOException {
+        Path out = Files.createTempDirectory("dedup_restore_");
+        int n = store.restore("logs-002", out);
+        assert n == 5 && tree(out).equals(tree(src)) : "Restore differs from source";
+
+        int removed = store.delete("logs-002");
+        assert removed <= 2 : "Deleting removed chunks still used by logs-001: " + removed;
+        assert store.archives().equals(List.of("logs-001")) : "Archives: " + store.archives();
+        Path again = Files.createTempDirectory("dedup_restore1_");
+        int restored = store.restore("logs-001", again);
+        assert restored == 3 : "logs-001 no longer restorable";
+        try {
+            store.files("../x");
+            assert false : "Path-like archive name accepted";
+        } catch (IllegalArgumentException expected) {
+            // ok
+        }
+        System.out.println("Test 4 passed (restore, delete keeps shared chunks, names validated)");
+    }
+
+    private static Map<String, String> zipContents(Path zip) throws IOException {
+        Map<String, String> out = new TreeMap<>();
+        try (ZipFile zf = new ZipFile(zip.toFile())) {
+            Enumeration<? extends ZipEntry> en = zf.entries();
+            while (en.hasMoreElements()) {
+                ZipEntry e = en.nextElement();
+                try (InputStream in = zf.getInputStream(e)) {
+                    out.put(e.getName(), new String(in.readAllBytes()));
+                }
+            }
+        }
+        return out;
+    }
+
+    private static Map<String, String> tree(Path root) throws IOException {
+        Map<String, String> out = new TreeMap<>();
+        try (Stream<Path> s = Files.walk(root)) {
+            for (Path p : (Iterable<Path>) s.filter(Files::isRegularFile)::iterator) {
+                out.put(root.relativize(p).toString().replace('\\', '/'), Files.readString(p));
+            }
+        }
+        return out;
+    }
+}
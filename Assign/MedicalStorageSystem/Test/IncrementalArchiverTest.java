@@ -0,0 +1,137 @@
+import med.supply.system.util.IncrementalArchiver;
+import med.supply.system.util.MetadataManager;
+import med.supply.system.util.ParallelZipArchiver;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.ZipFile;
+
+public class IncrementalArchiverTest {
+    public static void main(String[] args) {
+        System.out.println("Running IncrementalArchiver tests...");
+        try {
+            Path src = Files.createTempDirectory("incr_src_");
+            Path archives = Files.createTempDirectory("incr_arch_");
+            Path meta = Files.createTempFile("meta_incr_", ".csv");
+            for (int i = 0; i < 5; i++) {
+                Path dir = Files.createDirectories(src.resolve("vehicles").resolve("Van_" + i));
+                Files.writeString(dir.resolve("2025-03-01.log"), "[VEHICLE:Van_" + i + "] started\n");
+            }
+            Files.createDirectories(src.resolve("system"));
+            Files.writeString(src.resolve("system").resolve("2025-03-01.log"), "[SYSTEM] boot\n");
+            Map<String, String> firstTree = tree(src);
+
+            IncrementalArchiver.Result first = MetadataManager.archiveIncremental(
+                    src, archives.resolve("logs-001.zip"), meta, 2, 6);
+            assert first.added == 6 && first.parents.isEmpty() : "First run: " + first;
+            System.out.println("Test 1 passed (first run stores the whole tree: " + first.added + " files)");
+
+            testOnlyChangesStored(src, archives, meta);
+            testNothingChanged(src, archives, meta);
+            testRestore(src, archives, firstTree);
+            testExistingTargetRefused(src, archives, meta);
+
+            System.out.println(" All IncrementalArchiver tests finished.");
+        } catch (AssertionError e) {
+            System.err.println("IncrementalArchiver test failed: " + e.getMessage());
+            e.printStackTrace();
+        } catch (IOException e) {
+            System.err.println(" IOException during IncrementalArchiver tests: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    // ---------- TEST 2 ----------
+    private static void testOnlyChangesStored(Path src, Path archives, Path meta) throws IOException {
+        Path van = src.resolve("vehicles");
+        Files.writeString(van.resolve("Van_0").resolve("2025-03-01.log"), "[VEHICLE:Van_0] moved\n",
+                StandardOpenOption.APPEND);
+        Files.writeString(van.resolve("Van_1").resolve("2025-03-02.log"), "[VEHICLE:Van_1] new day\n");
+        Files.delete(van.resolve("Van_2").resolve("2025-03-01.log"));
+        // touched only: same content, newer mtime
+        Path touched = van.resolve("Van_3").resolve("2025-03-01.log");
+        Files.setLastModifiedTime(touched, FileTime.fromMillis(Files.getLastModifiedTime(touched).toMillis() + 60_000));
+
+        IncrementalArchiver.Result r = MetadataManager.archiveIncremental(
+                src, archives.resolve("logs-002.zip"), meta, 2, 6);
+        assert r.added == 2 : "Expected 2 new/changed files, got " + r.added;
+        assert r.removed == 1 : "Expected 1 removed file, got " + r.removed;
+        assert r.unchanged == 4 : "Expected 4 unchanged files, got " + r.unchanged;
+        assert r.parents.equals(List.of("logs-001.zip")) : "Parents wrong: " + r.parents;
+        try (ZipFile zf = new ZipFile(r.zip.toFile())) {
+            assert zf.size() == 2 : "Second archive holds " + zf.size() + " entries";
+            assert zf.getEntry("vehicles/Van_1/2025-03-02.log") != null : "New file missing from archive";
+        }
+        Map<String, IncrementalArchiver.FileState> m = IncrementalArchiver.readManifest(r.manifest);
+        assert m.size() == 6 : "Manifest should describe the whole tree, has " + m.size();
+        assert m.get("vehicles/Van_3/2025-03-01.log").archive.equals("logs-001.zip") : "Touched file re-archived";
+        assert !m.containsKey("vehicles/Van_2/2025-03-01.log") : "Deleted file still in manifest";
+        assert Files.readString(meta).contains("incremental archive of") : "Metadata missing ARCHIVE entry";
+        System.out.println("Test 2 passed (only new/changed files stored, touched file kept from parent)");
+    }
+
+    // ---------- TEST 3 ----------
+    private static void testNothingChanged(Path src, Path archives, Path meta) throws IOException {
+        long rows = Files.readAllLines(meta).size();
+        IncrementalArchiver.Result r = MetadataManager.archiveIncremental(
+                src, archives.resolve("logs-003.zip"), meta, 2, 6);
+        assert r.zip == null : "Archive written although nothing changed";
+        assert !Files.exists(archives.resolve("logs-003.zip")) : "Empty archive left behind";
+        assert Files.readAllLines(meta).size() == rows : "ARCHIVE row written although nothing changed";
+        System.out.println("Test 3 passed (unchanged tree writes nothing)");
+    }
+
+    // ---------- TEST 4 ----------
+    private static void testRestore(Path src, Path archives, Map<String, String> firstTree) throws IOException {
+        IncrementalArchiver archiver = new IncrementalArchiver(archives, new ParallelZipArchiver(1, -1));
+        Path latest = archiver.latestManifest();
+        assert latest.getFileName().toString().equals("logs-002.manifest.csv") : "Latest manifest: " + latest;
+
+        Path out = Files.createTempDirectory("incr_restore_");
+        int n = archiver.restore(latest, out);
+        assert n == 6 : "Restored " + n + " files";
+        assert tree(out).equals(tree(src)) : "Restored tree differs from source";
+        Path touched = src.resolve("vehicles/Van_3/2025-03-01.log");
+        assert Files.getLastModifiedTime(out.resolve("vehicles/Van_3/2025-03-01.log")).toMillis()
+                == Files.getLastModifiedTime(touched).toMillis() : "mtime not restored";
+
+        Path old = Files.createTempDirectory("incr_restore_old_");
+        archiver.restore(IncrementalArchiver.manifestOf(archives.resolve("logs-001.zip")), old);
+        assert tree(old).equals(firstTree) : "Restoring the first manifest did not give the first tree";
+        System.out.println("Test 4 passed (restore rebuilds the tree from the archive chain)");
+    }
+
+    // ---------- TEST 5 ----------
+    private static void testExistingTargetRefused(Path src, Path archives, Path meta) throws IOException {
+        Files.writeString(src.resolve("system").resolve("2025-03-02.log"), "[SYSTEM] shutdown\n");
+        Path second = archives.resolve("logs-002.zip");
+        long zipSize = Files.size(second);
+        try {
+            MetadataManager.archiveIncremental(src, second, meta, 2, 6);
+            assert false : "Existing archive overwritten";
+        } catch (FileAlreadyExistsException e) {
+            // expected
+        }
+        assert Files.size(second) == zipSize : "Existing archive modified";
+        Path out = Files.createTempDirectory("incr_restore_again_");
+        IncrementalArchiver archiver = new IncrementalArchiver(archives, new ParallelZipArchiver(1, -1));
+        int n = archiver.restore(IncrementalArchiver.manifestOf(second), out);
+        assert n == 6 : "Earlier manifest no longer restorable: " + n + " files";
+        System.out.println("Test 5 passed (existing archive is not overwritten)");
+    }
+
+    private static Map<String, String> tree(Path root) throws IOException {
+        Map<String, String> out = new TreeMap<>();
+        try (Stream<Path> s = Files.walk(root)) {
+            for (Path p : (Iterable<Path>) s.filter(Files::isRegularFile)::iterator) {
+                out.put(root.relativize(p).toString().replace('\\', '/'), Files.readString(p));
+            }
+        }
+        return out;
+    }
+}
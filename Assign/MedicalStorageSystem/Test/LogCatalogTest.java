@@ -0,0 +1,86 @@
+import med.supply.system.util.*;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.List;
+
+public class LogCatalogTest {
+    public static void main(String[] args) {
+        System.out.println("Running LogCatalog tests...");
+        PathsConfig cfg = new PathsConfig();
+        try {
+            cfg.ensure();
+
+            testAddParsesLocation(cfg);
+            testRemoveAndDateRange(cfg);
+            testLoadFromMetadata(cfg);
+
+            System.out.println(" All LogCatalog tests finished.");
+        } catch (AssertionError e) {
+            System.err.println("LogCatalog test failed: " + e.getMessage());
+            e.printStackTrace();
+        } catch (IOException e) {
+            System.err.println(" IOException during LogCatalog tests: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    // ---------- TEST 1 ----------
+    private static void testAddParsesLocation(PathsConfig cfg) {
+        LogCatalog catalog = new LogCatalog(cfg);
+        boolean vehicle = catalog.add(cfg.logsVehicles.resolve("Van_Cat").resolve("2025-01-02.log"));
+        boolean charging = catalog.add(cfg.logsCharging.resolve("Van_Cat").resolve("2025-01-03.log"));
+        boolean system = catalog.add(cfg.logsSystem.resolve("2025-01-02.log"));
+        assert vehicle && charging && system : "Daily log rejected";
+        boolean notes = catalog.add(cfg.logsSystem.resolve("notes.txt"));
+        assert !notes : "Non-daily file accepted";
+        boolean outside = catalog.add(Path.of("elsewhere", "2025-01-02.log"));
+        assert !outside : "File outside logsRoot accepted";
+
+        assert catalog.byEquipment("Van_Cat").size() == 2 : "Equipment index wrong";
+        assert catalog.byKind(LogKind.SYSTEM).size() == 1 : "Kind index wrong";
+        assert catalog.byDate(LocalDate.of(2025, 1, 2)).size() == 2 : "Date index wrong";
+        System.out.println("Test 1 passed (add parses kind/equipment/date)");
+    }
+
+    // ---------- TEST 2 ----------
+    private static void testRemoveAndDateRange(PathsConfig cfg) {
+        LogCatalog catalog = new LogCatalog(cfg);
+        Path a = cfg.logsVehicles.resolve("Van_Range").resolve("2025-02-01.log");
+        Path b = cfg.logsVehicles.resolve("Van_Range").resolve("2025-02-05.log");
+        Path c = cfg.logsVehicles.resolve("Van_Range").resolve("2025-03-01.log");
+        catalog.add(a);
+        catalog.add(b);
+        catalog.add(c);
+
+        List<Path> feb = catalog.byDateRange(LocalDate.of(2025, 2, 1), LocalDate.of(2025, 2, 28));
+        assert feb.size() == 2 && feb.contains(a) && feb.contains(b) : "Date range lookup wrong: " + feb;
+
+        catalog.remove(b);
+        assert catalog.byEquipment("Van_Range").size() == 2 : "remove did not update equipment index";
+        assert catalog.byDate(LocalDate.of(2025, 2, 5)).isEmpty() : "remove did not update date index";
+        System.out.println("Test 2 passed (remove + date range)");
+    }
+
+    // ---------- TEST 3 ----------
+    private static void testLoadFromMetadata(PathsConfig cfg) throws IOException {
+        LogManager logs = new LogManager(cfg);
+        logs.logVehicle("Van_CatalogLoad", "hello");
+        Path today = cfg.logsVehicles.resolve("Van_CatalogLoad").resolve(LocalDate.now() + ".log");
+        Path moved = cfg.logsVehicles.resolve("Van_CatalogMoved").resolve("2025-04-01.log");
+        Files.deleteIfExists(moved);
+        Files.createDirectories(moved.getParent());
+        Files.writeString(moved, "x\n");
+        MetadataManager.append(cfg.metaIndex, moved, "LOG", "created");
+        Path gone = cfg.logsVehicles.resolve("Van_CatalogMoved").resolve("2025-04-02.log");
+        MetadataManager.move(moved, gone, cfg.metaIndex);
+        MetadataManager.delete(gone, cfg.metaIndex);
+        logs.close();
+
+        LogCatalog loaded = LogCatalog.load(cfg);
+        assert loaded.byEquipment("Van_CatalogLoad").contains(today) : "LOG row not replayed";
+        assert loaded.byEquipment("Van_CatalogMoved").isEmpty() : "MOVE/DELETE rows not replayed";
+        System.out.println("Test 3 passed (load from log_metadata.csv)");
+    }
+}
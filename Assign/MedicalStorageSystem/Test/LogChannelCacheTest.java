@@ -0,0 +1,107 @@
+import med.supply.system.util.LogChannelCache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+public class LogChannelCacheTest {
+    public static void main(String[] args) {
+        System.out.println("Running LogChannelCache tests...");
+        try {
+            testHitsAndMisses();
+            testLruEviction();
+            testDayRolloverClosesChannels();
+            testNewFilesReportedOnce();
+
+            System.out.println(" All LogChannelCache tests finished.");
+        } catch (AssertionError e) {
+            System.err.println("LogChannelCache test failed: " + e.getMessage());
+            e.printStackTrace();
+        } catch (IOException e) {
+            System.err.println(" IOException during LogChannelCache tests: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private static ByteBuffer line(String s) {
+        return ByteBuffer.wrap((s + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    // ---------- TEST 1 ----------
+    private static void testHitsAndMisses() throws IOException {
+        Path dir = Files.createTempDirectory("chan_cache_");
+        LocalDate day = LocalDate.of(2025, 1, 1);
+        try (LogChannelCache cache = new LogChannelCache(4, null)) {
+            Path f = dir.resolve("a").resolve("2025-01-01.log");
+            cache.append(f, day, line("one"));
+            cache.append(f, day, line("two"));
+            cache.append(f, day, line("three"));
+
+            LogChannelCache.Stats st = cache.stats();
+            assert st.misses == 1 : "Expected one miss, got " + st.misses;
+            assert st.hits == 2 : "Expected two hits, got " + st.hits;
+            assert Files.readString(f).equals("one\ntwo\nthree\n") : "Appended content mismatch";
+        }
+        System.out.println("Test 1 passed (hits and misses counted)");
+    }
+
+    // ---------- TEST 2 ----------
+    private static void testLruEviction() throws IOException {
+        Path dir = Files.createTempDirectory("chan_lru_");
+        LocalDate day = LocalDate.of(2025, 1, 1);
+        try (LogChannelCache cache = new LogChannelCache(2, null)) {
+            Path a = dir.resolve("a.log");
+            Path b = dir.resolve("b.log");
+            Path c = dir.resolve("c.log");
+            cache.append(a, day, line("a"));
+            cache.append(b, day, line("b"));
+            cache.append(a, day, line("a2"));   // a becomes most recently used
+            cache.append(c, day, line("c"));    // evicts b
+            cache.append(a, day, line("a3"));   // still cached
+
+            LogChannelCache.Stats st = cache.stats();
+            assert st.open == 2 : "Cache exceeded capacity: " + st.open;
+            assert st.evictions == 1 : "Expected one eviction, got " + st.evictions;
+            assert st.hits == 2 : "Expected a to stay cached, hits=" + st.hits;
+            assert Files.readString(a).equals("a\na2\na3\n") : "Evicted/reopened file lost data";
+        }
+        System.out.println("Test 2 passed (LRU eviction)");
+    }
+
+    // ---------- TEST 3 ----------
+    private static void testDayRolloverClosesChannels() throws IOException {
+        Path dir = Files.createTempDirectory("chan_roll_");
+        try (LogChannelCache cache = new LogChannelCache(8, null)) {
+            cache.append(dir.resolve("2025-01-01.log"), LocalDate.of(2025, 1, 1), line("old"));
+            cache.append(dir.resolve("x").resolve("2025-01-01.log"), LocalDate.of(2025, 1, 1), line("old"));
+            cache.append(dir.resolve("2025-01-02.log"), LocalDate.of(2025, 1, 2), line("new"));
+
+            LogChannelCache.Stats st = cache.stats();
+            assert st.expired == 2 : "Previous day channels not closed: " + st.expired;
+            assert st.open == 1 : "Only today's channel should stay open";
+        }
+        System.out.println("Test 3 passed (day rollover closes channels)");
+    }
+
+    // ---------- TEST 4 ----------
+    private static void testNewFilesReportedOnce() throws IOException {
+        Path dir = Files.createTempDirectory("chan_listener_");
+        LocalDate day = LocalDate.of(2025, 1, 1);
+        List<Path> created = new ArrayList<>();
+        try (LogChannelCache cache = new LogChannelCache(1, (file, isNew) -> {
+            if (isNew) created.add(file);
+        })) {
+            Path a = dir.resolve("a.log");
+            Path b = dir.resolve("b.log");
+            cache.append(a, day, line("1"));
+            cache.append(b, day, line("2"));  // evicts a
+            cache.append(a, day, line("3"));  // reopened, but not new
+        }
+        assert created.size() == 2 : "Expected two created files, got " + created;
+        System.out.println("Test 4 passed (listener reports new files once)");
+    }
+}
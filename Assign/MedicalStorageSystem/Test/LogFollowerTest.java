@@ -0,0 +1,111 @@
+import med.supply.system.util.*;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.*;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class LogFollowerTest {
+    private static final String VAN = "Van_Follow";
+
+    /** Clock the test can move forward by hand. */
+    private static final class StepClock extends Clock {
+        volatile Instant now;
+
+        StepClock(Instant start) { this.now = start; }
+
+        @Override public ZoneId getZone() { return ZoneOffset.UTC; }
+
+        @Override public Clock withZone(ZoneId zone) { return this; }
+
+        @Override public Instant instant() { return now; }
+    }
+
+    public static void main(String[] args) {
+        System.out.println("Running LogFollower tests...");
+        PathsConfig cfg = new PathsConfig();
+        try {
+            cfg.ensure();
+            Path dir = cfg.logsVehicles.resolve(VAN);
+            if (Files.exists(dir)) {
+                try (Stream<Path> s = Files.walk(dir)) {
+                    for (Path p : s.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                        Files.delete(p);
+                    }
+                }
+            }
+
+            StepClock clock = new StepClock(Instant.parse("2025-08-01T23:00:00Z"));
+            LogManager logs = new LogManager(cfg, 16, clock);
+            logs.logVehicle(VAN, "before follow");
+
+            List<String> seen = new CopyOnWriteArrayList<>();
+            try (LogFollower follower = logs.follow(LogKind.VEHICLE, VAN, seen::add)) {
+                testNewLinesOnly(logs, follower, seen);
+                testSurvivesRotation(logs, follower, seen);
+                testDayRollover(logs, clock, follower, seen);
+            }
+            logs.close();
+
+            System.out.println(" All LogFollower tests finished.");
+        } catch (AssertionError e) {
+            System.err.println("LogFollower test failed: " + e.getMessage());
+            e.printStackTrace();
+        } catch (IOException | InterruptedException e) {
+            System.err.println(" Exception during LogFollower tests: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    // ---------- TEST 1 ----------
+    private static void testNewLinesOnly(LogManager logs, LogFollower follower, List<String> seen)
+            throws IOException, InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            logs.logVehicle(VAN, "live " + i);
+        }
+        awaitCount(follower, 100);
+        assert seen.size() == 100 : "Expected 100 lines, got " + seen.size();
+        assert seen.get(0).endsWith(" live 0") : "Existing content was re-read: " + seen.get(0);
+        assert seen.get(99).endsWith(" live 99") : "Last line wrong: " + seen.get(99);
+        System.out.println("Test 1 passed (only appended lines are streamed)");
+    }
+
+    // ---------- TEST 2 ----------
+    private static void testSurvivesRotation(LogManager logs, LogFollower follower, List<String> seen)
+            throws IOException, InterruptedException {
+        logs.enableRotation(2048);
+        for (int i = 0; i < 300; i++) {
+            logs.logVehicle(VAN, "rotating " + i);
+        }
+        assert logs.channelStats().rotations > 0 : "Test did not rotate";
+        awaitCount(follower, 400);
+        for (int i = 0; i < 300; i++) {
+            String line = seen.get(100 + i);
+            assert line.endsWith(" rotating " + i) : "Line lost or reordered across rotation: " + line;
+        }
+        System.out.println("Test 2 passed (no lines lost across size rotation)");
+    }
+
+    // ---------- TEST 3 ----------
+    private static void testDayRollover(LogManager logs, StepClock clock, LogFollower follower,
+                                        List<String> seen) throws IOException, InterruptedException {
+        clock.now = Instant.parse("2025-08-02T00:00:05Z");
+        logs.logVehicle(VAN, "next day");
+        awaitCount(follower, 401);
+        assert seen.get(400).endsWith(" next day") : "Rollover line wrong: " + seen.get(400);
+        assert follower.file().getFileName().toString().equals("2025-08-02.log")
+                : "Follower did not move to the next daily file: " + follower.file();
+        System.out.println("Test 3 passed (follows into the next day's file)");
+    }
+
+    private static void awaitCount(LogFollower follower, long n) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (follower.delivered() < n && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
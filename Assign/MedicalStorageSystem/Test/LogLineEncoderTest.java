@@ -0,0 +1,94 @@
+import med.supply.system.util.LogKind;
+import med.supply.system.util.LogLineEncoder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+public class LogLineEncoderTest {
+    public static void main(String[] args) {
+        System.out.println("Running LogLineEncoder tests...");
+        try {
+            testMatchesLegacyFormat();
+            testNonAsciiMessage();
+            testDateFollowsZone();
+
+            System.out.println(" All LogLineEncoder tests finished.");
+        } catch (AssertionError e) {
+            System.err.println("LogLineEncoder test failed: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /** The line exactly as LogManager used to build it with string concatenation. */
+    private static String legacy(String tag, Instant at, ZoneId zone, String message) {
+        String ts = ZonedDateTime.ofInstant(at, zone).format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+        return tag + " " + ts + " " + message + System.lineSeparator();
+    }
+
+    private static String text(ByteBuffer b) {
+        return new String(b.array(), b.position(), b.remaining(), StandardCharsets.UTF_8);
+    }
+
+    // ---------- TEST 1 ----------
+    private static void testMatchesLegacyFormat() {
+        Instant[] instants = {
+                Instant.parse("2025-10-31T10:15:30Z"),
+                Instant.parse("2025-10-31T10:15:30.120Z"),
+                Instant.parse("2025-10-31T10:15:30.123456Z"),
+                Instant.parse("2025-10-31T10:15:30.000000001Z"),
+                Instant.parse("2025-10-31T10:15:30.100Z"),
+                Instant.parse("2025-03-30T01:00:00Z"),   // DST switch in Europe
+        };
+        ZoneId[] zones = {ZoneId.of("UTC"), ZoneId.of("Europe/Berlin"), ZoneId.of("Asia/Kolkata")};
+        for (ZoneId zone : zones) {
+            LogLineEncoder enc = new LogLineEncoder(zone);
+            for (Instant at : instants) {
+                String got = text(enc.encode(LogKind.VEHICLE, "Van_Alpha", "moved", at.getEpochSecond(), at.getNano()));
+                String want = legacy("[VEHICLE:Van_Alpha]", at, zone, "moved");
+                assert got.equals(want) : "Mismatch for " + at + " in " + zone + ": " + got + " vs " + want;
+
+                got = text(enc.encode(LogKind.SYSTEM, null, "ok", at.getEpochSecond(), at.getNano()));
+                assert got.equals(legacy("[SYSTEM]", at, zone, "ok")) : "System line mismatch: " + got;
+
+                got = text(enc.encode(LogKind.VEHICLE, null, null, at.getEpochSecond(), at.getNano()));
+                assert got.equals(legacy("[VEHICLE:null]", at, zone, null)) : "Null name/message mismatch: " + got;
+            }
+        }
+        System.out.println("Test 1 passed (byte-for-byte legacy format)");
+    }
+
+    // ---------- TEST 2 ----------
+    private static void testNonAsciiMessage() {
+        ZoneId zone = ZoneId.of("UTC");
+        Instant at = Instant.parse("2025-10-31T10:15:30.5Z");
+        String msg = "Ladung überprüft – 🚑 ok \uD800";
+        LogLineEncoder enc = new LogLineEncoder(zone);
+        ByteBuffer b = enc.encode(LogKind.CHARGING, "Station_A", msg, at.getEpochSecond(), at.getNano());
+        byte[] got = new byte[b.remaining()];
+        b.get(got);
+        byte[] want = legacy("[CHARGING:Station_A]", at, zone, msg).getBytes(StandardCharsets.UTF_8);
+        assert java.util.Arrays.equals(got, want) : "UTF-8 bytes differ from String.getBytes";
+        System.out.println("Test 2 passed (UTF-8 encoding)");
+    }
+
+    // ---------- TEST 3 ----------
+    private static void testDateFollowsZone() {
+        Instant lateUtc = Instant.parse("2025-10-31T23:30:00Z");
+        LogLineEncoder utc = new LogLineEncoder(ZoneId.of("UTC"));
+        LogLineEncoder berlin = new LogLineEncoder(ZoneId.of("Europe/Berlin"));
+        utc.encode(LogKind.SYSTEM, null, "x", lateUtc.getEpochSecond(), 0);
+        berlin.encode(LogKind.SYSTEM, null, "x", lateUtc.getEpochSecond(), 0);
+        assert utc.date().equals(LocalDate.of(2025, 10, 31)) : "UTC date wrong: " + utc.date();
+        assert berlin.date().equals(LocalDate.of(2025, 11, 1)) : "Berlin date wrong: " + berlin.date();
+
+        Instant nextDay = Instant.parse("2025-11-01T00:00:00Z");
+        utc.encode(LogKind.SYSTEM, null, "x", nextDay.getEpochSecond(), 0);
+        assert utc.date().equals(LocalDate.of(2025, 11, 1)) : "Date not refreshed at midnight";
+        System.out.println("Test 3 passed (daily file date follows zone)");
+    }
+}
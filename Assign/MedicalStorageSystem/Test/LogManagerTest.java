@@ -2,6 +2,7 @@ import med.supply.system.util.*;
 import java.io.IOException;
 import java.nio.file.*;
 import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.List;
 
 public class LogManagerTest {
@@ -18,6 +19,9 @@ public class LogManagerTest {
             testChargingLogging(logManager, cfg);
             testFindByEquipment(logManager, cfg);
             testReadLog(logManager, cfg);
+            testAsyncLogging(cfg);
+            testRewrittenLogFound(logManager, cfg);
+            testAsyncWriterFailures();
 
             System.out.println(" All LogManager tests finished.");
         } catch (Exception e) {
@@ -77,4 +81,67 @@ public class LogManagerTest {
         assert read.contains("Sample log line") : "readLog() did not read file content correctly";
         System.out.println("Test 5 passed (readLog)");
     }
+
+    // ---------- TEST 6 ----------
+    private static void testAsyncLogging(PathsConfig cfg) throws IOException {
+        LogManager async = new LogManager(cfg);
+        async.enableAsync(16, 50);
+        for (int i = 0; i < 200; i++) {
+            async.logVehicle("Van_Async", "async line " + i);
+        }
+        async.close();
+        Path expected = cfg.logsVehicles.resolve("Van_Async").resolve(LocalDate.now().toString() + ".log");
+        String content = Files.readString(expected);
+        assert content.contains("async line 0") : "First async line missing";
+        assert content.contains("async line 199") : "Last async line not drained on close";
+        String nl = System.lineSeparator();
+        assert content.indexOf("async line 10" + nl) < content.indexOf("async line 11" + nl)
+                : "Async lines written out of order";
+        System.out.println("Test 6 passed (async logging drains on close)");
+    }
+
+    // ---------- TEST 7 ----------
+    private static void testRewrittenLogFound(LogManager logManager, PathsConfig cfg) throws IOException {
+        logManager.logVehicle("Van_Relog", "first line");
+        Path file = cfg.logsVehicles.resolve("Van_Relog").resolve(LocalDate.now().toString() + ".log");
+        logManager.release(file);
+        Files.delete(file);
+        assert logManager.findByEquipmentOrDate("Van_Relog").isEmpty() : "Deleted log still found";
+        logManager.logVehicle("Van_Relog", "second line");
+        List<Path> found = logManager.findByEquipmentOrDate("Van_Relog");
+        assert found.size() == 1 && found.get(0).endsWith(file.getFileName()) : "Rewritten log not found: " + found;
+        System.out.println("Test 7 passed (a deleted and rewritten log is found again)");
+    }
+
+    // ---------- TEST 8 ----------
+    private static void testAsyncWriterFailures() throws IOException {
+        Path dir = Files.createTempDirectory("async_fail");
+        LogChannelCache channels = new LogChannelCache(4, (file, created) -> { });
+        AsyncLogWriter writer = new AsyncLogWriter(channels, (kind, name, day) -> {
+            if (name.equals("bad")) throw new IllegalStateException("no file for " + name);
+            return dir.resolve(name + ".log");
+        }, null, ZoneId.systemDefault(), 4, 20);
+        long now = System.currentTimeMillis() / 1000;
+        writer.submit(LogKind.VEHICLE, "bad", "lost", now, 0);
+        try {
+            writer.flush();
+            assert false : "Failed line not reported by flush";
+        } catch (IOException expected) {
+            // ok
+        }
+        writer.submit(LogKind.VEHICLE, "good", "still written", now, 0);
+        writer.flush();
+        assert Files.readString(dir.resolve("good.log")).contains("still written") : "Writer stopped after a failure";
+
+        writer.close();
+        try {
+            writer.submit(LogKind.VEHICLE, "good", "after close", now, 0);
+            assert false : "Line accepted after close";
+        } catch (IOException expected) {
+            // ok
+        }
+        writer.flush(); // returns at once after close
+        channels.close();
+        System.out.println("Test 8 passed (async writer survives failures and rejects lines after close)");
+    }
 }
@@ -0,0 +1,129 @@
+import med.supply.system.util.LogReader;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class LogReaderTest {
+    public static void main(String[] args) {
+        System.out.println("Running LogReader tests...");
+        try {
+            Path file = Files.createTempFile("reader_", ".log");
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 25_000; i++) {
+                sb.append("line ").append(i).append(i % 7 == 0 ? "\r\n" : "\n");
+            }
+            sb.append("last line without newline");
+            Files.writeString(file, sb.toString());
+
+            testForwardPaging(file);
+            testReversePaging(file);
+            testStreamLines(file);
+            testCompressedMatchesPlain(file);
+            testLargeCompressedSize();
+
+            System.out.println(" All LogReader tests finished.");
+        } catch (AssertionError e) {
+            System.err.println("LogReader test failed: " + e.getMessage());
+            e.printStackTrace();
+        } catch (IOException e) {
+            System.err.println(" IOException during LogReader tests: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    // ---------- TEST 1 ----------
+    private static void testForwardPaging(Path file) throws IOException {
+        List<String> all = new ArrayList<>();
+        LogReader.Page page = LogReader.readPage(file, 0, 1000);
+        all.addAll(page.lines);
+        while (!page.isLast()) {
+            page = LogReader.readPage(file, page.endOffset, 1000);
+            all.addAll(page.lines);
+        }
+        assert all.size() == 25_001 : "Expected 25001 lines, got " + all.size();
+        assert all.get(0).equals("line 0") : "CR not stripped: " + all.get(0);
+        assert all.get(12_345).equals("line 12345") : "Line mismatch at 12345";
+        assert all.get(25_000).equals("last line without newline") : "Unterminated last line lost";
+        System.out.println("Test 1 passed (forward paging covers every line once)");
+    }
+
+    // ---------- TEST 2 ----------
+    private static void testReversePaging(Path file) throws IOException {
+        LogReader.Page tail = LogReader.tail(file, 3);
+        assert tail.lines.size() == 3 : "tail size wrong";
+        assert tail.lines.get(2).equals("last line without newline") : "tail last line wrong";
+        assert tail.lines.get(0).equals("line 24998") : "tail first line wrong: " + tail.lines.get(0);
+
+        int count = tail.lines.size();
+        LogReader.Page page = tail;
+        String firstSeen = null;
+        while (!page.isFirst()) {
+            page = LogReader.readPageBefore(file, page.startOffset, 777);
+            count += page.lines.size();
+            firstSeen = page.lines.get(0);
+        }
+        assert count == 25_001 : "Reverse paging lost or duplicated lines: " + count;
+        assert "line 0".equals(firstSeen) : "Reverse paging did not reach the first line";
+
+        LogReader.Page before = LogReader.readPageBefore(file, LogReader.readPage(file, 0, 2).endOffset, 10);
+        assert before.lines.size() == 2 : "Page before offset read past its end: " + before.lines;
+        System.out.println("Test 2 passed (reverse paging from the end)");
+    }
+
+    // ---------- TEST 3 ----------
+    private static void testStreamLines(Path file) throws IOException {
+        try (Stream<String> lines = LogReader.lines(file)) {
+            List<String> matching = lines.filter(l -> l.endsWith("999")).collect(Collectors.toList());
+            assert matching.size() == 25 : "Streaming filter returned " + matching.size();
+            assert matching.get(0).equals("line 999") : "Streamed line mismatch";
+        }
+        System.out.println("Test 3 passed (lines() streams lazily)");
+    }
+
+    // ---------- TEST 4 ----------
+    private static void testCompressedMatchesPlain(Path file) throws IOException {
+        Path gz = Paths.get(file + ".gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gz))) {
+            Files.copy(file, out);
+        }
+        assert LogReader.size(gz) == Files.size(file) : "Uncompressed size not read from gzip trailer";
+
+        LogReader.Page plain = LogReader.readPage(file, 100_000, 50);
+        LogReader.Page packed = LogReader.readPage(gz, 100_000, 50);
+        assert packed.lines.equals(plain.lines) : "Forward page differs for .gz";
+        assert packed.endOffset == plain.endOffset : "Forward page end offset differs for .gz";
+
+        LogReader.Page plainBefore = LogReader.readPageBefore(file, plain.startOffset, 30);
+        LogReader.Page packedBefore = LogReader.readPageBefore(gz, plain.startOffset, 30);
+        assert packedBefore.lines.equals(plainBefore.lines) : "Backward page differs for .gz";
+        assert packedBefore.startOffset == plainBefore.startOffset : "Backward page start differs for .gz";
+        assert LogReader.tail(gz, 3).lines.equals(LogReader.tail(file, 3).lines) : "tail differs for .gz";
+
+        try (Stream<String> a = LogReader.lines(file); Stream<String> b = LogReader.lines(gz)) {
+            assert a.collect(Collectors.toList()).equals(b.collect(Collectors.toList())) : "lines() differs for .gz";
+        }
+        System.out.println("Test 4 passed (gzip segments read like plain files)");
+    }
+
+    // ---------- TEST 5 ----------
+    private static void testLargeCompressedSize() throws IOException {
+        // Incompressible content: too large for the gzip trailer to be trusted, so the size is counted.
+        byte[] data = new byte[5_000_000];
+        new Random(42).nextBytes(data);
+        Path gz = Files.createTempFile("reader_big_", ".log.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gz))) {
+            out.write(data);
+        }
+        long size = LogReader.size(gz);
+        assert size == data.length : "Counted size wrong: " + size;
+        Files.delete(gz);
+        System.out.println("Test 5 passed (large gzip size counted)");
+    }
+}
@@ -0,0 +1,138 @@
+import med.supply.system.util.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class LogRotatorTest {
+    private static final String VAN = "Van_Rotate";
+
+    public static void main(String[] args) {
+        System.out.println("Running LogRotator tests...");
+        PathsConfig cfg = new PathsConfig();
+        try {
+            cfg.ensure();
+            Path dir = cfg.logsVehicles.resolve(VAN);
+            if (Files.exists(dir)) {
+                try (Stream<Path> s = Files.walk(dir)) {
+                    for (Path p : s.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                        Files.delete(p);
+                    }
+                }
+            }
+
+            LogManager logs = new LogManager(cfg, 16,
+                    Clock.fixed(Instant.parse("2025-07-01T08:00:00Z"), ZoneOffset.UTC));
+            logs.enableRotation(4096);
+            for (int i = 0; i < 2000; i++) {
+                logs.logVehicle(VAN, "reading " + i);
+            }
+            long rotations = logs.channelStats().rotations;
+            logs.close();
+
+            testSegmentsCompressed(dir, rotations);
+            testReadBackInOrder(logs);
+            testCatalogRebuilt(cfg, logs);
+            testSearchFindsCompressed(logs);
+            testPreviousDayRotated(cfg);
+
+            System.out.println(" All LogRotator tests finished.");
+        } catch (AssertionError e) {
+            System.err.println("LogRotator test failed: " + e.getMessage());
+            e.printStackTrace();
+        } catch (IOException e) {
+            System.err.println(" IOException during LogRotator tests: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    // ---------- TEST 1 ----------
+    private static void testSegmentsCompressed(Path dir, long rotations) throws IOException {
+        List<String> names;
+        try (Stream<Path> s = Files.list(dir)) {
+            names = s.map(p -> p.getFileName().toString()).sorted().collect(Collectors.toList());
+        }
+        long gz = names.stream().filter(n -> n.endsWith(".log.gz")).count();
+        assert rotations >= 10 : "Expected at least 10 rotations, got " + rotations;
+        assert gz == rotations : "Expected " + rotations + " compressed segments, got " + names;
+        assert names.contains("2025-07-01.log") : "Active daily file missing";
+        assert names.contains("2025-07-01.10.log.gz") : "Segment numbering wrong: " + names;
+        assert names.size() == gz + 1 : "Uncompressed or temporary segments left behind: " + names;
+        for (String n : names) {
+            if (n.endsWith(".gz")) {
+                long size = LogReader.size(dir.resolve(n));
+                assert size <= 4096 : "Segment " + n + " exceeds the limit: " + size;
+            }
+        }
+        System.out.println("Test 1 passed (segments rotated by size and gzip-compressed)");
+    }
+
+    // ---------- TEST 2 ----------
+    private static void testReadBackInOrder(LogManager logs) throws IOException {
+        List<Path> files = logs.findByEquipmentOrDate(VAN); // segment order, active file last
+        List<String> lines = new ArrayList<>();
+        for (Path p : files) {
+            for (String line : logs.readLog(p).split("\n")) {
+                if (!line.isEmpty()) lines.add(line);
+            }
+        }
+        assert lines.size() == 2000 : "Expected 2000 lines across segments, got " + lines.size();
+        for (int i = 0; i < 2000; i++) {
+            assert lines.get(i).endsWith(" reading " + i) : "Line " + i + " out of order: " + lines.get(i);
+        }
+        System.out.println("Test 2 passed (readLog reads compressed segments transparently)");
+    }
+
+    // ---------- TEST 3 ----------
+    private static void testCatalogRebuilt(PathsConfig cfg, LogManager logs) throws IOException {
+        LogManager reloaded = new LogManager(cfg);
+        assert new HashSet<>(reloaded.catalog().byEquipment(VAN))
+                .equals(new HashSet<>(logs.findByEquipmentOrDate(VAN)))
+                : "Catalog rebuilt from metadata does not match the segments on disk";
+        for (Path p : reloaded.catalog().byEquipment(VAN)) {
+            String n = p.getFileName().toString();
+            assert n.endsWith(".gz") || n.equals("2025-07-01.log") : "Stale uncompressed segment " + n;
+        }
+        System.out.println("Test 3 passed (ROTATE rows rebuild the catalog)");
+    }
+
+    // ---------- TEST 4 ----------
+    private static void testSearchFindsCompressed(LogManager logs) throws IOException {
+        List<LogSearch.Match> hits = new ArrayList<>();
+        logs.search(LogSearch.Query.regex("reading 1234$").withEquipment(VAN), hits::add);
+        assert hits.size() == 1 : "Expected one match, got " + hits;
+        assert hits.get(0).file.toString().endsWith(".gz") : "Match not in a compressed segment: " + hits.get(0);
+        System.out.println("Test 4 passed (search covers compressed segments)");
+    }
+
+    // ---------- TEST 5 ----------
+    private static void testPreviousDayRotated(PathsConfig cfg) throws IOException {
+        Path dir = Files.createTempDirectory("rotate_day_");
+        LocalDate day1 = LocalDate.of(2025, 7, 1);
+        LogRotator rotator = new LogRotator(cfg, 1 << 20, null, null);
+        LogChannelCache channels = new LogChannelCache(4, null);
+        Files.writeString(dir.resolve("2025-07-01.99999999999.log"), "stray\n"); // not a segment number
+        channels.setRotator(rotator);
+        channels.append(dir.resolve("2025-07-01.log"), day1, ByteBuffer.wrap("first day\n".getBytes(StandardCharsets.UTF_8)));
+        channels.append(dir.resolve("2025-07-02.log"), day1.plusDays(1), ByteBuffer.wrap("next day\n".getBytes(StandardCharsets.UTF_8)));
+        rotator.awaitCompression();
+        assert Files.exists(dir.resolve("2025-07-01.1.log.gz")) : "Previous day not compressed on rollover";
+        assert !Files.exists(dir.resolve("2025-07-01.log")) : "Previous day's active file left behind";
+        assert LogReader.size(dir.resolve("2025-07-01.1.log.gz")) == 10 : "Compressed content";
+        assert Files.exists(dir.resolve("2025-07-02.log")) : "Current day rotated too early";
+        channels.close();
+        rotator.close();
+        System.out.println("Test 5 passed (the previous day's log is compressed when the day rolls over)");
+    }
+}
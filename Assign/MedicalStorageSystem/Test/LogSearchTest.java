@@ -0,0 +1,78 @@
+import med.supply.system.util.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+public class LogSearchTest {
+    public static void main(String[] args) {
+        System.out.println("Running LogSearch tests...");
+        PathsConfig cfg = new PathsConfig();
+        try {
+            cfg.ensure();
+            LogCatalog catalog = new LogCatalog(cfg);
+            Path big = cfg.logsVehicles.resolve("Van_Search").resolve("2025-05-01.log");
+            Path small = cfg.logsVehicles.resolve("Van_Search").resolve("2025-05-02.log");
+            Path other = cfg.logsCharging.resolve("Station_Search").resolve("2025-05-01.log");
+            Files.createDirectories(big.getParent());
+            Files.createDirectories(other.getParent());
+            StringBuilder sb = new StringBuilder();
+            for (int i = 1; i <= 10_000; i++) {
+                sb.append("[VEHICLE:Van_Search] line ").append(i)
+                        .append(i % 1000 == 0 ? " SKU-777 loaded" : " idle").append('\n');
+            }
+            Files.writeString(big, sb.toString(), StandardCharsets.UTF_8);
+            Files.writeString(small, "task T-42 started\ntask T-43 started\n", StandardCharsets.UTF_8);
+            Files.writeString(other, "SKU-777 charged\n", StandardCharsets.UTF_8);
+            catalog.add(big);
+            catalog.add(small);
+            catalog.add(other);
+
+            testChunkedSearchKeepsLineNumbers(catalog, big);
+            testRegexWithFilters(catalog);
+
+            System.out.println(" All LogSearch tests finished.");
+        } catch (AssertionError e) {
+            System.err.println("LogSearch test failed: " + e.getMessage());
+            e.printStackTrace();
+        } catch (IOException e) {
+            System.err.println(" IOException during LogSearch tests: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    // ---------- TEST 1 ----------
+    private static void testChunkedSearchKeepsLineNumbers(LogCatalog catalog, Path big) throws IOException {
+        // 1 KB chunks force the 10k-line file to be split many times.
+        LogSearch search = new LogSearch(catalog, new ForkJoinPool(4), 1024);
+        List<LogSearch.Match> found = search.search(LogSearch.Query.literal("SKU-777").withEquipment("Van_Search"));
+        assert found.size() == 10 : "Expected 10 matches, got " + found.size();
+        byte[] all = Files.readAllBytes(big);
+        for (LogSearch.Match m : found) {
+            long expectedLine = Long.parseLong(m.line.split(" ")[2]);
+            assert m.lineNumber == expectedLine : "Line number off: " + m;
+            String at = new String(all, (int) m.byteOffset, m.line.length(), StandardCharsets.UTF_8);
+            assert at.equals(m.line) : "Byte offset off: " + m;
+        }
+        System.out.println("Test 1 passed (chunked search reports exact line numbers and offsets)");
+    }
+
+    // ---------- TEST 2 ----------
+    private static void testRegexWithFilters(LogCatalog catalog) throws IOException {
+        LogSearch search = new LogSearch(catalog);
+        List<LogSearch.Match> tasks = search.search(LogSearch.Query.regex("T-4\\d started"));
+        assert tasks.size() == 2 : "Regex search wrong: " + tasks;
+
+        List<LogSearch.Match> sku = search.search(LogSearch.Query.literal("SKU-777")
+                .between(LocalDate.of(2025, 5, 1), LocalDate.of(2025, 5, 1)));
+        assert sku.size() == 11 : "Date filter should include vehicle and charging logs: " + sku.size();
+
+        List<LogSearch.Match> none = search.search(LogSearch.Query.literal("SKU-777")
+                .between(LocalDate.of(2025, 5, 2), null));
+        assert none.isEmpty() : "Date filter ignored";
+        System.out.println("Test 2 passed (regex, equipment and date filters)");
+    }
+}
@@ -0,0 +1,77 @@
+import med.supply.system.util.*;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.*;
+import java.util.List;
+
+public class LogTimeIndexTest {
+
+    /** Clock the test can move forward by hand. */
+    private static final class StepClock extends Clock {
+        Instant now;
+
+        StepClock(Instant start) { this.now = start; }
+
+        @Override public ZoneId getZone() { return ZoneOffset.UTC; }
+
+        @Override public Clock withZone(ZoneId zone) { return this; }
+
+        @Override public Instant instant() { return now; }
+    }
+
+    public static void main(String[] args) {
+        System.out.println("Running LogTimeIndex tests...");
+        PathsConfig cfg = new PathsConfig();
+        try {
+            cfg.ensure();
+            testRangeQueryReadsOnlyRegion(cfg);
+            testTimestampParsing();
+
+            System.out.println(" All LogTimeIndex tests finished.");
+        } catch (AssertionError e) {
+            System.err.println("LogTimeIndex test failed: " + e.getMessage());
+            e.printStackTrace();
+        } catch (IOException e) {
+            System.err.println(" IOException during LogTimeIndex tests: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    // ---------- TEST 1 ----------
+    private static void testRangeQueryReadsOnlyRegion(PathsConfig cfg) throws IOException {
+        Instant start = Instant.parse("2025-06-01T12:00:00Z");
+        Path log = cfg.logsVehicles.resolve("Van_TimeIdx").resolve("2025-06-01.log");
+        LogTimeIndex index = new LogTimeIndex(cfg, 256, 64 * 1024);
+        Files.deleteIfExists(log);
+        Files.deleteIfExists(index.sidecarFor(log));
+
+        StepClock clock = new StepClock(start);
+        LogManager logs = new LogManager(cfg, 16, clock);
+        for (int i = 0; i < 3600; i++) {
+            clock.now = start.plusSeconds(i).plusMillis(250);
+            logs.logVehicle("Van_TimeIdx", "position update " + i);
+        }
+        logs.close();
+
+        Instant from = Instant.parse("2025-06-01T12:30:00Z");
+        Instant to = Instant.parse("2025-06-01T12:35:00Z");
+        List<String> lines = logs.readLogRange(log, from, to);
+        assert lines.size() == 300 : "Expected 300 lines in range, got " + lines.size();
+        assert lines.get(0).endsWith("position update 1800") : "Wrong first line: " + lines.get(0);
+        assert lines.get(299).endsWith("position update 2099") : "Wrong last line";
+
+        long[] region = index.locate(log, from.toEpochMilli(), to.toEpochMilli());
+        long size = Files.size(log);
+        assert region[1] - region[0] < size / 4 : "Index did not narrow the read: " + (region[1] - region[0]) + " of " + size;
+        System.out.println("Test 1 passed (time-range query reads only the indexed region)");
+    }
+
+    // ---------- TEST 2 ----------
+    private static void testTimestampParsing() {
+        long ms = LogTimeIndex.timestampMillis("[VEHICLE:Van] 2025-06-01T14:00:00.123456+02:00 moved");
+        assert ms == Instant.parse("2025-06-01T12:00:00.123Z").toEpochMilli() : "Timestamp parsed wrong";
+        assert LogTimeIndex.timestampMillis("Sample log line") == -1 : "Plain line should have no timestamp";
+        System.out.println("Test 2 passed (timestamp parsing)");
+    }
+}
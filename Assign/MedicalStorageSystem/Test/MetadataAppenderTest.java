@@ -0,0 +1,115 @@
+import med.supply.system.util.MetadataAppender;
+import med.supply.system.util.MetadataManager;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class MetadataAppenderTest {
+    public static void main(String[] args) {
+        System.out.println("Running MetadataAppender tests...");
+        try {
+            testConcurrentRowsDoNotTear(MetadataAppender.Durability.NONE);
+            testConcurrentRowsDoNotTear(MetadataAppender.Durability.PER_BATCH);
+            testPeriodicSyncAndClose();
+            testMissingFileFails();
+
+            System.out.println(" All MetadataAppender tests finished.");
+        } catch (AssertionError e) {
+            System.err.println("MetadataAppender test failed: " + e.getMessage());
+            e.printStackTrace();
+        } catch (IOException | InterruptedException e) {
+            System.err.println(" Exception during MetadataAppender tests: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    // ---------- TEST 1 / 2 ----------
+    private static void testConcurrentRowsDoNotTear(MetadataAppender.Durability mode)
+            throws IOException, InterruptedException {
+        Path meta = Files.createTempFile("meta_group_", ".csv");
+        Files.writeString(meta, "path,createdUtc,kind,notes\n");
+        MetadataAppender appender = MetadataManager.appender(meta);
+        appender.setDurability(mode, 0);
+
+        int threads = 16;
+        int perThread = 300;
+        List<Thread> workers = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            Thread w = new Thread(() -> {
+                try {
+                    for (int i = 0; i < perThread; i++) {
+                        MetadataManager.append(meta, Paths.get("logs", "t" + id, i + ".log"), "LOG",
+                                "writer " + id + ", row \"" + i + "\"");
+                    }
+                } catch (IOException e) {
+                    synchronized (errors) { errors.add(e); }
+                }
+            });
+            workers.add(w);
+            w.start();
+        }
+        for (Thread w : workers) w.join();
+        assert errors.isEmpty() : "Appends failed: " + errors;
+
+        Map<String, Integer> nextPerWriter = new HashMap<>();
+        int[] count = {0};
+        MetadataManager.forEachRow(meta, row -> {
+            String writer = row.notes.substring(0, row.notes.indexOf(','));
+            int expected = nextPerWriter.getOrDefault(writer, 0);
+            assert row.notes.equals(writer + ", row \"" + expected + "\"") : "Torn or reordered row: " + row.notes;
+            assert row.kind.equals("LOG") : "Kind mismatch: " + row.kind;
+            nextPerWriter.put(writer, expected + 1);
+            count[0]++;
+        });
+        assert count[0] == threads * perThread : "Expected " + threads * perThread + " rows, got " + count[0];
+        assert Files.readAllLines(meta).size() == threads * perThread + 1 : "Malformed lines in file";
+        assert appender.rows() == threads * perThread : "Row counter wrong: " + appender.rows();
+        assert appender.batches() <= appender.rows() : "More batches than rows";
+        appender.close();
+        System.out.println("Test " + (mode == MetadataAppender.Durability.NONE ? 1 : 2)
+                + " passed (" + mode + ": " + count[0] + " rows in " + appender.batches() + " batches, none torn)");
+    }
+
+    // ---------- TEST 3 ----------
+    private static void testPeriodicSyncAndClose() throws IOException, InterruptedException {
+        Path meta = Files.createTempFile("meta_periodic_", ".csv");
+        MetadataAppender appender = MetadataManager.appender(meta);
+        appender.setDurability(MetadataAppender.Durability.PERIODIC, 10);
+        MetadataManager.append(meta, Paths.get("a.log"), "LOG", "created");
+        long syncers = syncThreads();
+        appender.close();
+        for (int i = 0; i < 200 && syncThreads() >= syncers; i++) Thread.sleep(10);
+        assert syncThreads() < syncers : "close() left the periodic syncer running";
+        MetadataManager.append(meta, Paths.get("b.log"), "LOG", "created");
+        List<String> lines = Files.readAllLines(meta);
+        assert lines.size() == 2 : "Appender not reusable after close: " + lines;
+        assert lines.get(1).startsWith("b.log,") : "Row after reopen misplaced: " + lines;
+        appender.setDurability(MetadataAppender.Durability.NONE, 0);
+        System.out.println("Test 3 passed (periodic sync, reopen after close)");
+    }
+
+    private static long syncThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(t -> t.isAlive() && t.getName().equals("metadata-sync")).count();
+    }
+
+    // ---------- TEST 4 ----------
+    private static void testMissingFileFails() throws IOException {
+        Path meta = Files.createTempFile("meta_missing_", ".csv");
+        Files.delete(meta);
+        try {
+            MetadataManager.append(meta, Paths.get("a.log"), "LOG", "created");
+            assert false : "Append to a missing metadata file should fail";
+        } catch (IOException expected) {
+            // same as the former Files.writeString(..., APPEND)
+        }
+        assert !Files.exists(meta) : "Append created the metadata file";
+        System.out.println("Test 4 passed (missing metadata file is an error)");
+    }
+}
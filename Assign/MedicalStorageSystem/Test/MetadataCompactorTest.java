@@ -0,0 +1,137 @@
+import med.supply.system.util.*;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class MetadataCompactorTest {
+    private static final Instant NOW = Instant.parse("2025-09-10T12:00:00Z");
+
+    public static void main(String[] args) {
+        System.out.println("Running MetadataCompactor tests...");
+        try {
+            testSnapshotKeepsLivePaths();
+            testRetentionKeepsRecentEvents();
+            testConcurrentAppendsSurvive();
+
+            System.out.println(" All MetadataCompactor tests finished.");
+        } catch (AssertionError e) {
+            System.err.println("MetadataCompactor test failed: " + e.getMessage());
+            e.printStackTrace();
+        } catch (IOException | InterruptedException e) {
+            System.err.println(" Exception during MetadataCompactor tests: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private static Path history() throws IOException {
+        Path meta = Files.createTempFile("meta_compact_", ".csv");
+        String old = "2025-01-01T00:00:0";
+        String recent = "2025-09-09T00:00:0";
+        Files.writeString(meta, "path,createdUtc,kind,notes\n"
+                + "a.log," + old + "1Z,LOG,created\n"
+                + "b.log," + old + "2Z,LOG,created\n"
+                + "c.log," + old + "3Z,LOG,created\n"
+                + "b.log," + old + "4Z,DELETE,deleted\n"
+                + "d.log," + old + "5Z,MOVE,moved from c.log\n"
+                + "a.log," + old + "6Z,ARCHIVE,archived x\n"
+                + "e.1.log," + old + "7Z,ROTATE,rotated from e.log\n"
+                + "e.1.log.gz," + old + "8Z,ROTATE,compressed from e.1.log\n"
+                + "f.log," + recent + "1Z,LOG,created\n"
+                + "f.log," + recent + "2Z,DELETE,deleted\n");
+        return meta;
+    }
+
+    private static Set<String> livePaths(Path meta) throws IOException {
+        Set<String> live = new HashSet<>();
+        MetadataManager.forEachRow(meta, r -> {
+            switch (r.kind) {
+                case "DELETE" -> live.remove(r.path);
+                case "MOVE" -> {
+                    live.remove(r.notes.substring("moved from ".length()));
+                    live.add(r.path);
+                }
+                case "ROTATE" -> {
+                    if (r.notes.startsWith("compressed from ")) live.remove(r.notes.substring(16));
+                    live.add(r.path);
+                }
+                default -> live.add(r.path);
+            }
+        });
+        return live;
+    }
+
+    // ---------- TEST 1 ----------
+    private static void testSnapshotKeepsLivePaths() throws IOException {
+        Path meta = history();
+        Set<String> before = livePaths(meta);
+        MetadataCompactor.Result r = new MetadataCompactor(meta, Clock.fixed(NOW, ZoneOffset.UTC)).compact(null);
+        List<String> lines = Files.readAllLines(meta);
+        assert lines.get(0).equals("path,createdUtc,kind,notes") : "Header lost";
+        assert r.rowsBefore == 10 && r.rowsAfter == 3 : "Unexpected row counts: " + r;
+        assert livePaths(meta).equals(before) : "Live set changed: " + livePaths(meta) + " vs " + before;
+        assert lines.contains("a.log,2025-01-01T00:00:06Z,ARCHIVE,archived x") : "Latest row of a.log not kept";
+        assert !Files.exists(meta.resolveSibling(meta.getFileName() + ".compact.tmp")) : "Temp file left behind";
+        System.out.println("Test 1 passed (snapshot has one row per live path)");
+    }
+
+    // ---------- TEST 2 ----------
+    private static void testRetentionKeepsRecentEvents() throws IOException {
+        Path meta = history();
+        MetadataIndex index = MetadataManager.index(meta);
+        assert index.size() == 10 : "Index not loaded";
+        MetadataCompactor.Result r = new MetadataCompactor(meta, Clock.fixed(NOW, ZoneOffset.UTC))
+                .compact(Duration.ofDays(7));
+        assert r.rowsAfter == 5 : "Expected 3 snapshot + 2 recent rows, got " + r;
+        List<String> lines = Files.readAllLines(meta);
+        assert lines.get(5).startsWith("f.log,2025-09-09T00:00:02Z,DELETE") : "Recent events not kept in order";
+        assert index.size() == 5 : "Index not reloaded after swap: " + index.size();
+        assert index.byKind("DELETE").size() == 1 : "Index answers from stale offsets";
+        System.out.println("Test 2 passed (retention window kept verbatim, index reloaded)");
+    }
+
+    // ---------- TEST 3 ----------
+    private static void testConcurrentAppendsSurvive() throws IOException, InterruptedException {
+        Path meta = history();
+        for (int i = 0; i < 20_000; i++) {
+            MetadataManager.append(meta, Paths.get("old" + i + ".log"), "LOG", "created");
+            MetadataManager.append(meta, Paths.get("old" + i + ".log"), "DELETE", "deleted");
+        }
+        AtomicBoolean stop = new AtomicBoolean();
+        List<Throwable> errors = new ArrayList<>();
+        int[] written = {0};
+        Thread writer = new Thread(() -> {
+            try {
+                while (!stop.get()) {
+                    MetadataManager.append(meta, Paths.get("live" + written[0] + ".log"), "LOG", "created");
+                    written[0]++;
+                }
+            } catch (IOException e) {
+                synchronized (errors) { errors.add(e); }
+            }
+        });
+        writer.start();
+        Thread.sleep(20);
+        MetadataCompactor.Result r = new MetadataCompactor(meta).compact(null);
+        Thread.sleep(20);
+        stop.set(true);
+        writer.join();
+        assert errors.isEmpty() : "Append failed during compaction: " + errors;
+
+        Set<String> live = livePaths(meta);
+        for (int i = 0; i < written[0]; i++) {
+            assert live.contains("live" + i + ".log") : "Row appended during compaction lost: live" + i;
+        }
+        assert !live.contains("old7.log") : "Deleted path survived compaction";
+        assert r.rowsAfter < r.rowsBefore : "Nothing compacted: " + r;
+        System.out.println("Test 3 passed (" + written[0] + " concurrent appends survive the swap)");
+    }
+}
@@ -0,0 +1,81 @@
+import med.supply.system.util.MetadataIndex;
+import med.supply.system.util.MetadataManager;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.List;
+
+public class MetadataIndexTest {
+    public static void main(String[] args) {
+        System.out.println("Running MetadataIndex tests...");
+        try {
+            Path meta = Files.createTempFile("meta_index_", ".csv");
+            StringBuilder sb = new StringBuilder("path,createdUtc,kind,notes\n");
+            Instant base = Instant.parse("2025-03-01T00:00:00Z");
+            for (int i = 0; i < 50_000; i++) {
+                String kind = i % 10 == 0 ? "DELETE" : i % 10 == 1 ? "ARCHIVE" : "LOG";
+                sb.append("logs/f").append(i % 5000).append(".log,")
+                        .append(base.plusSeconds(i * 60L)).append(',').append(kind).append(",row ").append(i).append('\n');
+            }
+            Files.writeString(meta, sb.toString());
+
+            testLoadedLookups(meta, base);
+            testKeptCurrentOnAppend(meta);
+
+            System.out.println(" All MetadataIndex tests finished.");
+        } catch (AssertionError e) {
+            System.err.println("MetadataIndex test failed: " + e.getMessage());
+            e.printStackTrace();
+        } catch (IOException e) {
+            System.err.println(" IOException during MetadataIndex tests: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    // ---------- TEST 1 ----------
+    private static void testLoadedLookups(Path meta, Instant base) throws IOException {
+        MetadataIndex index = MetadataManager.index(meta);
+        assert index.size() == 50_000 : "Expected 50000 rows, got " + index.size();
+
+        List<MetadataManager.Row> history = index.byPath(Paths.get("logs/f42.log"));
+        assert history.size() == 10 : "Expected 10 rows for f42, got " + history.size();
+        assert history.get(0).notes.equals("row 42") : "History not oldest first: " + history.get(0).notes;
+
+        MetadataManager.Row archived = index.latest(Paths.get("logs/f1.log"), "ARCHIVE");
+        assert archived != null && archived.notes.equals("row 45001") : "Latest ARCHIVE wrong";
+        assert index.latest(Paths.get("logs/f2.log"), "ARCHIVE") == null : "f2 was never archived";
+
+        assert index.byKind("DELETE").size() == 5000 : "DELETE count wrong";
+
+        // rows 1000..1999 lie within [base + 1000 min, base + 1999 min]
+        Instant from = base.plusSeconds(1000 * 60L);
+        Instant to = base.plusSeconds(1999 * 60L);
+        List<MetadataManager.Row> window = index.between(from, to);
+        assert window.size() == 1000 : "Expected 1000 rows in window, got " + window.size();
+        assert window.get(0).notes.equals("row 1000") : "Window start wrong: " + window.get(0).notes;
+        List<MetadataManager.Row> deleted = index.byKindBetween("DELETE", from, to);
+        assert deleted.size() == 100 : "Expected 100 deletions in window, got " + deleted.size();
+        for (MetadataManager.Row r : deleted) {
+            assert r.kind.equals("DELETE") : "Kind filter leaked " + r.kind;
+        }
+        System.out.println("Test 1 passed (lookups by path, kind and time range)");
+    }
+
+    // ---------- TEST 2 ----------
+    private static void testKeptCurrentOnAppend(Path meta) throws IOException {
+        MetadataIndex index = MetadataManager.index(meta);
+        Path f = Paths.get("logs", "fresh, \"quoted\".log");
+        Instant before = Instant.now().minusSeconds(1);
+        MetadataManager.append(meta, f, "LOG", "created");
+        MetadataManager.append(meta, f, "DELETE", "deleted");
+        assert index.size() == 50_002 : "Appended rows not indexed: " + index.size();
+        List<MetadataManager.Row> history = index.byPath(f);
+        assert history.size() == 2 : "Expected 2 rows for appended file, got " + history.size();
+        assert history.get(0).path.equals(f.toString()) : "Escaped path not read back: " + history.get(0).path;
+        List<MetadataManager.Row> recent = index.byKindBetween("DELETE", before, Instant.now().plusSeconds(1));
+        assert recent.size() == 1 && recent.get(0).path.equals(f.toString()) : "Recent deletions wrong: " + recent.size();
+        assert MetadataManager.index(meta) == index : "Index not shared";
+        System.out.println("Test 2 passed (index kept current on append)");
+    }
+}
@@ -16,6 +16,7 @@ public class MetadataManagerTest {
             testMoveFileAndAppendMetadata();
             testDeleteFileAndAppendMetadata();
             testArchiveZipCreatesArchiveAndMetadata();
+            testForEachRowParsesEscapedFields();
 
             System.out.println(" All MetadataManager tests finished.");
         } catch (AssertionError e) {
@@ -111,4 +112,22 @@ public class MetadataManagerTest {
 
         System.out.println("Test 5 passed  (archiveZip creates zip + metadata)");
     }
+
+    // ---------- TEST 6 ----------
+    private static void testForEachRowParsesEscapedFields() throws IOException {
+        Path meta = Files.createTempFile("meta_read_", ".csv");
+        Files.writeString(meta, "path,createdUtc,kind,notes\n");
+        Path f = Path.of("dir", "file,with \"quotes\".log");
+        MetadataManager.append(meta, f, "MOVE", "moved from a,b");
+
+        List<MetadataManager.Row> rows = new java.util.ArrayList<>();
+        MetadataManager.forEachRow(meta, rows::add);
+
+        assert rows.size() == 1 : "Header not skipped or row missing";
+        assert rows.get(0).path.equals(f.toString()) : "Path not unescaped: " + rows.get(0).path;
+        assert rows.get(0).kind.equals("MOVE") : "Kind mismatch";
+        assert rows.get(0).notes.equals("moved from a,b") : "Notes not unescaped";
+
+        System.out.println("Test 6 passed  (forEachRow parses escaped fields)");
+    }
 }
@@ -0,0 +1,182 @@
+import med.supply.system.model.*;
+import med.supply.system.repository.Repository;
+import med.supply.system.repository.RepositoryStore;
+import med.supply.system.util.MetadataAppender.Durability;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class OffHeapArenaTest {
+    public static void main(String[] args) {
+        System.out.println("Running OffHeapArena tests...");
+        try {
+            testBlocks();
+            testInventoryOffHeap();
+            testTasksOffHeap();
+            testConcurrentReaders();
+            testStoreRoundTrip();
+            System.out.println(" All OffHeapArena tests finished.");
+        } catch (AssertionError e) {
+            System.err.println("OffHeapArena test failed: " + e.getMessage());
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            System.err.println(" Interrupted during OffHeapArena tests: " + e.getMessage());
+        } catch (IOException e) {
+            System.err.println(" I/O error during OffHeapArena tests: " + e.getMessage());
+        }
+    }
+
+    // ---------- TEST 1 ----------
+    private static void testBlocks() {
+        OffHeapArena arena = new OffHeapArena(4096);
+        long a = arena.allocate(20);
+        assert OffHeapArena.size(a) == 32 : "Block not rounded up to a power of two: " + OffHeapArena.size(a);
+        arena.putInt(a, 28, 7);
+        long b = arena.allocate(4096);
+        assert arena.reservedBytes() == 2 * 4096 : "Full-chunk block should open a new chunk";
+        assert arena.getInt(a, 28) == 7 : "Block overwritten by a later allocation";
+        arena.free(a);
+        long c = arena.allocate(32);
+        assert c == a : "Freed block not reused";
+        assert arena.getInt(c, 28) == 0 : "Reused block not zero-filled";
+        arena.free(b);
+        arena.free(c);
+        assert arena.usedBytes() == 0 : "Used bytes after freeing everything: " + arena.usedBytes();
+        try {
+            arena.allocate(4097);
+            assert false : "Block larger than a chunk accepted";
+        } catch (IllegalArgumentException expected) {
+            // ok
+        }
+        try {
+            new OffHeapArena(5000);
+            assert false : "Chunk size that is not a power of two accepted";
+        } catch (IllegalArgumentException expected) {
+            // ok
+        }
+        System.out.println("Test 1 passed (blocks are sized, reused and zero-filled)");
+    }
+
+    // ---------- TEST 2 ----------
+    private static void testInventoryOffHeap() {
+        OffHeapArena arena = new OffHeapArena(1 << 16);
+        Repository repo = new Repository(8, arena);
+        StorageVehicle v = new StorageVehicle("OH-V1", "Van");
+        v.addItem(new StorageItem("OH-SKU-0", "Item 0", 5));
+        repo.putVehicle(v);
+        assert arena.usedBytes() > 0 : "Inventory not moved into the arena";
+        for (int i = 0; i < 500; i++) {
+            repo.addItemIfVehicleExists("OH-V1", new StorageItem("OH-SKU-" + i, "Item " + i, i));
+        }
+        assert v.getQuantity("OH-SKU-0") == 5 : "Quantity lost in the move: " + v.getQuantity("OH-SKU-0");
+        assert v.getQuantity("OH-SKU-499") == 499 : "Quantity after growth: " + v.getQuantity("OH-SKU-499");
+        assert v.getInventory().size() == 500 : "Inventory size " + v.getInventory().size();
+        assert v.getInventory().get("OH-SKU-42").getQuantity() == 42 : "View lookup";
+
+        repo.putVehicle(new StorageVehicle("OH-V1", "Replacement"));
+        assert v.getQuantity("OH-SKU-499") == 499 : "Replaced vehicle lost its inventory";
+        v.moveInventoryTo(null);
+        assert v.getInventory().size() == 500 : "Inventory lost moving back to the heap";
+        assert arena.usedBytes() == 32 : "Only the replacement's empty table should remain, used " + arena.usedBytes();
+        System.out.println("Test 2 passed (inventories live in the arena and can move back)");
+    }
+
+    // ---------- TEST 3 ----------
+    private static void testTasksOffHeap() {
+        OffHeapArena arena = new OffHeapArena(1 << 16);
+        Repository repo = new Repository(8, arena);
+        repo.putVehicle(new StorageVehicle("OH-V2", "Truck"));
+        boolean added = repo.addTask(new Task("T-2", "Deliver ÄÖÜ swabs", "OH-V2"));
+        assert added : "addTask";
+        boolean addedUnassigned = repo.addTask(new Task("T-1", null, null));
+        assert addedUnassigned : "addTask without assignee";
+
+        Task t = repo.tasks.get("T-2");
+        assert t.description.equals("Deliver ÄÖÜ swabs") && t.assigneeVehicleId.equals("OH-V2") : "Decoded " + t;
+        assert repo.tasks.get("T-1").description == null && repo.tasks.get("T-1").assigneeVehicleId == null : "Nulls";
+        assert repo.tasks.firstKey().equals("T-1") : "Tasks not sorted by id";
+
+        t.status = TaskStatus.DONE;
+        assert repo.tasks.get("T-2").status == TaskStatus.PENDING : "Changing a copy changed the map";
+        repo.updateTaskStatus("T-2", TaskStatus.IN_PROGRESS);
+        assert repo.tasks.get("T-2").status == TaskStatus.IN_PROGRESS : "Status not written through";
+        assert repo.tasksByStatus(TaskStatus.IN_PROGRESS).size() == 1 : "Status index";
+        assert repo.tasksForVehicle("OH-V2").get(0).id.equals("T-2") : "Vehicle index";
+
+        long used = arena.usedBytes();
+        repo.addTask(new Task("T-2", "Deliver ÄÖÜ swabs", "OH-V2"));
+        assert arena.usedBytes() == used : "Replaced task record not freed: " + used + " -> " + arena.usedBytes();
+        Task removed = repo.tasks.remove("T-1");
+        assert removed != null && repo.tasks.size() == 1 : "remove";
+        System.out.println("Test 3 passed (task records live in the arena behind the same map)");
+    }
+
+    // ---------- TEST 4 ----------
+    private static void testConcurrentReaders() throws InterruptedException {
+        OffHeapArena arena = new OffHeapArena(1 << 20);
+        Repository repo = new Repository(8, arena);
+        repo.putVehicle(new StorageVehicle("OH-V3", "Van"));
+        for (int i = 0; i < 50; i++) repo.addTask(new Task("C-" + i, "Task " + i, "OH-V3"));
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        threads.add(new Thread(() -> {
+            for (int round = 0; round < 200; round++) {
+                for (int i = 0; i < 50; i++) {
+                    repo.addTask(new Task("C-" + i, "Task " + i + " round " + round, "OH-V3"));
+                    repo.addItemIfVehicleExists("OH-V3", new StorageItem("OH-C-" + (round * 50 + i), "Item", 1));
+                }
+            }
+        }));
+        for (int r = 0; r < 3; r++) {
+            threads.add(new Thread(() -> {
+                try {
+                    StorageVehicle v = repo.vehicles.get("OH-V3");
+                    for (int round = 0; round < 200; round++) {
+                        for (int i = 0; i < 50; i++) {
+                            Task t = repo.tasks.get("C-" + i);
+                            if (t == null || !(t.description.equals("Task " + i) || t.description.startsWith("Task " + i + " round "))) {
+                                throw new AssertionError("Torn read of C-" + i + ": " + t);
+                            }
+                        }
+                        int q = v.getQuantity("OH-C-0");
+                        if (q != 0 && q != 1) throw new AssertionError("Torn quantity " + q);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        }
+        for (Thread t : threads) t.start();
+        for (Thread t : threads) t.join();
+        assert failure.get() == null : "Reader failed: " + failure.get();
+        assert repo.vehicles.get("OH-V3").getInventory().size() == 10_000 : "Lost inventory lines";
+        System.out.println("Test 4 passed (lock-free readers never see freed or torn records)");
+    }
+
+    // ---------- TEST 5 ----------
+    private static void testStoreRoundTrip() throws IOException {
+        Path dir = Files.createTempDirectory("offheap-store");
+        try (RepositoryStore store = RepositoryStore.open(dir, Durability.PER_BATCH, 0, 1000, new OffHeapArena(1 << 16))) {
+            Repository repo = store.repository();
+            repo.putVehicle(new StorageVehicle("OH-V4", "Van"));
+            repo.addItemIfVehicleExists("OH-V4", new StorageItem("OH-S-1", "Saline", 12));
+            repo.addTask(new Task("R-1", "Restock", "OH-V4"));
+            repo.updateTaskStatus("R-1", TaskStatus.DONE);
+            store.snapshot();
+            repo.addTask(new Task("R-2", "Charge", "OH-V4"));
+        }
+        OffHeapArena arena = new OffHeapArena(1 << 16);
+        try (RepositoryStore store = RepositoryStore.open(dir, Durability.PER_BATCH, 0, 1000, arena)) {
+            Repository repo = store.repository();
+            assert repo.vehicles.get("OH-V4").getQuantity("OH-S-1") == 12 : "Inventory after reopen";
+            assert repo.tasks.get("R-1").status == TaskStatus.DONE : "Task status after reopen";
+            assert repo.tasks.get("R-2").description.equals("Charge") : "Task after reopen";
+            assert arena.usedBytes() > 0 : "Reopened entities not placed in the arena";
+        }
+        System.out.println("Test 5 passed (an off-heap repository persists and recovers like the heap one)");
+    }
+}
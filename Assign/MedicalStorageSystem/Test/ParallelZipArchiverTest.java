@@ -0,0 +1,167 @@
+import med.supply.system.util.ArchiveReader;
+import med.supply.system.util.MetadataManager;
+import med.supply.system.util.ParallelZipArchiver;
+import med.supply.system.util.PathsConfig;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+public class ParallelZipArchiverTest {
+    public static void main(String[] args) {
+        System.out.println("Running ParallelZipArchiver tests...");
+        try {
+            Path src = Files.createTempDirectory("pzip_src_");
+            for (int d = 0; d < 5; d++) {
+                Path dir = Files.createDirectories(src.resolve("vehicles").resolve("Van_" + d));
+                for (int f = 0; f < 8; f++) {
+                    StringBuilder sb = new StringBuilder();
+                    for (int i = 0; i < 2000 * (f + 1); i++) {
+                        sb.append("[VEHICLE:Van_").append(d).append("] reading ").append(i).append('\n');
+                    }
+                    Files.writeString(dir.resolve("2025-01-0" + (f + 1) + ".log"), sb.toString());
+                }
+            }
+            Files.write(src.resolve("empty.log"), new byte[0]);
+
+            testStandardZipWithAllContent(src);
+            testDeterministicAcrossThreadCounts(src);
+            testLevelAndValidation(src);
+            testLargeEntrySpilled();
+            testZip64EntryCount();
+
+            System.out.println(" All ParallelZipArchiver tests finished.");
+        } catch (AssertionError e) {
+            System.err.println("ParallelZipArchiver test failed: " + e.getMessage());
+            e.printStackTrace();
+        } catch (IOException e) {
+            System.err.println(" IOException during ParallelZipArchiver tests: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    // ---------- TEST 1 ----------
+    private static void testStandardZipWithAllContent(Path src) throws IOException {
+        Path zip = Files.createTempDirectory("pzip_out_").resolve("logs.zip");
+        Path meta = Files.createTempFile("meta_pzip_", ".csv");
+        ParallelZipArchiver.Result r = MetadataManager.archiveZipParallel(src, zip, meta, 4, 6);
+        assert r.entries == 41 : "Expected 41 entries, got " + r.entries;
+        assert r.bytesOut < r.bytesIn : "Nothing was compressed: " + r;
+        assert r.mbPerSecond() >= 0 : "Throughput missing";
+
+        List<String> names = new ArrayList<>();
+        try (ZipFile zf = new ZipFile(zip.toFile())) {
+            Enumeration<? extends ZipEntry> en = zf.entries();
+            while (en.hasMoreElements()) {
+                ZipEntry e = en.nextElement();
+                names.add(e.getName());
+                byte[] expected = Files.readAllBytes(src.resolve(e.getName()));
+                try (InputStream in = zf.getInputStream(e)) {
+                    assert Arrays.equals(in.readAllBytes(), expected) : "Content mismatch in " + e.getName();
+                }
+            }
+        }
+        List<String> sorted = new ArrayList<>(names);
+        sorted.sort(null);
+        assert names.equals(sorted) : "Entries not in sorted order";
+        assert names.contains("vehicles/Van_3/2025-01-05.log") : "Entry names not relative with '/'";
+        assert Files.readString(meta).contains("ARCHIVE") : "Metadata missing ARCHIVE entry";
+        System.out.println("Test 1 passed (standard ZIP readable by ZipFile: " + r + ")");
+    }
+
+    // ---------- TEST 2 ----------
+    private static void testDeterministicAcrossThreadCounts(Path src) throws IOException {
+        Path out = Files.createTempDirectory("pzip_det_");
+        new ParallelZipArchiver(1, 6).archive(src, out.resolve("one.zip"));
+        new ParallelZipArchiver(8, 6).archive(src, out.resolve("eight.zip"));
+        assert Arrays.equals(Files.readAllBytes(out.resolve("one.zip")), Files.readAllBytes(out.resolve("eight.zip")))
+                : "Archive bytes depend on thread count";
+        System.out.println("Test 2 passed (byte-identical output for 1 and 8 threads)");
+    }
+
+    // ---------- TEST 3 ----------
+    private static void testLevelAndValidation(Path src) throws IOException {
+        Path out = Files.createTempDirectory("pzip_lvl_");
+        long stored = new ParallelZipArchiver(2, 0).archive(src, out.resolve("l0.zip")).bytesOut;
+        long best = new ParallelZipArchiver(2, 9).archive(src, out.resolve("l9.zip")).bytesOut;
+        assert best < stored : "Level 9 not smaller than level 0";
+        try {
+            new ParallelZipArchiver(0, 6);
+            assert false : "threads=0 accepted";
+        } catch (IllegalArgumentException expected) {
+            // ok
+        }
+        try {
+            new ParallelZipArchiver(2, 10);
+            assert false : "level=10 accepted";
+        } catch (IllegalArgumentException expected) {
+            // ok
+        }
+        System.out.println("Test 3 passed (compression level honoured, arguments validated)");
+    }
+
+    // ---------- TEST 4 ----------
+    private static void testLargeEntrySpilled() throws IOException {
+        Path src = Files.createTempDirectory("pzip_big_");
+        byte[] data = new byte[6_000_000]; // incompressible, so the deflated entry goes to a temp file
+        new Random(7).nextBytes(data);
+        Files.write(src.resolve("big.log"), data);
+        Files.writeString(src.resolve("small.log"), "small\n");
+        Path out = Files.createTempDirectory("pzip_big_out_");
+        new ParallelZipArchiver(2, 6).archive(src, out.resolve("big.zip"));
+        try (ZipFile zf = new ZipFile(out.resolve("big.zip").toFile());
+             InputStream in = zf.getInputStream(zf.getEntry("big.log"))) {
+            assert Arrays.equals(in.readAllBytes(), data) : "Spilled entry content mismatch";
+        }
+        try (Stream<Path> s = Files.list(out)) {
+            long files = s.count();
+            assert files == 1 : "Temp files left next to the archive: " + files;
+        }
+        System.out.println("Test 4 passed (large entry spilled to disk and cleaned up)");
+    }
+
+    // ---------- TEST 5 ----------
+    private static void testZip64EntryCount() throws IOException {
+        Path src = Files.createTempDirectory("pzip_many_");
+        int vans = 100;
+        int days = 656; // 65,600 entries: more than the classic end record can count
+        LocalDate first = LocalDate.of(2020, 1, 1);
+        for (int v = 0; v < vans; v++) {
+            Path dir = Files.createDirectories(src.resolve("vehicles").resolve("Van_" + v));
+            for (int d = 0; d < days; d++) {
+                Files.writeString(dir.resolve(first.plusDays(d) + ".log"), "[VEHICLE:Van_" + v + "] " + d + "\n");
+            }
+        }
+        Path zip = Files.createTempDirectory("pzip_many_out_").resolve("many.zip");
+        ParallelZipArchiver.Result r = new ParallelZipArchiver(4, 1).archive(src, zip);
+        assert r.entries == vans * days : "Archived " + r.entries + " entries";
+        try (ZipFile zf = new ZipFile(zip.toFile())) {
+            assert zf.size() == vans * days : "ZipFile sees " + zf.size() + " entries";
+            ZipEntry e = zf.getEntry("vehicles/Van_99/" + first.plusDays(days - 1) + ".log");
+            try (InputStream in = zf.getInputStream(e)) {
+                assert new String(in.readAllBytes()).equals("[VEHICLE:Van_99] " + (days - 1) + "\n") : "Last entry wrong";
+            }
+        }
+        try (ArchiveReader reader = new ArchiveReader(zip, new PathsConfig())) {
+            assert reader.entries().size() == vans * days : "ArchiveReader sees " + reader.entries().size() + " entries";
+            assert reader.byEquipment("Van_42").size() == days : "Van_42 has " + reader.byEquipment("Van_42").size();
+        }
+        try (Stream<Path> s = Files.walk(src)) {
+            for (Path p : (Iterable<Path>) s.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(p);
+            }
+        }
+        Files.delete(zip);
+        System.out.println("Test 5 passed (ZIP64 end record beyond 65,535 entries)");
+    }
+}
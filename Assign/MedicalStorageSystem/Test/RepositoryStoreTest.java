@@ -0,0 +1,311 @@
+import med.supply.system.model.*;
+import med.supply.system.repository.Repository;
+import med.supply.system.repository.RepositoryStore;
+import med.supply.system.util.MetadataAppender.Durability;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class RepositoryStoreTest {
+    public static void main(String[] args) {
+        System.out.println("Running RepositoryStore tests...");
+        try {
+            testReopenAfterClose();
+            testCrashReplaysJournal();
+            testTornRecordDropped();
+            testSnapshotsUnderLoad();
+            testCorruptSnapshotRejected();
+            testSnapshotReadLazily();
+            testRejectedChangeNotJournaled();
+            System.out.println(" All RepositoryStore tests finished.");
+        } catch (AssertionError e) {
+            System.err.println("RepositoryStore test failed: " + e.getMessage());
+            e.printStackTrace();
+        } catch (IOException | InterruptedException e) {
+            System.err.println(" Exception during RepositoryStore tests: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    // ---------- TEST 1 ----------
+    private static void testReopenAfterClose() throws IOException {
+        Path dir = Files.createTempDirectory("repo_state_");
+        String before;
+        try (RepositoryStore store = RepositoryStore.open(dir, Durability.NONE, 0, 1000)) {
+            populate(store.repository());
+            before = dump(store.repository());
+        }
+        try (RepositoryStore store = RepositoryStore.open(dir, Durability.NONE, 0, 1000)) {
+            Repository repo = store.repository();
+            assert store.replayedRecords() == 0 : "Clean close should leave nothing to replay";
+            assert dump(repo).equals(before) : "State after reopen:\n" + dump(repo) + "\nexpected:\n" + before;
+            assert repo.vehiclesAtStation("S1").size() == 1 : "Station index not rebuilt";
+            assert repo.tasksByStatus(TaskStatus.DONE).size() == 1 : "Status index not rebuilt";
+        }
+        System.out.println("Test 1 passed (state survives close and reopen)");
+    }
+
+    // ---------- TEST 2 ----------
+    private static void testCrashReplaysJournal() throws IOException {
+        Path dir = Files.createTempDirectory("repo_state_");
+        try (RepositoryStore store = RepositoryStore.open(dir, Durability.PER_BATCH, 0, 1000)) {
+            populate(store.repository());
+            String before = dump(store.repository());
+            Path crashed = crashImage(dir);
+            try (RepositoryStore recovered = RepositoryStore.open(crashed, Durability.NONE, 0, 1000)) {
+                assert recovered.replayedRecords() == store.journalRecords()
+                        : "Replayed " + recovered.replayedRecords() + " of " + store.journalRecords();
+                assert dump(recovered.repository()).equals(before) : "State after crash differs";
+            }
+        }
+        System.out.println("Test 2 passed (journal replayed after a crash without snapshot)");
+    }
+
+    // ---------- TEST 3 ----------
+    private static void testTornRecordDropped() throws IOException {
+        Path dir = Files.createTempDirectory("repo_state_");
+        Path crashed;
+        try (RepositoryStore store = RepositoryStore.open(dir, Durability.NONE, 0, 1000)) {
+            Repository repo = store.repository();
+            repo.addVehicleIfAbsent(new StorageVehicle("V1", "Van_One"));
+            repo.addItemIfVehicleExists("V1", new StorageItem("SKU-1", "Gauze", 5));
+            repo.addItemIfVehicleExists("V1", new StorageItem("SKU-1", "Gauze", 7));
+            crashed = crashImage(dir);
+        }
+        Path wal;
+        try (Stream<Path> s = Files.list(crashed)) {
+            wal = s.filter(p -> p.getFileName().toString().startsWith("wal-")).findFirst().orElseThrow();
+        }
+        try (FileChannel ch = FileChannel.open(wal, StandardOpenOption.WRITE)) {
+            ch.truncate(ch.size() - 3); // last record cut short
+        }
+        try (RepositoryStore store = RepositoryStore.open(crashed, Durability.NONE, 0, 1000)) {
+            Repository repo = store.repository();
+            assert store.replayedRecords() == 2 : "Expected 2 intact records, got " + store.replayedRecords();
+            assert repo.vehicles.get("V1").getInventory().get("SKU-1").getQuantity() == 5 : "Torn item applied";
+            // the journal must accept new records after the truncated tail
+            repo.addItemIfVehicleExists("V1", new StorageItem("SKU-2", "Mask", 1));
+            Path again = crashImage(crashed);
+            try (RepositoryStore reopened = RepositoryStore.open(again, Durability.NONE, 0, 1000)) {
+                assert reopened.repository().vehicles.get("V1").getInventory().containsKey("SKU-2")
+                        : "Record after truncation lost";
+            }
+        }
+        System.out.println("Test 3 passed (torn tail record dropped, journal continues)");
+    }
+
+    // ---------- TEST 4 ----------
+    private static void testSnapshotsUnderLoad() throws IOException, InterruptedException {
+        Path dir = Files.createTempDirectory("repo_state_");
+        int threads = 4;
+        int perThread = 1500;
+        try (RepositoryStore store = RepositoryStore.open(dir, Durability.PERIODIC, 20, 500)) {
+            Repository repo = store.repository();
+            for (int v = 0; v < threads; v++) repo.addVehicleIfAbsent(new StorageVehicle("V" + v, "Van_" + v));
+            List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                String id = "V" + t;
+                Thread w = new Thread(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        repo.addItemIfVehicleExists(id, new StorageItem("SKU-" + (i % 10), "Gauze", 1));
+                    }
+                });
+                workers.add(w);
+                w.start();
+            }
+            for (int i = 0; i < 5; i++) store.snapshot();
+            for (Thread w : workers) w.join();
+            store.sync();
+
+            long segments;
+            try (Stream<Path> s = Files.list(dir)) {
+                segments = s.filter(p -> p.getFileName().toString().startsWith("wal-")).count();
+            }
+            store.snapshot();
+            try (Stream<Path> s = Files.list(dir)) {
+                assert s.filter(p -> p.getFileName().toString().startsWith("wal-")).count() == 1
+                        : "Old journal segments not deleted (had " + segments + ")";
+            }
+            repo.addItemIfVehicleExists("V0", new StorageItem("SKU-0", "Gauze", 1));
+            Path crashed = crashImage(dir);
+            try (RepositoryStore recovered = RepositoryStore.open(crashed, Durability.NONE, 0, 500)) {
+                long total = 0;
+                for (StorageVehicle v : recovered.repository().vehicles.values()) {
+                    for (StorageItem it : v.getInventory().values()) total += it.getQuantity();
+                }
+                assert total == (long) threads * perThread + 1 : "Lost or doubled items: " + total;
+                assert recovered.replayedRecords() == 1 : "Only the tail should replay: " + recovered.replayedRecords();
+            }
+        }
+        System.out.println("Test 4 passed (snapshots taken under concurrent writes lose nothing)");
+    }
+
+    // ---------- TEST 5 ----------
+    private static void testCorruptSnapshotRejected() throws IOException {
+        Path dir = Files.createTempDirectory("repo_state_");
+        try (RepositoryStore store = RepositoryStore.open(dir, Durability.NONE, 0, 1000)) {
+            populate(store.repository());
+        }
+        Path snapshot = snapshotOf(dir);
+        byte[] good = Files.readAllBytes(snapshot);
+
+        // header damage: the open fails
+        byte[] image = good.clone();
+        image[5] ^= 0x40;
+        Files.write(snapshot, image);
+        boolean rejected = false;
+        try (RepositoryStore store = RepositoryStore.open(dir, Durability.NONE, 0, 1000)) {
+            store.repository();
+        } catch (IOException e) {
+            rejected = e.getMessage().contains("snapshot");
+        }
+        assert rejected : "Snapshot with damaged header was opened";
+
+        // record damage: found when the record is first read
+        image = good.clone();
+        image[image.length - 3] ^= 0x40; // inside the last task record
+        Files.write(snapshot, image);
+        rejected = false;
+        try (RepositoryStore store = RepositoryStore.open(dir, Durability.NONE, 0, 1000)) {
+            store.repository().tasks.get("T2");
+        } catch (UncheckedIOException e) {
+            rejected = e.getMessage().contains("snapshot");
+        }
+        assert rejected : "Damaged snapshot record was loaded";
+        System.out.println("Test 5 passed (damaged snapshot is rejected)");
+    }
+
+    // ---------- TEST 6 ----------
+    private static void testSnapshotReadLazily() throws IOException {
+        Path dir = Files.createTempDirectory("repo_state_");
+        int fleet = 5000;
+        try (RepositoryStore store = RepositoryStore.open(dir, Durability.NONE, 0, 100_000)) {
+            Repository repo = store.repository();
+            repo.addStationIfAbsent(new ChargingStation("S1", "Station_One"));
+            for (int i = 0; i < fleet; i++) {
+                String id = String.format("V%05d", i);
+                repo.addVehicleIfAbsent(new StorageVehicle(id, "Van_" + i));
+                repo.addItemIfVehicleExists(id, new StorageItem("SKU-" + (i % 7), "Gauze", i));
+                repo.addTask(new Task(String.format("T%05d", i), "job " + i, id));
+            }
+            repo.assignStation("V00042", "S1");
+        }
+        try (RepositoryStore store = RepositoryStore.open(dir, Durability.NONE, 0, 100_000)) {
+            Repository repo = store.repository();
+            assert store.unloadedEntities() == 2 * fleet + 1 : "Snapshot decoded at startup: " + store.unloadedEntities();
+            assert repo.vehicles.size() == fleet && repo.tasks.size() == fleet : "Sizes need no decoding";
+            assert store.unloadedEntities() == 2 * fleet + 1 : "size() decoded entities";
+
+            assert repo.vehicles.get("V01234").getInventory().get("SKU-2").getQuantity() == 1234 : "Lazy vehicle";
+            assert repo.vehicles.get("V99999") == null && !repo.vehicles.containsKey("nope") : "Unknown id found";
+            repo.addItemIfVehicleExists("V00007", new StorageItem("SKU-0", "Gauze", 1));
+            assert store.unloadedEntities() == 2 * fleet - 1 : "Only used entities decoded: " + store.unloadedEntities();
+
+            // a snapshot now copies the untouched records without decoding them
+            boolean written = store.snapshot();
+            assert written : "Snapshot skipped";
+            assert store.unloadedEntities() == 2 * fleet - 1 : "Snapshot decoded untouched records";
+
+            assert repo.vehiclesAtStation("S1").size() == 1 : "Station index over lazy vehicles";
+            assert repo.countTasks(TaskStatus.PENDING) == fleet : "Status index over lazy tasks";
+            assert repo.tasks.firstKey().equals("T00000") : "Navigation over lazy tasks";
+        }
+        try (RepositoryStore store = RepositoryStore.open(dir, Durability.NONE, 0, 100_000)) {
+            Repository repo = store.repository();
+            assert repo.vehicles.get("V00007").getInventory().get("SKU-0").getQuantity() == 8 : "Change lost";
+            assert repo.vehicles.get("V00042").getAssignedStationId().equals("S1") : "Copied record changed";
+            long total = 0;
+            for (StorageVehicle v : repo.vehicles.values()) {
+                for (StorageItem it : v.getInventory().values()) total += it.getQuantity();
+            }
+            assert total == (long) fleet * (fleet - 1) / 2 + 1 : "Inventory total " + total;
+            assert store.unloadedEntities() == fleet + 1 : "Iteration should decode the vehicles only";
+        }
+        System.out.println("Test 6 passed (snapshot mapped and decoded lazily, untouched records copied)");
+    }
+
+    // ---------- helpers ----------
+    // ---------- TEST 7 ----------
+    private static void testRejectedChangeNotJournaled() throws IOException {
+        Path dir = Files.createTempDirectory("repo_state_");
+        try (RepositoryStore store = RepositoryStore.open(dir, Durability.PER_BATCH, 0, 1000)) {
+            Repository repo = store.repository();
+            repo.addVehicleIfAbsent(new StorageVehicle("V1", "Van_One"));
+            repo.addItemIfVehicleExists("V1", new StorageItem("SKU-MAX", "Saline", Integer.MAX_VALUE));
+            long records = store.journalRecords();
+            try {
+                repo.addItemIfVehicleExists("V1", new StorageItem("SKU-MAX", "Saline", 1));
+                assert false : "Overflowing add accepted";
+            } catch (IllegalArgumentException expected) {
+                // ok
+            }
+            assert store.journalRecords() == records : "Rejected change was journaled";
+            Path crashed = crashImage(dir);
+            try (RepositoryStore recovered = RepositoryStore.open(crashed, Durability.NONE, 0, 1000)) {
+                assert recovered.repository().vehicles.get("V1").getQuantity("SKU-MAX") == Integer.MAX_VALUE
+                        : "Quantity after recovery";
+            }
+        }
+        System.out.println("Test 7 passed (a rejected change never reaches the journal)");
+    }
+
+    private static void populate(Repository repo) {
+        repo.putStation(new ChargingStation("S1", "Station_One"));
+        repo.addStationIfAbsent(new ChargingStation("S2", "Station_Two"));
+        repo.setStationLoad("S2", 40);
+        StorageVehicle v = new StorageVehicle("V1", "Van_One");
+        v.setBatteryLevelPct(80);
+        v.addItem(new StorageItem("SKU-9", "Bandage", 2));
+        repo.putVehicle(v);
+        repo.addVehicleIfAbsent(new StorageVehicle("V2", "Van_Two"));
+        repo.addItemIfVehicleExists("V1", new StorageItem("SKU-1", "Gauze", 10));
+        repo.addItemIfVehicleExists("V1", new StorageItem("SKU-1", "Gauze", 5));
+        repo.addItemIfVehicleExists("V2", new StorageItem("SKU-2", "Mask", 3));
+        repo.transferAll(List.of(new InventoryTransfer("V1", "V2", "SKU-1", 6),
+                new InventoryTransfer("V2", "V1", "SKU-2", 1)));
+        repo.addItemsIfVehicleExists("V2", List.of(new StorageItem("SKU-3", "Tape", 4),
+                new StorageItem("SKU-2", "Mask", 2)));
+        repo.assignStation("V1", "S1");
+        repo.assignStation("V2", "S2");
+        repo.assignStation("V2", null);
+        repo.addTask(new Task("T1", "Deliver", "V1"));
+        repo.addTask(new Task("T2", "Restock", null));
+        repo.updateTaskStatus("T1", TaskStatus.DONE);
+        repo.updateTaskStatus("T2", TaskStatus.IN_PROGRESS);
+    }
+
+    /** Everything in the repository as sorted text, for comparison. */
+    private static String dump(Repository repo) {
+        StringBuilder sb = new StringBuilder();
+        for (StorageVehicle v : new TreeMap<>(repo.vehicles).values()) {
+            sb.append(v).append(new TreeMap<>(v.getInventory().entrySet().stream()
+                    .collect(Collectors.toMap(e -> e.getKey(), e -> e.getValue().toString())))).append('\n');
+        }
+        for (ChargingStation s : new TreeMap<>(repo.stations).values()) sb.append(s).append('\n');
+        for (Task t : repo.tasks.values()) sb.append(t).append('\n');
+        return sb.toString();
+    }
+
+    private static Path snapshotOf(Path dir) throws IOException {
+        try (Stream<Path> s = Files.list(dir)) {
+            return s.filter(p -> p.getFileName().toString().startsWith(RepositoryStore.SNAPSHOT_PREFIX))
+                    .max(Path::compareTo).orElseThrow();
+        }
+    }
+
+    /** A copy of the state directory as a crash would leave it: no final snapshot. */
+    private static Path crashImage(Path dir) throws IOException {
+        Path copy = Files.createTempDirectory("repo_crash_");
+        try (Stream<Path> s = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) s::iterator) Files.copy(p, copy.resolve(p.getFileName()));
+        }
+        return copy;
+    }
+}
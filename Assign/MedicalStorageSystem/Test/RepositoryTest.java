@@ -0,0 +1,290 @@
+import med.supply.system.model.*;
+import med.supply.system.repository.Repository;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+public class RepositoryTest {
+    public static void main(String[] args) {
+        System.out.println("Running Repository tests...");
+        try {
+            testConcurrentItemAdds();
+            testAtomicOperationsOnMissingEntities();
+            testStripedLocks();
+            testTaskIndexes();
+            testStationIndex();
+            testTransfers();
+            testConcurrentTransfers();
+            testConcurrentStationIndex();
+            System.out.println(" All Repository tests finished.");
+        } catch (AssertionError e) {
+            System.err.println("Repository test failed: " + e.getMessage());
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            System.err.println(" Interrupted during Repository tests: " + e.getMessage());
+        }
+    }
+
+    // ---------- TEST 1 ----------
+    private static void testConcurrentItemAdds() throws InterruptedException {
+        Repository repo = new Repository();
+        for (int v = 0; v < 4; v++) {
+            repo.addVehicleIfAbsent(new StorageVehicle("V" + v, "Van_" + v));
+        }
+        int threads = 8;
+        int perThread = 2000;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            Thread w = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    repo.addItemIfVehicleExists("V" + (i % 4), new StorageItem("SKU-" + (i % 3), "Gauze", 1));
+                }
+            }, "repo-test-" + id);
+            workers.add(w);
+            w.start();
+        }
+        start.countDown();
+        for (Thread w : workers) w.join();
+
+        long total = 0;
+        for (StorageVehicle v : repo.vehicles.values()) {
+            for (StorageItem it : v.getInventory().values()) total += it.getQuantity();
+        }
+        assert total == (long) threads * perThread : "Lost updates: " + total;
+        System.out.println("Test 1 passed (" + threads + " threads adding items lose no quantity)");
+    }
+
+    // ---------- TEST 2 ----------
+    private static void testAtomicOperationsOnMissingEntities() {
+        Repository repo = new Repository();
+        StorageVehicle addedTo = repo.addItemIfVehicleExists("nope", new StorageItem("S", "X", 1));
+        assert addedTo == null : "Item added to missing vehicle";
+        ChargingStation loaded = repo.setStationLoad("nope", 5);
+        assert loaded == null : "Missing station updated";
+        boolean orphanAdded = repo.addTask(new Task("T1", "Deliver", "nope"));
+        assert !orphanAdded : "Task with missing assignee stored";
+        assert repo.tasks.isEmpty() : "Rejected task left in repository";
+
+        StorageVehicle v = new StorageVehicle("V1", "Van_One");
+        boolean first = repo.addVehicleIfAbsent(v);
+        assert first : "First add rejected";
+        boolean duplicate = repo.addVehicleIfAbsent(new StorageVehicle("V1", "Van_Other"));
+        assert !duplicate : "Duplicate vehicle added";
+        assert repo.vehicles.get("V1") == v : "Duplicate replaced original";
+        boolean assigned = repo.addTask(new Task("T2", "Deliver", "V1"));
+        boolean unassigned = repo.addTask(new Task("T1", "Restock", null));
+        assert assigned && unassigned : "Valid tasks rejected";
+        assert repo.tasks.firstKey().equals("T1") : "Tasks not ordered by id";
+        System.out.println("Test 2 passed (compound operations check and act atomically)");
+    }
+
+    // ---------- TEST 3 ----------
+    private static void testStripedLocks() {
+        Repository repo = new Repository(5);
+        assert repo.vehicleLock("V1") == repo.vehicleLock("V1") : "Same vehicle, different locks";
+        Set<Object> distinct = new HashSet<>();
+        for (int i = 0; i < 100; i++) distinct.add(repo.vehicleLock("V" + i));
+        assert distinct.size() == 8 : "Expected 8 stripes (5 rounded up), got " + distinct.size();
+        repo.addVehicleIfAbsent(new StorageVehicle("V1", "Van_One"));
+        Boolean held = repo.withVehicle("V1", v -> repo.vehicleLock("V1").isHeldByCurrentThread());
+        assert held : "withVehicle does not hold the vehicle lock";
+        System.out.println("Test 3 passed (striped vehicle locks)");
+    }
+
+    // ---------- TEST 4 ----------
+    private static void testTaskIndexes() throws InterruptedException {
+        Repository repo = new Repository();
+        repo.addVehicleIfAbsent(new StorageVehicle("V1", "Van_One"));
+        repo.addVehicleIfAbsent(new StorageVehicle("V2", "Van_Two"));
+        for (int i = 0; i < 300; i++) {
+            repo.addTask(new Task(String.format("T%03d", i), "job " + i, i % 3 == 0 ? null : "V" + (1 + i % 2)));
+        }
+        assert repo.tasksByStatus(TaskStatus.PENDING).size() == 300 : "All new tasks should be pending";
+        assert repo.tasksForVehicle("V1").size() == 100 : "V1 tasks: " + repo.tasksForVehicle("V1").size();
+        assert repo.tasksForVehicle("nope").isEmpty() : "Unknown vehicle has tasks";
+
+        // many threads moving the same tasks between statuses
+        List<Thread> workers = new ArrayList<>();
+        for (int w = 0; w < 6; w++) {
+            int seed = w;
+            Thread t = new Thread(() -> {
+                TaskStatus[] all = TaskStatus.values();
+                for (int i = 0; i < 3000; i++) {
+                    repo.updateTaskStatus(String.format("T%03d", (i * 7 + seed) % 300), all[(i + seed) % all.length]);
+                }
+            });
+            workers.add(t);
+            t.start();
+        }
+        for (Thread t : workers) t.join();
+        int sum = 0;
+        for (TaskStatus s : TaskStatus.values()) {
+            List<Task> l = repo.tasksByStatus(s);
+            assert l.size() == repo.countTasks(s) : "Index count and lookup disagree for " + s;
+            for (Task t : l) assert t.status == s : "Task " + t.id + " indexed under wrong status";
+            sum += l.size();
+        }
+        assert sum == 300 : "Tasks lost or duplicated across status indexes: " + sum;
+
+        Task done = repo.updateTaskStatus("T001", TaskStatus.DONE);
+        assert done != null : "Existing task not updated";
+        repo.addTask(new Task("T001", "replaced", "V2"));
+        assert repo.tasksForVehicle("V2").stream().anyMatch(t -> t.id.equals("T001")) : "Replacement not indexed";
+        assert repo.tasksForVehicle("V1").stream().noneMatch(t -> t.id.equals("T001")) : "Replaced task still indexed";
+        assert repo.tasksByStatus(TaskStatus.PENDING).stream().anyMatch(t -> t.id.equals("T001")) : "Status of replacement";
+        Task missing = repo.updateTaskStatus("missing", TaskStatus.DONE);
+        assert missing == null : "Missing task updated";
+        System.out.println("Test 4 passed (task indexes by status and vehicle stay consistent)");
+    }
+
+    // ---------- TEST 5 ----------
+    private static void testStationIndex() {
+        Repository repo = new Repository();
+        repo.addStationIfAbsent(new ChargingStation("S1", "Station_One"));
+        repo.addStationIfAbsent(new ChargingStation("S2", "Station_Two"));
+        for (int i = 0; i < 10; i++) repo.addVehicleIfAbsent(new StorageVehicle("V" + i, "Van_" + i));
+        for (int i = 0; i < 10; i++) {
+            boolean assigned = repo.assignStation("V" + i, i < 6 ? "S1" : "S2");
+            assert assigned : "Assignment of V" + i + " rejected";
+        }
+        assert repo.vehiclesAtStation("S1").size() == 6 && repo.vehiclesAtStation("S2").size() == 4 : "Station index";
+
+        boolean moved = repo.assignStation("V0", "S2");
+        boolean unassigned = repo.assignStation("V1", null);
+        assert moved && unassigned : "Reassignment rejected";
+        assert repo.vehiclesAtStation("S1").size() == 4 : "Moved vehicles still at S1";
+        assert repo.vehiclesAtStation("S2").size() == 5 : "Moved vehicle missing at S2";
+        assert repo.vehicles.get("V1").getAssignedStationId() == null : "Unassign failed";
+        boolean toMissingStation = repo.assignStation("V2", "S9");
+        assert !toMissingStation : "Assigned to missing station";
+        boolean missingVehicle = repo.assignStation("V99", "S1");
+        assert !missingVehicle : "Assigned missing vehicle";
+
+        StorageVehicle replacement = new StorageVehicle("V3", "Van_3b");
+        repo.putVehicle(replacement);
+        assert repo.vehiclesAtStation("S1").stream().noneMatch(v -> v.getId().equals("V3")) : "Replaced vehicle indexed";
+        System.out.println("Test 5 passed (vehicles by station follow assignments)");
+    }
+
+    // ---------- TEST 6 ----------
+    private static void testTransfers() {
+        Repository repo = new Repository();
+        for (int i = 0; i < 3; i++) repo.addVehicleIfAbsent(new StorageVehicle("T" + i, "Van_" + i));
+        repo.addItemIfVehicleExists("T0", new StorageItem("TR-A", "Swabs", 10));
+        boolean moved = repo.transfer("T0", "T1", "TR-A", 4);
+        assert moved : "Transfer failed";
+        assert repo.vehicles.get("T0").getQuantity("TR-A") == 6 && repo.vehicles.get("T1").getQuantity("TR-A") == 4
+                : "Quantities after transfer";
+        boolean beyondStock = repo.transfer("T0", "T1", "TR-A", 7);
+        assert !beyondStock : "Transfer beyond stock allowed";
+        boolean toMissing = repo.transfer("T0", "T9", "TR-A", 1);
+        assert !toMissing : "Transfer to missing vehicle allowed";
+        assert repo.vehicles.get("T0").getQuantity("TR-A") == 6 : "Failed transfer changed the source";
+
+        // a later transfer may use stock an earlier one delivered; one failure undoes the batch
+        List<InventoryTransfer> chain = List.of(
+                new InventoryTransfer("T1", "T2", "TR-A", 4),
+                new InventoryTransfer("T2", "T0", "TR-A", 3));
+        int chainFailure = repo.transferAll(chain);
+        assert chainFailure == -1 : "Chained batch failed";
+        List<InventoryTransfer> bad = List.of(
+                new InventoryTransfer("T0", "T1", "TR-A", 5),
+                new InventoryTransfer("T2", "T1", "TR-A", 2));
+        int badFailure = repo.transferAll(bad);
+        assert badFailure == 1 : "Failing transfer not reported";
+        assert repo.vehicles.get("T0").getQuantity("TR-A") == 9 && repo.vehicles.get("T1").getQuantity("TR-A") == 0
+                && repo.vehicles.get("T2").getQuantity("TR-A") == 1 : "Failed batch partly applied";
+        System.out.println("Test 6 passed (transfers and batches apply entirely or not at all)");
+    }
+
+    // ---------- TEST 7 ----------
+    private static void testConcurrentTransfers() throws InterruptedException {
+        Repository repo = new Repository(8);
+        int fleet = 16;
+        for (int i = 0; i < fleet; i++) {
+            repo.addVehicleIfAbsent(new StorageVehicle("R" + i, "Van_" + i));
+            repo.addItemIfVehicleExists("R" + i, new StorageItem("TR-B", "Masks", 100));
+        }
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int seed = t;
+            Thread w = new Thread(() -> {
+                java.util.Random rnd = new java.util.Random(seed);
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 2000; i++) {
+                    int a = rnd.nextInt(fleet);
+                    int b = (a + 1 + rnd.nextInt(fleet - 1)) % fleet;
+                    if (i % 4 == 0) {
+                        // opposite directions in one batch: lock order must not depend on it
+                        repo.transferAll(List.of(new InventoryTransfer("R" + a, "R" + b, "TR-B", 1 + rnd.nextInt(5)),
+                                new InventoryTransfer("R" + b, "R" + a, "TR-B", 1 + rnd.nextInt(5))));
+                    } else {
+                        repo.transfer("R" + a, "R" + b, "TR-B", 1 + rnd.nextInt(20));
+                    }
+                }
+            });
+            workers.add(w);
+            w.start();
+        }
+        start.countDown();
+        for (Thread w : workers) w.join(30_000);
+        for (Thread w : workers) assert !w.isAlive() : "Transfers deadlocked";
+        int total = 0;
+        for (int i = 0; i < fleet; i++) {
+            int q = repo.vehicles.get("R" + i).getQuantity("TR-B");
+            assert q >= 0 : "Negative stock on R" + i;
+            total += q;
+        }
+        assert total == 100 * fleet : "Stock not conserved: " + total;
+        System.out.println("Test 7 passed (" + threads + " threads of transfers conserve stock without deadlock)");
+    }
+
+    // ---------- TEST 8 ----------
+    private static void testConcurrentStationIndex() throws InterruptedException {
+        Repository repo = new Repository(8);
+        repo.addStationIfAbsent(new ChargingStation("S1", "Station_One"));
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String id = "H" + t;
+            repo.addVehicleIfAbsent(new StorageVehicle(id, "Van_" + id));
+            Thread w = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                // emptying the station's set must not lose another vehicle's concurrent assignment
+                for (int i = 0; i < 5000; i++) {
+                    repo.assignStation(id, "S1");
+                    repo.assignStation(id, null);
+                }
+                repo.assignStation(id, "S1");
+            });
+            workers.add(w);
+            w.start();
+        }
+        start.countDown();
+        for (Thread w : workers) w.join();
+        assert repo.vehiclesAtStation("S1").size() == threads
+                : "Station index lost assignments: " + repo.vehiclesAtStation("S1").size();
+        System.out.println("Test 8 passed (concurrent assignments keep the station index complete)");
+    }
+}
@@ -0,0 +1,68 @@
+import med.supply.system.model.SkuDictionary;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class SkuDictionaryTest {
+    public static void main(String[] args) {
+        System.out.println("Running SkuDictionary tests...");
+        try {
+            testIdsAndNames();
+            testConcurrentRegistration();
+            System.out.println(" All SkuDictionary tests finished.");
+        } catch (AssertionError e) {
+            System.err.println("SkuDictionary test failed: " + e.getMessage());
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            System.err.println(" Interrupted during SkuDictionary tests: " + e.getMessage());
+        }
+    }
+
+    // ---------- TEST 1 ----------
+    private static void testIdsAndNames() {
+        SkuDictionary dict = SkuDictionary.shared();
+        int id = dict.idOf("DICT-GLOVE", "Gloves");
+        int again = dict.idOf("DICT-GLOVE", "Other name");
+        assert again == id : "Same SKU, different id";
+        assert dict.name(id).equals("Gloves") : "First name should be kept, got " + dict.name(id);
+        assert dict.sku(id).equals("DICT-GLOVE");
+        assert dict.find("DICT-GLOVE") == id && dict.find("DICT-NONE") == -1 : "find";
+        try {
+            dict.name(Integer.MAX_VALUE);
+            assert false : "Unknown id accepted";
+        } catch (IllegalArgumentException expected) {
+            // ok
+        }
+        System.out.println("Test 1 passed (one id and one name per SKU)");
+    }
+
+    // ---------- TEST 2 ----------
+    private static void testConcurrentRegistration() throws InterruptedException {
+        SkuDictionary dict = SkuDictionary.shared();
+        Set<String> seen = ConcurrentHashMap.newKeySet();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread w = new Thread(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    int id = dict.idOf("DICT-C" + i, "Item " + i);
+                    seen.add(id + "=" + dict.sku(id));
+                }
+            });
+            workers.add(w);
+            w.start();
+        }
+        for (Thread w : workers) w.join();
+        Set<Integer> ids = new HashSet<>();
+        for (int i = 0; i < 2000; i++) {
+            int id = dict.find("DICT-C" + i);
+            boolean unique = ids.add(id);
+            assert id >= 0 && unique : "Ids not unique for DICT-C" + i;
+            assert dict.sku(id).equals("DICT-C" + i) && dict.name(id).equals("Item " + i) : "Slot mismatch for " + id;
+        }
+        assert seen.size() == 2000 : "Threads saw different ids for one SKU: " + seen.size();
+        System.out.println("Test 2 passed (concurrent registration gives one stable id per SKU)");
+    }
+}
@@ -1,5 +1,9 @@
 import med.supply.system.model.StorageItem;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class StorageItemTest {
     public static void main(String[] args) {
         System.out.println("Running StorageItem tests...");
@@ -10,11 +14,15 @@ public class StorageItemTest {
             testSetQuantityUpdates();
             testSetQuantityThrowsForNegative();
             testConstructorThrowsForInvalidInputs();
+            testAtomicOperations();
+            testConcurrentAdjustments();
 
             System.out.println("All StorageItem tests finished.");
         } catch (AssertionError e) {
             System.err.println("StorageItem test failed: " + e.getMessage());
             e.printStackTrace();
+        } catch (InterruptedException e) {
+            System.err.println(" Interrupted during StorageItem tests: " + e.getMessage());
         }
     }
 
@@ -86,5 +94,57 @@ public class StorageItemTest {
             System.out.println("Test 5 passed (constructor throws for invalid inputs)");
         }
     }
+
+    // ---------- TEST 6 ----------
+    private static void testAtomicOperations() {
+        StorageItem item = new StorageItem("SKU007", "Gauze", 5);
+        int increased = item.increaseQuantity(3);
+        assert increased == 8 : "increaseQuantity result";
+        boolean emptied = item.decreaseQuantityIfSufficient(8);
+        assert emptied && item.getQuantity() == 0 : "decrease to zero";
+        boolean belowZero = item.decreaseQuantityIfSufficient(1);
+        assert !belowZero && item.getQuantity() == 0 : "Decrease below zero allowed";
+        boolean stale = item.compareAndSetQuantity(4, 9);
+        assert !stale && item.getQuantity() == 0 : "CAS with stale value succeeded";
+        boolean current = item.compareAndSetQuantity(0, 9);
+        assert current && item.getQuantity() == 9 : "CAS with current value failed";
+        item.setQuantity(Integer.MAX_VALUE);
+        try {
+            item.increaseQuantity(1);
+            assert false : "Overflow not detected";
+        } catch (IllegalArgumentException expected) {
+            assert item.getQuantity() == Integer.MAX_VALUE : "Quantity changed by a failed increase";
+        }
+        try {
+            item.compareAndSetQuantity(Integer.MAX_VALUE, -1);
+            assert false : "Negative CAS target accepted";
+        } catch (IllegalArgumentException expected) {
+            // ok
+        }
+        System.out.println("Test 6 passed (increase, decrease-if-sufficient and CAS)");
+    }
+
+    // ---------- TEST 7 ----------
+    private static void testConcurrentAdjustments() throws InterruptedException {
+        StorageItem item = new StorageItem("SKU008", "Masks", 0);
+        AtomicInteger taken = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 20_000; i++) item.increaseQuantity(1);
+            }));
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 30_000; i++) {
+                    if (item.decreaseQuantityIfSufficient(1)) taken.incrementAndGet();
+                    if (item.getQuantity() < 0) throw new AssertionError("Quantity went negative");
+                }
+            }));
+        }
+        for (Thread t : threads) t.start();
+        for (Thread t : threads) t.join();
+        assert item.getQuantity() + taken.get() == 80_000
+                : "Lost updates: " + item.getQuantity() + " left + " + taken.get() + " taken != 80000";
+        System.out.println("Test 7 passed (concurrent adjustments lose nothing and never go negative)");
+    }
 }
  
\ No newline at end of file
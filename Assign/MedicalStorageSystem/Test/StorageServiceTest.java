@@ -6,6 +6,7 @@ import med.supply.system.util.*;
 import java.io.IOException;
 import java.nio.file.*;
 import java.time.LocalDate;
+import java.util.List;
 
 public class StorageServiceTest {
 
@@ -24,6 +25,8 @@ public class StorageServiceTest {
             testUpdateChargingLoad(service, repo, cfg);
             testAddItemToVehicle(service, repo, cfg);   // <-- fixed here
             testInvalidNameThrows(service);
+            testTransferItems(service, repo, cfg);
+            testBulkAddItems(service, repo, cfg);
 
             System.out.println("All StorageService tests finished.");
         } catch (Exception e) {
@@ -105,8 +108,87 @@ public class StorageServiceTest {
             StorageVehicle invalid = new StorageVehicle("V003", "###Invalid###");
             service.addVehicle(invalid);
             assert false : "Expected IllegalArgumentException not thrown for invalid name";
+        } catch (IllegalArgumentException | IOException e) {
+            // expected
+        }
+        try {
+            service.addChargingStation(new ChargingStation("C003", "System"));
+            assert false : "Expected IllegalArgumentException not thrown for reserved name";
         } catch (IllegalArgumentException | IOException e) {
             System.out.println("Test 5 passed (requireValidName throws)");
         }
     }
+
+    // ---------- TEST 6 ----------
+    private static void testTransferItems(StorageService service, Repository repo, PathsConfig cfg) throws IOException {
+        service.addVehicle(new StorageVehicle("V010", "Van_Source"));
+        service.addVehicle(new StorageVehicle("V011", "Van_Target"));
+        service.addItemToVehicle("V010", new StorageItem("SKU900", "Gauze", 10));
+
+        service.transferItem("V010", "V011", "SKU900", 4);
+        service.transferItems(List.of(
+                new InventoryTransfer("V010", "V011", "SKU900", 1),
+                new InventoryTransfer("V011", "V010", "SKU900", 2)));
+        assert repo.vehicles.get("V010").getQuantity("SKU900") == 7 : "Source quantity after transfers";
+        assert repo.vehicles.get("V011").getQuantity("SKU900") == 3 : "Target quantity after transfers";
+
+        try {
+            service.transferItem("V010", "V011", "SKU900", 50);
+            assert false : "Transfer beyond stock accepted";
+        } catch (IllegalArgumentException e) {
+            assert e.getMessage().contains("Insufficient") : "Unexpected message: " + e.getMessage();
+        }
+        try {
+            service.transferItem("V010", "V404", "SKU900", 1);
+            assert false : "Transfer to missing vehicle accepted";
+        } catch (IllegalArgumentException e) {
+            assert e.getMessage().contains("V404") : "Unexpected message: " + e.getMessage();
+        }
+
+        Path logFile = cfg.logsVehicles.resolve("Van_Source").resolve(LocalDate.now().toString() + ".log");
+        String logContent = Files.readString(logFile);
+        assert logContent.contains("Transferred -1 SKU900 to Van_Target; +2 SKU900 from Van_Target")
+                : "Batch not summarised in one vehicle log line";
+        System.out.println("Test 6 passed  (transferItem / transferItems)");
+    }
+
+    // ---------- TEST 7 ----------
+    private static void testBulkAddItems(StorageService service, Repository repo, PathsConfig cfg) throws IOException {
+        service.addVehicle(new StorageVehicle("V020", "Van_Bulk_A"));
+        service.addVehicle(new StorageVehicle("V021", "Van_Bulk_B"));
+        service.addItemToVehicle("V021", new StorageItem("SKU950", "Saline", Integer.MAX_VALUE - 1));
+        Path logFile = cfg.logsVehicles.resolve("Van_Bulk_A").resolve(LocalDate.now().toString() + ".log");
+        long bulkBefore = countLines(logFile, "Bulk added");
+
+        List<StorageService.LineResult> results = service.addItemsToVehicles(List.of(
+                new StorageService.ItemLine("V020", "SKU951", "Gloves", 10),
+                new StorageService.ItemLine("V021", "SKU952", "Masks", 4),
+                new StorageService.ItemLine("V020", "SKU951", "Gloves", 5),
+                new StorageService.ItemLine("V020", "  ", "Blank", 1),
+                new StorageService.ItemLine("V404", "SKU953", "Tape", 2),
+                new StorageService.ItemLine("V020", "SKU954", "Swabs", -3),
+                new StorageService.ItemLine("V021", "SKU950", "Saline", 5),
+                new StorageService.ItemLine("V020", "SKU955", "Gauze", 7)));
+
+        assert results.size() == 8 : "One result per line expected, got " + results.size();
+        boolean[] expected = {true, true, true, false, false, false, false, true};
+        for (int i = 0; i < expected.length; i++) {
+            assert results.get(i).applied() == expected[i] : "Unexpected outcome for " + results.get(i);
+        }
+        assert results.get(4).error.contains("V404") : "Missing vehicle not reported: " + results.get(4);
+        assert results.get(6).error.contains("overflow") : "Overflow not reported: " + results.get(6);
+        assert repo.vehicles.get("V020").getQuantity("SKU951") == 15 : "Lines for one SKU not merged";
+        assert repo.vehicles.get("V020").getQuantity("SKU955") == 7 : "Last valid line not applied";
+        assert repo.vehicles.get("V021").getQuantity("SKU950") == Integer.MAX_VALUE - 1 : "Overflowing line applied";
+
+        long bulkLines = countLines(logFile, "Bulk added") - bulkBefore;
+        assert bulkLines == 1 : "Expected one summary line per vehicle, got " + bulkLines;
+        assert Files.readString(logFile).contains("Bulk added 3 item line(s): 2 SKU(s), 22 units") : "Summary content";
+        System.out.println("Test 7 passed  (addItemsToVehicles reports per line, logs once per vehicle)");
+    }
+
+    private static long countLines(Path file, String text) throws IOException {
+        if (!Files.exists(file)) return 0;
+        return Files.readAllLines(file).stream().filter(l -> l.contains(text)).count();
+    }
 }
@@ -1,6 +1,12 @@
+import med.supply.system.model.OffHeapArena;
 import med.supply.system.model.StorageVehicle;
 import med.supply.system.model.StorageItem;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class StorageVehicleTest {
     public static void main(String[] args) {
         System.out.println("Running StorageVehicle tests...");
@@ -64,5 +70,88 @@ public class StorageVehicleTest {
         } catch (Exception e) {
             System.out.println("Test 5 failed: " + e.getMessage());
         }
+
+        // Test 6: compact inventory keeps every SKU through table growth, view is read-only
+        try {
+            StorageVehicle v6 = new StorageVehicle("VH-006", "Van_Zeta");
+            for (int i = 0; i < 1000; i++) {
+                v6.addItem(new StorageItem("SKU-Z" + i, "Item " + i, i));
+                v6.addItem(new StorageItem("SKU-Z" + i, "Item " + i, 1));
+            }
+            assert v6.getInventory().size() == 1000 : "Inventory size " + v6.getInventory().size();
+            long total = 0;
+            for (Map.Entry<String, StorageItem> e : v6.getInventory().entrySet()) {
+                assert e.getKey().equals(e.getValue().getSku()) : "Entry key and SKU differ";
+                total += e.getValue().getQuantity();
+            }
+            assert total == 1000L * 999 / 2 + 1000 : "Quantities lost: " + total;
+            assert v6.getQuantity("SKU-Z500") == 501 && v6.getQuantity("nope") == 0;
+            assert !v6.getInventory().containsKey("nope") && v6.getInventory().get("nope") == null;
+
+            v6.getInventory().get("SKU-Z1").setQuantity(99); // a copy: must not write through
+            assert v6.getQuantity("SKU-Z1") == 2 : "Returned item writes through";
+            try {
+                v6.getInventory().put("SKU-X", new StorageItem("SKU-X", "X", 1));
+                System.out.println("Test 6 failed: inventory view accepted put");
+            } catch (UnsupportedOperationException expected) {
+                System.out.println("Test 6 passed (compact inventory, read-only view)");
+            }
+        } catch (Exception e) {
+            System.out.println("Test 6 failed: " + e.getMessage());
+        }
+
+        // Test 7: readers see consistent quantities while the table grows
+        try {
+            StorageVehicle v7 = new StorageVehicle("VH-007", "Van_Eta");
+            v7.addItem(new StorageItem("SKU-H0", "Pads", 1));
+            boolean[] bad = {false};
+            Thread writer = new Thread(() -> {
+                for (int i = 1; i < 5000; i++) v7.addItem(new StorageItem("SKU-H" + i, "Pads", 1));
+            });
+            writer.start();
+            while (writer.isAlive()) {
+                if (v7.getQuantity("SKU-H0") != 1) bad[0] = true;
+            }
+            writer.join();
+            assert !bad[0] : "Reader saw a wrong quantity during growth";
+            assert v7.getInventory().size() == 5000;
+            System.out.println("Test 7 passed (lock-free reads during concurrent growth)");
+        } catch (Exception e) {
+            System.out.println("Test 7 failed: " + e.getMessage());
+        }
+
+        // Test 8: concurrent adds and removals on one hot SKU lose nothing, on and off the heap
+        try {
+            StorageVehicle heap = new StorageVehicle("VH-008", "Van_Theta");
+            StorageVehicle offHeap = new StorageVehicle("VH-009", "Van_Iota");
+            offHeap.moveInventoryTo(new OffHeapArena(1 << 20));
+            for (StorageVehicle v8 : List.of(heap, offHeap)) {
+                AtomicInteger taken = new AtomicInteger();
+                List<Thread> threads = new ArrayList<>();
+                for (int t = 0; t < 4; t++) {
+                    threads.add(new Thread(() -> {
+                        for (int i = 0; i < 20_000; i++) v8.addItem(new StorageItem("SKU-HOT", "Gloves", 1));
+                    }));
+                    threads.add(new Thread(() -> {
+                        for (int i = 0; i < 30_000; i++) {
+                            if (v8.removeItem("SKU-HOT", 1)) taken.incrementAndGet();
+                        }
+                    }));
+                }
+                // new SKUs grow the table while the hot one is updated
+                threads.add(new Thread(() -> {
+                    for (int i = 0; i < 2000; i++) v8.addItem(new StorageItem(v8.getId() + "-N" + i, "Misc", 1));
+                }));
+                for (Thread t : threads) t.start();
+                for (Thread t : threads) t.join();
+                int left = v8.getQuantity("SKU-HOT");
+                assert left >= 0 && left + taken.get() == 80_000
+                        : "Lost updates on " + v8.getId() + ": " + left + " left + " + taken.get() + " taken";
+                assert v8.getInventory().size() == 2001 : "Lines lost during growth on " + v8.getId();
+            }
+            System.out.println("Test 8 passed (hot SKU updates from many threads lose nothing)");
+        } catch (Exception e) {
+            System.out.println("Test 8 failed: " + e.getMessage());
+        }
     }
 }
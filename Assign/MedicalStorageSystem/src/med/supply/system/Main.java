@@ -3,22 +3,44 @@ package med.supply.system;
 import med.supply.system.exception.ExceptionHandler;
 import med.supply.system.model.*;
 import med.supply.system.repository.Repository;
+import med.supply.system.repository.RepositoryStore;
 import med.supply.system.service.*;
 import med.supply.system.util.*;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
 import java.util.Locale;
 import java.util.Scanner;
+import java.util.zip.Deflater;
 
 public class Main {
+    private static final long MAX_LOG_FILE_BYTES = 16L * 1024 * 1024;
+    private static final long METADATA_SYNC_MILLIS = 1000;
+    private static final MetadataAppender.Durability STATE_DURABILITY = MetadataAppender.Durability.PERIODIC;
+    private static final long STATE_SYNC_MILLIS = 200;
+    private static final long STATE_SNAPSHOT_EVERY = 10_000;
+    private static final int OFF_HEAP_CHUNK_BYTES = 0; // e.g. 64 MB for very large fleets; 0 keeps inventories and tasks on the heap
+
     public static void main(String[] args) throws Exception {
         PathsConfig cfg = new PathsConfig();
         cfg.ensure();
         LogManager log = new LogManager(cfg);
-        Repository repo = new Repository();
+        log.enableRotation(MAX_LOG_FILE_BYTES);
+        MetadataManager.appender(cfg.metaIndex)
+                .setDurability(MetadataAppender.Durability.PERIODIC, METADATA_SYNC_MILLIS);
+        MetadataManager.index(cfg.metaIndex);
+        RepositoryStore state = RepositoryStore.open(cfg.stateRoot, STATE_DURABILITY, STATE_SYNC_MILLIS,
+                STATE_SNAPSHOT_EVERY, OFF_HEAP_CHUNK_BYTES > 0 ? new OffHeapArena(OFF_HEAP_CHUNK_BYTES) : null);
+        Repository repo = state.repository();
+        System.out.printf("Restored %d vehicles, %d stations, %d tasks (%d journal records replayed).%n",
+                repo.vehicles.size(), repo.stations.size(), repo.tasks.size(), state.replayedRecords());
         StorageService storage = new StorageService(repo, log);
         TaskService tasks = new TaskService(repo, log);
         DataExchangeSimulator exchange = new DataExchangeSimulator(cfg, log);
@@ -36,11 +58,16 @@ public class Main {
                 System.out.println("8) Update task status");
                 System.out.println("9) Simulate data exchange (byte & char)");
                 System.out.println("10) Open logs by equipment name or date (YYYY-MM-DD or 'system')");
-                System.out.println("11) Archive all logs to ZIP");
+                System.out.println("11) Archive logs (ZIP full/incremental, or deduplicated store)");
                 System.out.println("12) Move a log file");
                 System.out.println("13) Delete a log file");
                 System.out.println("14) List all tasks and statuses");
                 System.out.println("15) Assign vehicle to charging station");
+                System.out.println("16) Search log contents");
+                System.out.println("17) File history (log_metadata.csv)");
+                System.out.println("18) Compact log_metadata.csv");
+                System.out.println("19) Restore logs from incremental archives");
+                System.out.println("20) Export a store archive to ZIP");
                 System.out.println("0) Exit");
                 System.out.print("Choose: ");
                 String choice = sc.nextLine().trim();
@@ -82,16 +109,45 @@ public class Main {
 
                         case "10" -> openLogsUI(sc, log);
                         case "11" -> {
-                            Path zip = cfg.archiveRoot.resolve("logs-" +
-                                    LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".zip");
-                            MetadataManager.archiveZip(cfg.logsRoot, zip, cfg.metaIndex);
-                            System.out.println("Archived to: " + zip);
+                            Path zip = newArchivePath(cfg);
+                            System.out.print("(f)ull, (i)ncremental or (d)eduplicated store archive? [f]: ");
+                            int threads = Runtime.getRuntime().availableProcessors();
+                            String mode = sc.nextLine().trim();
+                            if (mode.equalsIgnoreCase("d")) {
+                                String name = zip.getFileName().toString().replace(".zip", "");
+                                var result = MetadataManager.archiveDedup(cfg.logsRoot,
+                                        new DedupArchiveStore(cfg.archiveStore), name, cfg.metaIndex);
+                                System.out.println(result);
+                            } else if (mode.equalsIgnoreCase("i")) {
+                                var result = MetadataManager.archiveIncremental(cfg.logsRoot, zip, cfg.metaIndex,
+                                        threads, Deflater.DEFAULT_COMPRESSION);
+                                if (result.zip != null) System.out.println("Archived to: " + zip);
+                                System.out.println(result);
+                            } else {
+                                var result = MetadataManager.archiveZipParallel(cfg.logsRoot, zip, cfg.metaIndex,
+                                        threads, Deflater.DEFAULT_COMPRESSION);
+                                System.out.println("Archived to: " + zip);
+                                System.out.println(result);
+                            }
                         }
-                        case "12" -> moveFileUI(sc, cfg); // Multiple exceptions
-                        case "13" -> deleteFileUI(sc, cfg);
-                        case "14" -> listTasks(repo);
+                        case "12" -> moveFileUI(sc, log); // Multiple exceptions
+                        case "13" -> deleteFileUI(sc, cfg, log);
+                        case "14" -> listTasks(sc, repo);
                         case "15" -> assignVehicleToStationUI(sc, repo);
+                        case "16" -> searchLogsUI(sc, log);
+                        case "17" -> metadataHistoryUI(sc, cfg);
+                        case "18" -> {
+                            System.out.print("Keep individual events of the last N days (0 = snapshot only): ");
+                            long days = Long.parseLong(sc.nextLine().trim());
+                            var result = new MetadataCompactor(cfg.metaIndex).compact(Duration.ofDays(days));
+                            System.out.println(result);
+                        }
+                        case "19" -> restoreArchiveUI(sc, cfg);
+                        case "20" -> exportStoreUI(sc, cfg);
                         case "0" -> {
+                            state.close();
+                            log.close();
+                            MetadataManager.appender(cfg.metaIndex).close();
                             System.out.println("Bye.");
                             return;
                         }
@@ -129,7 +185,8 @@ public class Main {
         }
         System.out.println("Charging Stations:");
         for (ChargingStation s : repo.stations.values()) {
-            System.out.println(" - " + s);
+            int docked = repo.vehiclesAtStation(s.getId()).size();
+            System.out.println(" - " + s + (docked > 0 ? " | vehicles: " + docked : ""));
         }
     }
 
@@ -216,7 +273,8 @@ public class Main {
 
         try {
             var found = logs.findByEquipmentOrDate(key);
-            if (found.isEmpty()) {
+            var archived = logs.findArchived(key);
+            if (found.isEmpty() && archived.isEmpty()) {
                 // Simulate resource error (missing log files)
                 throw new java.io.FileNotFoundException("No logs found for input: " + key);
             }
@@ -225,17 +283,25 @@ public class Main {
             for (int i = 0; i < found.size(); i++) {
                 System.out.println("  [" + i + "] " + found.get(i));
             }
+            for (int i = 0; i < archived.size(); i++) {
+                System.out.println("  [" + (found.size() + i) + "] " + archived.get(i) + " (archived)");
+            }
 
             System.out.print("Open which index? ");
 
             try {
                 int idx = Integer.parseInt(sc.nextLine().trim());
-                if (idx < 0 || idx >= found.size()) {
+                int total = found.size() + archived.size();
+                if (idx < 0 || idx >= total) {
                     // Throw via ExceptionHandler (invalid index)
                     med.supply.system.exception.ExceptionHandler.handleInvalidLogIndex(
-                            idx, found.size(),
+                            idx, total,
                             new IndexOutOfBoundsException("Index " + idx + " out of range"));
                 }
+                if (idx >= found.size()) {
+                    pageArchivedLog(sc, logs, archived.get(idx - found.size()));
+                    return;
+                }
 
                 var p = found.get(idx);
                 System.out.println("--- " + p + " ---");
@@ -244,7 +310,7 @@ public class Main {
                 try {
                     String content = med.supply.system.exception.ExceptionHandler.readFirstLine(p);
                     System.out.println("[RESOURCE] First line: " + content);
-                    System.out.println("Full log content:\n" + logs.readLog(p));
+                    pageLog(sc, logs, p);
                 } catch (Exception e) {
                     System.err.println("[RESOURCE ERROR] " + e.getMessage());
                     e.printStackTrace(System.err);
@@ -265,9 +331,160 @@ public class Main {
     }
 
 
-    private static void moveFileUI(Scanner sc, PathsConfig cfg) {
+    private static final int LOG_PAGE_LINES = 40;
+
+    /** Shows the log one page at a time, starting from the newest lines. */
+    private static void pageLog(Scanner sc, LogManager logs, Path p) throws IOException {
+        LogReader.Page page = logs.readLogPageBefore(p, Long.MAX_VALUE, LOG_PAGE_LINES);
+        while (true) {
+            for (String line : page.lines) {
+                System.out.println(line);
+            }
+            System.out.printf("[bytes %d-%d of %d] (p)revious, (n)ext, (f)ollow, (q)uit: ",
+                    page.startOffset, page.endOffset, page.fileSize);
+            String cmd = sc.nextLine().trim().toLowerCase(Locale.ROOT);
+            if (cmd.equals("p") && !page.isFirst()) {
+                page = logs.readLogPageBefore(p, page.startOffset, LOG_PAGE_LINES);
+            } else if (cmd.equals("n") && !page.isLast()) {
+                page = logs.readLogPage(p, page.endOffset, LOG_PAGE_LINES);
+            } else if (cmd.equals("f")) {
+                followLog(sc, logs, p);
+                return;
+            } else if (cmd.equals("q") || cmd.isEmpty()) {
+                return;
+            }
+        }
+    }
+
+    /** Shows an archived log one page at a time from its first line, reading it in place. */
+    private static void pageArchivedLog(Scanner sc, LogManager logs, ArchiveReader.Entry e) throws IOException {
+        System.out.println("--- " + e + " ---");
+        long first = 0;
+        while (true) {
+            List<String> lines = logs.readArchivedLines(e, first, LOG_PAGE_LINES);
+            for (String line : lines) {
+                System.out.println(line);
+            }
+            System.out.printf("[lines %d-%d] (p)revious, (n)ext, (q)uit: ", first + 1, first + lines.size());
+            String cmd = sc.nextLine().trim().toLowerCase(Locale.ROOT);
+            if (cmd.equals("p") && first > 0) {
+                first = Math.max(0, first - LOG_PAGE_LINES);
+            } else if (cmd.equals("n") && lines.size() == LOG_PAGE_LINES) {
+                first += LOG_PAGE_LINES;
+            } else if (cmd.equals("q") || cmd.isEmpty()) {
+                System.out.println("---------------");
+                return;
+            }
+        }
+    }
+
+    /** Prints lines as they are appended until the user presses Enter. */
+    private static void followLog(Scanner sc, LogManager logs, Path p) throws IOException {
+        System.out.println("Following " + p + " (press Enter to stop)...");
+        try (LogFollower follower = logs.follow(p, System.out::println)) {
+            sc.nextLine();
+            System.out.println("Stopped after " + follower.delivered() + " new line(s).");
+        }
+    }
+
+    private static void searchLogsUI(Scanner sc, LogManager logs) throws IOException {
+        System.out.print("Search text (prefix with 're:' for a regex): ");
+        String text = sc.nextLine().trim();
+        LogSearch.Query q = text.startsWith("re:")
+                ? LogSearch.Query.regex(text.substring(3))
+                : LogSearch.Query.literal(text);
+        System.out.print("Equipment name (or empty for all): ");
+        String equipment = sc.nextLine().trim();
+        if (!equipment.isEmpty()) q = q.withEquipment(equipment);
+        System.out.print("From date YYYY-MM-DD (or empty): ");
+        String from = sc.nextLine().trim();
+        System.out.print("To date YYYY-MM-DD (or empty): ");
+        String to = sc.nextLine().trim();
+        if (!from.isEmpty() || !to.isEmpty()) {
+            q = q.between(from.isEmpty() ? null : LocalDate.parse(from), to.isEmpty() ? null : LocalDate.parse(to));
+        }
+        System.out.print("Include archived logs? (y/N): ");
+        if (sc.nextLine().trim().equalsIgnoreCase("y")) q = q.withArchives();
+        long n = logs.search(q, m -> System.out.println(" - " + m));
+        System.out.println(n + " match(es).");
+    }
+
+    private static void metadataHistoryUI(Scanner sc, PathsConfig cfg) throws IOException {
+        MetadataIndex index = MetadataManager.index(cfg.metaIndex);
+        System.out.print("File path, or kind (LOG/MOVE/DELETE/ARCHIVE/ROTATE): ");
+        String q = sc.nextLine().trim();
+        List<MetadataManager.Row> rows;
+        if (q.matches("[A-Za-z]+")) {
+            System.out.print("Days back (blank = all): ");
+            String days = sc.nextLine().trim();
+            String kind = q.toUpperCase(Locale.ROOT);
+            if (days.isEmpty()) {
+                rows = index.byKind(kind);
+            } else {
+                Instant now = Instant.now();
+                rows = index.byKindBetween(kind, now.minus(Duration.ofDays(Long.parseLong(days))), now);
+            }
+        } else {
+            rows = index.byPath(Path.of(q));
+        }
+        if (rows.isEmpty()) {
+            System.out.println("No metadata rows found.");
+            return;
+        }
+        for (MetadataManager.Row r : rows) {
+            System.out.println(r.createdUtc + "  " + r.kind + "  " + r.path + "  " + r.notes);
+        }
+        System.out.println(rows.size() + " row(s).");
+    }
+
+    /**
+     * A {@code logs-yyyyMMdd-HHmmssSSS.zip} path that does not exist yet. Names sort
+     * chronologically (also after the older second-resolution names), and incremental
+     * archives must never replace an earlier one that later manifests still refer to.
+     */
+    private static Path newArchivePath(PathsConfig cfg) {
+        DateTimeFormatter f = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmssSSS");
+        while (true) {
+            Path zip = cfg.archiveRoot.resolve("logs-" + LocalDateTime.now().format(f) + ".zip");
+            if (!Files.exists(zip) && !Files.exists(IncrementalArchiver.manifestOf(zip))) return zip;
+            Thread.onSpinWait();
+        }
+    }
+
+    private static void restoreArchiveUI(Scanner sc, PathsConfig cfg) throws IOException {
+        IncrementalArchiver archiver = new IncrementalArchiver(cfg.archiveRoot, new ParallelZipArchiver(1, -1));
+        Path latest = archiver.latestManifest();
+        if (latest == null) {
+            System.out.println("No incremental archives in " + cfg.archiveRoot);
+            return;
+        }
+        System.out.print("Manifest (blank = " + latest.getFileName() + "): ");
+        String m = sc.nextLine().trim();
+        Path manifest = m.isEmpty() ? latest : cfg.archiveRoot.resolve(m);
+        System.out.print("Restore into directory: ");
+        Path target = Path.of(sc.nextLine().trim());
+        int n = archiver.restore(manifest, target);
+        System.out.println("Restored " + n + " file(s) into " + target);
+    }
+
+    private static void exportStoreUI(Scanner sc, PathsConfig cfg) throws IOException {
+        DedupArchiveStore store = new DedupArchiveStore(cfg.archiveStore);
+        List<String> names = store.archives();
+        if (names.isEmpty()) {
+            System.out.println("No archives in " + cfg.archiveStore);
+            return;
+        }
+        System.out.println("Stored archives: " + String.join(", ", names));
+        System.out.print("Archive name (blank = " + names.get(names.size() - 1) + "): ");
+        String name = sc.nextLine().trim();
+        if (name.isEmpty()) name = names.get(names.size() - 1);
+        Path zip = MetadataManager.exportDedupZip(store, name, cfg.archiveRoot.resolve(name + "-export.zip"),
+                cfg.metaIndex);
+        System.out.println("Exported to: " + zip);
+    }
+
+    private static void moveFileUI(Scanner sc, LogManager logManager) {
         try {
-            LogManager logManager = new LogManager(cfg);
             System.out.print("From (path): ");
             Path from = Path.of(sc.nextLine().trim());
             System.out.print("To (path): ");
@@ -280,20 +497,35 @@ public class Main {
         }
     }
 
-    private static void deleteFileUI(Scanner sc, PathsConfig cfg) throws IOException {
+    private static void deleteFileUI(Scanner sc, PathsConfig cfg, LogManager logs) throws IOException {
         System.out.print("File to delete (path): ");
         Path file = Path.of(sc.nextLine().trim());
+        logs.release(file);
         MetadataManager.delete(file, cfg.metaIndex);
         System.out.println("Deleted.");
     }
 
-    private static void listTasks(Repository repo) {
+    private static void listTasks(Scanner sc, Repository repo) {
         if (repo.tasks.isEmpty()) {
             System.out.println("No tasks found.");
             return;
         }
+        System.out.printf("%d pending, %d in progress, %d done.%n", repo.countTasks(TaskStatus.PENDING),
+                repo.countTasks(TaskStatus.IN_PROGRESS), repo.countTasks(TaskStatus.DONE));
+        System.out.print("Filter by status (PENDING, IN_PROGRESS, DONE), vehicle ID, or empty for all: ");
+        String filter = sc.nextLine().trim();
+        Iterable<Task> shown;
+        if (filter.isEmpty()) {
+            shown = repo.tasks.values();
+        } else {
+            TaskStatus status = null;
+            for (TaskStatus s : TaskStatus.values()) {
+                if (s.name().equalsIgnoreCase(filter)) status = s;
+            }
+            shown = status != null ? repo.tasksByStatus(status) : repo.tasksForVehicle(filter);
+        }
         System.out.println("Tasks:");
-        for (Task t : repo.tasks.values()) {
+        for (Task t : shown) {
             System.out.printf(" - [%s] %s | Vehicle: %s | Status: %s%n",
                     t.id, t.description,
                     (t.assigneeVehicleId == null ? "Unassigned" : t.assigneeVehicleId),
@@ -318,7 +550,10 @@ public class Main {
             return;
         }
 
-        vehicle.setAssignedStationId(sid);
+        if (!repo.assignStation(vid, sid)) {
+            System.out.println("Vehicle or charging station no longer exists.");
+            return;
+        }
         System.out.println("Vehicle " + vehicle.getId() + " assigned to station " + sid + ".");
     }
 }
@@ -0,0 +1,124 @@
+package med.supply.system.model;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Open-addressing map from SKU id to quantity, both plain ints, with linear probing.
+ * Keys and values share one interleaved array ({@code key + 1, value} per slot, 0 = empty), so a
+ * lookup touches one cache line and an optimistic reader racing a resize always sees a
+ * self-consistent array: it may read a wrong value but never fails or loops. Entries are never
+ * removed. Not thread-safe; {@link StorageVehicle} guards it.
+ */
+final class IntQuantityMap implements QuantityTable {
+    private static final int MIN_CAPACITY = 4;
+    private static final VarHandle SLOT = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private int[] slots = new int[2 * MIN_CAPACITY];
+    private int size;
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int get(int key) {
+        int[] t = slots;
+        int mask = (t.length >> 1) - 1;
+        int i = mix(key) & mask;
+        for (int probes = 0; probes <= mask; probes++) {
+            int k = t[2 * i];
+            if (k == key + 1) return t[2 * i + 1];
+            if (k == 0) return ABSENT;
+            i = (i + 1) & mask;
+        }
+        return ABSENT;
+    }
+
+    @Override
+    public int add(int key, int delta) {
+        int slot = slotOf(key);
+        long q = (long) slots[2 * slot + 1] + delta;
+        if (q < 0) throw new IllegalArgumentException("Quantity must be non-negative");
+        if (q > Integer.MAX_VALUE) throw new IllegalArgumentException("Quantity overflow");
+        slots[2 * slot + 1] = (int) q;
+        return (int) q;
+    }
+
+    @Override
+    public int addExisting(int key, int delta) {
+        int[] t = slots;
+        int mask = (t.length >> 1) - 1;
+        int i = mix(key) & mask;
+        while (t[2 * i] != key + 1) {
+            if (t[2 * i] == 0) return ABSENT;
+            i = (i + 1) & mask;
+        }
+        while (true) {
+            int q = (int) SLOT.getVolatile(t, 2 * i + 1);
+            long n = (long) q + delta;
+            if (n < 0) return INSUFFICIENT;
+            if (n > Integer.MAX_VALUE) throw new IllegalArgumentException("Quantity overflow");
+            if (SLOT.compareAndSet(t, 2 * i + 1, q, (int) n)) return (int) n;
+        }
+    }
+
+    /** Slot index of {@code key}, inserting it with quantity 0 if absent. */
+    private int slotOf(int key) {
+        if (key < 0) throw new IllegalArgumentException("key must not be negative");
+        int mask = (slots.length >> 1) - 1;
+        int i = mix(key) & mask;
+        while (true) {
+            int k = slots[2 * i];
+            if (k == key + 1) return i;
+            if (k == 0) break;
+            i = (i + 1) & mask;
+        }
+        if (3 * (size + 1) > 2 * (mask + 1)) { // keep the load under 2/3
+            grow();
+            return slotOf(key);
+        }
+        slots[2 * i] = key + 1;
+        size++;
+        return i;
+    }
+
+    private void grow() {
+        int[] old = slots;
+        int[] t = new int[old.length * 2];
+        int mask = (t.length >> 1) - 1;
+        for (int j = 0; j < old.length; j += 2) {
+            if (old[j] == 0) continue;
+            int i = mix(old[j] - 1) & mask;
+            while (t[2 * i] != 0) i = (i + 1) & mask;
+            t[2 * i] = old[j];
+            t[2 * i + 1] = old[j + 1];
+        }
+        slots = t; // one store: readers see either the old or the new table
+    }
+
+    @Override
+    public void copyTo(int[] keys, int[] quantities) {
+        int n = 0;
+        for (int j = 0; j < slots.length; j += 2) {
+            if (slots[j] == 0) continue;
+            keys[n] = slots[j] - 1;
+            quantities[n++] = slots[j + 1];
+        }
+    }
+
+    @Override
+    public OffHeapArena arena() {
+        return null;
+    }
+
+    @Override
+    public void release() {
+    }
+
+    static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,49 @@
+package med.supply.system.model;
+
+/**
+ * A quantity of one SKU to move from one vehicle's inventory to another's.
+ */
+public final class InventoryTransfer {
+    private final String fromVehicleId;
+    private final String toVehicleId;
+    private final String sku;
+    private final int quantity;
+
+    public InventoryTransfer(String fromVehicleId, String toVehicleId, String sku, int quantity) {
+        if (fromVehicleId == null || fromVehicleId.isBlank() || toVehicleId == null || toVehicleId.isBlank()) {
+            throw new IllegalArgumentException("Vehicle ids must not be blank");
+        }
+        if (sku == null || sku.isBlank()) {
+            throw new IllegalArgumentException("SKU must not be blank");
+        }
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Transfer quantity must be positive");
+        }
+        if (fromVehicleId.trim().equals(toVehicleId.trim())) {
+            throw new IllegalArgumentException("Cannot transfer to the same vehicle");
+        }
+        this.fromVehicleId = fromVehicleId.trim();
+        this.toVehicleId = toVehicleId.trim();
+        this.sku = sku.trim();
+        this.quantity = quantity;
+    }
+
+    // === Getters ===
+    public String getFromVehicleId() { return fromVehicleId; }
+
+    public String getToVehicleId() { return toVehicleId; }
+
+    public String getSku() { return sku; }
+
+    public int getQuantity() { return quantity; }
+
+    @Override
+    public String toString() {
+        return "InventoryTransfer{" +
+                "from='" + fromVehicleId + '\'' +
+                ", to='" + toVehicleId + '\'' +
+                ", sku='" + sku + '\'' +
+                ", quantity=" + quantity +
+                '}';
+    }
+}
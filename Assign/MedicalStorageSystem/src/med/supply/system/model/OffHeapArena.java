@@ -0,0 +1,139 @@
+package med.supply.system.model;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Memory outside the Java heap for inventories and task records, so their size does not add to
+ * garbage-collection work. The arena reserves direct {@link ByteBuffer} chunks and hands out
+ * power-of-two blocks from them; freed blocks go to a free list per size and are reused. A block
+ * is named by a {@code long} handle that encodes its chunk, offset and size, so one read of a
+ * handle is always enough to address the whole block.
+ * <p>
+ * Reads and writes use absolute positions only and may come from any thread; owners of a block
+ * are responsible for ordering their own reads and writes. Memory is returned to the OS only
+ * when the arena becomes unreachable.
+ */
+public final class OffHeapArena {
+    private static final int MIN_BLOCK_LOG2 = 4; // 16 bytes
+    private static final int MAX_CHUNK = 1 << 30;
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    private final int chunkBytes;
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+    private final long[][] free = new long[31][]; // per log2 size: stack of free handles
+    private final int[] freeCount = new int[31];
+    private int top = -1;      // chunk being carved, guarded by this
+    private int topUsed;
+    private long usedBytes;
+
+    /**
+     * @param chunkBytes size of each direct buffer reserved; a power of two from 4 KB to 1 GB,
+     *                   and the largest block that can be allocated
+     */
+    public OffHeapArena(int chunkBytes) {
+        if (chunkBytes < 4096 || chunkBytes > MAX_CHUNK || Integer.bitCount(chunkBytes) != 1) {
+            throw new IllegalArgumentException("chunkBytes must be a power of two between 4 KB and 1 GB");
+        }
+        this.chunkBytes = chunkBytes;
+    }
+
+    /** A zero-filled block of at least {@code bytes} bytes. */
+    public synchronized long allocate(int bytes) {
+        if (bytes < 1 || bytes > chunkBytes) throw new IllegalArgumentException("Cannot allocate " + bytes + " bytes off-heap");
+        int log2 = Math.max(MIN_BLOCK_LOG2, 32 - Integer.numberOfLeadingZeros(bytes - 1));
+        int size = 1 << log2;
+        long handle;
+        if (freeCount[log2] > 0) {
+            handle = free[log2][--freeCount[log2]];
+            ByteBuffer c = chunks[chunk(handle)];
+            int off = offset(handle);
+            for (int i = 0; i < size; i += 8) c.putLong(off + i, 0L);
+        } else {
+            // blocks are aligned to their size, so a block never straddles the end of a chunk
+            int at = (topUsed + size - 1) & -size;
+            if (top < 0 || at >= chunkBytes) {
+                ByteBuffer[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+                grown[grown.length - 1] = ByteBuffer.allocateDirect(chunkBytes);
+                chunks = grown;
+                top = grown.length - 1;
+                at = 0;
+            }
+            handle = handle(top, log2, at);
+            topUsed = at + size;
+        }
+        usedBytes += size;
+        return handle;
+    }
+
+    /** Returns a block for reuse; the handle must not be used afterwards. */
+    public synchronized void free(long handle) {
+        int log2 = sizeLog2(handle);
+        long[] stack = free[log2];
+        if (stack == null) stack = free[log2] = new long[16];
+        else if (freeCount[log2] == stack.length) stack = free[log2] = Arrays.copyOf(stack, stack.length * 2);
+        stack[freeCount[log2]++] = handle;
+        usedBytes -= 1 << log2;
+    }
+
+    /** Size in bytes of the block. */
+    public static int size(long handle) {
+        return 1 << sizeLog2(handle);
+    }
+
+    public int getInt(long handle, int pos) {
+        return chunks[chunk(handle)].getInt(offset(handle) + pos);
+    }
+
+    public void putInt(long handle, int pos, int value) {
+        chunks[chunk(handle)].putInt(offset(handle) + pos, value);
+    }
+
+    /** Reads an int at a position that is a multiple of 4, seeing the latest {@link #compareAndSetInt}. */
+    public int getIntVolatile(long handle, int pos) {
+        return (int) INTS.getVolatile(chunks[chunk(handle)], offset(handle) + pos);
+    }
+
+    /** Atomically replaces the int at a position that is a multiple of 4 if it is {@code expected}. */
+    public boolean compareAndSetInt(long handle, int pos, int expected, int value) {
+        return INTS.compareAndSet(chunks[chunk(handle)], offset(handle) + pos, expected, value);
+    }
+
+    public void getBytes(long handle, int pos, byte[] dst, int off, int len) {
+        chunks[chunk(handle)].get(offset(handle) + pos, dst, off, len);
+    }
+
+    public void putBytes(long handle, int pos, byte[] src, int off, int len) {
+        chunks[chunk(handle)].put(offset(handle) + pos, src, off, len);
+    }
+
+    /** Bytes in blocks currently handed out. */
+    public synchronized long usedBytes() {
+        return usedBytes;
+    }
+
+    /** Bytes of direct memory reserved. */
+    public long reservedBytes() {
+        return (long) chunks.length * chunkBytes;
+    }
+
+    // handle: chunk (bits 40-63) | log2 size (bits 32-39) | offset (bits 0-31)
+    private static long handle(int chunk, int log2, int offset) {
+        return ((long) chunk << 40) | ((long) log2 << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private static int chunk(long handle) {
+        return (int) (handle >>> 40);
+    }
+
+    private static int sizeLog2(long handle) {
+        return (int) (handle >>> 32) & 0xFF;
+    }
+
+    private static int offset(long handle) {
+        return (int) handle;
+    }
+}
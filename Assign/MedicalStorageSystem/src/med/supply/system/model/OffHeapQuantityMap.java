@@ -0,0 +1,128 @@
+package med.supply.system.model;
+
+/**
+ * {@link IntQuantityMap} laid out in an {@link OffHeapArena} block instead of an int array: the
+ * same interleaved {@code key + 1, value} slots with linear probing, 8 bytes a slot. The block
+ * handle carries its own size, so an optimistic reader racing a resize addresses either the old
+ * or the new block as a whole and never reads past it. A freed block may already hold another
+ * vehicle's table; {@link StorageVehicle}'s stamp check discards such reads.
+ */
+final class OffHeapQuantityMap implements QuantityTable {
+    private static final int MIN_CAPACITY = 4;
+
+    private final OffHeapArena arena;
+    private volatile long block; // read without the lock: must not tear
+    private int size;
+
+    OffHeapQuantityMap(OffHeapArena arena, int expected) {
+        this.arena = arena;
+        int capacity = MIN_CAPACITY;
+        while (3 * expected > 2 * capacity) capacity *= 2;
+        block = arena.allocate(8 * capacity);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int get(int key) {
+        long b = block;
+        int mask = (OffHeapArena.size(b) >> 3) - 1;
+        int i = IntQuantityMap.mix(key) & mask;
+        for (int probes = 0; probes <= mask; probes++) {
+            int k = arena.getInt(b, 8 * i);
+            if (k == key + 1) return arena.getInt(b, 8 * i + 4);
+            if (k == 0) return ABSENT;
+            i = (i + 1) & mask;
+        }
+        return ABSENT;
+    }
+
+    @Override
+    public int add(int key, int delta) {
+        int slot = slotOf(key);
+        long q = (long) arena.getInt(block, 8 * slot + 4) + delta;
+        if (q < 0) throw new IllegalArgumentException("Quantity must be non-negative");
+        if (q > Integer.MAX_VALUE) throw new IllegalArgumentException("Quantity overflow");
+        arena.putInt(block, 8 * slot + 4, (int) q);
+        return (int) q;
+    }
+
+    @Override
+    public int addExisting(int key, int delta) {
+        long b = block;
+        int mask = (OffHeapArena.size(b) >> 3) - 1;
+        int i = IntQuantityMap.mix(key) & mask;
+        while (arena.getInt(b, 8 * i) != key + 1) {
+            if (arena.getInt(b, 8 * i) == 0) return ABSENT;
+            i = (i + 1) & mask;
+        }
+        while (true) {
+            int q = arena.getIntVolatile(b, 8 * i + 4);
+            long n = (long) q + delta;
+            if (n < 0) return INSUFFICIENT;
+            if (n > Integer.MAX_VALUE) throw new IllegalArgumentException("Quantity overflow");
+            if (arena.compareAndSetInt(b, 8 * i + 4, q, (int) n)) return (int) n;
+        }
+    }
+
+    private int slotOf(int key) {
+        if (key < 0) throw new IllegalArgumentException("key must not be negative");
+        int mask = (OffHeapArena.size(block) >> 3) - 1;
+        int i = IntQuantityMap.mix(key) & mask;
+        while (true) {
+            int k = arena.getInt(block, 8 * i);
+            if (k == key + 1) return i;
+            if (k == 0) break;
+            i = (i + 1) & mask;
+        }
+        if (3 * (size + 1) > 2 * (mask + 1)) {
+            grow();
+            return slotOf(key);
+        }
+        arena.putInt(block, 8 * i, key + 1);
+        size++;
+        return i;
+    }
+
+    private void grow() {
+        long old = block;
+        int oldBytes = OffHeapArena.size(old);
+        long b = arena.allocate(2 * oldBytes);
+        int mask = (2 * oldBytes >> 3) - 1;
+        for (int j = 0; j < oldBytes; j += 8) {
+            int k = arena.getInt(old, j);
+            if (k == 0) continue;
+            int i = IntQuantityMap.mix(k - 1) & mask;
+            while (arena.getInt(b, 8 * i) != 0) i = (i + 1) & mask;
+            arena.putInt(b, 8 * i, k);
+            arena.putInt(b, 8 * i + 4, arena.getInt(old, j + 4));
+        }
+        block = b;
+        arena.free(old);
+    }
+
+    @Override
+    public void copyTo(int[] keys, int[] quantities) {
+        int n = 0;
+        int bytes = OffHeapArena.size(block);
+        for (int j = 0; j < bytes; j += 8) {
+            int k = arena.getInt(block, j);
+            if (k == 0) continue;
+            keys[n] = k - 1;
+            quantities[n++] = arena.getInt(block, j + 4);
+        }
+    }
+
+    @Override
+    public OffHeapArena arena() {
+        return arena;
+    }
+
+    @Override
+    public void release() {
+        arena.free(block);
+    }
+}
@@ -0,0 +1,46 @@
+package med.supply.system.model;
+
+/**
+ * SKU id to quantity table behind a {@link StorageVehicle}'s inventory, kept either on the heap
+ * ({@link IntQuantityMap}) or in an {@link OffHeapArena} ({@link OffHeapQuantityMap}).
+ * Not thread-safe; {@link StorageVehicle} guards it. {@link #get} must tolerate racing a writer:
+ * it may return a wrong value but never fails or loops. {@link #addExisting} may run from several
+ * threads at once, as long as no other method that changes the table runs meanwhile.
+ */
+interface QuantityTable {
+    int ABSENT = -1;
+    int INSUFFICIENT = -2;
+
+    int size();
+
+    /** The quantity of {@code key}, or {@link #ABSENT}. */
+    int get(int key);
+
+    /**
+     * Adds {@code delta} to the quantity of {@code key}, creating it at 0 first.
+     *
+     * @return the new quantity
+     * @throws IllegalArgumentException if the result would be negative or overflow
+     */
+    int add(int key, int delta);
+
+    /**
+     * Atomically adds {@code delta} to the quantity of {@code key} if the key is present and the
+     * result is not negative; a compare-and-set on the key's slot, so concurrent callers on
+     * the same key do not block each other.
+     *
+     * @return the new quantity, {@link #ABSENT} if the key has no slot yet, or
+     *         {@link #INSUFFICIENT} if the result would be negative
+     * @throws IllegalArgumentException if the result would overflow
+     */
+    int addExisting(int key, int delta);
+
+    /** Copies the entries into {@code keys} and {@code quantities}, which must hold {@link #size()} each. */
+    void copyTo(int[] keys, int[] quantities);
+
+    /** The arena holding the table, or null if it is on the heap. */
+    OffHeapArena arena();
+
+    /** Frees any memory outside the heap; the table must not be used afterwards. */
+    void release();
+}
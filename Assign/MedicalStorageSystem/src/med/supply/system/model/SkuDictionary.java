@@ -0,0 +1,77 @@
+package med.supply.system.model;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fleet-wide dictionary giving every SKU a small int id, so vehicle inventories can store ids
+ * and quantities as plain ints. The SKU string and its item name are kept here once, however
+ * many vehicles carry the item. The name registered first for a SKU is the one kept.
+ * Ids are never reused or removed. Safe for concurrent use; lookups take no lock.
+ */
+public final class SkuDictionary {
+    private static final SkuDictionary SHARED = new SkuDictionary();
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final Object growLock = new Object();
+    // id -> SKU and name; an id is published through `ids` only after its slots are written
+    private volatile String[] skus = new String[64];
+    private volatile String[] names = new String[64];
+    private int next; // guarded by growLock
+
+    /** The dictionary used by every {@link StorageVehicle}. */
+    public static SkuDictionary shared() {
+        return SHARED;
+    }
+
+    /** The id of {@code sku}, registering it with {@code name} if it is new. */
+    public int idOf(String sku, String name) {
+        Integer id = ids.get(sku);
+        if (id != null) return id;
+        return ids.computeIfAbsent(sku, k -> register(k, name));
+    }
+
+    /** The id of {@code sku}, or -1 if it was never registered. */
+    public int find(String sku) {
+        Integer id = ids.get(sku);
+        return id == null ? -1 : id;
+    }
+
+    public String sku(int id) {
+        return skus[check(id)];
+    }
+
+    public String name(int id) {
+        return names[check(id)];
+    }
+
+    /** Number of SKUs registered so far. */
+    public int size() {
+        return ids.size();
+    }
+
+    private int register(String sku, String name) {
+        if (name == null || name.isBlank()) throw new IllegalArgumentException("Item name must not be blank");
+        synchronized (growLock) {
+            int id = next;
+            String[] s = skus;
+            String[] n = names;
+            if (id == s.length) {
+                s = Arrays.copyOf(s, id * 2);
+                n = Arrays.copyOf(n, id * 2);
+            }
+            s[id] = sku;
+            n[id] = name;
+            names = n;
+            skus = s;
+            next = id + 1;
+            return id;
+        }
+    }
+
+    private int check(int id) {
+        if (id < 0 || id >= skus.length || skus[id] == null) throw new IllegalArgumentException("Unknown SKU id " + id);
+        return id;
+    }
+}
@@ -1,12 +1,27 @@
 package med.supply.system.model;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
 /**
  * Represents a single item stored or transferred by a storage vehicle.
+ * The quantity may be adjusted from several threads at once through the atomic operations
+ * below; it never goes negative.
  */
 public class StorageItem {
+    private static final VarHandle QUANTITY;
+
+    static {
+        try {
+            QUANTITY = MethodHandles.lookup().findVarHandle(StorageItem.class, "quantity", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     private final String sku;
     private final String name;
-    private int quantity;
+    private volatile int quantity;
 
     public StorageItem(String sku, String name, int quantity) {
         if (sku == null || sku.isBlank()) {
@@ -37,6 +52,55 @@ public class StorageItem {
         this.quantity = quantity;
     }
 
+    // === Atomic quantity operations ===
+
+    /**
+     * Adds {@code amount} to the quantity.
+     *
+     * @return the new quantity
+     * @throws IllegalArgumentException if amount is negative or the result would overflow
+     */
+    public int increaseQuantity(int amount) {
+        if (amount < 0) throw new IllegalArgumentException("Amount must be non-negative");
+        int q = quantity;
+        while (true) {
+            if (q > Integer.MAX_VALUE - amount) throw new IllegalArgumentException("Quantity overflow");
+            int witness = (int) QUANTITY.compareAndExchange(this, q, q + amount);
+            if (witness == q) return q + amount;
+            q = witness;
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Subtracts {@code amount} from the quantity if at least that much is there.
+     *
+     * @return false, leaving the quantity unchanged, if it is less than amount
+     * @throws IllegalArgumentException if amount is negative
+     */
+    public boolean decreaseQuantityIfSufficient(int amount) {
+        if (amount < 0) throw new IllegalArgumentException("Amount must be non-negative");
+        int q = quantity;
+        while (true) {
+            if (q < amount) return false;
+            int witness = (int) QUANTITY.compareAndExchange(this, q, q - amount);
+            if (witness == q) return true;
+            q = witness;
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Sets the quantity to {@code newQuantity} if it is currently {@code expected}.
+     *
+     * @return whether the quantity was set
+     * @throws IllegalArgumentException if newQuantity is negative
+     */
+    public boolean compareAndSetQuantity(int expected, int newQuantity) {
+        if (newQuantity < 0) throw new IllegalArgumentException("Quantity must be non-negative");
+        return QUANTITY.compareAndSet(this, expected, newQuantity);
+    }
+
     @Override
     public String toString() {
         return "StorageItem{" +
@@ -1,17 +1,33 @@
 package med.supply.system.model;
 
-import java.util.HashMap;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.locks.StampedLock;
 
 /**
  * Represents an automated storage vehicle that can store and transfer items.
+ * The inventory may be read from any thread; changes go through the repository's vehicle lock.
+ * Quantity changes to SKUs the vehicle already carries are compare-and-set updates on the SKU's
+ * slot, so threads adding to or taking from the same vehicle, even the same SKU, do not wait
+ * for each other; only a new SKU, which may grow the table, takes the inventory lock exclusively.
+ * <p>
+ * Inventory lines are kept compactly as (SKU id, quantity) int pairs, with SKU ids and item
+ * names held once for the whole fleet by {@link SkuDictionary}. {@link #getInventory()} is a
+ * read-only view that builds {@link StorageItem}s on demand. The pairs live on the heap unless
+ * {@link #moveInventoryTo} places them in an {@link OffHeapArena}.
  */
 public class StorageVehicle {
     private final String id;
     private final String name;
-    private int batteryLevelPct = 100;
-    private String assignedStationId;
-    private final Map<String, StorageItem> inventory = new HashMap<>();
+    private volatile int batteryLevelPct = 100;
+    private volatile String assignedStationId;
+    private volatile QuantityTable quantities = new IntQuantityMap(); // replaced only under the write lock
+    private final StampedLock inventoryLock = new StampedLock(); // lets readers skip the vehicle lock
+    private final Map<String, StorageItem> inventory = new InventoryView();
 
     public StorageVehicle(String id, String name) {
         if (id == null || id.isBlank()) {
@@ -33,8 +49,21 @@ public class StorageVehicle {
 
     public String getAssignedStationId() { return assignedStationId; }
 
+    /**
+     * Read-only view of the inventory by SKU. The items it returns are copies made when they
+     * are read: change quantities through {@link #addItem}, not {@link StorageItem#setQuantity}.
+     * Iteration works on a copy of the inventory taken when the iterator is created.
+     */
     public Map<String, StorageItem> getInventory() { return inventory; }
 
+    /** Quantity carried of {@code sku}, or 0 if the vehicle has none. */
+    public int getQuantity(String sku) {
+        int id = SkuDictionary.shared().find(sku);
+        if (id < 0) return 0;
+        int q = quantityOf(id);
+        return q == QuantityTable.ABSENT ? 0 : q;
+    }
+
     // === Setters ===
     public void setBatteryLevelPct(int batteryLevelPct) {
         if (batteryLevelPct < 0 || batteryLevelPct > 100)
@@ -49,10 +78,82 @@ public class StorageVehicle {
     // === Inventory operations ===
     public void addItem(StorageItem item) {
         if (item == null) throw new IllegalArgumentException("Item cannot be null");
-        inventory.merge(item.getSku(), item, (a, b) -> {
-            a.setQuantity(a.getQuantity() + b.getQuantity());
-            return a;
-        });
+        int id = SkuDictionary.shared().idOf(item.getSku(), item.getName());
+        long stamp = inventoryLock.readLock(); // shared: only keeps the table from being swapped
+        try {
+            if (quantities.addExisting(id, item.getQuantity()) != QuantityTable.ABSENT) return;
+        } finally {
+            inventoryLock.unlockRead(stamp);
+        }
+        stamp = inventoryLock.writeLock();
+        try {
+            quantities.add(id, item.getQuantity());
+        } finally {
+            inventoryLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Takes {@code quantity} of {@code sku} out of the inventory if the vehicle carries at least
+     * that much. The line stays in the inventory, possibly at 0.
+     *
+     * @return false, leaving the inventory unchanged, if there is not enough
+     */
+    public boolean removeItem(String sku, int quantity) {
+        if (quantity < 0) throw new IllegalArgumentException("Quantity must be non-negative");
+        int id = SkuDictionary.shared().find(sku);
+        if (id < 0) return false;
+        long stamp = inventoryLock.readLock();
+        try {
+            return quantities.addExisting(id, -quantity) >= 0;
+        } finally {
+            inventoryLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Moves the inventory's quantity table into {@code arena}, or back onto the heap if it is
+     * null, freeing the block it occupied before. Readers see the inventory unchanged throughout.
+     */
+    public void moveInventoryTo(OffHeapArena arena) {
+        long stamp = inventoryLock.writeLock();
+        try {
+            QuantityTable from = quantities;
+            if (from.arena() == arena) return;
+            int[] ids = new int[from.size()];
+            int[] qs = new int[ids.length];
+            from.copyTo(ids, qs);
+            QuantityTable to = arena == null ? new IntQuantityMap() : new OffHeapQuantityMap(arena, ids.length);
+            for (int i = 0; i < ids.length; i++) to.add(ids[i], qs[i]);
+            quantities = to;
+            from.release();
+        } finally {
+            inventoryLock.unlockWrite(stamp);
+        }
+    }
+
+    private int quantityOf(int skuId) {
+        long stamp = inventoryLock.tryOptimisticRead();
+        int q = quantities.get(skuId);
+        if (inventoryLock.validate(stamp)) return q;
+        stamp = inventoryLock.readLock();
+        try {
+            return quantities.get(skuId);
+        } finally {
+            inventoryLock.unlockRead(stamp);
+        }
+    }
+
+    private int inventorySize() {
+        long stamp = inventoryLock.tryOptimisticRead();
+        int n = quantities.size();
+        if (inventoryLock.validate(stamp)) return n;
+        stamp = inventoryLock.readLock();
+        try {
+            return quantities.size();
+        } finally {
+            inventoryLock.unlockRead(stamp);
+        }
     }
 
     @Override
@@ -65,4 +166,75 @@ public class StorageVehicle {
                 (assignedStationId != null ? ", station='" + assignedStationId + "'" : "") +
                 '}';
     }
+
+    // === Inventory view ===
+    private final class InventoryView extends AbstractMap<String, StorageItem> {
+        @Override
+        public StorageItem get(Object key) {
+            if (!(key instanceof String sku)) return null;
+            SkuDictionary dict = SkuDictionary.shared();
+            int id = dict.find(sku);
+            if (id < 0) return null;
+            int q = quantityOf(id);
+            return q == QuantityTable.ABSENT ? null : new StorageItem(dict.sku(id), dict.name(id), q);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            if (!(key instanceof String sku)) return false;
+            int id = SkuDictionary.shared().find(sku);
+            return id >= 0 && quantityOf(id) != QuantityTable.ABSENT;
+        }
+
+        @Override
+        public int size() {
+            return inventorySize();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return inventorySize() == 0;
+        }
+
+        @Override
+        public Set<Map.Entry<String, StorageItem>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Map.Entry<String, StorageItem>> iterator() {
+                    int[] ids;
+                    int[] qs;
+                    long stamp = inventoryLock.readLock();
+                    try {
+                        ids = new int[quantities.size()];
+                        qs = new int[ids.length];
+                        quantities.copyTo(ids, qs);
+                    } finally {
+                        inventoryLock.unlockRead(stamp);
+                    }
+                    SkuDictionary dict = SkuDictionary.shared();
+                    return new Iterator<>() {
+                        private int i;
+
+                        @Override
+                        public boolean hasNext() {
+                            return i < ids.length;
+                        }
+
+                        @Override
+                        public Map.Entry<String, StorageItem> next() {
+                            if (i >= ids.length) throw new NoSuchElementException();
+                            int id = ids[i];
+                            int q = qs[i++];
+                            return new SimpleImmutableEntry<>(dict.sku(id), new StorageItem(dict.sku(id), dict.name(id), q));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return inventorySize();
+                }
+            };
+        }
+    }
 }
@@ -5,7 +5,7 @@ public class Task {
     public final String id;
     public final String description;
     public final String assigneeVehicleId; // nullable
-    public TaskStatus status = TaskStatus.PENDING;
+    public volatile TaskStatus status = TaskStatus.PENDING;
 
     public Task(String id, String description, String assigneeVehicleId) {
         this.id = id;
@@ -0,0 +1,440 @@
+package med.supply.system.repository;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A concurrent map whose entries may still be sitting in a {@link Source} (a section of a mapped
+ * snapshot) rather than in memory. An entry is read from the source and added to the backing
+ * map the first time its key is used, by a lookup or by a write; {@code size()} is answered
+ * without reading anything. Operations that need every entry (iteration, views, bulk operations)
+ * load whatever is left first, once. After that the source is dropped and the map behaves like
+ * its backing map.
+ * <p>
+ * Every entry loaded from the source is passed to the listener given at construction, so
+ * indexes over the map can take it in.
+ */
+class LazyMap<V> implements ConcurrentMap<String, V> {
+
+    /** Entries sorted by key, addressed by slot. */
+    interface Source<V> {
+        int size();
+
+        /** Slot of {@code key}, or -1. */
+        int find(String key);
+
+        String key(int slot);
+
+        V read(int slot);
+    }
+
+    /** Slots of a source not loaded yet, captured by {@link #pending()}. */
+    static final class Pending<V> {
+        final Source<V> source;
+        final int[] slots;
+
+        Pending(Source<V> source, int[] slots) {
+            this.source = source;
+            this.slots = slots;
+        }
+    }
+
+    final ConcurrentMap<String, V> live;
+    private final Consumer<V> onLoad;
+    private final ReentrantLock loading = new ReentrantLock();
+    private volatile Source<V> source; // null once everything is loaded
+    private BitSet loaded;             // slots already read; guarded by loading
+    private volatile int loadedCount;
+
+    LazyMap(ConcurrentMap<String, V> live, Consumer<V> onLoad) {
+        this.live = live;
+        this.onLoad = onLoad;
+    }
+
+    /** Serves the entries of {@code s} from now on; the map must still be empty. */
+    void attach(Source<V> s) {
+        loading.lock();
+        try {
+            if (!live.isEmpty() || source != null) throw new IllegalStateException("map already has entries");
+            if (s.size() == 0) return;
+            loaded = new BitSet(s.size());
+            loadedCount = 0;
+            source = s;
+        } finally {
+            loading.unlock();
+        }
+    }
+
+    /** Entries still only in the source. */
+    int unloaded() {
+        Source<V> s = source;
+        return s == null ? 0 : s.size() - loadedCount;
+    }
+
+    /** Reads {@code key} from the source unless it was read before; returns what is now mapped. */
+    private V load(Object key) {
+        Source<V> s = source;
+        if (s == null || !(key instanceof String k)) return null;
+        int slot = s.find(k);
+        if (slot < 0) return live.get(k);
+        loading.lock();
+        try {
+            if (source != s || loaded.get(slot)) return live.get(k);
+            V v = s.read(slot);
+            loaded.set(slot);
+            live.put(k, v);
+            onLoad.accept(v);
+            if (++loadedCount == s.size()) source = null;
+            return v;
+        } finally {
+            loading.unlock();
+        }
+    }
+
+    /** Reads every entry not read yet. */
+    void loadAll() {
+        if (source == null) return;
+        loading.lock();
+        try {
+            Source<V> s = source;
+            if (s == null) return;
+            for (int slot = loaded.nextClearBit(0); slot < s.size(); slot = loaded.nextClearBit(slot + 1)) {
+                V v = s.read(slot);
+                loaded.set(slot);
+                live.put(s.key(slot), v);
+                onLoad.accept(v);
+            }
+            loadedCount = s.size();
+            source = null;
+        } finally {
+            loading.unlock();
+        }
+    }
+
+    /** The source and its unread slots, or null if everything is in memory. */
+    Pending<V> pending() {
+        loading.lock();
+        try {
+            Source<V> s = source;
+            if (s == null) return null;
+            int[] slots = new int[s.size() - loadedCount];
+            int i = 0;
+            for (int slot = loaded.nextClearBit(0); slot < s.size(); slot = loaded.nextClearBit(slot + 1)) {
+                slots[i++] = slot;
+            }
+            return new Pending<>(s, slots);
+        } finally {
+            loading.unlock();
+        }
+    }
+
+    // -----------------------------------------------------------
+    // Keyed operations: load the key, then delegate
+    // -----------------------------------------------------------
+
+    @Override
+    public V get(Object key) {
+        V v = live.get(key);
+        return v != null || source == null ? v : load(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public V put(String key, V value) {
+        load(key);
+        return live.put(key, value);
+    }
+
+    @Override
+    public V remove(Object key) {
+        load(key);
+        return live.remove(key);
+    }
+
+    @Override
+    public V putIfAbsent(String key, V value) {
+        load(key);
+        return live.putIfAbsent(key, value);
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        load(key);
+        return live.remove(key, value);
+    }
+
+    @Override
+    public boolean replace(String key, V oldValue, V newValue) {
+        load(key);
+        return live.replace(key, oldValue, newValue);
+    }
+
+    @Override
+    public V replace(String key, V value) {
+        load(key);
+        return live.replace(key, value);
+    }
+
+    @Override
+    public V computeIfAbsent(String key, Function<? super String, ? extends V> f) {
+        load(key);
+        return live.computeIfAbsent(key, f);
+    }
+
+    @Override
+    public V computeIfPresent(String key, BiFunction<? super String, ? super V, ? extends V> f) {
+        load(key);
+        return live.computeIfPresent(key, f);
+    }
+
+    @Override
+    public V compute(String key, BiFunction<? super String, ? super V, ? extends V> f) {
+        load(key);
+        return live.compute(key, f);
+    }
+
+    @Override
+    public V merge(String key, V value, BiFunction<? super V, ? super V, ? extends V> f) {
+        load(key);
+        return live.merge(key, value, f);
+    }
+
+    @Override
+    public void putAll(Map<? extends String, ? extends V> m) {
+        for (Map.Entry<? extends String, ? extends V> e : m.entrySet()) put(e.getKey(), e.getValue());
+    }
+
+    @Override
+    public int size() {
+        return live.size() + unloaded();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // -----------------------------------------------------------
+    // Whole-map operations: load everything first
+    // -----------------------------------------------------------
+
+    @Override
+    public boolean containsValue(Object value) {
+        loadAll();
+        return live.containsValue(value);
+    }
+
+    @Override
+    public void clear() {
+        loading.lock();
+        try {
+            source = null;
+            live.clear();
+        } finally {
+            loading.unlock();
+        }
+    }
+
+    @Override
+    public Set<String> keySet() {
+        loadAll();
+        return live.keySet();
+    }
+
+    @Override
+    public Collection<V> values() {
+        loadAll();
+        return live.values();
+    }
+
+    @Override
+    public Set<Map.Entry<String, V>> entrySet() {
+        loadAll();
+        return live.entrySet();
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super V> action) {
+        loadAll();
+        live.forEach(action);
+    }
+
+    @Override
+    public void replaceAll(BiFunction<? super String, ? super V, ? extends V> f) {
+        loadAll();
+        live.replaceAll(f);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        loadAll();
+        return live.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        loadAll();
+        return live.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        loadAll();
+        return live.toString();
+    }
+
+    /** The sorted variant; every navigation loads the whole map first. */
+    static final class Navigable<V> extends LazyMap<V> implements ConcurrentNavigableMap<String, V> {
+        private final ConcurrentNavigableMap<String, V> sorted;
+
+        Navigable(ConcurrentNavigableMap<String, V> live, Consumer<V> onLoad) {
+            super(live, onLoad);
+            this.sorted = live;
+        }
+
+        private ConcurrentNavigableMap<String, V> all() {
+            loadAll();
+            return sorted;
+        }
+
+        @Override
+        public ConcurrentNavigableMap<String, V> subMap(String from, boolean fromInclusive, String to, boolean toInclusive) {
+            return all().subMap(from, fromInclusive, to, toInclusive);
+        }
+
+        @Override
+        public ConcurrentNavigableMap<String, V> headMap(String to, boolean inclusive) {
+            return all().headMap(to, inclusive);
+        }
+
+        @Override
+        public ConcurrentNavigableMap<String, V> tailMap(String from, boolean inclusive) {
+            return all().tailMap(from, inclusive);
+        }
+
+        @Override
+        public ConcurrentNavigableMap<String, V> subMap(String from, String to) {
+            return all().subMap(from, to);
+        }
+
+        @Override
+        public ConcurrentNavigableMap<String, V> headMap(String to) {
+            return all().headMap(to);
+        }
+
+        @Override
+        public ConcurrentNavigableMap<String, V> tailMap(String from) {
+            return all().tailMap(from);
+        }
+
+        @Override
+        public ConcurrentNavigableMap<String, V> descendingMap() {
+            return all().descendingMap();
+        }
+
+        @Override
+        public NavigableSet<String> navigableKeySet() {
+            return all().navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<String> keySet() {
+            return all().keySet();
+        }
+
+        @Override
+        public NavigableSet<String> descendingKeySet() {
+            return all().descendingKeySet();
+        }
+
+        @Override
+        public Map.Entry<String, V> lowerEntry(String key) {
+            return all().lowerEntry(key);
+        }
+
+        @Override
+        public String lowerKey(String key) {
+            return all().lowerKey(key);
+        }
+
+        @Override
+        public Map.Entry<String, V> floorEntry(String key) {
+            return all().floorEntry(key);
+        }
+
+        @Override
+        public String floorKey(String key) {
+            return all().floorKey(key);
+        }
+
+        @Override
+        public Map.Entry<String, V> ceilingEntry(String key) {
+            return all().ceilingEntry(key);
+        }
+
+        @Override
+        public String ceilingKey(String key) {
+            return all().ceilingKey(key);
+        }
+
+        @Override
+        public Map.Entry<String, V> higherEntry(String key) {
+            return all().higherEntry(key);
+        }
+
+        @Override
+        public String higherKey(String key) {
+            return all().higherKey(key);
+        }
+
+        @Override
+        public Map.Entry<String, V> firstEntry() {
+            return all().firstEntry();
+        }
+
+        @Override
+        public Map.Entry<String, V> lastEntry() {
+            return all().lastEntry();
+        }
+
+        @Override
+        public Map.Entry<String, V> pollFirstEntry() {
+            return all().pollFirstEntry();
+        }
+
+        @Override
+        public Map.Entry<String, V> pollLastEntry() {
+            return all().pollLastEntry();
+        }
+
+        @Override
+        public Comparator<? super String> comparator() {
+            return sorted.comparator();
+        }
+
+        @Override
+        public String firstKey() {
+            return all().firstKey();
+        }
+
+        @Override
+        public String lastKey() {
+            return all().lastKey();
+        }
+    }
+}
@@ -0,0 +1,538 @@
+package med.supply.system.repository;
+
+import med.supply.system.model.OffHeapArena;
+import med.supply.system.model.Task;
+import med.supply.system.model.TaskStatus;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Task map whose records live in an {@link OffHeapArena}: the heap holds only the sorted index
+ * from task id to block handle. Each record is one block with a fixed header, followed by the
+ * UTF-8 text:
+ * <pre>
+ *   0  int status ordinal
+ *   4  int assignee length in bytes, -1 for none
+ *   8  int description length in bytes, -1 for none
+ *  12  assignee bytes, then description bytes
+ * </pre>
+ * Values are decoded into a new {@link Task} on every read, so changing a returned task does not
+ * change the map; {@link #setStatus} updates a status in place. Conditional operations compare
+ * tasks by content. Writes to one id are serialised by a striped lock. Readers take no lock: a
+ * replaced record's block is freed under {@code reclaim}, and a read that overlapped a free is
+ * repeated under its read lock. Key views are read-only.
+ */
+final class OffHeapTaskMap extends AbstractMap<String, Task> implements ConcurrentNavigableMap<String, Task> {
+    private static final int HEADER = 12;
+    private static final TaskStatus[] STATUSES = TaskStatus.values();
+
+    /** State shared by a map and its views. */
+    private static final class Store {
+        final OffHeapArena arena;
+        final StampedLock reclaim = new StampedLock();
+        final ReentrantLock[] writers = new ReentrantLock[64];
+
+        Store(OffHeapArena arena) {
+            this.arena = arena;
+            for (int i = 0; i < writers.length; i++) writers[i] = new ReentrantLock();
+        }
+
+        ReentrantLock writer(Object key) {
+            int h = key.hashCode();
+            return writers[(h ^ (h >>> 16)) & (writers.length - 1)];
+        }
+    }
+
+    private final Store store;
+    private final ConcurrentNavigableMap<String, Long> ids;
+
+    OffHeapTaskMap(OffHeapArena arena) {
+        this(new Store(arena), new ConcurrentSkipListMap<>());
+    }
+
+    private OffHeapTaskMap(Store store, ConcurrentNavigableMap<String, Long> ids) {
+        this.store = store;
+        this.ids = ids;
+    }
+
+    /**
+     * Sets the status of task {@code id} in place.
+     *
+     * @return false if there is no such task
+     */
+    boolean setStatus(String id, TaskStatus status) {
+        ReentrantLock w = store.writer(id);
+        w.lock();
+        try {
+            Long block = ids.get(id);
+            if (block == null) return false;
+            store.arena.putInt(block, 0, status.ordinal());
+            return true;
+        } finally {
+            w.unlock();
+        }
+    }
+
+    // -----------------------------------------------------------
+    // Records
+    // -----------------------------------------------------------
+
+    private long encode(String key, Task t) {
+        if (t == null) throw new NullPointerException("task must not be null");
+        if (!key.equals(t.id)) throw new IllegalArgumentException("Task id " + t.id + " stored under " + key);
+        byte[] assignee = t.assigneeVehicleId == null ? null : t.assigneeVehicleId.getBytes(StandardCharsets.UTF_8);
+        byte[] desc = t.description == null ? null : t.description.getBytes(StandardCharsets.UTF_8);
+        int aLen = assignee == null ? 0 : assignee.length;
+        int dLen = desc == null ? 0 : desc.length;
+        OffHeapArena arena = store.arena;
+        long block = arena.allocate(HEADER + aLen + dLen);
+        arena.putInt(block, 0, t.status.ordinal());
+        arena.putInt(block, 4, assignee == null ? -1 : aLen);
+        arena.putInt(block, 8, desc == null ? -1 : dLen);
+        if (assignee != null) arena.putBytes(block, HEADER, assignee, 0, aLen);
+        if (desc != null) arena.putBytes(block, HEADER + aLen, desc, 0, dLen);
+        return block;
+    }
+
+    /** The task in {@code block}, or null if the block does not hold a well-formed record. */
+    private Task decode(String key, long block) {
+        OffHeapArena arena = store.arena;
+        int room = OffHeapArena.size(block) - HEADER;
+        int status = arena.getInt(block, 0);
+        int aLen = arena.getInt(block, 4);
+        int dLen = arena.getInt(block, 8);
+        if (status < 0 || status >= STATUSES.length || aLen < -1 || dLen < -1
+                || Math.max(aLen, 0) > room || Math.max(dLen, 0) > room - Math.max(aLen, 0)) {
+            return null;
+        }
+        String assignee = aLen < 0 ? null : text(block, HEADER, aLen);
+        String desc = dLen < 0 ? null : text(block, HEADER + Math.max(aLen, 0), dLen);
+        Task t = new Task(key, desc, assignee);
+        t.status = STATUSES[status];
+        return t;
+    }
+
+    private String text(long block, int pos, int len) {
+        byte[] b = new byte[len];
+        store.arena.getBytes(block, pos, b, 0, len);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    /** Reads the record of {@code key}; null if there is none. */
+    private Task read(String key) {
+        StampedLock reclaim = store.reclaim;
+        long stamp = reclaim.tryOptimisticRead(); // before the lookup, so a later free invalidates it
+        Long block = ids.get(key);
+        Task t = block == null ? null : decode(key, block);
+        if (!reclaim.validate(stamp)) {
+            stamp = reclaim.readLock();
+            try {
+                block = ids.get(key);
+                t = block == null ? null : decode(key, block);
+            } finally {
+                reclaim.unlockRead(stamp);
+            }
+        }
+        if (block != null && t == null) throw new IllegalStateException("Corrupt off-heap record for task " + key);
+        return t;
+    }
+
+    /** Frees a block no longer reachable from the index, once no reader can be inside it. */
+    private void free(long block) {
+        long stamp = store.reclaim.writeLock();
+        try {
+            store.arena.free(block);
+        } finally {
+            store.reclaim.unlockWrite(stamp);
+        }
+    }
+
+    private Map.Entry<String, Task> entry(Map.Entry<String, Long> e) {
+        if (e == null) return null;
+        Task t = read(e.getKey());
+        return t == null ? null : new SimpleImmutableEntry<>(e.getKey(), t);
+    }
+
+    private static boolean sameTask(Task a, Object o) {
+        return o instanceof Task b && a.id.equals(b.id) && a.status == b.status
+                && Objects.equals(a.description, b.description)
+                && Objects.equals(a.assigneeVehicleId, b.assigneeVehicleId);
+    }
+
+    // -----------------------------------------------------------
+    // Map
+    // -----------------------------------------------------------
+
+    @Override
+    public Task get(Object key) {
+        return read((String) key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return ids.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return ids.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return ids.isEmpty();
+    }
+
+    @Override
+    public Task put(String key, Task value) {
+        long block = encode(key, value);
+        ReentrantLock w = store.writer(key);
+        w.lock();
+        try {
+            Long old = ids.put(key, block);
+            return old == null ? null : release(key, old);
+        } finally {
+            w.unlock();
+        }
+    }
+
+    /** Decodes and frees a block just removed from the index. */
+    private Task release(String key, long block) {
+        Task t = decode(key, block); // no free can race: the caller holds the key's writer lock
+        free(block);
+        return t;
+    }
+
+    @Override
+    public Task putIfAbsent(String key, Task value) {
+        ReentrantLock w = store.writer(key);
+        w.lock();
+        try {
+            Long old = ids.get(key);
+            if (old != null) return decode(key, old);
+            ids.put(key, encode(key, value));
+            return null;
+        } finally {
+            w.unlock();
+        }
+    }
+
+    @Override
+    public Task remove(Object key) {
+        ReentrantLock w = store.writer(key);
+        w.lock();
+        try {
+            Long old = ids.remove(key);
+            return old == null ? null : release((String) key, old);
+        } finally {
+            w.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        ReentrantLock w = store.writer(key);
+        w.lock();
+        try {
+            Long old = ids.get(key);
+            if (old == null || !sameTask(decode((String) key, old), value)) return false;
+            ids.remove(key);
+            free(old);
+            return true;
+        } finally {
+            w.unlock();
+        }
+    }
+
+    @Override
+    public boolean replace(String key, Task oldValue, Task newValue) {
+        ReentrantLock w = store.writer(key);
+        w.lock();
+        try {
+            Long old = ids.get(key);
+            if (old == null || !sameTask(decode(key, old), oldValue)) return false;
+            ids.put(key, encode(key, newValue));
+            free(old);
+            return true;
+        } finally {
+            w.unlock();
+        }
+    }
+
+    @Override
+    public Task replace(String key, Task value) {
+        ReentrantLock w = store.writer(key);
+        w.lock();
+        try {
+            if (!ids.containsKey(key)) return null;
+            return release(key, ids.put(key, encode(key, value)));
+        } finally {
+            w.unlock();
+        }
+    }
+
+    @Override
+    public Task compute(String key, BiFunction<? super String, ? super Task, ? extends Task> f) {
+        ReentrantLock w = store.writer(key);
+        w.lock();
+        try {
+            Long old = ids.get(key);
+            Task next = f.apply(key, old == null ? null : decode(key, old));
+            if (next != null) ids.put(key, encode(key, next));
+            else if (old != null) ids.remove(key);
+            if (old != null) free(old);
+            return next;
+        } finally {
+            w.unlock();
+        }
+    }
+
+    @Override
+    public Task computeIfAbsent(String key, Function<? super String, ? extends Task> f) {
+        ReentrantLock w = store.writer(key);
+        w.lock();
+        try {
+            Long old = ids.get(key);
+            if (old != null) return decode(key, old);
+            Task next = f.apply(key);
+            if (next != null) ids.put(key, encode(key, next));
+            return next;
+        } finally {
+            w.unlock();
+        }
+    }
+
+    @Override
+    public Task computeIfPresent(String key, BiFunction<? super String, ? super Task, ? extends Task> f) {
+        ReentrantLock w = store.writer(key);
+        w.lock();
+        try {
+            if (!ids.containsKey(key)) return null;
+            return compute(key, f);
+        } finally {
+            w.unlock();
+        }
+    }
+
+    @Override
+    public Task merge(String key, Task value, BiFunction<? super Task, ? super Task, ? extends Task> f) {
+        return compute(key, (k, old) -> old == null ? value : f.apply(old, value));
+    }
+
+    @Override
+    public void clear() {
+        for (String key : ids.keySet()) remove(key);
+    }
+
+    @Override
+    public Set<Map.Entry<String, Task>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Map.Entry<String, Task>> iterator() {
+                Iterator<Map.Entry<String, Long>> it = ids.entrySet().iterator();
+                return new Iterator<>() {
+                    private Map.Entry<String, Task> next = advance();
+                    private String last;
+
+                    private Map.Entry<String, Task> advance() {
+                        while (it.hasNext()) {
+                            Map.Entry<String, Task> e = entry(it.next());
+                            if (e != null) return e; // skip entries removed meanwhile
+                        }
+                        return null;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next != null;
+                    }
+
+                    @Override
+                    public Map.Entry<String, Task> next() {
+                        if (next == null) throw new NoSuchElementException();
+                        Map.Entry<String, Task> e = next;
+                        last = e.getKey();
+                        next = advance();
+                        return e;
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (last == null) throw new IllegalStateException();
+                        OffHeapTaskMap.this.remove(last);
+                        last = null;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return ids.size();
+            }
+        };
+    }
+
+    // -----------------------------------------------------------
+    // Navigation: views share the store and write through
+    // -----------------------------------------------------------
+
+    @Override
+    public ConcurrentNavigableMap<String, Task> subMap(String from, boolean fromInclusive, String to, boolean toInclusive) {
+        return new OffHeapTaskMap(store, ids.subMap(from, fromInclusive, to, toInclusive));
+    }
+
+    @Override
+    public ConcurrentNavigableMap<String, Task> headMap(String to, boolean inclusive) {
+        return new OffHeapTaskMap(store, ids.headMap(to, inclusive));
+    }
+
+    @Override
+    public ConcurrentNavigableMap<String, Task> tailMap(String from, boolean inclusive) {
+        return new OffHeapTaskMap(store, ids.tailMap(from, inclusive));
+    }
+
+    @Override
+    public ConcurrentNavigableMap<String, Task> subMap(String from, String to) {
+        return subMap(from, true, to, false);
+    }
+
+    @Override
+    public ConcurrentNavigableMap<String, Task> headMap(String to) {
+        return headMap(to, false);
+    }
+
+    @Override
+    public ConcurrentNavigableMap<String, Task> tailMap(String from) {
+        return tailMap(from, true);
+    }
+
+    @Override
+    public ConcurrentNavigableMap<String, Task> descendingMap() {
+        return new OffHeapTaskMap(store, ids.descendingMap());
+    }
+
+    @Override
+    public NavigableSet<String> navigableKeySet() {
+        return Collections.unmodifiableNavigableSet(ids.navigableKeySet());
+    }
+
+    @Override
+    public NavigableSet<String> keySet() {
+        return navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<String> descendingKeySet() {
+        return Collections.unmodifiableNavigableSet(ids.descendingKeySet());
+    }
+
+    @Override
+    public Map.Entry<String, Task> lowerEntry(String key) {
+        return entry(ids.lowerEntry(key));
+    }
+
+    @Override
+    public String lowerKey(String key) {
+        return ids.lowerKey(key);
+    }
+
+    @Override
+    public Map.Entry<String, Task> floorEntry(String key) {
+        return entry(ids.floorEntry(key));
+    }
+
+    @Override
+    public String floorKey(String key) {
+        return ids.floorKey(key);
+    }
+
+    @Override
+    public Map.Entry<String, Task> ceilingEntry(String key) {
+        return entry(ids.ceilingEntry(key));
+    }
+
+    @Override
+    public String ceilingKey(String key) {
+        return ids.ceilingKey(key);
+    }
+
+    @Override
+    public Map.Entry<String, Task> higherEntry(String key) {
+        return entry(ids.higherEntry(key));
+    }
+
+    @Override
+    public String higherKey(String key) {
+        return ids.higherKey(key);
+    }
+
+    @Override
+    public Map.Entry<String, Task> firstEntry() {
+        return entry(ids.firstEntry());
+    }
+
+    @Override
+    public Map.Entry<String, Task> lastEntry() {
+        return entry(ids.lastEntry());
+    }
+
+    @Override
+    public Map.Entry<String, Task> pollFirstEntry() {
+        return poll(true);
+    }
+
+    @Override
+    public Map.Entry<String, Task> pollLastEntry() {
+        return poll(false);
+    }
+
+    private Map.Entry<String, Task> poll(boolean first) {
+        while (true) {
+            String key = first ? firstKeyOrNull() : lastKeyOrNull();
+            if (key == null) return null;
+            Task t = remove(key);
+            if (t != null) return new SimpleImmutableEntry<>(key, t);
+        }
+    }
+
+    private String firstKeyOrNull() {
+        Map.Entry<String, Long> e = ids.firstEntry();
+        return e == null ? null : e.getKey();
+    }
+
+    private String lastKeyOrNull() {
+        Map.Entry<String, Long> e = ids.lastEntry();
+        return e == null ? null : e.getKey();
+    }
+
+    @Override
+    public Comparator<? super String> comparator() {
+        return ids.comparator();
+    }
+
+    @Override
+    public String firstKey() {
+        return ids.firstKey();
+    }
+
+    @Override
+    public String lastKey() {
+        return ids.lastKey();
+    }
+}
@@ -0,0 +1,98 @@
+package med.supply.system.repository;
+
+import med.supply.system.model.*;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary field layouts shared by journal records and snapshots. Every entity starts with its
+ * id, so a snapshot can find an entity's key without decoding the rest.
+ */
+final class Records {
+    private Records() {
+    }
+
+    static void writeVehicle(DataOutputStream out, StorageVehicle v) throws IOException {
+        out.writeUTF(v.getId());
+        out.writeUTF(v.getName());
+        out.writeByte(v.getBatteryLevelPct());
+        writeNullable(out, v.getAssignedStationId());
+        List<StorageItem> items = new ArrayList<>(v.getInventory().values());
+        out.writeInt(items.size());
+        for (StorageItem it : items) writeItem(out, it);
+    }
+
+    static StorageVehicle readVehicle(DataInputStream in) throws IOException {
+        StorageVehicle v = new StorageVehicle(in.readUTF(), in.readUTF());
+        v.setBatteryLevelPct(in.readByte());
+        v.setAssignedStationId(readNullable(in));
+        for (int i = in.readInt(); i > 0; i--) v.addItem(readItem(in));
+        return v;
+    }
+
+    static void writeStation(DataOutputStream out, String id, String name, int loadPct) throws IOException {
+        out.writeUTF(id);
+        out.writeUTF(name);
+        out.writeByte(loadPct);
+    }
+
+    static ChargingStation readStation(DataInputStream in) throws IOException {
+        ChargingStation s = new ChargingStation(in.readUTF(), in.readUTF());
+        s.setCurrentLoadPct(in.readByte());
+        return s;
+    }
+
+    static void writeItem(DataOutputStream out, StorageItem it) throws IOException {
+        out.writeUTF(it.getSku());
+        out.writeUTF(it.getName());
+        out.writeInt(it.getQuantity());
+    }
+
+    static StorageItem readItem(DataInputStream in) throws IOException {
+        return new StorageItem(in.readUTF(), in.readUTF(), in.readInt());
+    }
+
+    static void writeTask(DataOutputStream out, Task t) throws IOException {
+        out.writeUTF(t.id);
+        writeNullable(out, t.description);
+        writeNullable(out, t.assigneeVehicleId);
+        out.writeByte(t.status.ordinal());
+    }
+
+    static Task readTask(DataInputStream in) throws IOException {
+        Task t = new Task(in.readUTF(), readNullable(in), readNullable(in));
+        t.status = readStatus(in);
+        return t;
+    }
+
+    static TaskStatus readStatus(DataInputStream in) throws IOException {
+        int ordinal = in.readByte();
+        TaskStatus[] all = TaskStatus.values();
+        if (ordinal < 0 || ordinal >= all.length) throw new IOException("bad task status " + ordinal);
+        return all[ordinal];
+    }
+
+    static void writeTransfer(DataOutputStream out, InventoryTransfer t) throws IOException {
+        out.writeUTF(t.getFromVehicleId());
+        out.writeUTF(t.getToVehicleId());
+        out.writeUTF(t.getSku());
+        out.writeInt(t.getQuantity());
+    }
+
+    static InventoryTransfer readTransfer(DataInputStream in) throws IOException {
+        return new InventoryTransfer(in.readUTF(), in.readUTF(), in.readUTF(), in.readInt());
+    }
+
+    static void writeNullable(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) out.writeUTF(s);
+    }
+
+    static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -1,13 +1,594 @@
-
 package med.supply.system.repository;
 
 import med.supply.system.model.*;
-import java.util.LinkedHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
 
+/**
+ * In-memory store shared by the services. The maps are concurrent, so lookups and
+ * iteration are safe from any thread (iteration is weakly consistent). Changes to a vehicle
+ * (its inventory, battery, station) happen under that vehicle's lock, taken from a fixed set
+ * of striped locks, so work on different vehicles runs in parallel while work on one vehicle
+ * is serialised. Use the compound operations below instead of get-then-modify sequences.
+ * An operation spanning several vehicles ({@link #transferAll}) takes their locks in ascending
+ * stripe order. Tasks are kept sorted by id.
+ * <p>
+ * Secondary indexes answer "tasks with status S", "tasks of vehicle V" and "vehicles at
+ * station S" in O(result size). They are kept current by {@link #putVehicle},
+ * {@link #addTask}, {@link #updateTaskStatus} and {@link #assignStation}, so vehicles, task
+ * statuses and station assignments must be changed through those methods, not by writing
+ * to the maps or the model setters directly.
+ * <p>
+ * When opened through {@link RepositoryStore} every change made by these operations is also
+ * written to its journal before it is applied; changes made inside {@link #withVehicle} or
+ * directly on the maps are not, and are lost on restart. The store also attaches its mapped
+ * snapshot, from which vehicles, stations and tasks are read only when first used: a lookup or
+ * change by id reads that one entity, while iterating a map or querying an index reads the rest
+ * of it first.
+ * <p>
+ * Given an {@link OffHeapArena}, the repository keeps inventory quantities and task records in
+ * it rather than on the heap: every vehicle it stores has its inventory moved there, and tasks
+ * are held as fixed-layout records decoded on each read. The operations are the same, but a
+ * {@link Task} taken from {@link #tasks} is then a copy, so its status must be changed through
+ * {@link #updateTaskStatus}.
+ */
 public class Repository {
-    public final Map<String, StorageVehicle> vehicles = new HashMap<>();
-    public final Map<String, ChargingStation> stations = new HashMap<>();
-    public final Map<String, Task> tasks = new LinkedHashMap<>();
+    static final int DEFAULT_STRIPES = 64;
+
+    private final LazyMap<StorageVehicle> vehicleMap = new LazyMap<>(new ConcurrentHashMap<>(), this::indexLoadedVehicle);
+    private final LazyMap<ChargingStation> stationMap = new LazyMap<>(new ConcurrentHashMap<>(), s -> { });
+    private final LazyMap.Navigable<Task> taskMap;
+
+    public final ConcurrentMap<String, StorageVehicle> vehicles = vehicleMap;
+    public final ConcurrentMap<String, ChargingStation> stations = stationMap;
+    public final ConcurrentNavigableMap<String, Task> tasks;
+
+    private final OffHeapArena arena;          // null: everything on the heap
+    private final OffHeapTaskMap offHeapTasks; // the task map's backing map when off-heap
+
+    private final ReentrantLock[] vehicleLocks;
+    private final ReentrantLock[] taskLocks; // always taken after a vehicle lock, never before
+    // held shared by every journaled change, exclusively while a snapshot is taken
+    private final ReentrantReadWriteLock checkpoint = new ReentrantReadWriteLock();
+    private volatile Journal journal;
+
+    // Secondary indexes: sets of ids, sorted so results come back in id order.
+    private final Map<TaskStatus, Set<String>> tasksByStatus = new EnumMap<>(TaskStatus.class);
+    private final Map<TaskStatus, AtomicInteger> taskCounts = new EnumMap<>(TaskStatus.class); // sizes of the sets above
+    private final ConcurrentMap<String, Set<String>> tasksByVehicle = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<String>> vehiclesByStation = new ConcurrentHashMap<>();
+
+    public Repository() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param stripes number of vehicle locks; rounded up to a power of two
+     */
+    public Repository(int stripes) {
+        this(stripes, null);
+    }
+
+    /**
+     * @param stripes number of vehicle locks; rounded up to a power of two
+     * @param arena   where inventory quantities and task records are kept, or null for the heap
+     */
+    public Repository(int stripes, OffHeapArena arena) {
+        if (stripes < 1) throw new IllegalArgumentException("stripes must be positive");
+        int n = Integer.highestOneBit(stripes);
+        if (n < stripes) n <<= 1;
+        vehicleLocks = new ReentrantLock[n];
+        taskLocks = new ReentrantLock[n];
+        for (int i = 0; i < n; i++) {
+            vehicleLocks[i] = new ReentrantLock();
+            taskLocks[i] = new ReentrantLock();
+        }
+        for (TaskStatus s : TaskStatus.values()) {
+            tasksByStatus.put(s, new ConcurrentSkipListSet<>());
+            taskCounts.put(s, new AtomicInteger());
+        }
+        this.arena = arena;
+        offHeapTasks = arena == null ? null : new OffHeapTaskMap(arena);
+        taskMap = new LazyMap.Navigable<>(arena == null ? new ConcurrentSkipListMap<>() : offHeapTasks, this::indexLoadedTask);
+        tasks = taskMap;
+    }
+
+    /** The arena holding inventories and tasks, or null if they are on the heap. */
+    public OffHeapArena arena() {
+        return arena;
+    }
+
+    /**
+     * Receives each change, in the order it is applied to the maps, before it is applied.
+     * A failure (unchecked) aborts the change.
+     */
+    interface Journal {
+        void vehicle(StorageVehicle v);                 // full state
+        void station(String id, String name, int loadPct);
+        void item(String vehicleId, StorageItem item);  // merged into the inventory
+        void items(String vehicleId, List<StorageItem> items);
+        void task(Task t);                              // full state
+        void taskStatus(String taskId, TaskStatus status);
+        void stationAssigned(String vehicleId, String stationId);
+        void transfers(List<InventoryTransfer> batch);  // applied as a whole
+    }
+
+    void attach(Journal journal) {
+        this.journal = journal;
+    }
+
+    /** Held exclusively, no journaled change is in progress. */
+    Lock checkpointLock() {
+        return checkpoint.writeLock();
+    }
+
+    /** Serves vehicles, stations and tasks from {@code snapshot} until they are first used. */
+    void serveFrom(SnapshotFile snapshot) {
+        vehicleMap.attach(snapshot.vehicles());
+        stationMap.attach(snapshot.stations());
+        taskMap.attach(snapshot.tasks());
+    }
+
+    LazyMap<StorageVehicle> vehicleMap() {
+        return vehicleMap;
+    }
+
+    LazyMap<ChargingStation> stationMap() {
+        return stationMap;
+    }
+
+    LazyMap<Task> taskMap() {
+        return taskMap;
+    }
+
+    /** Entities still only in the attached snapshot. */
+    int unloaded() {
+        return vehicleMap.unloaded() + stationMap.unloaded() + taskMap.unloaded();
+    }
+
+    private void indexLoadedVehicle(StorageVehicle v) {
+        if (arena != null) v.moveInventoryTo(arena);
+        index(vehiclesByStation, v.getAssignedStationId(), v.getId());
+    }
+
+    private void indexLoadedTask(Task t) {
+        indexStatus(t.status, t.id);
+        index(tasksByVehicle, t.assigneeVehicleId, t.id);
+    }
+
+    /** The lock guarding changes to vehicle {@code vehicleId}; shared with other vehicles of the same stripe. */
+    public ReentrantLock vehicleLock(String vehicleId) {
+        return vehicleLocks[stripe(vehicleId)];
+    }
+
+    private ReentrantLock taskLock(String taskId) {
+        return taskLocks[stripe(taskId)];
+    }
+
+    private int stripe(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (vehicleLocks.length - 1);
+    }
+
+    // -----------------------------------------------------------
+    // Compound operations
+    // -----------------------------------------------------------
+
+    /** Adds {@code v} unless a vehicle with its id exists; returns whether it was added. */
+    public boolean addVehicleIfAbsent(StorageVehicle v) {
+        ReentrantLock lock = vehicleLock(v.getId());
+        checkpoint.readLock().lock();
+        lock.lock();
+        try {
+            if (vehicles.containsKey(v.getId())) return false;
+            Journal j = journal;
+            if (j != null) j.vehicle(v);
+            if (arena != null) v.moveInventoryTo(arena);
+            vehicles.put(v.getId(), v);
+            index(vehiclesByStation, v.getAssignedStationId(), v.getId());
+            return true;
+        } finally {
+            lock.unlock();
+            checkpoint.readLock().unlock();
+        }
+    }
+
+    /** Adds {@code v}, replacing any vehicle with the same id; returns the replaced one or null. */
+    public StorageVehicle putVehicle(StorageVehicle v) {
+        ReentrantLock lock = vehicleLock(v.getId());
+        checkpoint.readLock().lock();
+        lock.lock();
+        try {
+            Journal j = journal;
+            if (j != null) j.vehicle(v);
+            if (arena != null) v.moveInventoryTo(arena);
+            StorageVehicle old = vehicles.put(v.getId(), v);
+            if (old != null) {
+                unindex(vehiclesByStation, old.getAssignedStationId(), old.getId());
+                if (old != v && arena != null) old.moveInventoryTo(null); // frees its block; callers may still hold it
+            }
+            index(vehiclesByStation, v.getAssignedStationId(), v.getId());
+            return old;
+        } finally {
+            lock.unlock();
+            checkpoint.readLock().unlock();
+        }
+    }
+
+    /** Adds {@code s} unless a station with its id exists; returns whether it was added. */
+    public boolean addStationIfAbsent(ChargingStation s) {
+        checkpoint.readLock().lock();
+        try {
+            boolean[] added = {false};
+            stations.computeIfAbsent(s.getId(), id -> {
+                journalStation(s.getId(), s.getName(), s.getCurrentLoadPct());
+                added[0] = true;
+                return s;
+            });
+            return added[0];
+        } finally {
+            checkpoint.readLock().unlock();
+        }
+    }
+
+    /** Adds {@code s}, replacing any station with the same id; returns the replaced one or null. */
+    public ChargingStation putStation(ChargingStation s) {
+        checkpoint.readLock().lock();
+        try {
+            ChargingStation[] old = {null};
+            stations.compute(s.getId(), (id, prev) -> {
+                journalStation(s.getId(), s.getName(), s.getCurrentLoadPct());
+                old[0] = prev;
+                return s;
+            });
+            return old[0];
+        } finally {
+            checkpoint.readLock().unlock();
+        }
+    }
+
+    /**
+     * Sets the current load of station {@code stationId}, atomically with respect to other
+     * station updates.
+     *
+     * @return the station, or null if there is no such station
+     * @throws IllegalArgumentException if pct is outside 0–100
+     */
+    public ChargingStation setStationLoad(String stationId, int pct) {
+        if (pct < 0 || pct > 100) throw new IllegalArgumentException("currentLoadPct must be between 0 and 100");
+        checkpoint.readLock().lock();
+        try {
+            return stations.computeIfPresent(stationId, (id, s) -> {
+                journalStation(id, s.getName(), pct);
+                s.setCurrentLoadPct(pct);
+                return s;
+            });
+        } finally {
+            checkpoint.readLock().unlock();
+        }
+    }
+
+    private void journalStation(String id, String name, int pct) {
+        Journal j = journal;
+        if (j != null) j.station(id, name, pct);
+    }
+
+    /**
+     * Adds {@code item} to the vehicle's inventory (merging quantities by SKU) under the
+     * vehicle's lock.
+     *
+     * @return the vehicle, or null if there is no vehicle {@code vehicleId}
+     */
+    public StorageVehicle addItemIfVehicleExists(String vehicleId, StorageItem item) {
+        if (item == null) throw new IllegalArgumentException("Item cannot be null");
+        checkpoint.readLock().lock();
+        try {
+            return withVehicle(vehicleId, v -> {
+                // validate before journaling: a record that cannot be applied must never be written
+                if ((long) v.getQuantity(item.getSku()) + item.getQuantity() > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Quantity overflow");
+                }
+                Journal j = journal;
+                if (j != null) j.item(vehicleId, item);
+                v.addItem(item);
+                return v;
+            });
+        } finally {
+            checkpoint.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds {@code items} to the vehicle's inventory in one step: the vehicle's lock is taken once
+     * and the change is journaled as one record. An item that would overflow its SKU's quantity
+     * is skipped; the others are still added.
+     *
+     * @return for each item whether it was added, or null if there is no vehicle {@code vehicleId}
+     */
+    public boolean[] addItemsIfVehicleExists(String vehicleId, List<StorageItem> items) {
+        for (StorageItem it : items) {
+            if (it == null) throw new IllegalArgumentException("Item cannot be null");
+        }
+        checkpoint.readLock().lock();
+        try {
+            return withVehicle(vehicleId, v -> {
+                boolean[] added = new boolean[items.size()];
+                List<StorageItem> accepted = new ArrayList<>(items.size());
+                Map<String, Long> projected = new HashMap<>();
+                for (int i = 0; i < items.size(); i++) {
+                    StorageItem it = items.get(i);
+                    long q = projected.computeIfAbsent(it.getSku(), sku -> (long) v.getQuantity(sku)) + it.getQuantity();
+                    if (q > Integer.MAX_VALUE) continue;
+                    projected.put(it.getSku(), q);
+                    added[i] = true;
+                    accepted.add(it);
+                }
+                if (!accepted.isEmpty()) {
+                    Journal j = journal;
+                    if (j != null) j.items(vehicleId, accepted);
+                    for (StorageItem it : accepted) v.addItem(it);
+                }
+                return added;
+            });
+        } finally {
+            checkpoint.readLock().unlock();
+        }
+    }
+
+    /**
+     * Moves {@code quantity} of {@code sku} from one vehicle's inventory to another's, atomically.
+     *
+     * @return false, changing nothing, if either vehicle is missing or the source has too little
+     */
+    public boolean transfer(String fromVehicleId, String toVehicleId, String sku, int quantity) {
+        return transferAll(List.of(new InventoryTransfer(fromVehicleId, toVehicleId, sku, quantity))) < 0;
+    }
+
+    /**
+     * Applies {@code batch} in order as one change: either every transfer is made or none is.
+     * The locks of all vehicles involved are taken together, in stripe order, so batches over
+     * overlapping vehicles cannot deadlock.
+     *
+     * @return -1 if the batch was applied, otherwise the index of the first transfer that cannot
+     *         be made because a vehicle is missing or its source would run short
+     */
+    public int transferAll(List<InventoryTransfer> batch) {
+        if (batch.isEmpty()) return -1;
+        int[] stripes = new int[2 * batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            stripes[2 * i] = stripe(batch.get(i).getFromVehicleId());
+            stripes[2 * i + 1] = stripe(batch.get(i).getToVehicleId());
+        }
+        stripes = Arrays.stream(stripes).sorted().distinct().toArray();
+        checkpoint.readLock().lock();
+        for (int s : stripes) vehicleLocks[s].lock();
+        try {
+            // check the whole batch against projected quantities before changing anything
+            Map<String, StorageVehicle> involved = new HashMap<>();
+            Map<String, Integer> projected = new HashMap<>(); // vehicle id + '\0' + SKU
+            for (int i = 0; i < batch.size(); i++) {
+                InventoryTransfer t = batch.get(i);
+                StorageVehicle from = involved.computeIfAbsent(t.getFromVehicleId(), vehicles::get);
+                StorageVehicle to = involved.computeIfAbsent(t.getToVehicleId(), vehicles::get);
+                if (from == null || to == null) return i;
+                String fromKey = from.getId() + '\0' + t.getSku();
+                String toKey = to.getId() + '\0' + t.getSku();
+                int have = projected.computeIfAbsent(fromKey, k -> from.getQuantity(t.getSku()));
+                int dest = projected.computeIfAbsent(toKey, k -> to.getQuantity(t.getSku()));
+                if (have < t.getQuantity() || dest > Integer.MAX_VALUE - t.getQuantity()) return i;
+                projected.put(fromKey, have - t.getQuantity());
+                projected.put(toKey, dest + t.getQuantity());
+            }
+            Journal j = journal;
+            if (j != null) j.transfers(batch);
+            SkuDictionary dict = SkuDictionary.shared();
+            for (InventoryTransfer t : batch) {
+                involved.get(t.getFromVehicleId()).removeItem(t.getSku(), t.getQuantity());
+                String name = dict.name(dict.find(t.getSku()));
+                involved.get(t.getToVehicleId()).addItem(new StorageItem(t.getSku(), name, t.getQuantity()));
+            }
+            return -1;
+        } finally {
+            for (int i = stripes.length - 1; i >= 0; i--) vehicleLocks[stripes[i]].unlock();
+            checkpoint.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs {@code action} on vehicle {@code vehicleId} while holding its lock. Changes made by
+     * {@code action} are not journaled, and it must not call the other operations of this class.
+     *
+     * @return what {@code action} returned, or null if there is no such vehicle
+     */
+    public <T> T withVehicle(String vehicleId, Function<StorageVehicle, T> action) {
+        ReentrantLock lock = vehicleLock(vehicleId);
+        lock.lock();
+        try {
+            StorageVehicle v = vehicles.get(vehicleId);
+            return v == null ? null : action.apply(v);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stores {@code t} if its assignee (when it has one) exists; the check and the insert
+     * happen under the assignee's lock.
+     *
+     * @return false if the assignee does not exist
+     */
+    public boolean addTask(Task t) {
+        checkpoint.readLock().lock();
+        try {
+            if (t.assigneeVehicleId == null) {
+                putTask(t);
+                return true;
+            }
+            Boolean added = withVehicle(t.assigneeVehicleId, v -> {
+                putTask(t);
+                return Boolean.TRUE;
+            });
+            return added != null;
+        } finally {
+            checkpoint.readLock().unlock();
+        }
+    }
+
+    private void putTask(Task t) {
+        ReentrantLock lock = taskLock(t.id);
+        lock.lock();
+        try {
+            Journal j = journal;
+            if (j != null) j.task(t);
+            Task old = tasks.put(t.id, t);
+            if (old != null) {
+                unindexStatus(old.status, old.id);
+                unindex(tasksByVehicle, old.assigneeVehicleId, old.id);
+            }
+            indexStatus(t.status, t.id);
+            index(tasksByVehicle, t.assigneeVehicleId, t.id);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the status of task {@code taskId} and moves it to the new status index.
+     *
+     * @return the task, or null if there is no such task
+     */
+    public Task updateTaskStatus(String taskId, TaskStatus status) {
+        if (status == null) throw new IllegalArgumentException("status must not be null");
+        ReentrantLock lock = taskLock(taskId);
+        checkpoint.readLock().lock();
+        lock.lock();
+        try {
+            Task t = tasks.get(taskId);
+            if (t == null) return null;
+            TaskStatus old = t.status;
+            if (old != status) {
+                Journal j = journal;
+                if (j != null) j.taskStatus(taskId, status);
+                indexStatus(status, taskId);
+                t.status = status;
+                if (offHeapTasks != null) offHeapTasks.setStatus(taskId, status);
+                unindexStatus(old, taskId);
+            }
+            return t;
+        } finally {
+            lock.unlock();
+            checkpoint.readLock().unlock();
+        }
+    }
+
+    /**
+     * Assigns vehicle {@code vehicleId} to station {@code stationId} (null = unassign) and
+     * updates the station index.
+     *
+     * @return false if the vehicle or the station does not exist
+     */
+    public boolean assignStation(String vehicleId, String stationId) {
+        checkpoint.readLock().lock();
+        try {
+            if (stationId != null && !stations.containsKey(stationId)) return false;
+            Boolean done = withVehicle(vehicleId, v -> {
+                Journal j = journal;
+                if (j != null) j.stationAssigned(vehicleId, stationId);
+                String old = v.getAssignedStationId();
+                unindex(vehiclesByStation, old, vehicleId);
+                v.setAssignedStationId(stationId);
+                index(vehiclesByStation, stationId, vehicleId);
+                return Boolean.TRUE;
+            });
+            return done != null;
+        } finally {
+            checkpoint.readLock().unlock();
+        }
+    }
+
+    // -----------------------------------------------------------
+    // Index lookups: O(result size), sorted by id
+    // -----------------------------------------------------------
+
+    public List<Task> tasksByStatus(TaskStatus status) {
+        taskMap.loadAll();
+        List<Task> out = new ArrayList<>();
+        for (String id : tasksByStatus.get(status)) {
+            Task t = tasks.get(id);
+            // skip a task caught between two status sets by a concurrent update
+            if (t != null && t.status == status) out.add(t);
+        }
+        return out;
+    }
+
+    public List<Task> tasksForVehicle(String vehicleId) {
+        taskMap.loadAll();
+        List<Task> out = new ArrayList<>();
+        Set<String> ids = tasksByVehicle.get(vehicleId);
+        if (ids == null) return out;
+        for (String id : ids) {
+            Task t = tasks.get(id);
+            if (t != null) out.add(t);
+        }
+        return out;
+    }
+
+    public List<StorageVehicle> vehiclesAtStation(String stationId) {
+        vehicleMap.loadAll();
+        List<StorageVehicle> out = new ArrayList<>();
+        Set<String> ids = vehiclesByStation.get(stationId);
+        if (ids == null) return out;
+        for (String id : ids) {
+            StorageVehicle v = vehicles.get(id);
+            if (v != null && stationId.equals(v.getAssignedStationId())) out.add(v);
+        }
+        return out;
+    }
+
+    public int countTasks(TaskStatus status) {
+        taskMap.loadAll();
+        return taskCounts.get(status).get();
+    }
+
+    private void indexStatus(TaskStatus status, String taskId) {
+        if (tasksByStatus.get(status).add(taskId)) taskCounts.get(status).incrementAndGet();
+    }
+
+    private void unindexStatus(TaskStatus status, String taskId) {
+        if (tasksByStatus.get(status).remove(taskId)) taskCounts.get(status).decrementAndGet();
+    }
+
+    // add and remove both run inside compute, so a removal that empties a set cannot drop a concurrent add
+    private static void index(ConcurrentMap<String, Set<String>> index, String key, String id) {
+        if (key == null) return;
+        index.compute(key, (k, ids) -> {
+            if (ids == null) ids = new ConcurrentSkipListSet<>();
+            ids.add(id);
+            return ids;
+        });
+    }
+
+    private static void unindex(ConcurrentMap<String, Set<String>> index, String key, String id) {
+        if (key == null) return;
+        index.computeIfPresent(key, (k, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
 }
@@ -0,0 +1,616 @@
+package med.supply.system.repository;
+
+import med.supply.system.model.*;
+import med.supply.system.util.MetadataAppender.Durability;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps a {@link Repository} on disk as a snapshot plus a write-ahead journal.
+ * <p>
+ * Every change made through the repository's operations is appended to the journal as one
+ * binary record ({@code length, CRC-32, opcode, fields}) before it is applied. Every
+ * {@code snapshotEvery} records, a background thread writes the whole repository to
+ * {@code snapshot-<n>.bin} and starts journal segment {@code wal-<n>.log}; older snapshots and
+ * segments are then deleted, so recovery never replays more than one snapshot interval.
+ * <p>
+ * Opening the store memory-maps the latest snapshot ({@link SnapshotFile}) without decoding it:
+ * entities are read from the mapping the first time the repository uses them, so startup time
+ * does not grow with the fleet. The journal segments written after the snapshot are then
+ * replayed, reading just the entities they touch. A record cut short by a crash at the end of
+ * the last segment is dropped and the segment truncated; damage anywhere else in the journal
+ * fails the open, and a damaged snapshot record fails the first access to it. An intact record
+ * the repository rejects on replay is reported and skipped. The next snapshot copies records
+ * nobody has used straight from the mapping.
+ * <p>
+ * How often the journal is forced to disk is chosen with {@link Durability}: {@code PER_BATCH}
+ * forces every record before the change is applied (no acknowledged change is ever lost),
+ * {@code PERIODIC} forces at most once per sync period (a crash loses at most that period),
+ * {@code NONE} leaves it to the OS.
+ */
+public class RepositoryStore implements AutoCloseable {
+    public static final String SNAPSHOT_PREFIX = "snapshot-";
+    public static final String SNAPSHOT_SUFFIX = ".bin";
+    private static final String LEGACY_SNAPSHOT = "snapshot.bin";
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int HEADER = 8; // length + CRC-32
+
+    private static final byte OP_VEHICLE = 1;
+    private static final byte OP_STATION = 2;
+    private static final byte OP_ITEM = 3;
+    private static final byte OP_TASK = 4;
+    private static final byte OP_TASK_STATUS = 5;
+    private static final byte OP_ASSIGN = 6;
+    private static final byte OP_TRANSFERS = 7;
+    private static final byte OP_ITEMS = 8;
+
+    private final Path dir;
+    private final Repository repo;
+    private final Durability durability;
+    private final long snapshotEvery;
+    private final long replayed;
+    private final ScheduledExecutorService background;
+    private final AtomicBoolean snapshotQueued = new AtomicBoolean();
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+
+    // guarded by walLock
+    private final ReentrantLock walLock = new ReentrantLock();
+    private final RecordBuffer record = new RecordBuffer();
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER);
+    private final CRC32 crc = new CRC32();
+    private FileChannel wal;
+    private long segment;
+    private long sinceSnapshot;
+    private volatile boolean dirty;
+
+    private RepositoryStore(Path dir, Repository repo, Durability durability, long snapshotEvery, long replayed) {
+        this.dir = dir;
+        this.repo = repo;
+        this.durability = durability;
+        this.snapshotEvery = snapshotEvery;
+        this.replayed = replayed;
+        this.sinceSnapshot = replayed;
+        this.background = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "repository-store");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Recovers the repository kept in {@code dir} (empty if there is none yet) and starts
+     * journaling its changes.
+     *
+     * @param syncMillis    sync period for {@link Durability#PERIODIC}; ignored otherwise
+     * @param snapshotEvery journal records between automatic snapshots
+     */
+    public static RepositoryStore open(Path dir, Durability durability, long syncMillis, long snapshotEvery)
+            throws IOException {
+        return open(dir, durability, syncMillis, snapshotEvery, null);
+    }
+
+    /**
+     * As {@link #open(Path, Durability, long, long)}, keeping inventories and tasks in
+     * {@code arena} (see {@link Repository}); null keeps them on the heap.
+     */
+    public static RepositoryStore open(Path dir, Durability durability, long syncMillis, long snapshotEvery,
+                                       OffHeapArena arena) throws IOException {
+        if (durability == null) throw new IllegalArgumentException("durability must not be null");
+        if (durability == Durability.PERIODIC && syncMillis < 1) {
+            throw new IllegalArgumentException("syncMillis must be positive");
+        }
+        if (snapshotEvery < 1) throw new IllegalArgumentException("snapshotEvery must be positive");
+        Files.createDirectories(dir);
+        try (Stream<Path> s = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) s::iterator) {
+                if (p.getFileName().toString().endsWith(".tmp")) Files.delete(p);
+            }
+        }
+
+        Repository repo = new Repository(Repository.DEFAULT_STRIPES, arena);
+        long first = 0;
+        List<Long> snapshots = numbered(dir, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        Path legacy = dir.resolve(LEGACY_SNAPSHOT);
+        if (!snapshots.isEmpty()) {
+            SnapshotFile snapshot = SnapshotFile.open(snapshotPath(dir, snapshots.get(snapshots.size() - 1)));
+            repo.serveFrom(snapshot);
+            first = snapshot.nextSegment();
+        } else if (Files.exists(legacy)) {
+            first = SnapshotFile.loadLegacy(legacy, repo);
+        }
+        List<Long> segments = numbered(dir, SEGMENT_PREFIX, SEGMENT_SUFFIX);
+        long current = first;
+        long replayed = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            long n = segments.get(i);
+            if (n < first) {
+                // already in the snapshot; left behind by an interrupted clean-up
+                Files.delete(segmentPath(dir, n));
+                continue;
+            }
+            replayed += replay(segmentPath(dir, n), repo, i == segments.size() - 1);
+            current = n;
+        }
+
+        RepositoryStore store = new RepositoryStore(dir, repo, durability, snapshotEvery, replayed);
+        store.openSegment(current);
+        repo.attach(store.new Writer());
+        if (durability == Durability.PERIODIC) {
+            store.background.scheduleWithFixedDelay(store::syncQuietly, syncMillis, syncMillis, TimeUnit.MILLISECONDS);
+        }
+        return store;
+    }
+
+    public Repository repository() {
+        return repo;
+    }
+
+    /** Journal records replayed on top of the snapshot when the store was opened. */
+    public long replayedRecords() {
+        return replayed;
+    }
+
+    /** Vehicles, stations and tasks not read from the mapped snapshot yet. */
+    public int unloadedEntities() {
+        return repo.unloaded();
+    }
+
+    /** Journal records written since the last snapshot. */
+    public long journalRecords() {
+        walLock.lock();
+        try {
+            return sinceSnapshot;
+        } finally {
+            walLock.unlock();
+        }
+    }
+
+    /** Forces journal records written so far to disk. */
+    public void sync() throws IOException {
+        FileChannel ch;
+        walLock.lock();
+        try {
+            if (!dirty || wal == null) return;
+            dirty = false;
+            ch = wal;
+        } finally {
+            walLock.unlock();
+        }
+        ch.force(false); // outside the lock so writers are not held up by the disk
+    }
+
+    /**
+     * Writes the whole repository to a new snapshot and starts a new journal segment.
+     * Changes are paused only while the entities read so far are encoded; entities still in
+     * the mapped snapshot are copied from it afterwards, without being decoded.
+     *
+     * @return false if nothing changed since the last snapshot
+     */
+    public boolean snapshot() throws IOException {
+        snapshotLock.lock();
+        try {
+            long next;
+            Captured<StorageVehicle> vehicles;
+            Captured<ChargingStation> stations;
+            Captured<Task> tasks;
+            Lock quiet = repo.checkpointLock();
+            quiet.lock();
+            try {
+                walLock.lock();
+                try {
+                    if (wal == null) throw new IOException("Repository store is closed");
+                    if (sinceSnapshot == 0 && Files.exists(snapshotPath(dir, segment))) return false;
+                    next = segment + 1;
+                    vehicles = capture(repo.vehicleMap(), StorageVehicle::getId, Records::writeVehicle);
+                    stations = capture(repo.stationMap(), ChargingStation::getId,
+                            (out, s) -> Records.writeStation(out, s.getId(), s.getName(), s.getCurrentLoadPct()));
+                    tasks = capture(repo.taskMap(), t -> t.id, Records::writeTask);
+                    openSegment(next);
+                    sinceSnapshot = 0;
+                } finally {
+                    walLock.unlock();
+                }
+            } finally {
+                quiet.unlock();
+            }
+
+            Path target = snapshotPath(dir, next);
+            Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+            SnapshotFile.write(tmp, next, vehicles.entries(), stations.entries(), tasks.entries());
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            for (long n : numbered(dir, SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+                if (n < next) Files.deleteIfExists(segmentPath(dir, n));
+            }
+            for (long n : numbered(dir, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+                if (n < next) deleteIfUnmapped(snapshotPath(dir, n));
+            }
+            deleteIfUnmapped(dir.resolve(LEGACY_SNAPSHOT));
+            return true;
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    /** Takes a final snapshot, so the next start needs no replay, and closes the journal. */
+    @Override
+    public void close() throws IOException {
+        walLock.lock();
+        try {
+            if (wal == null) return;
+        } finally {
+            walLock.unlock();
+        }
+        background.shutdown();
+        try {
+            background.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            snapshot();
+        } finally {
+            repo.attach(null);
+            walLock.lock();
+            try {
+                if (wal != null) {
+                    wal.force(false);
+                    wal.close();
+                    wal = null;
+                }
+            } finally {
+                walLock.unlock();
+            }
+        }
+    }
+
+    // -----------------------------------------------------------
+    // Journal
+    // -----------------------------------------------------------
+
+    private interface Encoder {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private interface FieldWriter<V> {
+        void write(DataOutputStream out, V v) throws IOException;
+    }
+
+    /** One map as captured for a snapshot: the entities in memory, encoded, and the unread slots. */
+    private static final class Captured<V> {
+        final List<SnapshotFile.Entry> encoded;
+        final LazyMap.Pending<V> pending;
+
+        Captured(List<SnapshotFile.Entry> encoded, LazyMap.Pending<V> pending) {
+            this.encoded = encoded;
+            this.pending = pending;
+        }
+
+        /** Sorted by key; an entity read while it was captured appears once. */
+        List<SnapshotFile.Entry> entries() {
+            List<SnapshotFile.Entry> all = new ArrayList<>(encoded);
+            if (pending != null) {
+                for (int slot : pending.slots) all.add(SnapshotFile.Entry.copied(pending.source, slot));
+            }
+            all.sort(null); // stable: an encoded entry stays ahead of its copied twin
+            List<SnapshotFile.Entry> out = new ArrayList<>(all.size());
+            for (SnapshotFile.Entry e : all) {
+                if (out.isEmpty() || !out.get(out.size() - 1).key.equals(e.key)) out.add(e);
+            }
+            return out;
+        }
+    }
+
+    /** Holds the checkpoint lock. Unread slots are taken before the entities in memory. */
+    private static <V> Captured<V> capture(LazyMap<V> map, Function<V, String> key, FieldWriter<V> writer)
+            throws IOException {
+        LazyMap.Pending<V> pending = map.pending();
+        List<SnapshotFile.Entry> encoded = new ArrayList<>();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (V v : map.live.values()) {
+            bytes.reset();
+            writer.write(out, v);
+            encoded.add(SnapshotFile.Entry.encoded(key.apply(v), bytes.toByteArray()));
+        }
+        return new Captured<>(encoded, pending);
+    }
+
+    /** Deletes {@code file} if present; a snapshot still mapped cannot be deleted on some systems and is left for the next start. */
+    private static void deleteIfUnmapped(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+        }
+    }
+
+    private final class Writer implements Repository.Journal {
+        @Override
+        public void vehicle(StorageVehicle v) {
+            append(out -> {
+                out.writeByte(OP_VEHICLE);
+                Records.writeVehicle(out, v);
+            });
+        }
+
+        @Override
+        public void station(String id, String name, int loadPct) {
+            append(out -> {
+                out.writeByte(OP_STATION);
+                Records.writeStation(out, id, name, loadPct);
+            });
+        }
+
+        @Override
+        public void item(String vehicleId, StorageItem item) {
+            append(out -> {
+                out.writeByte(OP_ITEM);
+                out.writeUTF(vehicleId);
+                Records.writeItem(out, item);
+            });
+        }
+
+        @Override
+        public void items(String vehicleId, List<StorageItem> items) {
+            append(out -> {
+                out.writeByte(OP_ITEMS);
+                out.writeUTF(vehicleId);
+                out.writeInt(items.size());
+                for (StorageItem it : items) Records.writeItem(out, it);
+            });
+        }
+
+        @Override
+        public void task(Task t) {
+            append(out -> {
+                out.writeByte(OP_TASK);
+                Records.writeTask(out, t);
+            });
+        }
+
+        @Override
+        public void taskStatus(String taskId, TaskStatus status) {
+            append(out -> {
+                out.writeByte(OP_TASK_STATUS);
+                out.writeUTF(taskId);
+                out.writeByte(status.ordinal());
+            });
+        }
+
+        @Override
+        public void stationAssigned(String vehicleId, String stationId) {
+            append(out -> {
+                out.writeByte(OP_ASSIGN);
+                out.writeUTF(vehicleId);
+                Records.writeNullable(out, stationId);
+            });
+        }
+
+        @Override
+        public void transfers(List<InventoryTransfer> batch) {
+            append(out -> {
+                out.writeByte(OP_TRANSFERS);
+                out.writeInt(batch.size());
+                for (InventoryTransfer t : batch) Records.writeTransfer(out, t);
+            });
+        }
+    }
+
+    private void append(Encoder body) {
+        boolean snapshotDue;
+        walLock.lock();
+        try {
+            if (wal == null) throw new IllegalStateException("Repository store is closed");
+            record.reset();
+            body.write(recordOut);
+            crc.reset();
+            crc.update(record.array(), 0, record.size());
+            header.clear();
+            header.putInt(record.size()).putInt((int) crc.getValue()).flip();
+            ByteBuffer[] bufs = {header, record.view()};
+            long start = wal.position();
+            try {
+                while (bufs[1].hasRemaining()) wal.write(bufs);
+                if (durability == Durability.PER_BATCH) wal.force(false);
+                else dirty = true;
+            } catch (IOException e) {
+                // drop the partial record so later ones are not hidden behind it
+                try {
+                    wal.truncate(start);
+                    wal.position(start);
+                } catch (IOException ignored) {
+                }
+                throw e;
+            }
+            snapshotDue = ++sinceSnapshot >= snapshotEvery;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write repository journal", e);
+        } finally {
+            walLock.unlock();
+        }
+        if (snapshotDue && snapshotQueued.compareAndSet(false, true)) {
+            try {
+                background.execute(() -> {
+                    try {
+                        snapshot();
+                    } catch (IOException | RuntimeException e) {
+                        System.err.println("Repository snapshot error: " + e.getMessage());
+                    } finally {
+                        snapshotQueued.set(false);
+                    }
+                });
+            } catch (RuntimeException e) { // closing
+                snapshotQueued.set(false);
+            }
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException e) {
+            System.err.println("Repository journal sync error: " + e.getMessage());
+        }
+    }
+
+    /** Makes segment {@code n} the one appended to; the previous one is forced and closed. Holds walLock. */
+    private void openSegment(long n) throws IOException {
+        FileChannel ch = FileChannel.open(segmentPath(dir, n), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        ch.position(ch.size());
+        if (wal != null) {
+            wal.force(false);
+            wal.close();
+        }
+        wal = ch;
+        segment = n;
+        dirty = false;
+    }
+
+    private static Path segmentPath(Path dir, long n) {
+        return dir.resolve(String.format("%s%012d%s", SEGMENT_PREFIX, n, SEGMENT_SUFFIX));
+    }
+
+    private static Path snapshotPath(Path dir, long n) {
+        return dir.resolve(String.format("%s%012d%s", SNAPSHOT_PREFIX, n, SNAPSHOT_SUFFIX));
+    }
+
+    /** Numbers of the {@code <prefix><n><suffix>} files in {@code dir}, ascending. */
+    private static List<Long> numbered(Path dir, String prefix, String suffix) throws IOException {
+        List<Long> out = new ArrayList<>();
+        try (Stream<Path> s = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) s::iterator) {
+                String name = p.getFileName().toString();
+                if (!name.startsWith(prefix) || !name.endsWith(suffix)) continue;
+                try {
+                    out.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        out.sort(null);
+        return out;
+    }
+
+    /**
+     * Applies every intact record of {@code segment} to {@code repo}. A torn or damaged record
+     * ends the last segment (which is truncated there) and is an error in any other.
+     *
+     * @return number of records applied
+     */
+    private static long replay(Path segment, Repository repo, boolean last) throws IOException {
+        long size = Files.size(segment);
+        long offset = 0;
+        long applied = 0;
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment), 64 * 1024))) {
+            while (offset < size) {
+                if (size - offset < HEADER) break;
+                int len = in.readInt();
+                int expected = in.readInt();
+                if (len < 1 || len > size - offset - HEADER) break;
+                byte[] body = new byte[len];
+                in.readFully(body);
+                crc.reset();
+                crc.update(body);
+                if ((int) crc.getValue() != expected) break;
+                apply(body, repo, segment, offset);
+                offset += HEADER + len;
+                applied++;
+            }
+        }
+        if (offset < size) {
+            if (!last) throw new IOException("Corrupt repository journal " + segment + " at offset " + offset);
+            System.err.println("Repository journal: dropped " + (size - offset) + " bytes of an incomplete record at the end of " + segment);
+            try (FileChannel ch = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                ch.truncate(offset);
+                ch.force(false);
+            }
+        }
+        return applied;
+    }
+
+    private static void apply(byte[] body, Repository repo, Path segment, long offset) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        boolean ok;
+        try {
+            byte op = in.readByte();
+            switch (op) {
+                case OP_VEHICLE -> {
+                    repo.putVehicle(Records.readVehicle(in));
+                    ok = true;
+                }
+                case OP_STATION -> {
+                    repo.putStation(Records.readStation(in));
+                    ok = true;
+                }
+                case OP_ITEM -> ok = repo.addItemIfVehicleExists(in.readUTF(), Records.readItem(in)) != null;
+                case OP_ITEMS -> {
+                    String vehicleId = in.readUTF();
+                    List<StorageItem> items = new ArrayList<>();
+                    for (int i = in.readInt(); i > 0; i--) items.add(Records.readItem(in));
+                    ok = repo.addItemsIfVehicleExists(vehicleId, items) != null;
+                }
+                case OP_TASK -> ok = repo.addTask(Records.readTask(in));
+                case OP_TASK_STATUS -> ok = repo.updateTaskStatus(in.readUTF(), Records.readStatus(in)) != null;
+                case OP_ASSIGN -> ok = repo.assignStation(in.readUTF(), Records.readNullable(in));
+                case OP_TRANSFERS -> {
+                    List<InventoryTransfer> batch = new ArrayList<>();
+                    for (int i = in.readInt(); i > 0; i--) batch.add(Records.readTransfer(in));
+                    ok = repo.transferAll(batch) < 0;
+                }
+                default -> throw new IOException("unknown opcode " + op);
+            }
+        } catch (EOFException e) {
+            throw new IOException("Bad record in " + segment + " at offset " + offset + ": " + e.getMessage(), e);
+        } catch (IllegalArgumentException e) {
+            // a well-formed change the repository rejects: skip it rather than refuse to open
+            System.err.println("Repository journal: skipped record in " + segment + " at offset " + offset
+                    + ": " + e.getMessage());
+            return;
+        }
+        if (!ok) {
+            System.err.println("Repository journal: skipped record in " + segment + " at offset " + offset
+                    + " that refers to a missing vehicle, station or task");
+        }
+    }
+
+    /** A reusable record buffer whose content can be written without copying. */
+    private static final class RecordBuffer extends ByteArrayOutputStream {
+        RecordBuffer() {
+            super(256);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+
+        ByteBuffer view() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+}
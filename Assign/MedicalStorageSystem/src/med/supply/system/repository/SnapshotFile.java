@@ -0,0 +1,337 @@
+package med.supply.system.repository;
+
+import med.supply.system.model.ChargingStation;
+import med.supply.system.model.StorageVehicle;
+import med.supply.system.model.Task;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * The on-disk snapshot of a {@link Repository}, laid out to be memory-mapped and read lazily.
+ * <pre>
+ *   header   magic, first journal segment to replay, per section (vehicles, stations, tasks)
+ *            its entry count and index offset, CRC-32 of the header
+ *   indexes  per section, one int offset per entry, sorted by entity id
+ *   records  per entry: length, CRC-32, the entity as written by {@link Records}
+ * </pre>
+ * Opening maps the file and checks only the header, so it takes the same time whatever the
+ * fleet size; each record's checksum is verified when the record is read. Offsets are ints,
+ * so a snapshot is limited to 2 GB.
+ */
+final class SnapshotFile {
+    static final int MAGIC = 0x4D535332; // "MSS2"
+    private static final int SECTIONS = 3;
+    private static final int HEADER = 4 + 8 + SECTIONS * 8 + 4;
+    private static final int RECORD_HEADER = 8;
+
+    private interface Decoder<V> {
+        V read(DataInputStream in) throws IOException;
+    }
+
+    private final Path file;
+    private final MappedByteBuffer map;
+    private final long nextSegment;
+    private final Section<StorageVehicle> vehicles;
+    private final Section<ChargingStation> stations;
+    private final Section<Task> tasks;
+
+    private SnapshotFile(Path file, MappedByteBuffer map) throws IOException {
+        this.file = file;
+        this.map = map;
+        if (map.capacity() < HEADER || map.getInt(0) != MAGIC) throw new IOException("Not a repository snapshot: " + file);
+        byte[] header = new byte[HEADER - 4];
+        map.get(0, header);
+        CRC32 crc = new CRC32();
+        crc.update(header);
+        if ((int) crc.getValue() != map.getInt(HEADER - 4)) {
+            throw new IOException("Corrupt repository snapshot " + file + " (header checksum mismatch)");
+        }
+        this.nextSegment = map.getLong(4);
+        this.vehicles = section(0, Records::readVehicle);
+        this.stations = section(1, Records::readStation);
+        this.tasks = section(2, Records::readTask);
+    }
+
+    private <V> Section<V> section(int n, Decoder<V> decoder) throws IOException {
+        int count = map.getInt(12 + n * 8);
+        int index = map.getInt(16 + n * 8);
+        if (count < 0 || index < HEADER || (long) index + 4L * count > map.capacity()) {
+            throw new IOException("Corrupt repository snapshot " + file + " (bad section " + n + ")");
+        }
+        return new Section<>(count, index, decoder);
+    }
+
+    /** Maps {@code file} read-only; the mapping stays valid after the file is replaced or deleted. */
+    static SnapshotFile open(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (ch.size() > Integer.MAX_VALUE) throw new IOException("Repository snapshot over 2 GB: " + file);
+            return new SnapshotFile(file, ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+        }
+    }
+
+    long nextSegment() {
+        return nextSegment;
+    }
+
+    Section<StorageVehicle> vehicles() {
+        return vehicles;
+    }
+
+    Section<ChargingStation> stations() {
+        return stations;
+    }
+
+    Section<Task> tasks() {
+        return tasks;
+    }
+
+    /** One section of the mapped file; safe for concurrent use (absolute reads only). */
+    final class Section<V> implements LazyMap.Source<V> {
+        private final int count;
+        private final int index;
+        private final Decoder<V> decoder;
+
+        Section(int count, int index, Decoder<V> decoder) {
+            this.count = count;
+            this.index = index;
+            this.decoder = decoder;
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+
+        @Override
+        public int find(String key) {
+            int lo = 0;
+            int hi = count - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int c = key(mid).compareTo(key);
+                if (c < 0) lo = mid + 1;
+                else if (c > 0) hi = mid - 1;
+                else return mid;
+            }
+            return -1;
+        }
+
+        @Override
+        public String key(int slot) {
+            int payload = recordAt(slot) + RECORD_HEADER;
+            int len = map.getShort(payload) & 0xFFFF;
+            byte[] utf = new byte[2 + len];
+            check(payload + utf.length <= map.capacity(), slot);
+            map.get(payload, utf);
+            try {
+                return new DataInputStream(new ByteArrayInputStream(utf)).readUTF();
+            } catch (IOException e) {
+                throw corrupt(slot, e);
+            }
+        }
+
+        @Override
+        public V read(int slot) {
+            byte[] body = payload(slot);
+            try {
+                return decoder.read(new DataInputStream(new ByteArrayInputStream(body)));
+            } catch (IOException | IllegalArgumentException e) {
+                throw corrupt(slot, e);
+            }
+        }
+
+        /** The whole record at {@code slot} (header included), checksum verified. */
+        byte[] raw(int slot) {
+            int at = recordAt(slot);
+            int len = map.getInt(at);
+            byte[] out = new byte[RECORD_HEADER + len];
+            map.get(at, out);
+            verify(slot, out, RECORD_HEADER, len, map.getInt(at + 4));
+            return out;
+        }
+
+        int recordLength(int slot) {
+            return RECORD_HEADER + map.getInt(recordAt(slot));
+        }
+
+        private byte[] payload(int slot) {
+            int at = recordAt(slot);
+            int len = map.getInt(at);
+            byte[] body = new byte[len];
+            map.get(at + RECORD_HEADER, body);
+            verify(slot, body, 0, len, map.getInt(at + 4));
+            return body;
+        }
+
+        private int recordAt(int slot) {
+            if (slot < 0 || slot >= count) throw new IndexOutOfBoundsException("slot " + slot);
+            int at = map.getInt(index + 4 * slot);
+            check(at >= HEADER && at <= map.capacity() - RECORD_HEADER, slot);
+            int len = map.getInt(at);
+            check(len > 0 && len <= map.capacity() - at - RECORD_HEADER, slot);
+            return at;
+        }
+
+        private void verify(int slot, byte[] b, int off, int len, int expected) {
+            CRC32 crc = new CRC32();
+            crc.update(b, off, len);
+            check((int) crc.getValue() == expected, slot);
+        }
+
+        private void check(boolean ok, int slot) {
+            if (!ok) throw corrupt(slot, null);
+        }
+
+        private UncheckedIOException corrupt(int slot, Exception cause) {
+            return new UncheckedIOException(new IOException(
+                    "Corrupt repository snapshot " + file + " (record " + slot + ")", cause));
+        }
+    }
+
+    // -----------------------------------------------------------
+    // Writing
+    // -----------------------------------------------------------
+
+    /** One entry to write: a freshly encoded record, or a record copied from an older snapshot. */
+    static final class Entry implements Comparable<Entry> {
+        final String key;
+        private final byte[] record;
+        private final Section<?> from;
+        private final int slot;
+
+        private Entry(String key, byte[] record, Section<?> from, int slot) {
+            this.key = key;
+            this.record = record;
+            this.from = from;
+            this.slot = slot;
+        }
+
+        /** Encodes an entity whose payload was written by {@link Records}. */
+        static Entry encoded(String key, byte[] payload) {
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + payload.length);
+            record.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+            return new Entry(key, record.array(), null, -1);
+        }
+
+        /** Refers to an untouched record of a mapped snapshot; it is copied as is. */
+        static Entry copied(LazyMap.Source<?> from, int slot) {
+            Section<?> s = (Section<?>) from;
+            return new Entry(s.key(slot), null, s, slot);
+        }
+
+        boolean isEncoded() {
+            return record != null;
+        }
+
+        byte[] bytes() {
+            return record != null ? record : from.raw(slot);
+        }
+
+        int length() {
+            return record != null ? record.length : from.recordLength(slot);
+        }
+
+        @Override
+        public int compareTo(Entry o) {
+            return key.compareTo(o.key);
+        }
+    }
+
+    /**
+     * Writes a snapshot of the given sections (each sorted by key, no duplicates) to {@code file}
+     * and forces it to disk.
+     */
+    static void write(Path file, long nextSegment, List<Entry> vehicles, List<Entry> stations, List<Entry> tasks)
+            throws IOException {
+        List<List<Entry>> sections = List.of(vehicles, stations, tasks);
+        long pos = HEADER;
+        int[] indexAt = new int[SECTIONS];
+        for (int n = 0; n < SECTIONS; n++) {
+            indexAt[n] = (int) pos;
+            pos += 4L * sections.get(n).size();
+        }
+        List<int[]> offsets = new ArrayList<>();
+        for (List<Entry> section : sections) {
+            int[] at = new int[section.size()];
+            for (int i = 0; i < at.length; i++) {
+                if (pos > Integer.MAX_VALUE) throw new IOException("Repository snapshot would exceed 2 GB");
+                at[i] = (int) pos;
+                pos += section.get(i).length();
+            }
+            offsets.add(at);
+        }
+        if (pos > Integer.MAX_VALUE) throw new IOException("Repository snapshot would exceed 2 GB");
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream(HEADER);
+        DataOutputStream h = new DataOutputStream(header);
+        h.writeInt(MAGIC);
+        h.writeLong(nextSegment);
+        for (int n = 0; n < SECTIONS; n++) {
+            h.writeInt(sections.get(n).size());
+            h.writeInt(indexAt[n]);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(header.toByteArray());
+        h.writeInt((int) crc.getValue());
+
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream raw = new BufferedOutputStream(Channels.newOutputStream(ch), 256 * 1024);
+            DataOutputStream out = new DataOutputStream(raw);
+            header.writeTo(out);
+            for (int[] at : offsets) {
+                for (int o : at) out.writeInt(o);
+            }
+            for (List<Entry> section : sections) {
+                for (Entry e : section) out.write(e.bytes());
+            }
+            out.flush();
+            ch.force(true);
+        }
+    }
+
+    /** Reads the legacy {@code MSS1} format (fully decoded, not mapped) written by earlier versions. */
+    static long loadLegacy(Path snapshot, Repository repo) throws IOException {
+        byte[] image = Files.readAllBytes(snapshot);
+        if (image.length < 16) throw new IOException("Corrupt repository snapshot " + snapshot);
+        CRC32 sum = new CRC32();
+        sum.update(image, 0, image.length - 4);
+        if ((int) sum.getValue() != ByteBuffer.wrap(image, image.length - 4, 4).getInt()) {
+            throw new IOException("Corrupt repository snapshot " + snapshot + " (checksum mismatch)");
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(image, 0, image.length - 4));
+        try {
+            if (in.readInt() != 0x4D535331) throw new IOException("Not a repository snapshot: " + snapshot);
+            long next = in.readLong();
+            for (int i = in.readInt(); i > 0; i--) repo.putVehicle(Records.readVehicle(in));
+            for (int i = in.readInt(); i > 0; i--) repo.putStation(Records.readStation(in));
+            for (int i = in.readInt(); i > 0; i--) {
+                Task t = Records.readTask(in);
+                if (!repo.addTask(t)) throw new IOException("Snapshot task " + t.id + " has a missing assignee");
+            }
+            return next;
+        } catch (EOFException | IllegalArgumentException e) {
+            throw new IOException("Corrupt repository snapshot " + snapshot + ": " + e.getMessage(), e);
+        }
+    }
+}
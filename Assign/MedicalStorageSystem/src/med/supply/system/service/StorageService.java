@@ -6,12 +6,58 @@ import med.supply.system.util.LogManager;
 import med.supply.system.util.RegexUtils;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Handles all storage operations — vehicles, stations, and items.
  * Now uses getters/setters from the model classes for safe encapsulation.
  */
 public class StorageService {
+
+    /** One line of a bulk item load: an item for a vehicle, not validated yet. */
+    public static final class ItemLine {
+        public final String vehicleId;
+        public final String sku;
+        public final String name;
+        public final int quantity;
+
+        public ItemLine(String vehicleId, String sku, String name, int quantity) {
+            this.vehicleId = vehicleId;
+            this.sku = sku;
+            this.name = name;
+            this.quantity = quantity;
+        }
+    }
+
+    /** What happened to one line of a bulk item load. */
+    public static final class LineResult {
+        public final int index;       // position of the line in the batch
+        public final String vehicleId;
+        public final String error;    // null if the line was applied
+
+        LineResult(int index, String vehicleId, String error) {
+            this.index = index;
+            this.vehicleId = vehicleId;
+            this.error = error;
+        }
+
+        public boolean applied() {
+            return error == null;
+        }
+
+        @Override
+        public String toString() {
+            return "line " + (index + 1) + " (" + vehicleId + "): " + (error == null ? "applied" : error);
+        }
+    }
+
     private final Repository repo;
     private final LogManager logs;
 
@@ -25,7 +71,7 @@ public class StorageService {
     // -----------------------------------------------------------
     public void addVehicle(StorageVehicle v) throws IOException {
         requireValidName(v.getName(), "vehicle");
-        repo.vehicles.put(v.getId(), v);
+        repo.putVehicle(v);
         logs.logSystem("Vehicle added: " + v);
         logs.logVehicle(v.getName(), "created");
     }
@@ -35,15 +81,14 @@ public class StorageService {
     // -----------------------------------------------------------
     public void addChargingStation(ChargingStation s) throws IOException {
         requireValidName(s.getName(), "station");
-        repo.stations.put(s.getId(), s);
+        repo.putStation(s);
         logs.logSystem("Charging station added: " + s);
         logs.logCharging(s.getName(), "created");
     }
 
     public void updateChargingLoad(String stationId, int pct) throws IOException {
-        ChargingStation s = repo.stations.get(stationId);
+        ChargingStation s = repo.setStationLoad(stationId, Math.max(0, Math.min(100, pct)));
         if (s == null) throw new IllegalArgumentException("Charging station not found: " + stationId);
-        s.setCurrentLoadPct(Math.max(0, Math.min(100, pct)));
         logs.logCharging(s.getName(), "Load set to " + s.getCurrentLoadPct() + "%");
         logs.logSystem("Charging load updated for " + s.getName());
     }
@@ -52,13 +97,131 @@ public class StorageService {
     // Inventory management
     // -----------------------------------------------------------
     public void addItemToVehicle(String vehicleId, StorageItem item) throws IOException {
-        StorageVehicle v = repo.vehicles.get(vehicleId);
+        StorageVehicle v = repo.addItemIfVehicleExists(vehicleId, item);
         if (v == null) throw new IllegalArgumentException("Vehicle not found: " + vehicleId);
-        v.addItem(item);
         logs.logVehicle(v.getName(), "Added item " + item.getSku() + " x" + item.getQuantity());
         logs.logSystem("Inventory updated for " + v.getName() + " SKU=" + item.getSku());
     }
 
+    /**
+     * Adds a batch of items, grouped by vehicle: each vehicle's items are merged in one step and
+     * logged as one summary line, and the batch gets one system log line. Invalid lines (bad
+     * fields, unknown vehicle, quantity overflow) are reported in the results and do not stop the
+     * others.
+     *
+     * @return one result per line, in input order
+     */
+    public List<LineResult> addItemsToVehicles(List<ItemLine> lines) throws IOException {
+        String[] errors = new String[lines.size()];
+        String[] vehicleIds = new String[lines.size()];
+        StorageItem[] items = new StorageItem[lines.size()];
+        Map<String, List<Integer>> byVehicle = new LinkedHashMap<>();
+        for (int i = 0; i < lines.size(); i++) {
+            ItemLine line = lines.get(i);
+            if (line == null) {
+                errors[i] = "Missing line";
+                continue;
+            }
+            vehicleIds[i] = line.vehicleId;
+            if (line.vehicleId == null || line.vehicleId.isBlank()) {
+                errors[i] = "Vehicle id must not be blank";
+                continue;
+            }
+            try {
+                items[i] = new StorageItem(line.sku, line.name, line.quantity);
+            } catch (IllegalArgumentException e) {
+                errors[i] = e.getMessage();
+                continue;
+            }
+            byVehicle.computeIfAbsent(line.vehicleId.trim(), k -> new ArrayList<>()).add(i);
+        }
+
+        int applied = 0;
+        int vehiclesUpdated = 0;
+        for (Map.Entry<String, List<Integer>> e : byVehicle.entrySet()) {
+            String vehicleId = e.getKey();
+            List<Integer> idx = e.getValue();
+            List<StorageItem> batch = new ArrayList<>(idx.size());
+            for (int i : idx) batch.add(items[i]);
+            boolean[] added = repo.addItemsIfVehicleExists(vehicleId, batch);
+            if (added == null) {
+                for (int i : idx) errors[i] = "Vehicle not found: " + vehicleId;
+                continue;
+            }
+            int count = 0;
+            long units = 0;
+            Set<String> skus = new HashSet<>();
+            for (int k = 0; k < added.length; k++) {
+                StorageItem it = batch.get(k);
+                if (!added[k]) {
+                    errors[idx.get(k)] = "Quantity overflow for SKU " + it.getSku();
+                    continue;
+                }
+                count++;
+                units += it.getQuantity();
+                skus.add(it.getSku());
+            }
+            if (count == 0) continue;
+            applied += count;
+            vehiclesUpdated++;
+            logs.logVehicle(vehicleName(vehicleId),
+                    "Bulk added " + count + " item line(s): " + skus.size() + " SKU(s), " + units + " units");
+        }
+        logs.logSystem("Bulk item load: " + applied + " of " + lines.size() + " line(s) applied to "
+                + vehiclesUpdated + " vehicle(s)");
+
+        List<LineResult> results = new ArrayList<>(lines.size());
+        for (int i = 0; i < lines.size(); i++) results.add(new LineResult(i, vehicleIds[i], errors[i]));
+        return results;
+    }
+
+    /** As {@link #addItemsToVehicles(List)}, for lines read from a stream. */
+    public List<LineResult> addItemsToVehicles(Stream<ItemLine> lines) throws IOException {
+        return addItemsToVehicles(lines.collect(Collectors.toList()));
+    }
+
+    /**
+     * Moves {@code quantity} of {@code sku} from one vehicle to another in one atomic step.
+     *
+     * @throws IllegalArgumentException if a vehicle does not exist or the source has too little
+     */
+    public void transferItem(String fromVehicleId, String toVehicleId, String sku, int quantity) throws IOException {
+        transferItems(List.of(new InventoryTransfer(fromVehicleId, toVehicleId, sku, quantity)));
+    }
+
+    /**
+     * Applies all {@code transfers} atomically, in order: if any of them cannot be made, none is.
+     * Each vehicle involved gets one log line summarising its part of the batch.
+     *
+     * @throws IllegalArgumentException naming the first transfer that cannot be made
+     */
+    public void transferItems(List<InventoryTransfer> transfers) throws IOException {
+        int failed = repo.transferAll(transfers);
+        if (failed >= 0) {
+            InventoryTransfer t = transfers.get(failed);
+            for (String id : List.of(t.getFromVehicleId(), t.getToVehicleId())) {
+                if (!repo.vehicles.containsKey(id)) throw new IllegalArgumentException("Vehicle not found: " + id);
+            }
+            throw new IllegalArgumentException("Insufficient stock for transfer " + (failed + 1) + ": " + t);
+        }
+        Map<String, List<String>> parts = new LinkedHashMap<>();
+        for (InventoryTransfer t : transfers) {
+            String from = vehicleName(t.getFromVehicleId());
+            String to = vehicleName(t.getToVehicleId());
+            parts.computeIfAbsent(from, k -> new ArrayList<>()).add("-" + t.getQuantity() + " " + t.getSku() + " to " + to);
+            parts.computeIfAbsent(to, k -> new ArrayList<>()).add("+" + t.getQuantity() + " " + t.getSku() + " from " + from);
+        }
+        for (Map.Entry<String, List<String>> e : parts.entrySet()) {
+            logs.logVehicle(e.getKey(), "Transferred " + String.join("; ", e.getValue()));
+        }
+        logs.logSystem("Inventory transfer applied: " + transfers.size() + " transfer(s) across " + parts.size() + " vehicles");
+    }
+
+    private String vehicleName(String vehicleId) {
+        StorageVehicle v = repo.vehicles.get(vehicleId);
+        return v == null ? vehicleId : v.getName();
+    }
+
     // -----------------------------------------------------------
     // Validation helper
     // -----------------------------------------------------------
@@ -68,5 +231,9 @@ public class StorageService {
                     "Invalid " + kind + " name (Must be up to 2–40 chars)."
             );
         }
+        // "system" is how LogManager.findByEquipmentOrDate asks for the system logs.
+        if ("system".equalsIgnoreCase(name)) {
+            throw new IllegalArgumentException("Invalid " + kind + " name (\"" + name + "\" is reserved).");
+        }
     }
 }
@@ -33,13 +33,10 @@ public class TaskService {
             throw new IllegalArgumentException("Task description cannot be empty");
         }
 
-        // Validate vehicle if assigned
-        if (t.assigneeVehicleId != null && !repo.vehicles.containsKey(t.assigneeVehicleId)) {
+        // Store task; the assigned vehicle, if any, must exist
+        if (!repo.addTask(t)) {
             throw new IllegalArgumentException("Assigned vehicle does not exist: " + t.assigneeVehicleId);
         }
-
-        // Store task
-        repo.tasks.put(t.id, t);
         logs.logSystem("Task created: " + t.id + " -> " + t.description);
 
         // Log vehicle assignment if exists
@@ -55,7 +52,7 @@ public class TaskService {
     // Task status updates
     // -----------------------------------------------------------
     public void updateStatus(String taskId, TaskStatus status) throws Exception {
-        Task t = repo.tasks.get(taskId);
+        Task t = repo.updateTaskStatus(taskId, status);
         if (t == null) {
             try {
                 throw new IllegalArgumentException("Task not found: " + taskId);
@@ -64,7 +61,6 @@ public class TaskService {
             }
         }
 
-        t.status = status;
         logs.logSystem("Task " + taskId + " status -> " + status);
 
         if (t.assigneeVehicleId != null) {
@@ -0,0 +1,222 @@
+package med.supply.system.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * The {@link ArchiveReader}s of every ZIP in an archive directory. Each archive's entry index
+ * is built once and reused until the file changes (size or modification time), so lookups
+ * across all archives cost a directory listing plus the index lookups.
+ * <p>
+ * A reader handed out through {@link #acquire()} stays open until its {@link Lease} is closed,
+ * even if the catalog replaces it meanwhile because its file changed or was deleted.
+ */
+public class ArchiveCatalog implements AutoCloseable {
+    private final Path dir;
+    private final PathsConfig cfg;
+    private final Map<Path, Open> open = new HashMap<>();
+
+    public ArchiveCatalog(PathsConfig cfg) {
+        this(cfg.archiveRoot, cfg);
+    }
+
+    public ArchiveCatalog(Path dir, PathsConfig cfg) {
+        this.dir = dir;
+        this.cfg = cfg;
+    }
+
+    /**
+     * Current readers, one per readable ZIP, sorted by file name. A reader may be closed by a
+     * later call once its file changes; use {@link #acquire()} to keep the readers open.
+     */
+    public synchronized List<ArchiveReader> readers() throws IOException {
+        List<ArchiveReader> out = new ArrayList<>();
+        for (Open o : refresh()) out.add(o.reader);
+        return out;
+    }
+
+    /** The current readers, held open until the returned lease is closed. */
+    public synchronized Lease acquire() throws IOException {
+        List<Open> held = refresh();
+        for (Open o : held) o.users++;
+        return new Lease(held);
+    }
+
+    private List<Open> refresh() throws IOException {
+        List<Path> zips = new ArrayList<>();
+        if (Files.isDirectory(dir)) {
+            try (Stream<Path> s = Files.list(dir)) {
+                s.filter(p -> p.getFileName().toString().endsWith(".zip")).sorted().forEach(zips::add);
+            }
+        }
+        List<Open> out = new ArrayList<>(zips.size());
+        for (Path zip : zips) {
+            BasicFileAttributes a;
+            try {
+                a = Files.readAttributes(zip, BasicFileAttributes.class);
+            } catch (IOException e) {
+                continue; // deleted meanwhile
+            }
+            Open o = open.get(zip);
+            if (o != null && (o.size != a.size() || o.modified != a.lastModifiedTime().toMillis())) {
+                o.retire();
+                open.remove(zip);
+                o = null;
+            }
+            if (o == null) {
+                try {
+                    o = new Open(new ArchiveReader(zip, cfg), a.size(), a.lastModifiedTime().toMillis());
+                } catch (IOException e) {
+                    System.err.println("Archive index error: " + zip + ": " + e.getMessage());
+                    continue;
+                }
+                open.put(zip, o);
+            }
+            out.add(o);
+        }
+        // forget archives that were deleted
+        for (Iterator<Map.Entry<Path, Open>> it = open.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Path, Open> e = it.next();
+            if (!zips.contains(e.getKey())) {
+                e.getValue().retire();
+                it.remove();
+            }
+        }
+        return out;
+    }
+
+    /** Archived counterpart of {@link LogManager#findByEquipmentOrDate}; sorted by archive, then name. */
+    public List<ArchiveReader.Entry> findByEquipmentOrDate(String equipmentNameOrDate) throws IOException {
+        try (Lease lease = acquire()) {
+            return lease.findByEquipmentOrDate(equipmentNameOrDate);
+        }
+    }
+
+    /**
+     * Entries of {@code equipment} (null = all) dated within {@code [from, to]}
+     * (null = unbounded), across every archive.
+     */
+    public List<ArchiveReader.Entry> select(String equipment, LocalDate from, LocalDate to) throws IOException {
+        try (Lease lease = acquire()) {
+            return lease.select(equipment, from, to);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (Open o : open.values()) o.retire();
+        open.clear();
+    }
+
+    private synchronized void release(List<Open> held) throws IOException {
+        IOException failure = null;
+        for (Open o : held) {
+            o.users--;
+            try {
+                if (o.retired && o.users == 0) o.reader.close();
+            } catch (IOException e) {
+                if (failure == null) failure = e;
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    /**
+     * The readers of every archive as of {@link #acquire()}. Resolving an entry's reader through
+     * the lease costs a map lookup, and no reader is closed while the lease is open.
+     */
+    public final class Lease implements AutoCloseable {
+        private final List<Open> held;
+        private final Map<Path, ArchiveReader> byZip = new LinkedHashMap<>();
+        private boolean closed;
+
+        private Lease(List<Open> held) {
+            this.held = held;
+            for (Open o : held) byZip.put(o.reader.zip(), o.reader);
+        }
+
+        /** The held readers, sorted by file name. */
+        public List<ArchiveReader> readers() {
+            return new ArrayList<>(byZip.values());
+        }
+
+        /** The reader of {@code zip}, which must have been in the catalog's directory when acquired. */
+        public ArchiveReader reader(Path zip) throws IOException {
+            ArchiveReader r = byZip.get(zip);
+            if (r == null) throw new IOException("Not an archive in " + dir + ": " + zip);
+            return r;
+        }
+
+        /** See {@link ArchiveCatalog#findByEquipmentOrDate}. */
+        public List<ArchiveReader.Entry> findByEquipmentOrDate(String equipmentNameOrDate) {
+            List<ArchiveReader.Entry> out = new ArrayList<>();
+            for (ArchiveReader r : byZip.values()) {
+                if (RegexUtils.isIsoDate(equipmentNameOrDate)) {
+                    try {
+                        out.addAll(r.byDate(LocalDate.parse(equipmentNameOrDate)));
+                    } catch (DateTimeParseException e) {
+                        return out;
+                    }
+                } else if ("system".equalsIgnoreCase(equipmentNameOrDate)) {
+                    out.addAll(r.byKind(LogKind.SYSTEM));
+                } else if (RegexUtils.isValidEquipment(equipmentNameOrDate)) {
+                    out.addAll(r.byEquipment(equipmentNameOrDate));
+                }
+            }
+            return out;
+        }
+
+        /** See {@link ArchiveCatalog#select}. */
+        public List<ArchiveReader.Entry> select(String equipment, LocalDate from, LocalDate to) {
+            List<ArchiveReader.Entry> out = new ArrayList<>();
+            for (ArchiveReader r : byZip.values()) {
+                List<ArchiveReader.Entry> l = equipment != null ? r.byEquipment(equipment) : r.entries();
+                for (ArchiveReader.Entry e : l) {
+                    if ((from == null || !e.date.isBefore(from)) && (to == null || !e.date.isAfter(to))) out.add(e);
+                }
+            }
+            return out;
+        }
+
+        /** Releases the readers; one the catalog has replaced meanwhile is closed with its last lease. */
+        @Override
+        public void close() throws IOException {
+            synchronized (ArchiveCatalog.this) {
+                if (closed) return;
+                closed = true;
+                release(held);
+            }
+        }
+    }
+
+    /** Guarded by the catalog's lock. */
+    private static final class Open {
+        final ArchiveReader reader;
+        final long size;
+        final long modified;
+        int users;       // open leases holding this reader
+        boolean retired; // dropped from the catalog; closed once unused
+
+        Open(ArchiveReader reader, long size, long modified) {
+            this.reader = reader;
+            this.size = size;
+            this.modified = modified;
+        }
+
+        void retire() throws IOException {
+            retired = true;
+            if (users == 0) reader.close();
+        }
+    }
+}
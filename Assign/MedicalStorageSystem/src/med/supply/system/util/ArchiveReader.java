@@ -0,0 +1,315 @@
+package med.supply.system.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Random access to the logs inside a ZIP written by {@link MetadataManager#archiveZip} (or any
+ * of the other archivers). Opening reads only the central directory at the end of the file and
+ * indexes the daily logs in it by equipment, kind and date, keeping each entry's offset;
+ * reading an entry then seeks straight to it and inflates just that entry, so nothing is
+ * extracted to disk. Rotated {@code .gz} segments inside the archive are decompressed as well.
+ * ZIP64 end records and extra fields are honoured. Safe for concurrent readers.
+ */
+public class ArchiveReader implements AutoCloseable {
+    private static final int EOCD_SIG = 0x06054b50;
+    private static final int CEN_SIG = 0x02014b50;
+    private static final int LOC_SIG = 0x04034b50;
+    private static final int ZIP64_EOCD_SIG = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+    private static final int ZIP64_EXTRA = 0x0001;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int EOCD_SIZE = 22;
+    private static final int CEN_SIZE = 46;
+    private static final int LOC_SIZE = 30;
+    private static final int ZIP64_EOCD_SIZE = 56;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+
+    /** One daily log inside an archive. */
+    public static final class Entry {
+        public final Path zip;
+        public final String name;        // '/'-separated, relative to the logs root
+        public final LogKind kind;
+        public final String equipment;   // null for system logs
+        public final LocalDate date;
+        public final long offset;        // of the entry's local header
+        public final int method;         // 0 stored, 8 deflated
+        public final long compressedSize;
+        public final long size;
+
+        Entry(Path zip, String name, LogKind kind, String equipment, LocalDate date,
+              long offset, int method, long compressedSize, long size) {
+            this.zip = zip;
+            this.name = name;
+            this.kind = kind;
+            this.equipment = equipment;
+            this.date = date;
+            this.offset = offset;
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+        }
+
+        /** Display path {@code <zip>/<name>}; not a real file. */
+        public Path path() {
+            return zip.resolve(name);
+        }
+
+        @Override
+        public String toString() {
+            return zip.getFileName() + "!/" + name;
+        }
+    }
+
+    private final Path zip;
+    private final FileChannel ch;
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<String, List<Entry>> byEquipment = new HashMap<>();
+    private final Map<LogKind, List<Entry>> byKind = new EnumMap<>(LogKind.class);
+    private final NavigableMap<LocalDate, List<Entry>> byDate = new TreeMap<>();
+
+    /**
+     * @param cfg names of the vehicle, charging and system directories the entries are under
+     */
+    public ArchiveReader(Path zip, PathsConfig cfg) throws IOException {
+        this.zip = zip;
+        this.ch = FileChannel.open(zip, StandardOpenOption.READ);
+        try {
+            readCentralDirectory(cfg);
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+        entries.sort((a, b) -> a.name.compareTo(b.name));
+        for (Entry e : entries) {
+            byKind.computeIfAbsent(e.kind, k -> new ArrayList<>()).add(e);
+            byDate.computeIfAbsent(e.date, k -> new ArrayList<>()).add(e);
+            if (e.equipment != null) byEquipment.computeIfAbsent(e.equipment, k -> new ArrayList<>()).add(e);
+        }
+    }
+
+    public Path zip() {
+        return zip;
+    }
+
+    /** Every daily log in the archive, sorted by name. Other entries are ignored. */
+    public List<Entry> entries() {
+        return new ArrayList<>(entries);
+    }
+
+    public List<Entry> byEquipment(String equipment) {
+        return copy(byEquipment.get(equipment));
+    }
+
+    public List<Entry> byKind(LogKind kind) {
+        return copy(byKind.get(kind));
+    }
+
+    public List<Entry> byDate(LocalDate date) {
+        return copy(byDate.get(date));
+    }
+
+    /** Every log dated within {@code [from, to]} (both inclusive). */
+    public List<Entry> byDateRange(LocalDate from, LocalDate to) {
+        List<Entry> out = new ArrayList<>();
+        for (List<Entry> l : byDate.subMap(from, true, to, true).values()) {
+            out.addAll(l);
+        }
+        return out;
+    }
+
+    /** The uncompressed content of {@code e}, read directly from the archive. Close it when done. */
+    public InputStream open(Entry e) throws IOException {
+        if (!e.zip.equals(zip)) throw new IllegalArgumentException(e + " is not in " + zip);
+        ByteBuffer loc = ByteBuffer.allocate(LOC_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(loc, e.offset);
+        if (loc.getInt(0) != LOC_SIG) throw new IOException("Bad local header for " + e);
+        long data = e.offset + LOC_SIZE + (loc.getShort(26) & 0xFFFF) + (loc.getShort(28) & 0xFFFF);
+        InputStream raw = new RangeInputStream(ch, data, data + e.compressedSize);
+        InputStream in = switch (e.method) {
+            case 0 -> raw;
+            case 8 -> new InflaterInputStream(raw, new Inflater(true), 8192) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    inf.end();
+                }
+            };
+            default -> throw new IOException("Unsupported compression method " + e.method + " for " + e);
+        };
+        return e.name.endsWith(".gz") ? new GZIPInputStream(in, 8192) : in;
+    }
+
+    /**
+     * Up to {@code maxLines} lines of {@code e} starting at line {@code firstLine} (0-based).
+     * Only the part of the entry up to the last returned line is inflated.
+     */
+    public List<String> readLines(Entry e, long firstLine, int maxLines) throws IOException {
+        if (firstLine < 0 || maxLines < 0) throw new IllegalArgumentException("firstLine and maxLines must not be negative");
+        List<String> out = new ArrayList<>(Math.min(maxLines, 1024));
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(open(e), StandardCharsets.UTF_8))) {
+            for (long i = 0; i < firstLine; i++) {
+                if (r.readLine() == null) return out;
+            }
+            String line;
+            while (out.size() < maxLines && (line = r.readLine()) != null) {
+                out.add(line);
+            }
+        }
+        return out;
+    }
+
+    @Override
+    public void close() throws IOException {
+        ch.close();
+    }
+
+    private void readCentralDirectory(PathsConfig cfg) throws IOException {
+        long size = ch.size();
+        if (size < EOCD_SIZE) throw new IOException("Not a ZIP file: " + zip);
+        // The end record sits in the last 22 bytes unless the archive has a comment (<= 64 KB).
+        int tail = (int) Math.min(size, EOCD_SIZE + 0xFFFF);
+        ByteBuffer end = ByteBuffer.allocate(tail).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(end, size - tail);
+        int eocd = -1;
+        for (int i = tail - EOCD_SIZE; i >= 0; i--) {
+            if (end.getInt(i) == EOCD_SIG) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd < 0) throw new IOException("Not a ZIP file: " + zip);
+        long total = end.getShort(eocd + 10) & 0xFFFF;
+        long cdSize = end.getInt(eocd + 12) & 0xFFFFFFFFL;
+        long cdStart = end.getInt(eocd + 16) & 0xFFFFFFFFL;
+        long eocdPos = size - tail + eocd;
+        if ((total == 0xFFFF || cdSize == ZIP64_MAGIC || cdStart == ZIP64_MAGIC) && eocdPos >= ZIP64_LOCATOR_SIZE) {
+            // The real values are in the ZIP64 end record, found through the locator just before this one.
+            ByteBuffer loc = ByteBuffer.allocate(ZIP64_LOCATOR_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(loc, eocdPos - ZIP64_LOCATOR_SIZE);
+            if (loc.getInt(0) == ZIP64_LOCATOR_SIG) {
+                long zip64End = loc.getLong(8);
+                if (zip64End < 0 || zip64End + ZIP64_EOCD_SIZE > size) throw new IOException("Corrupt ZIP: " + zip);
+                ByteBuffer z = ByteBuffer.allocate(ZIP64_EOCD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                readFully(z, zip64End);
+                if (z.getInt(0) != ZIP64_EOCD_SIG) throw new IOException("Corrupt ZIP: " + zip);
+                total = z.getLong(32);
+                cdSize = z.getLong(40);
+                cdStart = z.getLong(48);
+            }
+        }
+        if (total < 0 || cdStart < 0 || cdSize < 0 || cdStart + cdSize > size || cdSize > Integer.MAX_VALUE) {
+            throw new IOException("Corrupt ZIP: " + zip);
+        }
+
+        ByteBuffer cd = ByteBuffer.allocate((int) cdSize).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(cd, cdStart);
+        int pos = 0;
+        for (long i = 0; i < total; i++) {
+            if (pos + CEN_SIZE > cdSize || cd.getInt(pos) != CEN_SIG) throw new IOException("Corrupt ZIP: " + zip);
+            int method = cd.getShort(pos + 10) & 0xFFFF;
+            long csize = cd.getInt(pos + 20) & 0xFFFFFFFFL;
+            long usize = cd.getInt(pos + 24) & 0xFFFFFFFFL;
+            int nameLen = cd.getShort(pos + 28) & 0xFFFF;
+            int extraLen = cd.getShort(pos + 30) & 0xFFFF;
+            int commentLen = cd.getShort(pos + 32) & 0xFFFF;
+            long offset = cd.getInt(pos + 42) & 0xFFFFFFFFL;
+            if (pos + CEN_SIZE + nameLen + extraLen > cdSize) throw new IOException("Corrupt ZIP: " + zip);
+            String name = new String(cd.array(), pos + CEN_SIZE, nameLen, StandardCharsets.UTF_8);
+            if (usize == ZIP64_MAGIC || csize == ZIP64_MAGIC || offset == ZIP64_MAGIC) {
+                // Only the fields set to the magic value are in the extra field, in this order.
+                int x = findExtra(cd, pos + CEN_SIZE + nameLen, extraLen, ZIP64_EXTRA);
+                int needed = (usize == ZIP64_MAGIC ? 8 : 0) + (csize == ZIP64_MAGIC ? 8 : 0)
+                        + (offset == ZIP64_MAGIC ? 8 : 0);
+                if (x < 0 || (cd.getShort(x + 2) & 0xFFFF) < needed) {
+                    throw new IOException("Corrupt ZIP64 entry " + name + " in " + zip);
+                }
+                int at = x + 4;
+                if (usize == ZIP64_MAGIC) {
+                    usize = cd.getLong(at);
+                    at += 8;
+                }
+                if (csize == ZIP64_MAGIC) {
+                    csize = cd.getLong(at);
+                    at += 8;
+                }
+                if (offset == ZIP64_MAGIC) offset = cd.getLong(at);
+            }
+            pos += CEN_SIZE + nameLen + extraLen + commentLen;
+
+            if (name.endsWith("/") || name.contains("..")) continue;
+            LogCatalog.Entry d = LogCatalog.describe(cfg, Path.of(name));
+            if (d == null) continue;
+            entries.add(new Entry(zip, name, d.kind, d.equipment, d.date, offset, method, csize, usize));
+        }
+    }
+
+    /** Position of the extra-field block with header {@code id} within {@code [from, from + len)}, or -1. */
+    private static int findExtra(ByteBuffer cd, int from, int len, int id) {
+        int end = from + len;
+        for (int p = from; p + 4 <= end; p += 4 + (cd.getShort(p + 2) & 0xFFFF)) {
+            if ((cd.getShort(p) & 0xFFFF) == id) return p + 4 + (cd.getShort(p + 2) & 0xFFFF) <= end ? p : -1;
+        }
+        return -1;
+    }
+
+    private void readFully(ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = ch.read(buf, pos);
+            if (n < 0) throw new IOException("Unexpected end of " + zip);
+            pos += n;
+        }
+    }
+
+    private static List<Entry> copy(List<Entry> l) {
+        return l == null ? new ArrayList<>() : new ArrayList<>(l);
+    }
+
+    /** Positional reads of {@code [pos, end)}; never moves the shared channel's position. */
+    private static final class RangeInputStream extends InputStream {
+        private final FileChannel ch;
+        private long pos;
+        private final long end;
+
+        RangeInputStream(FileChannel ch, long pos, long end) {
+            this.ch = ch;
+            this.pos = pos;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (pos >= end) return -1;
+            int n = ch.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - pos)), pos);
+            if (n < 0) return -1;
+            pos += n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package med.supply.system.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Background writer used by {@link LogManager} in asynchronous mode.
+ * Callers put lines on a bounded queue (blocking when it is full); a single
+ * writer thread drains it in batches, encodes the lines with its own
+ * {@link LogLineEncoder} into reused per-file buffers and appends them through
+ * a shared {@link LogChannelCache}, so files stay open between batches.
+ * Line offsets and times are reported to the {@link LogTimeIndex} after each write.
+ * <p>
+ * Once {@link #close()} has started, new lines are rejected and every line queued
+ * before it is written. Should the writer thread stop early, waiting callers are
+ * released with an {@link IOException} instead of blocking forever.
+ */
+public class AsyncLogWriter implements AutoCloseable {
+    private static final int MAX_BATCH = 4096;
+    private static final int MAX_PENDING_BYTES = 64 * 1024;
+
+    /** Maps a line to the daily file it belongs to; called on the writer thread only. */
+    public interface FileResolver {
+        Path resolve(LogKind kind, String name, LocalDate day);
+    }
+
+    private final LogChannelCache channels;
+    private final FileResolver resolver;
+    private final LogTimeIndex timeIndex;
+    private final LogLineEncoder encoder;
+    private final long flushIntervalMillis;
+    private final BlockingQueue<Entry> queue;
+    private final Map<Path, Pending> pending = new LinkedHashMap<>();
+    private final Thread worker;
+
+    private final ReentrantReadWriteLock state = new ReentrantReadWriteLock(); // close() waits for queueing callers
+    private volatile boolean closed;
+    private volatile boolean stopped; // set when the writer thread exits
+    private volatile IOException failure;
+    private int pendingBytes;
+    private long lastFlush = System.currentTimeMillis();
+
+    /**
+     * @param channels            cache the writer thread appends through
+     * @param resolver            maps each line to its daily file
+     * @param timeIndex           sparse time index to update, or null
+     * @param zone                zone used for timestamps and file dates
+     * @param queueCapacity       maximum number of lines waiting to be written
+     * @param flushIntervalMillis longest time a line may stay buffered before it is written
+     */
+    public AsyncLogWriter(LogChannelCache channels, FileResolver resolver, LogTimeIndex timeIndex,
+                          ZoneId zone, int queueCapacity, long flushIntervalMillis) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("queueCapacity must be positive");
+        }
+        if (flushIntervalMillis < 1) {
+            throw new IllegalArgumentException("flushIntervalMillis must be positive");
+        }
+        this.channels = channels;
+        this.resolver = resolver;
+        this.timeIndex = timeIndex;
+        this.encoder = new LogLineEncoder(zone);
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.worker = new Thread(this::run, "log-writer");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /** Queues one line logged at the given instant; blocks while the queue is full. */
+    public void submit(LogKind kind, String name, String message, long epochSecond, int nano) throws IOException {
+        state.readLock().lock();
+        try {
+            if (closed) throw new IOException("Log writer is closed");
+            put(new Entry(kind, name, message, epochSecond, nano, null));
+        } finally {
+            state.readLock().unlock();
+        }
+    }
+
+    /** Blocks until every line submitted so far has been written to its file. */
+    public void flush() throws IOException {
+        CountDownLatch done = new CountDownLatch(1);
+        state.readLock().lock();
+        try {
+            if (closed) return; // close() writes everything queued before it
+            put(new Entry(null, null, null, 0, 0, done));
+        } finally {
+            state.readLock().unlock();
+        }
+        try {
+            while (!done.await(flushIntervalMillis, TimeUnit.MILLISECONDS)) {
+                if (stopped && done.getCount() > 0) {
+                    rethrowFailure();
+                    throw new IOException("Log writer has stopped");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while flushing logs");
+        }
+        rethrowFailure();
+    }
+
+    /** Drains the queue and writes everything still buffered. Open channels belong to the cache. */
+    @Override
+    public void close() throws IOException {
+        state.writeLock().lock();
+        try {
+            if (closed) return;
+            closed = true;
+        } finally {
+            state.writeLock().unlock();
+        }
+        try {
+            if (!stopped) put(Entry.SHUTDOWN);
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing log writer");
+        }
+        rethrowFailure();
+    }
+
+    /** Queues {@code e}, waiting while the queue is full; fails if the writer thread has stopped. */
+    private void put(Entry e) throws IOException {
+        try {
+            while (!queue.offer(e, flushIntervalMillis, TimeUnit.MILLISECONDS)) {
+                if (stopped) break;
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while queueing log line");
+        }
+        if (stopped) {
+            rethrowFailure();
+            throw new IOException("Log writer has stopped");
+        }
+    }
+
+    private void rethrowFailure() throws IOException {
+        IOException e = failure;
+        if (e != null) {
+            failure = null;
+            throw e;
+        }
+    }
+
+    // -----------------------------------------------------------
+    // Writer thread
+    // -----------------------------------------------------------
+    private void run() {
+        List<Entry> batch = new ArrayList<>(MAX_BATCH);
+        boolean stop = false;
+        try {
+            while (!stop) {
+                try {
+                    Entry first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                    if (first != null) {
+                        batch.add(first);
+                        queue.drainTo(batch, MAX_BATCH - 1);
+                    }
+                } catch (InterruptedException e) {
+                    // Only close() stops the writer; keep draining.
+                    continue;
+                }
+                for (Entry e : batch) {
+                    if (e == Entry.SHUTDOWN) {
+                        stop = true;
+                    } else if (e.barrier != null) {
+                        writePending();
+                        e.barrier.countDown();
+                    } else {
+                        try {
+                            buffer(e);
+                        } catch (RuntimeException ex) {
+                            fail(new IOException("Could not log line: " + ex, ex));
+                        }
+                    }
+                }
+                batch.clear();
+                if (stop || pendingBytes >= MAX_PENDING_BYTES
+                        || System.currentTimeMillis() - lastFlush >= flushIntervalMillis) {
+                    writePending();
+                }
+            }
+        } finally {
+            if (!stop) fail(new IOException("Log writer stopped unexpectedly"));
+            stopped = true; // callers still waiting on the queue or a barrier give up
+            queue.clear();
+        }
+    }
+
+    private void buffer(Entry e) {
+        ByteBuffer line = encoder.encode(e.kind, e.name, e.message, e.epochSecond, e.nano);
+        LocalDate day = encoder.date();
+        Path file = resolver.resolve(e.kind, e.name, day);
+        Pending p = pending.get(file);
+        if (p == null) {
+            p = new Pending(day);
+            pending.put(file, p);
+        }
+        pendingBytes += line.remaining();
+        p.put(line, e.epochSecond * 1000 + e.nano / 1_000_000);
+    }
+
+    /** Writes every non-empty buffer; buffers left idle for a whole interval are dropped. */
+    private void writePending() {
+        Iterator<Map.Entry<Path, Pending>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Path, Pending> e = it.next();
+            Pending p = e.getValue();
+            if (p.bytes.position() == 0) {
+                it.remove();
+                continue;
+            }
+            try {
+                p.bytes.flip();
+                long base = channels.append(e.getKey(), p.day, p.bytes);
+                if (timeIndex != null) {
+                    for (int i = 0; i < p.lines; i++) {
+                        timeIndex.onLine(e.getKey(), base + p.lineOffsets[i], p.lineMillis[i]);
+                    }
+                }
+            } catch (IOException ex) {
+                fail(ex);
+            } catch (RuntimeException ex) {
+                fail(new IOException("Could not write " + e.getKey() + ": " + ex, ex));
+            } finally {
+                p.clear();
+            }
+        }
+        pendingBytes = 0;
+        lastFlush = System.currentTimeMillis();
+    }
+
+    private void fail(IOException e) {
+        System.err.println("Logging error: " + e.getMessage());
+        if (failure == null) failure = e;
+    }
+
+    private static final class Pending {
+        final LocalDate day;
+        ByteBuffer bytes = ByteBuffer.allocate(4096);
+        long[] lineOffsets = new long[64];
+        long[] lineMillis = new long[64];
+        int lines;
+
+        Pending(LocalDate day) {
+            this.day = day;
+        }
+
+        void put(ByteBuffer line, long millis) {
+            if (lines == lineOffsets.length) {
+                lineOffsets = Arrays.copyOf(lineOffsets, lines * 2);
+                lineMillis = Arrays.copyOf(lineMillis, lines * 2);
+            }
+            lineOffsets[lines] = bytes.position();
+            lineMillis[lines] = millis;
+            lines++;
+            if (bytes.remaining() < line.remaining()) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(bytes.capacity() * 2,
+                        bytes.position() + line.remaining()));
+                bytes.flip();
+                bigger.put(bytes);
+                bytes = bigger;
+            }
+            bytes.put(line);
+        }
+
+        void clear() {
+            bytes.clear();
+            lines = 0;
+        }
+    }
+
+    private static final class Entry {
+        static final Entry SHUTDOWN = new Entry(null, null, null, 0, 0, null);
+
+        final LogKind kind;
+        final String name;
+        final String message;
+        final long epochSecond;
+        final int nano;
+        final CountDownLatch barrier;
+
+        Entry(LogKind kind, String name, String message, long epochSecond, int nano, CountDownLatch barrier) {
+            this.kind = kind;
+            this.name = name;
+            this.message = message;
+            this.epochSecond = epochSecond;
+            this.nano = nano;
+            this.barrier = barrier;
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package med.supply.system.util;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Content-addressed archive store. Files are cut into variable-size chunks at content-defined
+ * boundaries (gear rolling hash, 2-64 KB, about 8 KB on average), so identical runs of bytes
+ * produce identical chunks even when they sit at different offsets: a rotated, moved or
+ * re-archived log costs no new chunks, and a log that grew only adds its new tail. Each unique
+ * chunk is stored once, deflated, under its SHA-256 in {@code chunks/ab/cdef...}; an archive is
+ * just a manifest in {@code manifests/<name>.csv} listing every file's chunks.
+ * {@link #exportZip} turns an archive back into the same ZIP {@link MetadataManager#archiveZip}
+ * would have produced, for auditors.
+ */
+public class DedupArchiveStore {
+    static final int MIN_CHUNK = 2 * 1024;
+    static final int MAX_CHUNK = 64 * 1024;
+    private static final long BOUNDARY_MASK = (1L << 13) - 1; // ~8 KB average past MIN_CHUNK
+    private static final long[] GEAR = new long[256];
+    private static final String HEADER = "size,mtime,chunks,path";
+
+    static {
+        long x = 0x5DEECE66DL; // fixed seed: boundaries must never change between runs
+        for (int i = 0; i < GEAR.length; i++) {
+            x += 0x9E3779B97F4A7C15L; // splitmix64
+            long z = x;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+
+    /** One file of an archive. */
+    public static final class FileRef {
+        public final String path;     // relative, '/'-separated
+        public final long size;
+        public final long mtime;      // epoch millis
+        public final List<String> chunks;
+
+        FileRef(String path, long size, long mtime, List<String> chunks) {
+            this.path = path;
+            this.size = size;
+            this.mtime = mtime;
+            this.chunks = chunks;
+        }
+    }
+
+    /** What storing one archive cost. */
+    public static final class Result {
+        public final String archive;
+        public final int files;
+        public final long chunks;
+        public final long newChunks;
+        public final long bytesIn;
+        public final long bytesStored;  // compressed bytes of new chunks
+        public final long millis;
+
+        Result(String archive, int files, long chunks, long newChunks, long bytesIn, long bytesStored, long millis) {
+            this.archive = archive;
+            this.files = files;
+            this.chunks = chunks;
+            this.newChunks = newChunks;
+            this.bytesIn = bytesIn;
+            this.bytesStored = bytesStored;
+            this.millis = millis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d files, %d chunks (%d new), %d bytes in, %d bytes stored, %d ms",
+                    archive, files, chunks, newChunks, bytesIn, bytesStored, millis);
+        }
+    }
+
+    private final Path root;
+    private final Path chunksDir;
+    private final Path manifestsDir;
+
+    public DedupArchiveStore(Path root) {
+        this.root = root;
+        this.chunksDir = root.resolve("chunks");
+        this.manifestsDir = root.resolve("manifests");
+    }
+
+    public Path root() {
+        return root;
+    }
+
+    /** Stores every regular file under {@code sourceDir} as archive {@code name}. */
+    public Result put(String name, Path sourceDir) throws IOException {
+        Path manifest = manifestPath(name);
+        if (Files.exists(manifest)) throw new FileAlreadyExistsException(manifest.toString());
+        long started = System.nanoTime();
+        Files.createDirectories(chunksDir);
+        Files.createDirectories(manifestsDir);
+
+        List<Path> files;
+        try (Stream<Path> s = Files.walk(sourceDir)) {
+            files = s.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        Writer w = new Writer();
+        List<FileRef> refs = new ArrayList<>(files.size());
+        try {
+            for (Path f : files) {
+                String rel = sourceDir.relativize(f).toString().replace('\\', '/');
+                long mtime = Files.getLastModifiedTime(f).toMillis();
+                long before = w.bytesIn;
+                List<String> chunks = w.chunkFile(f);
+                refs.add(new FileRef(rel, w.bytesIn - before, mtime, chunks));
+            }
+        } finally {
+            w.deflater.end();
+        }
+        writeManifest(manifest, refs);
+        long millis = (System.nanoTime() - started) / 1_000_000;
+        return new Result(name, refs.size(), w.chunks, w.newChunks, w.bytesIn, w.bytesStored, millis);
+    }
+
+    /** Archive names, oldest name first. */
+    public List<String> archives() throws IOException {
+        if (!Files.isDirectory(manifestsDir)) return new ArrayList<>();
+        try (Stream<Path> s = Files.list(manifestsDir)) {
+            return s.map(p -> p.getFileName().toString())
+                    .filter(n -> n.endsWith(".csv"))
+                    .map(n -> n.substring(0, n.length() - 4))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    public List<FileRef> files(String name) throws IOException {
+        Path manifest = manifestPath(name);
+        List<FileRef> out = new ArrayList<>();
+        for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+            if (line.isEmpty() || line.equals(HEADER)) continue;
+            String[] f = line.split(",", 4); // path last, so it may contain commas
+            if (f.length < 4) throw new IOException("Bad manifest line in " + manifest + ": " + line);
+            try {
+                List<String> chunks = f[2].isEmpty() ? new ArrayList<>() : List.of(f[2].split(";"));
+                out.add(new FileRef(f[3], Long.parseLong(f[0]), Long.parseLong(f[1]), chunks));
+            } catch (NumberFormatException e) {
+                throw new IOException("Bad manifest line in " + manifest + ": " + line, e);
+            }
+        }
+        return out;
+    }
+
+    /** Streams a stored file's content to {@code out}. */
+    public void copyTo(FileRef file, OutputStream out) throws IOException {
+        for (String hash : file.chunks) {
+            try (InputStream in = new InflaterInputStream(Files.newInputStream(chunkPath(hash)))) {
+                in.transferTo(out);
+            }
+        }
+    }
+
+    /**
+     * Writes archive {@code name} as a plain ZIP with the same entry names as
+     * {@link MetadataManager#archiveZip}; entry times are the files' original mtimes.
+     */
+    public Path exportZip(String name, Path zipTarget) throws IOException {
+        List<FileRef> files = files(name);
+        Files.createDirectories(zipTarget.toAbsolutePath().getParent());
+        try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(zipTarget))) {
+            for (FileRef f : files) {
+                ZipEntry e = new ZipEntry(f.path);
+                e.setLastModifiedTime(FileTime.fromMillis(f.mtime));
+                zos.putNextEntry(e);
+                copyTo(f, zos);
+                zos.closeEntry();
+            }
+        }
+        return zipTarget;
+    }
+
+    /** Rebuilds archive {@code name} under {@code targetDir}; returns the number of files. */
+    public int restore(String name, Path targetDir) throws IOException {
+        Path base = targetDir.toAbsolutePath().normalize();
+        int n = 0;
+        for (FileRef f : files(name)) {
+            Path out = base.resolve(f.path).normalize();
+            if (!out.startsWith(base)) throw new IOException("Entry escapes target: " + f.path);
+            Files.createDirectories(out.getParent());
+            try (OutputStream os = Files.newOutputStream(out)) {
+                copyTo(f, os);
+            }
+            Files.setLastModifiedTime(out, FileTime.fromMillis(f.mtime));
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * Deletes archive {@code name} and every chunk no remaining archive refers to.
+     *
+     * @return number of chunks removed
+     */
+    public int delete(String name) throws IOException {
+        Files.delete(manifestPath(name));
+        Set<String> live = new HashSet<>();
+        for (String a : archives()) {
+            for (FileRef f : files(a)) live.addAll(f.chunks);
+        }
+        int removed = 0;
+        if (!Files.isDirectory(chunksDir)) return 0;
+        try (Stream<Path> s = Files.walk(chunksDir)) {
+            for (Path p : (Iterable<Path>) s.filter(Files::isRegularFile)::iterator) {
+                String hash = p.getParent().getFileName().toString() + p.getFileName();
+                if (!live.contains(hash)) {
+                    Files.delete(p);
+                    removed++;
+                }
+            }
+        }
+        return removed;
+    }
+
+    private Path manifestPath(String name) {
+        if (!name.matches("[A-Za-z0-9._-]+") || name.startsWith(".")) {
+            throw new IllegalArgumentException("Invalid archive name: " + name);
+        }
+        return manifestsDir.resolve(name + ".csv");
+    }
+
+    private Path chunkPath(String hash) {
+        return chunksDir.resolve(hash.substring(0, 2)).resolve(hash.substring(2));
+    }
+
+    private static void writeManifest(Path manifest, List<FileRef> refs) throws IOException {
+        Path tmp = manifest.resolveSibling(manifest.getFileName() + ".tmp");
+        try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            w.write(HEADER);
+            w.write('\n');
+            for (FileRef f : refs) {
+                w.write(f.size + "," + f.mtime + "," + String.join(";", f.chunks) + "," + f.path);
+                w.write('\n');
+            }
+        }
+        Files.move(tmp, manifest, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Chunking state for one put(); not shared between threads. */
+    private final class Writer {
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        final MessageDigest sha;
+        final HexFormat hex = HexFormat.of();
+        final Set<String> seen = new HashSet<>();
+        final byte[] chunk = new byte[MAX_CHUNK];
+        final byte[] buf = new byte[64 * 1024];
+        final ByteArrayOutputStream packed = new ByteArrayOutputStream();
+        long chunks;
+        long newChunks;
+        long bytesIn;
+        long bytesStored;
+
+        Writer() {
+            try {
+                sha = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+        }
+
+        List<String> chunkFile(Path file) throws IOException {
+            List<String> out = new ArrayList<>();
+            int len = 0;
+            long h = 0;
+            try (InputStream in = Files.newInputStream(file)) {
+                int n;
+                while ((n = in.read(buf)) > 0) {
+                    bytesIn += n;
+                    for (int i = 0; i < n; i++) {
+                        byte b = buf[i];
+                        chunk[len++] = b;
+                        h = (h << 1) + GEAR[b & 0xFF];
+                        if ((len >= MIN_CHUNK && (h & BOUNDARY_MASK) == 0) || len == MAX_CHUNK) {
+                            out.add(store(len));
+                            len = 0;
+                            h = 0;
+                        }
+                    }
+                }
+            }
+            if (len > 0) out.add(store(len));
+            return out;
+        }
+
+        private String store(int len) throws IOException {
+            chunks++;
+            sha.update(chunk, 0, len);
+            String hash = hex.formatHex(sha.digest());
+            if (!seen.add(hash)) return hash;
+            Path target = chunkPath(hash);
+            if (Files.exists(target)) return hash;
+
+            deflater.reset();
+            deflater.setInput(chunk, 0, len);
+            deflater.finish();
+            packed.reset();
+            byte[] out = new byte[8 * 1024];
+            while (!deflater.finished()) {
+                packed.write(out, 0, deflater.deflate(out));
+            }
+            Files.createDirectories(target.getParent());
+            Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+            Files.write(tmp, packed.toByteArray());
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            newChunks++;
+            bytesStored += packed.size();
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package med.supply.system.util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Incremental archives of a directory tree. Every archive {@code X.zip} gets a manifest
+ * {@code X.manifest.csv} in the same directory describing the whole tree at that point: per file
+ * its size, modification time, CRC-32 and the archive (this one or an earlier one) that holds
+ * its content. A new run compares the tree with the latest manifest and stores only new or
+ * changed files; files whose size and mtime match are not read at all, and files that were
+ * merely touched are recognised by their checksum. The manifest lists the earlier archives it
+ * depends on as parents, and {@link #restore} rebuilds the tree from the chain.
+ * <p>
+ * Manifests are found by name, so archive names must sort chronologically and be unique
+ * (e.g. {@code logs-yyyyMMdd-HHmmssSSS.zip}); an existing archive is never overwritten, since
+ * later manifests may still take files from it.
+ */
+public class IncrementalArchiver {
+    public static final String MANIFEST_SUFFIX = ".manifest.csv";
+    private static final String PARENTS = "#parents=";
+    private static final String HEADER = "size,mtime,crc32,archive,path";
+
+    /** One file as recorded in a manifest. */
+    public static final class FileState {
+        public final String path;      // relative, '/'-separated
+        public final long size;
+        public final long mtime;       // epoch millis
+        public final long crc;
+        public final String archive;   // file name of the zip holding the content
+
+        FileState(String path, long size, long mtime, long crc, String archive) {
+            this.path = path;
+            this.size = size;
+            this.mtime = mtime;
+            this.crc = crc;
+            this.archive = archive;
+        }
+    }
+
+    /** What one incremental run stored. */
+    public static final class Result {
+        public final Path zip;            // null when nothing changed
+        public final Path manifest;       // null when nothing changed
+        public final List<String> parents;
+        public final int added;
+        public final int unchanged;
+        public final int removed;
+        public final ParallelZipArchiver.Result zipResult;
+
+        Result(Path zip, Path manifest, List<String> parents, int added, int unchanged, int removed,
+               ParallelZipArchiver.Result zipResult) {
+            this.zip = zip;
+            this.manifest = manifest;
+            this.parents = parents;
+            this.added = added;
+            this.unchanged = unchanged;
+            this.removed = removed;
+            this.zipResult = zipResult;
+        }
+
+        @Override
+        public String toString() {
+            if (zip == null) return "Nothing changed (" + unchanged + " files already archived)";
+            return added + " new/changed, " + unchanged + " unchanged, " + removed + " removed; parents "
+                    + (parents.isEmpty() ? "none" : String.join(", ", parents))
+                    + (zipResult == null ? "" : "; " + zipResult);
+        }
+    }
+
+    private final Path archiveDir;
+    private final ParallelZipArchiver zipper;
+
+    public IncrementalArchiver(Path archiveDir, ParallelZipArchiver zipper) {
+        this.archiveDir = archiveDir;
+        this.zipper = zipper;
+    }
+
+    /**
+     * Archives what changed in {@code sourceDir} since the latest manifest into {@code zipTarget}
+     * (which must be in the archive directory) and writes its manifest next to it.
+     * When nothing changed no archive is written and {@link Result#zip} is null.
+     *
+     * @throws FileAlreadyExistsException if {@code zipTarget} or its manifest already exists
+     */
+    public Result archive(Path sourceDir, Path zipTarget) throws IOException {
+        if (!zipTarget.toAbsolutePath().getParent().equals(archiveDir.toAbsolutePath())) {
+            throw new IllegalArgumentException("Archive must be created in " + archiveDir);
+        }
+        if (Files.exists(zipTarget)) throw new FileAlreadyExistsException(zipTarget.toString());
+        if (Files.exists(manifestOf(zipTarget))) throw new FileAlreadyExistsException(manifestOf(zipTarget).toString());
+        String zipName = zipTarget.getFileName().toString();
+        Path previous = latestManifest();
+        Map<String, FileState> before = previous == null ? new HashMap<>() : readManifest(previous);
+        List<String> parents = previous == null ? new ArrayList<>() : readParents(previous);
+        if (previous != null) parents.add(zipNameOf(previous));
+
+        List<Path> files;
+        try (Stream<Path> s = Files.walk(sourceDir)) {
+            files = s.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        Map<String, FileState> after = new LinkedHashMap<>();
+        Map<String, Long> mtimes = new HashMap<>();
+        List<Path> changed = new ArrayList<>();
+        for (Path f : files) {
+            String name = sourceDir.relativize(f).toString().replace('\\', '/');
+            long size = Files.size(f);
+            long mtime = Files.getLastModifiedTime(f).toMillis();
+            FileState old = before.get(name);
+            if (old != null && old.size == size && (old.mtime == mtime || crc(f) == old.crc)) {
+                after.put(name, new FileState(name, size, mtime, old.crc, old.archive));
+            } else {
+                after.put(name, null); // keeps tree order; filled in from the zip below
+                mtimes.put(name, mtime);
+                changed.add(f);
+            }
+        }
+        int removed = 0;
+        for (String name : before.keySet()) {
+            if (!after.containsKey(name)) removed++;
+        }
+        int unchanged = files.size() - changed.size();
+        if (changed.isEmpty() && removed == 0) {
+            return new Result(null, null, parents, 0, unchanged, 0, null);
+        }
+
+        ParallelZipArchiver.Result zipped = zipper.archive(sourceDir, changed, zipTarget);
+        for (ParallelZipArchiver.Archived a : zipped.files) {
+            // size and CRC of what was actually stored, in case the file grew meanwhile
+            after.put(a.name, new FileState(a.name, a.size, mtimes.get(a.name), a.crc, zipName));
+        }
+        Set<String> used = after.values().stream().map(s -> s.archive).collect(Collectors.toSet());
+        parents.removeIf(p -> !used.contains(p));
+
+        Path manifest = manifestOf(zipTarget);
+        writeManifest(manifest, parents, after.values());
+        return new Result(zipTarget, manifest, parents, changed.size(), unchanged, removed, zipped);
+    }
+
+    /**
+     * Rebuilds the tree described by {@code manifest} under {@code targetDir}, taking each file from
+     * the archive that holds it and checking its CRC-32. Modification times are restored too.
+     *
+     * @return number of files restored
+     */
+    public int restore(Path manifest, Path targetDir) throws IOException {
+        Map<String, List<FileState>> byArchive = new LinkedHashMap<>();
+        for (FileState s : readManifest(manifest).values()) {
+            byArchive.computeIfAbsent(s.archive, k -> new ArrayList<>()).add(s);
+        }
+        Path root = targetDir.toAbsolutePath().normalize();
+        int restored = 0;
+        byte[] buf = new byte[64 * 1024];
+        for (Map.Entry<String, List<FileState>> e : byArchive.entrySet()) {
+            Path zip = manifest.resolveSibling(e.getKey());
+            if (!Files.exists(zip)) throw new IOException("Archive missing from chain: " + zip);
+            try (ZipFile zf = new ZipFile(zip.toFile())) {
+                for (FileState s : e.getValue()) {
+                    ZipEntry entry = zf.getEntry(s.path);
+                    if (entry == null) throw new IOException(s.path + " not found in " + zip);
+                    Path out = root.resolve(s.path).normalize();
+                    if (!out.startsWith(root)) throw new IOException("Entry escapes target: " + s.path);
+                    Files.createDirectories(out.getParent());
+                    CRC32 crc = new CRC32();
+                    try (InputStream in = zf.getInputStream(entry); OutputStream os = Files.newOutputStream(out)) {
+                        int n;
+                        while ((n = in.read(buf)) > 0) {
+                            crc.update(buf, 0, n);
+                            os.write(buf, 0, n);
+                        }
+                    }
+                    if (crc.getValue() != s.crc) throw new IOException("Checksum mismatch for " + s.path + " in " + zip);
+                    Files.setLastModifiedTime(out, FileTime.fromMillis(s.mtime));
+                    restored++;
+                }
+            }
+        }
+        return restored;
+    }
+
+    /** The newest manifest in the archive directory, or null if there is none yet. */
+    public Path latestManifest() throws IOException {
+        if (!Files.isDirectory(archiveDir)) return null;
+        try (Stream<Path> s = Files.list(archiveDir)) {
+            return s.filter(p -> p.getFileName().toString().endsWith(MANIFEST_SUFFIX))
+                    .max((a, b) -> a.getFileName().toString().compareTo(b.getFileName().toString()))
+                    .orElse(null);
+        }
+    }
+
+    public static Path manifestOf(Path zip) {
+        String name = zip.getFileName().toString();
+        String base = name.endsWith(".zip") ? name.substring(0, name.length() - 4) : name;
+        return zip.resolveSibling(base + MANIFEST_SUFFIX);
+    }
+
+    private static String zipNameOf(Path manifest) {
+        String name = manifest.getFileName().toString();
+        return name.substring(0, name.length() - MANIFEST_SUFFIX.length()) + ".zip";
+    }
+
+    /** Archives that {@code manifest} refers to besides its own, oldest first. */
+    public static List<String> readParents(Path manifest) throws IOException {
+        try (Stream<String> lines = Files.lines(manifest, StandardCharsets.UTF_8)) {
+            return lines.filter(l -> l.startsWith(PARENTS)).findFirst()
+                    .map(l -> l.substring(PARENTS.length()))
+                    .map(v -> v.isEmpty() ? new ArrayList<String>() : new ArrayList<>(Arrays.asList(v.split(";"))))
+                    .orElseGet(ArrayList::new);
+        }
+    }
+
+    /** Every file of the tree described by {@code manifest}, keyed by relative path. */
+    public static Map<String, FileState> readManifest(Path manifest) throws IOException {
+        Map<String, FileState> out = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+            if (line.isEmpty() || line.startsWith("#") || line.equals(HEADER)) continue;
+            // path last, so it may contain commas
+            String[] f = line.split(",", 5);
+            if (f.length < 5) throw new IOException("Bad manifest line in " + manifest + ": " + line);
+            try {
+                out.put(f[4], new FileState(f[4], Long.parseLong(f[0]), Long.parseLong(f[1]),
+                        Long.parseLong(f[2], 16), f[3]));
+            } catch (NumberFormatException e) {
+                throw new IOException("Bad manifest line in " + manifest + ": " + line, e);
+            }
+        }
+        return out;
+    }
+
+    private static void writeManifest(Path manifest, List<String> parents, Iterable<FileState> files)
+            throws IOException {
+        Path tmp = manifest.resolveSibling(manifest.getFileName() + ".tmp");
+        try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            w.write(PARENTS + String.join(";", parents));
+            w.write('\n');
+            w.write(HEADER);
+            w.write('\n');
+            for (FileState s : files) {
+                w.write(s.size + "," + s.mtime + "," + Long.toHexString(s.crc) + "," + s.archive + "," + s.path);
+                w.write('\n');
+            }
+        }
+        Files.move(tmp, manifest, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static long crc(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buf = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buf)) > 0) crc.update(buf, 0, n);
+        }
+        return crc.getValue();
+    }
+}
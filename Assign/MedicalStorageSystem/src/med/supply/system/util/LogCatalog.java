@@ -0,0 +1,186 @@
+package med.supply.system.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory catalog of daily log files and their rotated segments ({@code <date>.<n>.log},
+ * {@code <date>.<n>.log.gz}), indexed by equipment name, {@link LogKind} and date.
+ * It is rebuilt from {@code log_metadata.csv} and then kept current by {@link LogManager},
+ * so lookups cost O(result size) and never walk the log directory tree.
+ */
+public class LogCatalog {
+    private static final Pattern DAILY_FILE = Pattern.compile("^(\\d{4}-\\d{2}-\\d{2})(\\.\\d{1,9})?\\.log(\\.gz)?$");
+
+    private final PathsConfig cfg;
+    private final Map<Path, Entry> entries = new HashMap<>();
+    private final Map<String, Set<Path>> byEquipment = new HashMap<>();
+    private final Map<LogKind, Set<Path>> byKind = new EnumMap<>(LogKind.class);
+    private final NavigableMap<LocalDate, Set<Path>> byDate = new TreeMap<>();
+
+    public LogCatalog(PathsConfig cfg) {
+        this.cfg = cfg;
+    }
+
+    /**
+     * Replays the metadata CSV: LOG rows add files, MOVE rows re-point them, ROTATE rows add
+     * rotated segments (replacing the uncompressed one once compressed) and DELETE rows drop them. Rows for paths outside {@code cfg.logsRoot} are ignored.
+     */
+    public static LogCatalog load(PathsConfig cfg) throws IOException {
+        LogCatalog catalog = new LogCatalog(cfg);
+        if (!Files.exists(cfg.metaIndex)) return catalog;
+        MetadataManager.forEachRow(cfg.metaIndex, row -> {
+            Path p = Path.of(row.path);
+            switch (row.kind) {
+                case "LOG" -> catalog.add(p);
+                case "DELETE" -> catalog.remove(p);
+                case "ROTATE" -> {
+                    if (row.notes.startsWith("compressed from ")) {
+                        catalog.remove(Path.of(row.notes.substring("compressed from ".length())));
+                    }
+                    catalog.add(p);
+                }
+                case "MOVE" -> {
+                    if (row.notes.startsWith("moved from ")) {
+                        catalog.remove(Path.of(row.notes.substring("moved from ".length())));
+                    }
+                    catalog.add(p);
+                }
+                default -> { }
+            }
+        });
+        return catalog;
+    }
+
+    /** Registers a file whose kind, equipment and date are already known. */
+    public synchronized void add(LogKind kind, String equipment, LocalDate date, Path file) {
+        Path key = file.normalize();
+        if (entries.containsKey(key)) return;
+        Entry e = new Entry(kind, equipment, date);
+        entries.put(key, e);
+        byKind.computeIfAbsent(kind, k -> new TreeSet<>()).add(key);
+        byDate.computeIfAbsent(date, k -> new TreeSet<>()).add(key);
+        if (equipment != null) {
+            byEquipment.computeIfAbsent(equipment, k -> new TreeSet<>()).add(key);
+        }
+    }
+
+    /**
+     * Registers a file by parsing its location under {@code cfg.logsRoot}.
+     *
+     * @return false if {@code file} is not a daily log file
+     */
+    public boolean add(Path file) {
+        Path p = file.normalize();
+        Path root = cfg.logsRoot.normalize();
+        if (!p.startsWith(root)) return false;
+        Entry e = describe(cfg, root.relativize(p));
+        if (e == null) return false;
+        add(e.kind, e.equipment, e.date, p);
+        return true;
+    }
+
+    /**
+     * Kind, equipment and date of a daily log from its path relative to {@code cfg.logsRoot}
+     * (also the entry name inside log archives), or null if it is not one.
+     */
+    static Entry describe(PathsConfig cfg, Path rel) {
+        if (rel.getNameCount() < 2) return null;
+        Matcher m = DAILY_FILE.matcher(rel.getFileName().toString());
+        if (!m.matches()) return null;
+        LocalDate date;
+        try {
+            date = LocalDate.parse(m.group(1));
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+        String top = rel.getName(0).toString();
+        if (rel.getNameCount() == 2 && top.equals(cfg.logsSystem.getFileName().toString())) {
+            return new Entry(LogKind.SYSTEM, null, date);
+        } else if (rel.getNameCount() == 3 && top.equals(cfg.logsVehicles.getFileName().toString())) {
+            return new Entry(LogKind.VEHICLE, rel.getName(1).toString(), date);
+        } else if (rel.getNameCount() == 3 && top.equals(cfg.logsCharging.getFileName().toString())) {
+            return new Entry(LogKind.CHARGING, rel.getName(1).toString(), date);
+        }
+        return null;
+    }
+
+    public synchronized void remove(Path file) {
+        Path key = file.normalize();
+        Entry e = entries.remove(key);
+        if (e == null) return;
+        removeFrom(byKind, e.kind, key);
+        removeFrom(byDate, e.date, key);
+        if (e.equipment != null) removeFrom(byEquipment, e.equipment, key);
+    }
+
+    private static <K> void removeFrom(Map<K, Set<Path>> index, K k, Path file) {
+        Set<Path> set = index.get(k);
+        if (set != null && set.remove(file) && set.isEmpty()) {
+            index.remove(k);
+        }
+    }
+
+    /** Vehicle and charging logs of {@code equipment}, sorted by path. */
+    public synchronized List<Path> byEquipment(String equipment) {
+        return copy(byEquipment.get(equipment));
+    }
+
+    public synchronized List<Path> byKind(LogKind kind) {
+        return copy(byKind.get(kind));
+    }
+
+    public synchronized List<Path> byDate(LocalDate date) {
+        return copy(byDate.get(date));
+    }
+
+    /** Every log dated within {@code [from, to]} (both inclusive). */
+    public synchronized List<Path> byDateRange(LocalDate from, LocalDate to) {
+        List<Path> out = new ArrayList<>();
+        for (Set<Path> s : byDate.subMap(from, true, to, true).values()) {
+            out.addAll(s);
+        }
+        return out;
+    }
+
+    /** Every known log file, sorted by path. */
+    public synchronized List<Path> all() {
+        List<Path> out = new ArrayList<>(entries.keySet());
+        out.sort(null);
+        return out;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static List<Path> copy(Set<Path> s) {
+        return s == null ? new ArrayList<>() : new ArrayList<>(s);
+    }
+
+    static final class Entry {
+        final LogKind kind;
+        final String equipment;
+        final LocalDate date;
+
+        Entry(LogKind kind, String equipment, LocalDate date) {
+            this.kind = kind;
+            this.equipment = equipment;
+            this.date = date;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package med.supply.system.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of open append channels for daily log files.
+ * Least recently used channels are closed once {@code capacity} is exceeded, and every
+ * channel belonging to an earlier day is closed as soon as a write for a later day arrives.
+ * All operations are serialized on the cache, so a channel is never closed mid-write.
+ * With a {@link LogRotator} set, a file that would grow past its size limit is rotated
+ * before the write, so a segment exceeds the limit by at most one appended batch, and the
+ * daily files written on one day are rotated (and so compressed) once the next day begins.
+ */
+public class LogChannelCache implements AutoCloseable {
+
+    /** Called after a log file has been opened; {@code created} is true for new files. */
+    public interface OpenListener {
+        void opened(Path file, boolean created) throws IOException;
+    }
+
+    private final int capacity;
+    private final OpenListener listener;
+    private final LinkedHashMap<Path, Handle> open;
+    private LocalDate currentDay;
+    private LogRotator rotator;
+    private final Map<Path, LocalDate> written = new HashMap<>(); // files appended to while rotating, by day
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expired;
+    private long rotations;
+
+    public LogChannelCache(int capacity, OpenListener listener) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.listener = listener;
+        this.open = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /** Enables size-based rotation; null turns it off. */
+    public synchronized void setRotator(LogRotator rotator) {
+        this.rotator = rotator;
+        if (rotator == null) written.clear();
+    }
+
+    /**
+     * Appends {@code data} to {@code file}, the daily log for {@code day}.
+     *
+     * @return the file offset at which {@code data} starts
+     */
+    public synchronized long append(Path file, LocalDate day, ByteBuffer data) throws IOException {
+        Handle h = acquire(file, day);
+        if (rotator != null && rotator.isDue(h.size, data.remaining())) {
+            open.remove(file);
+            closeQuietly(h.channel);
+            rotator.rotate(file);
+            rotations++;
+            h = acquire(file, day);
+        }
+        long start = h.size;
+        while (data.hasRemaining()) {
+            h.size += h.channel.write(data);
+        }
+        if (rotator != null) written.put(file, day);
+        return start;
+    }
+
+    private Handle acquire(Path file, LocalDate day) throws IOException {
+        rollTo(day);
+        Handle h = open.get(file);
+        if (h != null) {
+            hits++;
+            return h;
+        }
+        misses++;
+        Files.createDirectories(file.getParent());
+        boolean creating = !Files.exists(file);
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        h = new Handle(ch, day, ch.size());
+        open.put(file, h);
+        evictOverflow();
+        if (listener != null) {
+            listener.opened(file, creating);
+        }
+        return h;
+    }
+
+    private void rollTo(LocalDate day) {
+        if (currentDay != null && !day.isAfter(currentDay)) return;
+        currentDay = day;
+        Iterator<Handle> it = open.values().iterator();
+        while (it.hasNext()) {
+            Handle h = it.next();
+            if (h.day.isBefore(day)) {
+                closeQuietly(h.channel);
+                it.remove();
+                expired++;
+            }
+        }
+        if (rotator == null) return;
+        // a finished day's file becomes a compressed segment, like those rotated by size
+        Iterator<Map.Entry<Path, LocalDate>> files = written.entrySet().iterator();
+        while (files.hasNext()) {
+            Map.Entry<Path, LocalDate> e = files.next();
+            if (!e.getValue().isBefore(day)) continue;
+            files.remove();
+            Path file = e.getKey();
+            try {
+                if (Files.size(file) > 0) {
+                    rotator.rotate(file);
+                    rotations++;
+                }
+            } catch (NoSuchFileException ex) {
+                // moved or archived since it was written
+            } catch (IOException ex) {
+                System.err.println("Log rotation error: " + file + ": " + ex.getMessage());
+            }
+        }
+    }
+
+    private void evictOverflow() {
+        Iterator<Handle> it = open.values().iterator();
+        while (open.size() > capacity && it.hasNext()) {
+            closeQuietly(it.next().channel);
+            it.remove();
+            evictions++;
+        }
+    }
+
+    /** Closes the channel for {@code file}, if open (e.g. before the file is moved or deleted). */
+    public synchronized void invalidate(Path file) {
+        Handle h = open.remove(file);
+        if (h != null) closeQuietly(h.channel);
+        written.remove(file);
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(open.size(), hits, misses, evictions, expired, rotations);
+    }
+
+    /** Closes every open channel. The cache stays usable and reopens files on demand. */
+    @Override
+    public synchronized void close() throws IOException {
+        IOException first = null;
+        for (Handle h : open.values()) {
+            try {
+                h.channel.close();
+            } catch (IOException e) {
+                if (first == null) first = e;
+            }
+        }
+        open.clear();
+        if (first != null) throw first;
+    }
+
+    private static void closeQuietly(FileChannel ch) {
+        try {
+            ch.close();
+        } catch (IOException e) {
+            System.err.println("Logging error: " + e.getMessage());
+        }
+    }
+
+    private static final class Handle {
+        final FileChannel channel;
+        final LocalDate day;
+        long size; // this process is the only appender, so tracking avoids an fstat per write
+
+        Handle(FileChannel channel, LocalDate day, long size) {
+            this.channel = channel;
+            this.day = day;
+            this.size = size;
+        }
+    }
+
+    /** Point-in-time counters of a {@link LogChannelCache}. */
+    public static final class Stats {
+        public final int open;
+        public final long hits;
+        public final long misses;
+        public final long evictions;
+        public final long expired;
+        public final long rotations;
+
+        Stats(int open, long hits, long misses, long evictions, long expired, long rotations) {
+            this.open = open;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.expired = expired;
+            this.rotations = rotations;
+        }
+
+        @Override
+        public String toString() {
+            return "LogChannelCache.Stats{" +
+                    "open=" + open +
+                    ", hits=" + hits +
+                    ", misses=" + misses +
+                    ", evictions=" + evictions +
+                    ", expired=" + expired +
+                    ", rotations=" + rotations +
+                    '}';
+        }
+    }
+}
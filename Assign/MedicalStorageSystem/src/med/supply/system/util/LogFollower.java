@@ -0,0 +1,294 @@
+package med.supply.system.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Streams lines appended to a log file to a subscriber, like {@code tail -f}.
+ * A background thread waits on a {@link WatchService} for the file's directory and, on every
+ * change, reads only the bytes after the last delivered line with positional reads.
+ * Only complete lines are delivered. When the file is rotated away (see {@link LogRotator})
+ * the rest of the old file is drained through the still-open channel, any segments rotated
+ * since are read in order, and the new file is followed from its start; a daily log {@code <date>.log} likewise moves on to the next day's
+ * file once that file appears.
+ */
+public class LogFollower implements AutoCloseable {
+    private static final Pattern SEGMENT = Pattern.compile("^(.+)\\.(\\d{1,9})\\.log(\\.gz)?$"); // n fits an int
+    private static final Pattern DAILY_FILE = Pattern.compile("^(\\d{4}-\\d{2}-\\d{2})\\.log$");
+    private static final long POLL_MILLIS = 250; // fallback in case a watch event is missed
+    private static final int BLOCK = 64 * 1024;
+
+    private final Clock clock;
+    private final Consumer<String> subscriber;
+    private final WatchService watcher;
+    private final Thread worker;
+    private final ByteBuffer block = ByteBuffer.allocate(BLOCK);
+    private final ByteArrayOutputStream partial = new ByteArrayOutputStream();
+
+    private volatile boolean closed;
+    private Path file;
+    private LocalDate day;        // date of {@code file}, or null if it is not a daily log
+    private FileChannel channel;  // null until {@code file} exists
+    private Object fileKey;
+    private long offset;
+    private int segment;          // number the open file will get when it is rotated
+    private long delivered;
+
+    /**
+     * Starts following {@code file} from its current end.
+     *
+     * @param clock      decides when a daily log rolls over to the next day's file
+     * @param subscriber receives each new line (without line terminator) on the follower thread
+     */
+    public LogFollower(Path file, Clock clock, Consumer<String> subscriber) throws IOException {
+        this.file = file.normalize();
+        this.clock = clock;
+        this.subscriber = Objects.requireNonNull(subscriber);
+        this.day = dayOf(this.file);
+        Path dir = this.file.getParent();
+        Files.createDirectories(dir);
+        this.watcher = dir.getFileSystem().newWatchService();
+        dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        if (openIfExists()) {
+            offset = channel.size();
+        }
+        this.segment = maxSegment() + 1;
+        this.worker = new Thread(this::run, "log-follower");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /** The file currently being followed; changes on rotation to the next day. */
+    public synchronized Path file() {
+        return file;
+    }
+
+    /** Number of lines delivered so far. */
+    public synchronized long delivered() {
+        return delivered;
+    }
+
+    /** Stops following and waits for the follower thread to finish. */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        watcher.close();
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (channel != null) channel.close();
+        }
+    }
+
+    private void run() {
+        while (!closed) {
+            try {
+                WatchKey key = watcher.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    key.pollEvents(); // which file changed does not matter, only that something did
+                    key.reset();
+                }
+                poll();
+            } catch (ClosedWatchServiceException | InterruptedException e) {
+                break;
+            } catch (IOException e) {
+                System.err.println("Log follow error: " + e.getMessage());
+            }
+        }
+    }
+
+    private synchronized void poll() throws IOException {
+        if (channel == null) {
+            // Not created yet, or rotated away last time before its successor existed.
+            catchUp(segment);
+        } else if (replaced()) {
+            drain();
+            flushPartial();
+            channel.close();
+            channel = null;
+            catchUp(segment + 1);
+        }
+        drain();
+        switchToNextDay();
+    }
+
+    /**
+     * Delivers segments {@code first} onwards (those rotated before this follower could open
+     * them) and opens the current file. Loops if yet another rotation happens meanwhile.
+     */
+    private void catchUp(int first) throws IOException {
+        int next = first;
+        while (!closed) {
+            int max = maxSegment();
+            for (int n = next; n <= max; n++) {
+                readSegment(n);
+            }
+            next = Math.max(next, max + 1);
+            if (!openIfExists() || maxSegment() == max) {
+                segment = next;
+                return;
+            }
+            channel.close(); // the file just opened has itself been rotated; read it as a segment
+            channel = null;
+        }
+    }
+
+    /** Highest {@code n} of the {@code <base>.<n>.log(.gz)} segments of the followed file, or 0. */
+    private int maxSegment() throws IOException {
+        String name = file.getFileName().toString();
+        String base = name.endsWith(".log") ? name.substring(0, name.length() - 4) : name;
+        int max = 0;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(file.getParent(), base + ".*.log*")) {
+            for (Path p : ds) {
+                Matcher m = SEGMENT.matcher(p.getFileName().toString());
+                if (m.matches() && m.group(1).equals(base)) {
+                    max = Math.max(max, Integer.parseInt(m.group(2)));
+                }
+            }
+        }
+        return max;
+    }
+
+    /** Delivers every line of segment {@code n}, compressed or not. */
+    private void readSegment(int n) throws IOException {
+        String name = file.getFileName().toString();
+        String base = name.endsWith(".log") ? name.substring(0, name.length() - 4) : name;
+        Path plain = file.resolveSibling(base + "." + n + ".log");
+        Path gz = file.resolveSibling(plain.getFileName() + ".gz");
+        Stream<String> lines;
+        try {
+            lines = LogReader.lines(plain);
+        } catch (NoSuchFileException e) {
+            try {
+                lines = LogReader.lines(gz);
+            } catch (NoSuchFileException gone) {
+                return;
+            }
+        }
+        try (Stream<String> s = lines) {
+            s.forEach(line -> {
+                partial.reset();
+                partial.writeBytes(line.getBytes(StandardCharsets.UTF_8));
+                deliver();
+            });
+        }
+    }
+
+    /** Moves on to today's daily file once it exists, after draining the current one. */
+    private void switchToNextDay() throws IOException {
+        if (day == null) return;
+        LocalDate today = LocalDate.now(clock);
+        if (!today.isAfter(day)) return;
+        Path next = file.resolveSibling(today + ".log");
+        if (!Files.exists(next)) return;
+        if (channel != null) {
+            drain();
+            channel.close();
+            channel = null;
+        }
+        flushPartial();
+        file = next;
+        day = today;
+        segment = maxSegment() + 1;
+        if (openIfExists()) drain();
+    }
+
+    /** True if {@code file} now names a different file than the open channel (rotated or recreated). */
+    private boolean replaced() throws IOException {
+        try {
+            Object key = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+            return key != null ? !key.equals(fileKey) : Files.size(file) < offset;
+        } catch (NoSuchFileException e) {
+            return false; // rotated away and not recreated yet
+        }
+    }
+
+    private boolean openIfExists() throws IOException {
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        fileKey = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+        offset = 0;
+        partial.reset();
+        return true;
+    }
+
+    /** Delivers every complete line between {@code offset} and the end of the channel. */
+    private void drain() throws IOException {
+        if (channel == null) return;
+        while (!closed) {
+            block.clear();
+            int n = channel.read(block, offset + partial.size());
+            if (n <= 0) return;
+            byte[] a = block.array();
+            int from = 0;
+            for (int i = 0; i < n; i++) {
+                if (a[i] == '\n') {
+                    partial.write(a, from, i - from);
+                    offset += partial.size() + 1;
+                    deliver();
+                    from = i + 1;
+                }
+            }
+            partial.write(a, from, n - from);
+        }
+    }
+
+    /** A final line without terminator is delivered once its file is finished. */
+    private void flushPartial() {
+        if (partial.size() > 0) {
+            offset += partial.size();
+            deliver();
+        }
+    }
+
+    private void deliver() {
+        String line = partial.toString(StandardCharsets.UTF_8);
+        partial.reset();
+        if (line.endsWith("\r")) line = line.substring(0, line.length() - 1);
+        delivered++;
+        try {
+            subscriber.accept(line);
+        } catch (RuntimeException e) {
+            System.err.println("Log follow error: " + e.getMessage());
+        }
+    }
+
+    private static LocalDate dayOf(Path file) {
+        Matcher m = DAILY_FILE.matcher(file.getFileName().toString());
+        if (!m.matches()) return null;
+        try {
+            return LocalDate.parse(m.group(1));
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package med.supply.system.util;
+
+/**
+ * The three families of daily logs written by {@link LogManager}.
+ */
+public enum LogKind {
+    SYSTEM, VEHICLE, CHARGING
+}
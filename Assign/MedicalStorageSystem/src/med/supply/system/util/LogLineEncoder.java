@@ -0,0 +1,153 @@
+package med.supply.system.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Encodes log lines straight into a reused byte buffer.
+ * The output is byte-for-byte what {@code "[TAG] " + ZonedDateTime.format(ISO_OFFSET_DATE_TIME)
+ * + " " + message + lineSeparator} produced: the date-time prefix and zone offset are cached
+ * per second, the fraction digits are written directly, and the calendar date used for the
+ * daily file name is cached until midnight. Not thread-safe; use one encoder per writer.
+ */
+public class LogLineEncoder {
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    private final ZoneId zone;
+    private byte[] buf = new byte[256];
+    private int len;
+
+    private long cachedSecond = Long.MIN_VALUE;
+    private byte[] secondText;   // e.g. 2025-10-31T14:05:09
+    private byte[] offsetText;   // e.g. +01:00 or Z
+
+    private long dayStart = Long.MAX_VALUE;
+    private long nextDayStart = Long.MIN_VALUE;
+    private LocalDate date;
+
+    public LogLineEncoder(ZoneId zone) {
+        this.zone = zone;
+    }
+
+    /**
+     * Encodes one line logged at the given instant.
+     *
+     * @param name equipment name; ignored for {@link LogKind#SYSTEM}
+     * @return a buffer positioned at 0 whose limit is the line length; valid until the next call
+     */
+    public ByteBuffer encode(LogKind kind, String name, String message, long epochSecond, int nano) {
+        refresh(epochSecond);
+        len = 0;
+        putByte('[');
+        putAscii(kind.name());
+        if (kind != LogKind.SYSTEM) {
+            putByte(':');
+            putString(name);
+        }
+        putByte(']');
+        putByte(' ');
+        putBytes(secondText);
+        if (nano != 0) putFraction(nano);
+        putBytes(offsetText);
+        putByte(' ');
+        putString(message);
+        putBytes(NEWLINE);
+        return ByteBuffer.wrap(buf, 0, len);
+    }
+
+    /** Calendar date, in the encoder's zone, of the last encoded line. */
+    public LocalDate date() {
+        return date;
+    }
+
+    private void refresh(long epochSecond) {
+        if (epochSecond < dayStart || epochSecond >= nextDayStart) {
+            date = LocalDate.ofInstant(Instant.ofEpochSecond(epochSecond), zone);
+            dayStart = date.atStartOfDay(zone).toEpochSecond();
+            nextDayStart = date.plusDays(1).atStartOfDay(zone).toEpochSecond();
+        }
+        if (epochSecond != cachedSecond) {
+            ZonedDateTime t = Instant.ofEpochSecond(epochSecond).atZone(zone);
+            LocalDateTime local = t.toLocalDateTime();
+            secondText = DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(local).getBytes(StandardCharsets.US_ASCII);
+            offsetText = t.getOffset().getId().getBytes(StandardCharsets.US_ASCII);
+            cachedSecond = epochSecond;
+        }
+    }
+
+    /** Same digits as ISO_LOCAL_TIME: '.', then up to nine digits with trailing zeros dropped. */
+    private void putFraction(int nano) {
+        int digits = 9;
+        while (nano % 10 == 0) {
+            nano /= 10;
+            digits--;
+        }
+        ensure(digits + 1);
+        buf[len++] = '.';
+        for (int i = digits - 1; i >= 0; i--) {
+            buf[len + i] = (byte) ('0' + nano % 10);
+            nano /= 10;
+        }
+        len += digits;
+    }
+
+    private void putByte(char c) {
+        ensure(1);
+        buf[len++] = (byte) c;
+    }
+
+    private void putBytes(byte[] b) {
+        ensure(b.length);
+        System.arraycopy(b, 0, buf, len, b.length);
+        len += b.length;
+    }
+
+    private void putAscii(String s) {
+        ensure(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            buf[len++] = (byte) s.charAt(i);
+        }
+    }
+
+    /** UTF-8 encodes {@code s}; null is written as "null" and unpaired surrogates as '?', as concatenation did. */
+    private void putString(String s) {
+        if (s == null) s = "null";
+        ensure(s.length() * 3);
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                buf[len++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[len++] = (byte) (0xC0 | (c >> 6));
+                buf[len++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                buf[len++] = (byte) (0xF0 | (cp >> 18));
+                buf[len++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                buf[len++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buf[len++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buf[len++] = '?';
+            } else {
+                buf[len++] = (byte) (0xE0 | (c >> 12));
+                buf[len++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buf[len++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private void ensure(int extra) {
+        if (len + extra > buf.length) {
+            byte[] bigger = new byte[Math.max(buf.length * 2, len + extra)];
+            System.arraycopy(buf, 0, bigger, 0, len);
+            buf = bigger;
+        }
+    }
+}
@@ -2,23 +2,159 @@ package med.supply.system.util;
 
 import med.supply.system.exception.ExceptionHandler;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.time.Clock;
+import java.time.Instant;
 import java.time.LocalDate;
-import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class LogManager implements AutoCloseable {
+    private static final int TIME_INDEX_EVERY_LINES = 256;
+    private static final long TIME_INDEX_EVERY_BYTES = 64 * 1024;
+    private static final Pattern DAILY_FILE = Pattern.compile("^(\\d{4}-\\d{2}-\\d{2})(?:\\.(\\d{1,9}))?\\.log(?:\\.gz)?$");
 
-public class LogManager {
     private final PathsConfig cfg;
     private final DateTimeFormatter df = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private final Clock clock;
+    private final LogLineEncoder encoder; // synchronous mode; guarded by itself
+    private final LogChannelCache channels;
+    private final LogCatalog catalog;
+    private final LogTimeIndex timeIndex;
+    private final Map<LogKind, Map<String, DailyPath>> dailyPaths = new EnumMap<>(LogKind.class);
+    private volatile AsyncLogWriter async; // null = synchronous writes
+    private LogRotator rotator;            // null = no size limit
+    private ArchiveCatalog archives;       // created on first use
 
     public LogManager(PathsConfig cfg) {
+        this(cfg, 256);
+    }
+
+    public LogManager(PathsConfig cfg, int openFileCapacity) {
+        this(cfg, openFileCapacity, Clock.systemDefaultZone());
+    }
+
+    /**
+     * @param openFileCapacity maximum number of log files kept open at the same time
+     * @param clock            source of line timestamps; its zone decides the daily file dates
+     */
+    public LogManager(PathsConfig cfg, int openFileCapacity, Clock clock) {
         this.cfg = cfg;
+        this.clock = clock;
+        this.encoder = new LogLineEncoder(clock.getZone());
+        for (LogKind kind : LogKind.values()) {
+            dailyPaths.put(kind, new ConcurrentHashMap<>());
+        }
+        this.channels = new LogChannelCache(openFileCapacity, this::opened);
+        LogCatalog loaded;
+        try {
+            loaded = LogCatalog.load(cfg);
+        } catch (IOException e) {
+            System.err.println("Log catalog: could not read " + cfg.metaIndex + ": " + e.getMessage());
+            loaded = new LogCatalog(cfg);
+        }
+        this.catalog = loaded;
+        this.timeIndex = new LogTimeIndex(cfg, TIME_INDEX_EVERY_LINES, TIME_INDEX_EVERY_BYTES);
+    }
+
+    /** Index of known log files; kept current as lines are written. */
+    public LogCatalog catalog() {
+        return catalog;
+    }
+
+    /**
+     * Switches this manager to asynchronous mode: log calls only queue the line and a
+     * background thread appends it to the cached file channels in batches.
+     *
+     * @param queueCapacity       maximum number of queued lines before callers block
+     * @param flushIntervalMillis longest time a queued line may wait before reaching its file
+     */
+    public synchronized void enableAsync(int queueCapacity, long flushIntervalMillis) {
+        if (async != null) {
+            throw new IllegalStateException("Async logging is already enabled");
+        }
+        async = new AsyncLogWriter(channels, this::dailyLog, timeIndex, clock.getZone(),
+                queueCapacity, flushIntervalMillis);
+    }
+
+    /**
+     * Rotates a daily log once it would grow past {@code maxFileBytes}; the rotated segments
+     * are gzip-compressed in the background and stay visible to every lookup and reader.
+     */
+    public synchronized void enableRotation(long maxFileBytes) {
+        if (rotator != null) {
+            throw new IllegalStateException("Log rotation is already enabled");
+        }
+        rotator = new LogRotator(cfg, maxFileBytes, catalog, timeIndex);
+        channels.setRotator(rotator);
+    }
+
+    /** Waits until every queued line has been written. No-op in synchronous mode. */
+    public void flush() throws IOException {
+        AsyncLogWriter writer = async;
+        if (writer != null) writer.flush();
+    }
+
+    /** Drains pending lines, releases open files and finishes pending compressions. */
+    @Override
+    public synchronized void close() throws IOException {
+        if (async != null) {
+            async.close();
+            async = null;
+        }
+        channels.close();
+        if (rotator != null) {
+            channels.setRotator(null);
+            rotator.close();
+            rotator = null;
+        }
+        if (archives != null) {
+            archives.close();
+            archives = null;
+        }
+    }
+
+    /** Entry indexes of the ZIPs in {@code cfg.archiveRoot}; see {@link ArchiveCatalog}. */
+    public synchronized ArchiveCatalog archives() {
+        if (archives == null) archives = new ArchiveCatalog(cfg);
+        return archives;
+    }
+
+    /** Closes the cached channel of {@code file} and drops its time index; call before moving or deleting a log. */
+    public void release(Path file) throws IOException {
+        flush();
+        Path p = file.normalize();
+        channels.invalidate(p);
+        timeIndex.forget(p);
+        // the next line for this log must look the path up again, so the catalog learns of it anew
+        for (Map<String, DailyPath> byName : dailyPaths.values()) {
+            byName.values().removeIf(d -> d.path.normalize().equals(p));
+        }
+    }
+
+    /** A log file was opened for appending; a new file is (re-)registered in the catalog. */
+    private void opened(Path file, boolean created) throws IOException {
+        if (created) {
+            MetadataManager.append(cfg.metaIndex, file, "LOG", "created");
+            catalog.add(file);
+        }
+    }
+
+    /** Hit/miss/eviction counters of the open-file cache. */
+    public LogChannelCache.Stats channelStats() {
+        return channels.stats();
     }
 
     private Path dailySystemLog(LocalDate date) {
@@ -33,77 +169,184 @@ public class LogManager {
         return cfg.logsCharging.resolve(stationName).resolve(df.format(date) + ".log");
     }
 
+    private Path dailyPath(LogKind kind, String name, LocalDate day) {
+        return switch (kind) {
+            case SYSTEM -> dailySystemLog(day);
+            case VEHICLE -> dailyVehicleLog(name, day);
+            case CHARGING -> dailyChargingLog(name, day);
+        };
+    }
+
+    /** Daily file for a kind/name, cached so the hot path does not rebuild the Path per line. */
+    private Path dailyLog(LogKind kind, String name, LocalDate day) {
+        String key = kind == LogKind.SYSTEM ? "" : name;
+        Map<String, DailyPath> byName = dailyPaths.get(kind);
+        DailyPath cached = byName.get(key);
+        if (cached == null || !cached.day.equals(day)) {
+            Path p = dailyPath(kind, name, day);
+            cached = new DailyPath(day, p);
+            byName.put(key, cached);
+            catalog.add(kind, kind == LogKind.SYSTEM ? null : name, day, p);
+        }
+        return cached.path;
+    }
+
     public void logSystem(String line) throws IOException {
-        writeLine(dailySystemLog(LocalDate.now()), "[SYSTEM] " + timestamp() + " " + line);
+        writeLine(LogKind.SYSTEM, null, line);
     }
 
     public void logVehicle(String vehicleName, String line) throws IOException {
-        Path p = dailyVehicleLog(vehicleName, LocalDate.now());
-        writeLine(p, "[VEHICLE:" + vehicleName + "] " + timestamp() + " " + line);
+        writeLine(LogKind.VEHICLE, vehicleName, line);
     }
 
     public void logCharging(String stationName, String line) throws IOException {
-        Path p = dailyChargingLog(stationName, LocalDate.now());
-        writeLine(p, "[CHARGING:" + stationName + "] " + timestamp() + " " + line);
+        writeLine(LogKind.CHARGING, stationName, line);
     }
 
-    private String timestamp() {
-        return ZonedDateTime.now().format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
-    }
-
-    private void writeLine(Path file, String line) throws IOException {
-        Files.createDirectories(file.getParent());
-        boolean creating = !Files.exists(file);
-        try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
-                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
-            w.write(line);
-            w.newLine();
+    private void writeLine(LogKind kind, String name, String message) throws IOException {
+        Instant now = clock.instant();
+        AsyncLogWriter writer = async;
+        if (writer != null) {
+            writer.submit(kind, name, message, now.getEpochSecond(), now.getNano());
+            return;
         }
-        if (creating) {
-            MetadataManager.append(cfg.metaIndex, file, "LOG", "created");
+        synchronized (encoder) {
+            ByteBuffer line = encoder.encode(kind, name, message, now.getEpochSecond(), now.getNano());
+            LocalDate day = encoder.date();
+            Path file = dailyLog(kind, name, day);
+            long offset = channels.append(file, day, line);
+            timeIndex.onLine(file, offset, now.toEpochMilli());
         }
     }
 
     public List<Path> findByEquipmentOrDate(String equipmentNameOrDate) throws IOException {
-        List<Path> results = new ArrayList<>();
+        flush();
+        List<Path> candidates = new ArrayList<>();
         if (RegexUtils.isIsoDate(equipmentNameOrDate)) {
-            String fname = equipmentNameOrDate + ".log";
-            try (var stream = Files.walk(cfg.logsRoot)) {
-                stream.filter(p -> p.getFileName().toString().equals(fname)).forEach(results::add);
-            }
-        } else if (RegexUtils.isValidEquipment(equipmentNameOrDate)) {
-            Path veh = cfg.logsVehicles.resolve(equipmentNameOrDate);
-            Path chg = cfg.logsCharging.resolve(equipmentNameOrDate);
-            if (Files.exists(veh)) {
-                try (var stream = Files.list(veh)) {
-                    stream.filter(Files::isRegularFile).forEach(results::add);
-                }
-            }
-            if (Files.exists(chg)) {
-                try (var stream = Files.list(chg)) {
-                    stream.filter(Files::isRegularFile).forEach(results::add);
-                }
+            try {
+                candidates = catalog.byDate(LocalDate.parse(equipmentNameOrDate));
+            } catch (DateTimeParseException e) {
+                // matches the pattern but is not a real date (e.g. 2025-13-40): nothing to find
             }
         } else if ("system".equalsIgnoreCase(equipmentNameOrDate)) {
-            try (var stream = Files.list(cfg.logsSystem)) {
-                stream.filter(Files::isRegularFile).forEach(results::add);
+            candidates = catalog.byKind(LogKind.SYSTEM);
+        } else if (RegexUtils.isValidEquipment(equipmentNameOrDate)) {
+            candidates = catalog.byEquipment(equipmentNameOrDate);
+        }
+        // Drop entries whose file was moved or deleted behind the catalog's back.
+        List<Path> results = new ArrayList<>(candidates.size());
+        for (Path p : candidates) {
+            if (Files.isRegularFile(p)) {
+                results.add(p);
+            } else {
+                catalog.remove(p);
             }
         }
-        results.sort(Comparator.naturalOrder());
+        results.sort(LogManager::compareLogs);
         return results;
     }
 
+    /**
+     * Orders by directory, then day, then segment number, with a day's active {@code <date>.log}
+     * after its segments, so {@code .10} follows {@code .9}. Other names sort by name.
+     */
+    private static int compareLogs(Path a, Path b) {
+        Path da = a.getParent();
+        Path db = b.getParent();
+        int c = da == null || db == null ? Boolean.compare(da != null, db != null) : da.compareTo(db);
+        if (c != 0) return c;
+        Matcher ma = DAILY_FILE.matcher(a.getFileName().toString());
+        Matcher mb = DAILY_FILE.matcher(b.getFileName().toString());
+        if (ma.matches() && mb.matches()) {
+            c = ma.group(1).compareTo(mb.group(1));
+            if (c != 0) return c;
+            c = Integer.compare(segmentNumber(ma), segmentNumber(mb));
+            if (c != 0) return c;
+        }
+        return a.getFileName().compareTo(b.getFileName());
+    }
+
+    private static int segmentNumber(Matcher daily) {
+        return daily.group(2) == null ? Integer.MAX_VALUE : Integer.parseInt(daily.group(2));
+    }
+
+    /** Logs inside the archived ZIPs that {@link #findByEquipmentOrDate} would have found while they were live. */
+    public List<ArchiveReader.Entry> findArchived(String equipmentNameOrDate) throws IOException {
+        return archives().findByEquipmentOrDate(equipmentNameOrDate);
+    }
+
+    /** Up to {@code maxLines} lines of an archived log from line {@code firstLine} (0-based), read in place. */
+    public List<String> readArchivedLines(ArchiveReader.Entry e, long firstLine, int maxLines) throws IOException {
+        try (ArchiveCatalog.Lease lease = archives().acquire()) {
+            return lease.reader(e.zip).readLines(e, firstLine, maxLines);
+        }
+    }
+
+    /** Whole file as one String (decompressed for .gz segments); prefer {@link #readLogPage} for large logs. */
     public String readLog(Path p) throws IOException {
+        flush();
+        if (LogReader.isCompressed(p)) {
+            try (InputStream in = LogReader.open(p)) {
+                return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        }
         return Files.readString(p, StandardCharsets.UTF_8);
     }   //  this closing brace was missing!
 
+    /** Up to {@code maxLines} lines of {@code p} starting at byte {@code offset}. */
+    public LogReader.Page readLogPage(Path p, long offset, int maxLines) throws IOException {
+        flush();
+        return LogReader.readPage(p, offset, maxLines);
+    }
+
+    /** Up to {@code maxLines} lines of {@code p} ending before byte {@code endOffset} (Long.MAX_VALUE = end of file). */
+    public LogReader.Page readLogPageBefore(Path p, long endOffset, int maxLines) throws IOException {
+        flush();
+        return LogReader.readPageBefore(p, endOffset, maxLines);
+    }
+
+    /**
+     * Lines of {@code p} logged within {@code [from, to]}. The sparse time index narrows the
+     * read to the matching region instead of scanning the whole daily file.
+     */
+    public List<String> readLogRange(Path p, Instant from, Instant to) throws IOException {
+        flush();
+        return timeIndex.readRange(p, from, to);
+    }
+
+    /**
+     * Streams lines appended to today's log of {@code name} (ignored for SYSTEM) from now on,
+     * moving on to the next daily file at midnight. Close the follower to stop.
+     */
+    public LogFollower follow(LogKind kind, String name, Consumer<String> subscriber) throws IOException {
+        return follow(dailyPath(kind, name, LocalDate.now(clock)), subscriber);
+    }
+
+    /** Streams lines appended to {@code p} from now on; see {@link LogFollower}. */
+    public LogFollower follow(Path p, Consumer<String> subscriber) throws IOException {
+        flush();
+        return new LogFollower(p, clock, subscriber);
+    }
+
+    /**
+     * Searches the contents of every catalogued log in parallel, and of archived logs when the
+     * query asks for it; see {@link LogSearch}.
+     */
+    public long search(LogSearch.Query query, Consumer<LogSearch.Match> sink) throws IOException {
+        flush();
+        return new LogSearch(catalog, query.archives ? archives() : null).search(query, sink);
+    }
+
     /**
      * Archive a log file using the centralized ExceptionHandler (multiple exceptions demo).
      * This DOES NOT replace existing behavior; it's an additional utility you can call.
      */
     public void archiveLogWithHandler(java.nio.file.Path source, java.nio.file.Path archive) {
         try {
+            release(source);
             ExceptionHandler.moveLogFile(source, archive);
+            catalog.remove(source);
+            catalog.add(archive);
             logSystem("Archived log " + source + " -> " + archive);
             System.out.println("SUCCESS: Log file moved successfully.");
         } catch (Exception e) {
@@ -115,4 +358,14 @@ public class LogManager {
             }
         }
     }
+
+    private static final class DailyPath {
+        final LocalDate day;
+        final Path path;
+
+        DailyPath(LocalDate day, Path path) {
+            this.day = day;
+            this.path = path;
+        }
+    }
 }
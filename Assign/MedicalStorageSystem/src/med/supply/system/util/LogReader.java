@@ -0,0 +1,267 @@
+package med.supply.system.util;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads log files a page of lines at a time using positional channel reads,
+ * so even very large daily logs never have to fit in memory as one String.
+ * Offsets are byte offsets; pass 0, or the start/end offset of an earlier page.
+ * Gzip-compressed rotated segments ({@code *.log.gz}) are read transparently;
+ * their offsets refer to the uncompressed bytes.
+ */
+public class LogReader {
+    private static final int BLOCK = 64 * 1024;
+    /** Upper bound of deflate's compression ratio (258-byte matches coded in under two bits). */
+    private static final long MAX_DEFLATE_RATIO = 1032;
+
+    /** A run of consecutive lines and the byte range {@code [startOffset, endOffset)} they cover. */
+    public static final class Page {
+        public final List<String> lines;
+        public final long startOffset;
+        public final long endOffset;
+        public final long fileSize;
+
+        Page(List<String> lines, long startOffset, long endOffset, long fileSize) {
+            this.lines = Collections.unmodifiableList(lines);
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+            this.fileSize = fileSize;
+        }
+
+        public boolean isFirst() { return startOffset == 0; }
+
+        public boolean isLast() { return endOffset >= fileSize; }
+    }
+
+    /** Reads up to {@code len} bytes at {@code pos} into {@code buf}; streams ignore {@code pos}. */
+    private interface Source extends AutoCloseable {
+        int read(byte[] buf, long pos, int len) throws IOException;
+
+        @Override
+        void close() throws IOException;
+    }
+
+    public static boolean isCompressed(Path file) {
+        return file.getFileName().toString().endsWith(".gz");
+    }
+
+    /** Opens the (decompressed) content of a log file. */
+    public static InputStream open(Path file) throws IOException {
+        InputStream in = Files.newInputStream(file);
+        return isCompressed(file) ? new GZIPInputStream(in, BLOCK) : in;
+    }
+
+    /**
+     * Length of the (decompressed) content. For gzip the ISIZE trailer holds the length mod 2^32,
+     * which is exact only while the content is under 4 GiB; since deflate expands at most
+     * {@value #MAX_DEFLATE_RATIO}:1, it is trusted for files too small to exceed that and
+     * larger files are decompressed to count their bytes.
+     */
+    public static long size(Path file) throws IOException {
+        if (!isCompressed(file)) return Files.size(file);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (ch.size() < 4) return 0;
+            if (ch.size() > (1L << 32) / MAX_DEFLATE_RATIO) {
+                try (InputStream in = open(file)) {
+                    return in.transferTo(OutputStream.nullOutputStream());
+                }
+            }
+            ByteBuffer b = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            while (b.hasRemaining()) {
+                if (ch.read(b, ch.size() - 4 + b.position()) < 0) break;
+            }
+            return Integer.toUnsignedLong(b.getInt(0));
+        }
+    }
+
+    /** Up to {@code maxLines} lines starting at byte {@code offset}. */
+    public static Page readPage(Path file, long offset, int maxLines) throws IOException {
+        return read(file, offset, Long.MAX_VALUE, maxLines);
+    }
+
+    /** Up to {@code maxLines} lines ending just before byte {@code endOffset}; use for paging backwards. */
+    public static Page readPageBefore(Path file, long endOffset, int maxLines) throws IOException {
+        if (maxLines < 1) throw new IllegalArgumentException("maxLines must be positive");
+        long end = Math.min(endOffset, size(file));
+        long start;
+        if (isCompressed(file)) {
+            start = findLinesBeforeSequential(file, end, maxLines);
+        } else {
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                start = findLinesBefore(ch, end, maxLines);
+            }
+        }
+        return read(file, start, end, maxLines);
+    }
+
+    /** The last {@code maxLines} lines of the file. */
+    public static Page tail(Path file, int maxLines) throws IOException {
+        return readPageBefore(file, Long.MAX_VALUE, maxLines);
+    }
+
+    /** Lazily streams every line; close the stream to release the file. */
+    public static Stream<String> lines(Path file) throws IOException {
+        if (!isCompressed(file)) {
+            return Files.lines(file, StandardCharsets.UTF_8).map(LogReader::stripCr);
+        }
+        BufferedReader r = new BufferedReader(new InputStreamReader(open(file), StandardCharsets.UTF_8));
+        return r.lines().map(LogReader::stripCr).onClose(() -> {
+            try {
+                r.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private static Source source(Path file, long offset) throws IOException {
+        if (isCompressed(file)) {
+            InputStream in = open(file);
+            in.skipNBytes(offset);
+            return new Source() {
+                @Override
+                public int read(byte[] buf, long pos, int len) throws IOException {
+                    return in.readNBytes(buf, 0, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    in.close();
+                }
+            };
+        }
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.READ);
+        return new Source() {
+            @Override
+            public int read(byte[] buf, long pos, int len) throws IOException {
+                return ch.read(ByteBuffer.wrap(buf, 0, len), pos);
+            }
+
+            @Override
+            public void close() throws IOException {
+                ch.close();
+            }
+        };
+    }
+
+    private static Page read(Path file, long offset, long limit, int maxLines) throws IOException {
+        if (maxLines < 1) throw new IllegalArgumentException("maxLines must be positive");
+        if (offset < 0) throw new IllegalArgumentException("offset must be non-negative");
+        long fileSize = size(file);
+        long size = Math.min(fileSize, limit);
+        long first = Math.min(offset, size);
+        try (Source src = source(file, first)) {
+            List<String> lines = new ArrayList<>();
+            ByteArrayOutputStream partial = new ByteArrayOutputStream();
+            byte[] a = new byte[BLOCK];
+            long pos = first;
+            long end = pos;
+            while (lines.size() < maxLines && pos < size) {
+                int n = src.read(a, pos, (int) Math.min(BLOCK, size - pos));
+                if (n <= 0) break;
+                int lineStart = 0;
+                for (int i = 0; i < n && lines.size() < maxLines; i++) {
+                    if (a[i] == '\n') {
+                        partial.write(a, lineStart, i - lineStart);
+                        lines.add(decode(partial));
+                        partial.reset();
+                        lineStart = i + 1;
+                        end = pos + i + 1;
+                    }
+                }
+                if (lines.size() < maxLines) {
+                    partial.write(a, lineStart, n - lineStart);
+                }
+                pos += n;
+            }
+            // Last line without a trailing newline.
+            if (lines.size() < maxLines && partial.size() > 0) {
+                lines.add(decode(partial));
+                end = size;
+            }
+            return new Page(lines, first, end, fileSize);
+        }
+    }
+
+    /** Offset of the first of the last {@code maxLines} lines that end at or before {@code end}. */
+    private static long findLinesBefore(FileChannel ch, long end, int maxLines) throws IOException {
+        if (end == 0) return 0;
+        ByteBuffer one = ByteBuffer.allocate(1);
+        long scanEnd = end;
+        if (ch.read(one, end - 1) == 1 && one.get(0) == '\n') {
+            scanEnd = end - 1; // terminator of the last line, not a line boundary
+        }
+        ByteBuffer block = ByteBuffer.allocate(BLOCK);
+        int found = 0;
+        long pos = scanEnd;
+        while (pos > 0) {
+            int len = (int) Math.min(BLOCK, pos);
+            long from = pos - len;
+            block.clear().limit(len);
+            int read = 0;
+            while (read < len) {
+                int n = ch.read(block, from + read);
+                if (n <= 0) throw new IOException("Unexpected end of file while paging backwards");
+                read += n;
+            }
+            byte[] a = block.array();
+            for (int i = len - 1; i >= 0; i--) {
+                if (a[i] == '\n' && ++found == maxLines) {
+                    return from + i + 1;
+                }
+            }
+            pos = from;
+        }
+        return 0;
+    }
+
+    /** Same as {@link #findLinesBefore} for content that can only be read front to back. */
+    private static long findLinesBeforeSequential(Path file, long end, int maxLines) throws IOException {
+        long[] starts = new long[maxLines]; // ring buffer of the most recent line starts
+        int count = 1;
+        starts[0] = 0;
+        try (Source src = source(file, 0)) {
+            byte[] a = new byte[BLOCK];
+            long pos = 0;
+            while (pos < end) {
+                int n = src.read(a, pos, (int) Math.min(BLOCK, end - pos));
+                if (n <= 0) break;
+                for (int i = 0; i < n; i++) {
+                    long next = pos + i + 1;
+                    if (a[i] == '\n' && next < end) {
+                        starts[count % maxLines] = next;
+                        count++;
+                    }
+                }
+                pos += n;
+            }
+        }
+        return count <= maxLines ? 0 : starts[count % maxLines];
+    }
+
+    private static String decode(ByteArrayOutputStream bytes) {
+        return stripCr(bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    private static String stripCr(String s) {
+        return s.endsWith("\r") ? s.substring(0, s.length() - 1) : s;
+    }
+}
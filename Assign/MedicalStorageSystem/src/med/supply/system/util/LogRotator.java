@@ -0,0 +1,145 @@
+package med.supply.system.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Size-based rotation of daily logs. Daily files already split by day; once one grows past
+ * {@code maxFileBytes} it is renamed to the next free segment {@code <date>.<n>.log} and a fresh
+ * {@code <date>.log} is started. Segments are gzip-compressed to {@code <date>.<n>.log.gz} on a
+ * background thread. Both steps are recorded as ROTATE rows in {@code log_metadata.csv}, so a
+ * {@link LogCatalog} rebuilt from it knows about every segment.
+ */
+public class LogRotator implements AutoCloseable {
+    private static final Pattern SEGMENT = Pattern.compile("^(.+)\\.(\\d{1,9})\\.log(\\.gz)?$"); // n fits an int
+    private static final int BUFFER = 64 * 1024;
+
+    private final PathsConfig cfg;
+    private final long maxFileBytes;
+    private final LogCatalog catalog;
+    private final LogTimeIndex timeIndex;
+    private final ExecutorService compressor;
+
+    /**
+     * @param maxFileBytes size after which a daily log is rotated
+     * @param catalog      catalog to keep current, or null
+     * @param timeIndex    time index whose sidecar of a rotated file is dropped, or null
+     */
+    public LogRotator(PathsConfig cfg, long maxFileBytes, LogCatalog catalog, LogTimeIndex timeIndex) {
+        if (maxFileBytes < 1) {
+            throw new IllegalArgumentException("maxFileBytes must be positive");
+        }
+        this.cfg = cfg;
+        this.maxFileBytes = maxFileBytes;
+        this.catalog = catalog;
+        this.timeIndex = timeIndex;
+        this.compressor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "log-compressor");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public long maxFileBytes() {
+        return maxFileBytes;
+    }
+
+    /** True if appending {@code incoming} bytes to a file of {@code size} bytes should rotate it first. */
+    public boolean isDue(long size, int incoming) {
+        return size > 0 && size + incoming > maxFileBytes;
+    }
+
+    /**
+     * Renames {@code active} to its next segment and queues the segment for compression.
+     * The caller must have closed every channel open on {@code active}.
+     *
+     * @return the uncompressed segment
+     */
+    public Path rotate(Path active) throws IOException {
+        Path segment = nextSegment(active);
+        Files.move(active, segment);
+        if (timeIndex != null) timeIndex.forget(active);
+        if (catalog != null) catalog.add(segment);
+        MetadataManager.append(cfg.metaIndex, segment, "ROTATE", "rotated from " + active);
+        compressor.execute(() -> compress(segment));
+        return segment;
+    }
+
+    /** Blocks until every segment rotated so far has been compressed (or failed to). */
+    public void awaitCompression() throws IOException {
+        try {
+            compressor.submit(() -> { }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for log compression");
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /** Finishes queued compressions and stops the background thread. */
+    @Override
+    public void close() throws IOException {
+        compressor.shutdown();
+        try {
+            compressor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for log compression");
+        }
+    }
+
+    /** {@code <date>.<n>.log} with n one past the highest segment already on disk. */
+    private static Path nextSegment(Path active) throws IOException {
+        String name = active.getFileName().toString();
+        String base = name.substring(0, name.length() - ".log".length());
+        int max = 0;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(active.getParent(), base + ".*.log*")) {
+            for (Path p : ds) {
+                Matcher m = SEGMENT.matcher(p.getFileName().toString());
+                if (m.matches() && m.group(1).equals(base)) {
+                    max = Math.max(max, Integer.parseInt(m.group(2)));
+                }
+            }
+        }
+        return active.resolveSibling(base + "." + (max + 1) + ".log");
+    }
+
+    /** Writes {@code segment}.gz via a temporary file, then swaps the catalog entry and deletes the segment. */
+    private void compress(Path segment) {
+        Path gz = segment.resolveSibling(segment.getFileName() + ".gz");
+        Path tmp = segment.resolveSibling(segment.getFileName() + ".gz.part");
+        try {
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp), BUFFER)) {
+                Files.copy(segment, out);
+            }
+            Files.move(tmp, gz, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            if (catalog != null) {
+                catalog.add(gz);
+                catalog.remove(segment);
+            }
+            Files.delete(segment);
+            MetadataManager.append(cfg.metaIndex, gz, "ROTATE", "compressed from " + segment);
+        } catch (IOException e) {
+            // The segment stays readable uncompressed.
+            System.err.println("Log compression error: " + e.getMessage());
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {
+                // best effort
+            }
+        }
+    }
+}
@@ -0,0 +1,434 @@
+package med.supply.system.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Full-text / regex search over the log files known to a {@link LogCatalog}.
+ * Files are searched in parallel on a fork-join pool and files larger than the chunk size
+ * are split at line boundaries into chunks that are scanned in parallel as well.
+ * Matches of one file are delivered together, in line order, as soon as that file is done.
+ * Gzip-compressed segments are searched too; their offsets refer to the uncompressed bytes.
+ * With {@link Query#withArchives()} the logs inside archived ZIPs are searched as well, read in
+ * place through an {@link ArchiveCatalog}.
+ */
+public class LogSearch {
+    private static final int DEFAULT_CHUNK_BYTES = 4 * 1024 * 1024;
+    private static final int BLOCK = 64 * 1024;
+
+    /** What to look for and where. Immutable; the {@code with*} methods return copies. */
+    public static final class Query {
+        public final Pattern pattern;
+        public final String equipment;   // null = every equipment and the system log
+        public final LocalDate from;     // null = no lower bound
+        public final LocalDate to;       // null = no upper bound
+        public final boolean archives;   // also search archived ZIPs
+
+        private Query(Pattern pattern, String equipment, LocalDate from, LocalDate to, boolean archives) {
+            this.pattern = pattern;
+            this.equipment = equipment;
+            this.from = from;
+            this.to = to;
+            this.archives = archives;
+        }
+
+        public static Query literal(String text) {
+            return new Query(RegexUtils.searchPattern(text, true), null, null, null, false);
+        }
+
+        public static Query regex(String expr) {
+            return new Query(RegexUtils.searchPattern(expr, false), null, null, null, false);
+        }
+
+        public Query withEquipment(String equipment) {
+            return new Query(pattern, equipment, from, to, archives);
+        }
+
+        /** Restricts the search to logs dated within {@code [from, to]}; either bound may be null. */
+        public Query between(LocalDate from, LocalDate to) {
+            return new Query(pattern, equipment, from, to, archives);
+        }
+
+        /** Searches the logs inside archived ZIPs too. */
+        public Query withArchives() {
+            return new Query(pattern, equipment, from, to, true);
+        }
+    }
+
+    /**
+     * One matching line. {@code lineNumber} is 1-based; {@code byteOffset} is where the line starts.
+     * For archived logs {@code archive} is the entry and {@code file} its display path.
+     */
+    public static final class Match {
+        public final Path file;
+        public final long lineNumber;
+        public final long byteOffset;
+        public final String line;
+        public final ArchiveReader.Entry archive; // null for live logs
+
+        public Match(Path file, long lineNumber, long byteOffset, String line) {
+            this(file, lineNumber, byteOffset, line, null);
+        }
+
+        public Match(Path file, long lineNumber, long byteOffset, String line, ArchiveReader.Entry archive) {
+            this.file = file;
+            this.lineNumber = lineNumber;
+            this.byteOffset = byteOffset;
+            this.line = line;
+            this.archive = archive;
+        }
+
+        @Override
+        public String toString() {
+            return file + ":" + lineNumber + " @" + byteOffset + ": " + line;
+        }
+    }
+
+    private final LogCatalog catalog;
+    private final ArchiveCatalog archives; // null = archived logs are never searched
+    private final ForkJoinPool pool;
+    private final int chunkBytes;
+
+    public LogSearch(LogCatalog catalog) {
+        this(catalog, null);
+    }
+
+    public LogSearch(LogCatalog catalog, ArchiveCatalog archives) {
+        this(catalog, archives, ForkJoinPool.commonPool(), DEFAULT_CHUNK_BYTES);
+    }
+
+    public LogSearch(LogCatalog catalog, ForkJoinPool pool, int chunkBytes) {
+        this(catalog, null, pool, chunkBytes);
+    }
+
+    public LogSearch(LogCatalog catalog, ArchiveCatalog archives, ForkJoinPool pool, int chunkBytes) {
+        if (chunkBytes < 1) throw new IllegalArgumentException("chunkBytes must be positive");
+        this.catalog = catalog;
+        this.archives = archives;
+        this.pool = pool;
+        this.chunkBytes = chunkBytes;
+    }
+
+    /**
+     * Streams every match to {@code sink}. The sink is never called concurrently.
+     *
+     * @return number of matches delivered
+     */
+    public long search(Query q, Consumer<Match> sink) throws IOException {
+        List<Path> files = candidates(q);
+        AtomicLong count = new AtomicLong();
+        Consumer<List<Match>> deliver = matches -> {
+            synchronized (sink) {
+                for (Match m : matches) sink.accept(m);
+            }
+            count.addAndGet(matches.size());
+        };
+        FilesTask live = new FilesTask(files, 0, files.size(), q.pattern, deliver);
+        try {
+            if (q.archives && archives != null) {
+                // the readers are resolved once and stay open until every entry has been scanned
+                try (ArchiveCatalog.Lease lease = archives.acquire()) {
+                    List<ArchiveReader.Entry> entries = lease.select(q.equipment, q.from, q.to);
+                    EntriesTask archived = new EntriesTask(lease, entries, 0, entries.size(), q.pattern, deliver);
+                    pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(live, archived)));
+                }
+            } else {
+                pool.invoke(live);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return count.get();
+    }
+
+    /** Collects every match, ordered by file and line. */
+    public List<Match> search(Query q) throws IOException {
+        List<Match> out = new ArrayList<>();
+        search(q, out::add);
+        out.sort((a, b) -> {
+            int c = a.file.compareTo(b.file);
+            return c != 0 ? c : Long.compare(a.lineNumber, b.lineNumber);
+        });
+        return out;
+    }
+
+    private List<Path> candidates(Query q) {
+        List<Path> files;
+        if (q.from != null || q.to != null) {
+            files = catalog.byDateRange(q.from != null ? q.from : LocalDate.MIN,
+                    q.to != null ? q.to : LocalDate.MAX);
+            if (q.equipment != null) {
+                Set<Path> owned = new HashSet<>(catalog.byEquipment(q.equipment));
+                files.removeIf(p -> !owned.contains(p));
+            }
+        } else if (q.equipment != null) {
+            files = catalog.byEquipment(q.equipment);
+        } else {
+            files = catalog.all();
+        }
+        return files;
+    }
+
+    // -----------------------------------------------------------
+    // Fork-join tasks
+    // -----------------------------------------------------------
+
+    /** Splits the file list in halves until one file is left, then searches that file. */
+    private final class FilesTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Path> files;
+        private final int lo;
+        private final int hi;
+        private final Pattern pattern;
+        private final Consumer<List<Match>> deliver;
+
+        FilesTask(List<Path> files, int lo, int hi, Pattern pattern, Consumer<List<Match>> deliver) {
+            this.files = files;
+            this.lo = lo;
+            this.hi = hi;
+            this.pattern = pattern;
+            this.deliver = deliver;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new FilesTask(files, lo, mid, pattern, deliver),
+                        new FilesTask(files, mid, hi, pattern, deliver));
+                return;
+            }
+            if (hi == lo) return;
+            Path file = files.get(lo);
+            try {
+                ChunkResult r;
+                if (LogReader.isCompressed(file)) {
+                    r = scanCompressed(file, pattern);
+                } else {
+                    try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                        r = new ChunkTask(file, ch, 0, ch.size(), pattern).invoke();
+                    }
+                }
+                if (!r.matches.isEmpty()) deliver.accept(r.matches);
+            } catch (NoSuchFileException e) {
+                // deleted (or compressed) since it was catalogued
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /** Splits the archived entry list in halves until one entry is left, then searches it. */
+    private final class EntriesTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final ArchiveCatalog.Lease readers;
+        private final List<ArchiveReader.Entry> entries;
+        private final int lo;
+        private final int hi;
+        private final Pattern pattern;
+        private final Consumer<List<Match>> deliver;
+
+        EntriesTask(ArchiveCatalog.Lease readers, List<ArchiveReader.Entry> entries, int lo, int hi,
+                    Pattern pattern, Consumer<List<Match>> deliver) {
+            this.readers = readers;
+            this.entries = entries;
+            this.lo = lo;
+            this.hi = hi;
+            this.pattern = pattern;
+            this.deliver = deliver;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new EntriesTask(readers, entries, lo, mid, pattern, deliver),
+                        new EntriesTask(readers, entries, mid, hi, pattern, deliver));
+                return;
+            }
+            if (hi == lo) return;
+            ArchiveReader.Entry e = entries.get(lo);
+            try (InputStream in = readers.reader(e.zip).open(e)) {
+                ChunkResult r = scanStream(new LineScanner(e.path(), e, pattern, 0), in);
+                if (!r.matches.isEmpty()) deliver.accept(r.matches);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+
+    /** Compressed segments cannot be split, so they are scanned front to back in one task. */
+    private static ChunkResult scanCompressed(Path file, Pattern pattern) throws IOException {
+        try (InputStream in = LogReader.open(file)) {
+            return scanStream(new LineScanner(file, null, pattern, 0), in);
+        }
+    }
+
+    private static ChunkResult scanStream(LineScanner scanner, InputStream in) throws IOException {
+        byte[] a = new byte[BLOCK];
+        long pos = 0;
+        int n;
+        while ((n = in.readNBytes(a, 0, BLOCK)) > 0) {
+            scanner.feed(a, n, pos);
+            pos += n;
+        }
+        return scanner.finish();
+    }
+
+    /** Matches found in a byte range; line numbers are relative to the start of the range. */
+    private static final class ChunkResult {
+        final List<Match> matches;
+        final long lines;
+
+        ChunkResult(List<Match> matches, long lines) {
+            this.matches = matches;
+            this.lines = lines;
+        }
+    }
+
+    /** Searches {@code [start, end)} of one file; {@code start} is always a line start. */
+    private final class ChunkTask extends RecursiveTask<ChunkResult> {
+        private static final long serialVersionUID = 1L;
+
+        private final Path file;
+        private final FileChannel ch;
+        private final long start;
+        private final long end;
+        private final Pattern pattern;
+
+        ChunkTask(Path file, FileChannel ch, long start, long end, Pattern pattern) {
+            this.file = file;
+            this.ch = ch;
+            this.start = start;
+            this.end = end;
+            this.pattern = pattern;
+        }
+
+        @Override
+        protected ChunkResult compute() {
+            try {
+                if (end - start > chunkBytes) {
+                    long split = nextLineStart(start + (end - start) / 2);
+                    if (split < end) {
+                        ChunkTask left = new ChunkTask(file, ch, start, split, pattern);
+                        ChunkTask right = new ChunkTask(file, ch, split, end, pattern);
+                        right.fork();
+                        ChunkResult l = left.compute();
+                        ChunkResult r = right.join();
+                        List<Match> merged = new ArrayList<>(l.matches.size() + r.matches.size());
+                        merged.addAll(l.matches);
+                        for (Match m : r.matches) {
+                            merged.add(new Match(m.file, m.lineNumber + l.lines, m.byteOffset, m.line, m.archive));
+                        }
+                        return new ChunkResult(merged, l.lines + r.lines);
+                    }
+                }
+                return scan();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /** First offset after the next '\n' at or after {@code pos}, or {@code end} if there is none. */
+        private long nextLineStart(long pos) throws IOException {
+            ByteBuffer buf = ByteBuffer.allocate(4096);
+            while (pos < end) {
+                buf.clear().limit((int) Math.min(buf.capacity(), end - pos));
+                int n = ch.read(buf, pos);
+                if (n <= 0) break;
+                for (int i = 0; i < n; i++) {
+                    if (buf.get(i) == '\n') return pos + i + 1;
+                }
+                pos += n;
+            }
+            return end;
+        }
+
+        private ChunkResult scan() throws IOException {
+            LineScanner scanner = new LineScanner(file, null, pattern, start);
+            ByteBuffer block = ByteBuffer.allocate(BLOCK);
+            long pos = start;
+            while (pos < end) {
+                block.clear().limit((int) Math.min(BLOCK, end - pos));
+                int n = ch.read(block, pos);
+                if (n <= 0) break;
+                scanner.feed(block.array(), n, pos);
+                pos += n;
+            }
+            return scanner.finish();
+        }
+    }
+
+    /** Splits fed blocks into lines, counting them and collecting the ones that match. */
+    private static final class LineScanner {
+        private final Path file;
+        private final ArchiveReader.Entry archive;
+        private final Matcher m;
+        private final List<Match> matches = new ArrayList<>();
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        private long lines;
+        private long lineStart;
+
+        LineScanner(Path file, ArchiveReader.Entry archive, Pattern pattern, long start) {
+            this.file = file;
+            this.archive = archive;
+            this.m = pattern.matcher("");
+            this.lineStart = start;
+        }
+
+        /** {@code a[0, n)} are the bytes found at offset {@code pos}. */
+        void feed(byte[] a, int n, long pos) {
+            int from = 0;
+            for (int i = 0; i < n; i++) {
+                if (a[i] == '\n') {
+                    line.write(a, from, i - from);
+                    lines++;
+                    test();
+                    line.reset();
+                    from = i + 1;
+                    lineStart = pos + i + 1;
+                }
+            }
+            line.write(a, from, n - from);
+        }
+
+        ChunkResult finish() {
+            if (line.size() > 0) {
+                lines++;
+                test();
+            }
+            return new ChunkResult(matches, lines);
+        }
+
+        private void test() {
+            String text = line.toString(StandardCharsets.UTF_8);
+            if (text.endsWith("\r")) text = text.substring(0, text.length() - 1);
+            if (m.reset(text).find()) {
+                matches.add(new Match(file, lines, lineStart, text, archive));
+            }
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package med.supply.system.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Sparse timestamp-to-offset index kept next to every daily log.
+ * Each sidecar ({@code <timeIndexRoot>/<path under logsRoot>.idx}) is a sequence of
+ * 16-byte big-endian {@code (epochMillis, byteOffset)} entries, one for the first line
+ * and then one every {@code everyLines} lines or {@code everyBytes} bytes, whichever comes first.
+ * Entry times never decrease, so a time-range query can binary search the sidecar,
+ * seek into the log and read only the bytes of that range.
+ */
+public class LogTimeIndex {
+    private static final int ENTRY = 16;
+    private static final int MAX_TRACKED = 1024;
+
+    private final PathsConfig cfg;
+    private final int everyLines;
+    private final long everyBytes;
+    private final Map<Path, State> states = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, State> eldest) {
+            return size() > MAX_TRACKED;
+        }
+    };
+
+    public LogTimeIndex(PathsConfig cfg, int everyLines, long everyBytes) {
+        if (everyLines < 1 || everyBytes < 1) {
+            throw new IllegalArgumentException("Index intervals must be positive");
+        }
+        this.cfg = cfg;
+        this.everyLines = everyLines;
+        this.everyBytes = everyBytes;
+    }
+
+    /** Sidecar file of {@code log}, or null if the log is not under {@code cfg.logsRoot}. */
+    public Path sidecarFor(Path log) {
+        Path p = log.normalize();
+        Path root = cfg.logsRoot.normalize();
+        if (!p.startsWith(root)) return null;
+        Path rel = root.relativize(p);
+        return cfg.timeIndexRoot.resolve(rel.toString() + ".idx");
+    }
+
+    /** Records that a line logged at {@code epochMillis} was written at {@code offset} of {@code log}. */
+    public synchronized void onLine(Path log, long offset, long epochMillis) throws IOException {
+        State st = states.get(log);
+        if (st == null) {
+            st = load(log);
+            states.put(log, st);
+        }
+        st.linesSince++;
+        boolean due = st.lastOffset < 0
+                || st.linesSince >= everyLines
+                || offset - st.lastOffset >= everyBytes;
+        if (!due || offset <= st.lastOffset) return;
+        long millis = Math.max(epochMillis, st.lastMillis);
+        Path sidecar = sidecarFor(log);
+        if (sidecar == null) return;
+        if (st.lastOffset < 0) Files.createDirectories(sidecar.getParent());
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY).putLong(millis).putLong(offset).flip();
+        try (FileChannel ch = FileChannel.open(sidecar, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (entry.hasRemaining()) ch.write(entry);
+        }
+        st.lastOffset = offset;
+        st.lastMillis = millis;
+        st.linesSince = 0;
+    }
+
+    /** Forgets {@code log} and deletes its sidecar, e.g. after the log was moved or deleted. */
+    public synchronized void forget(Path log) throws IOException {
+        states.remove(log);
+        Path sidecar = sidecarFor(log);
+        if (sidecar != null) Files.deleteIfExists(sidecar);
+    }
+
+    /** Continue an existing sidecar after a restart instead of starting it over. */
+    private State load(Path log) throws IOException {
+        State st = new State();
+        Path sidecar = sidecarFor(log);
+        if (sidecar == null || !Files.exists(sidecar)) return st;
+        try (FileChannel ch = FileChannel.open(sidecar, StandardOpenOption.READ)) {
+            long n = ch.size() / ENTRY;
+            if (n > 0) {
+                ByteBuffer last = readEntry(ch, n - 1);
+                st.lastMillis = last.getLong(0);
+                st.lastOffset = last.getLong(8);
+            }
+        }
+        return st;
+    }
+
+    /**
+     * Byte range of {@code log} that contains every line logged within {@code [from, to]}:
+     * from the last indexed line at or before {@code from} to the first indexed line after
+     * {@code to} (or the end of the file).
+     */
+    public long[] locate(Path log, long fromMillis, long toMillis) throws IOException {
+        long start = 0;
+        long end = LogReader.size(log);
+        Path sidecar = sidecarFor(log);
+        if (sidecar == null || !Files.exists(sidecar)) return new long[]{start, end};
+        try (FileChannel ch = FileChannel.open(sidecar, StandardOpenOption.READ)) {
+            long n = ch.size() / ENTRY;
+            long i = lastAtOrBefore(ch, n, fromMillis);
+            if (i >= 0) start = readEntry(ch, i).getLong(8);
+            long j = lastAtOrBefore(ch, n, toMillis) + 1;
+            if (j < n) end = Math.min(end, readEntry(ch, j).getLong(8));
+        }
+        return new long[]{start, Math.max(start, end)};
+    }
+
+    /** Lines of {@code log} whose timestamp lies within {@code [from, to]}, read via the index. */
+    public List<String> readRange(Path log, Instant from, Instant to) throws IOException {
+        long fromMillis = from.toEpochMilli();
+        long toMillis = to.toEpochMilli();
+        List<String> out = new ArrayList<>();
+        if (LogReader.isCompressed(log)) {
+            // Rotated segments have no sidecar and cannot be seeked; scan them once.
+            try (Stream<String> lines = LogReader.lines(log)) {
+                lines.filter(line -> {
+                    long ts = timestampMillis(line);
+                    return ts >= fromMillis && ts <= toMillis;
+                }).forEach(out::add);
+            }
+            return out;
+        }
+        long[] range = locate(log, fromMillis, toMillis);
+        long pos = range[0];
+        while (pos < range[1]) {
+            LogReader.Page page = LogReader.readPage(log, pos, 512);
+            if (page.lines.isEmpty()) break;
+            for (String line : page.lines) {
+                long ts = timestampMillis(line);
+                if (ts >= fromMillis && ts <= toMillis) out.add(line);
+            }
+            pos = page.endOffset;
+        }
+        return out;
+    }
+
+    /** Epoch millis of a "[TAG] timestamp message" line, or -1 if it has none. */
+    public static long timestampMillis(String line) {
+        int open = line.indexOf("] ");
+        if (!line.startsWith("[") || open < 0) return -1;
+        int start = open + 2;
+        int end = line.indexOf(' ', start);
+        if (end < 0) end = line.length();
+        try {
+            return OffsetDateTime.parse(line.substring(start, end)).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    /** Index of the last entry with time <= {@code millis}, or -1. */
+    private static long lastAtOrBefore(FileChannel ch, long n, long millis) throws IOException {
+        long lo = 0;
+        long hi = n - 1;
+        long found = -1;
+        while (lo <= hi) {
+            long mid = (lo + hi) >>> 1;
+            if (readEntry(ch, mid).getLong(0) <= millis) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    private static ByteBuffer readEntry(FileChannel ch, long i) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(ENTRY);
+        while (b.hasRemaining()) {
+            if (ch.read(b, i * ENTRY + b.position()) < 0) {
+                throw new IOException("Truncated time index entry " + i);
+            }
+        }
+        return b;
+    }
+
+    private static final class State {
+        long lastOffset = -1;
+        long lastMillis = Long.MIN_VALUE;
+        int linesSince;
+    }
+}
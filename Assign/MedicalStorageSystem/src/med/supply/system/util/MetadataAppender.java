@@ -0,0 +1,338 @@
+package med.supply.system.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Group-commit appender for a metadata CSV. Concurrent callers add their rows to the open
+ * batch; whichever caller finds no write in progress becomes the leader, takes the whole batch
+ * and writes it with one positional write while the others wait for it. Every call returns
+ * once its own row is written, so rows never interleave or tear and a busy file costs one
+ * write (and at most one fsync) per batch instead of one open/append/close per row.
+ * The channel stays open between batches; if the file is replaced on disk it is reopened,
+ * and each batch starts at the current end of file. Where the file system has no file keys
+ * (e.g. Windows), a replacement is recognised by a changed creation time or a file shorter
+ * than what was written.
+ * All appends to the file from this process must go through the same instance, see
+ * {@link MetadataManager#appender(Path)}.
+ */
+public class MetadataAppender implements AutoCloseable {
+
+    /** Told about every written row, in file order, before the row's caller returns. */
+    public interface Listener {
+        void appended(long offset, String row);
+
+        /** The file was swapped by {@link #replaceFile}; offsets seen so far are stale. */
+        default void replaced() throws IOException { }
+    }
+
+    /** File work run by {@link #replaceFile} while no batch can be written. */
+    public interface FileAction {
+        void run() throws IOException;
+    }
+
+    /** When written rows are forced to the storage device. */
+    public enum Durability {
+        /** Never fsync; the OS writes rows back on its own schedule. */
+        NONE,
+        /** fsync at most once per sync period, from a background thread. */
+        PERIODIC,
+        /** fsync every batch before its callers return. */
+        PER_BATCH
+    }
+
+    private final Path csv;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition batchDone = lock.newCondition();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    // guarded by lock
+    private Batch open = new Batch();
+    private boolean writing;
+    private long batches;
+    private long rows;
+    private Durability durability = Durability.NONE;
+    private long syncPeriodMillis;
+    private ScheduledExecutorService syncer; // PERIODIC only; stopped by close(), restarted by the next batch
+
+    // touched by the current leader only (and by sync(), which tolerates a closed channel)
+    private volatile FileChannel channel;
+    private Object fileKey;
+    private FileTime created; // identifies the file when it has no key
+    private long position;
+    private volatile boolean dirty;
+
+    public MetadataAppender(Path csv) {
+        this.csv = Objects.requireNonNull(csv);
+    }
+
+    public void addListener(Listener l) {
+        listeners.add(l);
+    }
+
+    public void removeListener(Listener l) {
+        listeners.remove(l);
+    }
+
+    /**
+     * @param periodMillis sync period for {@link Durability#PERIODIC}; ignored otherwise
+     */
+    public void setDurability(Durability mode, long periodMillis) {
+        if (mode == Durability.PERIODIC && periodMillis < 1) {
+            throw new IllegalArgumentException("periodMillis must be positive");
+        }
+        lock.lock();
+        try {
+            durability = mode;
+            syncPeriodMillis = periodMillis;
+            stopSyncer();
+            if (mode == Durability.PERIODIC) startSyncer();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // called with lock held
+    private void startSyncer() {
+        syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metadata-sync");
+            t.setDaemon(true);
+            return t;
+        });
+        syncer.scheduleWithFixedDelay(this::syncQuietly, syncPeriodMillis, syncPeriodMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    // called with lock held
+    private void stopSyncer() {
+        if (syncer != null) {
+            syncer.shutdown();
+            syncer = null;
+        }
+    }
+
+    public Durability durability() {
+        lock.lock();
+        try {
+            return durability;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Appends one complete CSV row (including its line terminator); returns once it is written. */
+    public void append(String row) throws IOException {
+        byte[] bytes = row.getBytes(StandardCharsets.UTF_8);
+        lock.lock();
+        try {
+            Batch mine = open;
+            mine.add(row, bytes);
+            while (!mine.done) {
+                if (writing) {
+                    batchDone.awaitUninterruptibly();
+                    continue;
+                }
+                // No write in progress, so our row is still in the open batch: lead it.
+                writing = true;
+                Batch b = open;
+                open = new Batch();
+                Durability mode = durability;
+                if (mode == Durability.PERIODIC && syncer == null) startSyncer();
+                lock.unlock();
+                try {
+                    write(b, mode);
+                } catch (IOException e) {
+                    b.error = e;
+                } finally {
+                    lock.lock();
+                }
+                b.done = true;
+                writing = false;
+                batches++;
+                rows += b.texts.size();
+                batchDone.signalAll();
+            }
+            if (mine.error != null) {
+                throw new IOException("Could not append to " + csv + ": " + mine.error.getMessage(), mine.error);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Number of batches written so far; less than {@link #rows()} when calls were grouped. */
+    public long batches() {
+        lock.lock();
+        try {
+            return batches;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long rows() {
+        lock.lock();
+        try {
+            return rows;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Forces written rows to disk now, whatever the durability mode. */
+    public void sync() throws IOException {
+        FileChannel ch = channel;
+        if (ch == null || !dirty) return;
+        dirty = false;
+        try {
+            ch.force(false);
+        } catch (ClosedChannelException e) {
+            // reopened or closed meanwhile; whoever closed it forced it first
+        }
+    }
+
+    /**
+     * Syncs and releases the file and stops the periodic syncer. The appender stays usable:
+     * it reopens the file, and restarts the syncer, with the next batch.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            while (writing) batchDone.awaitUninterruptibly();
+            stopSyncer();
+            closeChannel(durability != Durability.NONE);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs {@code action}, typically one that atomically replaces the file, while no batch is
+     * being written. Callers arriving meanwhile keep adding rows to the open batch and wait;
+     * that batch is written to the new file afterwards. Listeners are told via
+     * {@link Listener#replaced()} before any further row is written.
+     */
+    public void replaceFile(FileAction action) throws IOException {
+        lock.lock();
+        try {
+            while (writing) batchDone.awaitUninterruptibly();
+            writing = true; // holds off leaders without holding the lock
+        } finally {
+            lock.unlock();
+        }
+        try {
+            action.run();
+            closeChannel(false);
+            for (Listener l : listeners) {
+                l.replaced();
+            }
+        } finally {
+            lock.lock();
+            try {
+                writing = false;
+                batchDone.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException e) {
+            System.err.println("Metadata sync error: " + e.getMessage());
+        }
+    }
+
+    private void write(Batch b, Durability mode) throws IOException {
+        ensureOpen();
+        ByteBuffer buf = ByteBuffer.wrap(b.bytes.toByteArray());
+        long pos = Math.max(position, channel.size()); // in case something else appended meanwhile
+        while (buf.hasRemaining()) {
+            pos += channel.write(buf, pos);
+        }
+        position = pos;
+        dirty = true;
+        if (mode == Durability.PER_BATCH) {
+            dirty = false;
+            channel.force(false);
+        }
+        long start = pos - b.bytes.size();
+        for (Listener l : listeners) {
+            long offset = start;
+            try {
+                for (int i = 0; i < b.texts.size(); i++) {
+                    l.appended(offset, b.texts.get(i));
+                    offset += b.sizes.get(i);
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Metadata listener error: " + e.getMessage());
+            }
+        }
+    }
+
+    /** Opens the file on first use and again after it has been replaced (e.g. by compaction). */
+    private void ensureOpen() throws IOException {
+        // Like Files.write(..., APPEND) without CREATE: a missing file is an error.
+        BasicFileAttributes a = Files.readAttributes(csv, BasicFileAttributes.class);
+        Object key = a.fileKey();
+        if (channel != null) {
+            boolean same = key != null
+                    ? key.equals(fileKey)
+                    : a.creationTime().equals(created) && a.size() >= position;
+            if (same) return;
+        }
+        closeChannel(false);
+        FileChannel ch = FileChannel.open(csv, StandardOpenOption.WRITE);
+        position = ch.size();
+        fileKey = key;
+        created = a.creationTime();
+        channel = ch;
+    }
+
+    private void closeChannel(boolean force) throws IOException {
+        FileChannel ch = channel;
+        if (ch == null) return;
+        channel = null;
+        try {
+            if (dirty && force) ch.force(false);
+            dirty = false;
+        } finally {
+            ch.close();
+        }
+    }
+
+    private static final class Batch {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final List<String> texts = new ArrayList<>();
+        final List<Integer> sizes = new ArrayList<>();
+        boolean done;
+        IOException error;
+
+        void add(String row, byte[] encoded) {
+            bytes.write(encoded, 0, encoded.length);
+            texts.add(row);
+            sizes.add(encoded.length);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package med.supply.system.util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collapses a metadata CSV into a current-state snapshot: one row (the latest) per path that
+ * is still live after replaying LOG, MOVE, DELETE, ARCHIVE and ROTATE rows, followed by every
+ * row of the retention window verbatim. Replaying the result (e.g. {@link LogCatalog#load})
+ * yields the same live files as replaying the original.
+ * <p>
+ * The snapshot is built from the rows present when compaction starts while appenders keep
+ * writing. Only the final step runs under {@link MetadataAppender#replaceFile}: rows appended
+ * meanwhile are copied over and the new file is renamed over the old one atomically.
+ */
+public class MetadataCompactor {
+
+    /** Sizes before and after one compaction. */
+    public static final class Result {
+        public final long rowsBefore;
+        public final long rowsAfter;
+        public final long bytesBefore;
+        public final long bytesAfter;
+
+        Result(long rowsBefore, long rowsAfter, long bytesBefore, long bytesAfter) {
+            this.rowsBefore = rowsBefore;
+            this.rowsAfter = rowsAfter;
+            this.bytesBefore = bytesBefore;
+            this.bytesAfter = bytesAfter;
+        }
+
+        @Override
+        public String toString() {
+            return "Compacted " + rowsBefore + " rows (" + bytesBefore + " bytes) into "
+                    + rowsAfter + " rows (" + bytesAfter + " bytes)";
+        }
+    }
+
+    private final Path csv;
+    private final Clock clock;
+
+    public MetadataCompactor(Path csv) {
+        this(csv, Clock.systemUTC());
+    }
+
+    public MetadataCompactor(Path csv, Clock clock) {
+        this.csv = csv;
+        this.clock = clock;
+    }
+
+    /**
+     * @param retain rows created within this long before now are kept as individual events;
+     *               null or zero keeps only the snapshot
+     */
+    public Result compact(Duration retain) throws IOException {
+        long cutoff = retain == null || retain.isZero() ? Long.MAX_VALUE
+                : clock.instant().minus(retain).toEpochMilli();
+        long end = Files.size(csv);
+
+        // Pass 1: latest row of every live path, ordered by when that row was written.
+        Map<String, String> live = new LinkedHashMap<>();
+        String[] header = {null};
+        long[] rowsBefore = {0};
+        long scanned = MetadataManager.forEachLine(csv, end, (offset, line) -> {
+            MetadataManager.Row row = MetadataManager.parseRow(line);
+            if (row == null) return;
+            if (offset == 0 && row.path.equals("path") && row.kind.equals("kind")) {
+                header[0] = line;
+                return;
+            }
+            rowsBefore[0]++;
+            apply(live, row, line);
+        });
+
+        Path tmp = csv.resolveSibling(csv.getFileName() + ".compact.tmp");
+        long[] rowsAfter = {0};
+        try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            if (header[0] != null) {
+                w.write(header[0]);
+                w.write('\n');
+            }
+            for (String line : live.values()) {
+                MetadataManager.Row row = MetadataManager.parseRow(line);
+                if (timeOf(row) < cutoff) {
+                    w.write(line);
+                    w.write('\n');
+                    rowsAfter[0]++;
+                }
+            }
+            // Pass 2: the retention window, verbatim and in order.
+            if (cutoff != Long.MAX_VALUE) {
+                MetadataManager.forEachLine(csv, scanned, (offset, line) -> {
+                    MetadataManager.Row row = MetadataManager.parseRow(line);
+                    if (row == null || (offset == 0 && header[0] != null)) return;
+                    if (timeOf(row) >= cutoff) {
+                        w.write(line);
+                        w.write('\n');
+                        rowsAfter[0]++;
+                    }
+                });
+            }
+        }
+
+        long[] tail = {0};
+        try {
+            MetadataManager.appender(csv).replaceFile(() -> {
+                tail[0] = copyTail(scanned, tmp);
+                Files.move(tmp, csv, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            });
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return new Result(rowsBefore[0], rowsAfter[0] + tail[0], end, Files.size(csv));
+    }
+
+    /** Replays one row onto the live set, like {@link LogCatalog#load}. */
+    private static void apply(Map<String, String> live, MetadataManager.Row row, String line) {
+        switch (row.kind) {
+            case "DELETE" -> {
+                live.remove(row.path);
+                return;
+            }
+            case "MOVE" -> {
+                if (row.notes.startsWith("moved from ")) live.remove(row.notes.substring("moved from ".length()));
+            }
+            case "ROTATE" -> {
+                if (row.notes.startsWith("compressed from ")) {
+                    live.remove(row.notes.substring("compressed from ".length()));
+                }
+            }
+            default -> { }
+        }
+        live.remove(row.path); // re-insert so iteration follows the latest row
+        live.put(row.path, line);
+    }
+
+    /**
+     * Appends everything written to the live file after {@code from} to {@code tmp}, then
+     * forces {@code tmp}. Runs while appenders are held off.
+     *
+     * @return number of rows copied
+     */
+    private long copyTail(long from, Path tmp) throws IOException {
+        long rows = 0;
+        try (FileChannel src = FileChannel.open(csv, StandardOpenOption.READ);
+             FileChannel dst = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+            long pos = from;
+            int n;
+            while ((n = src.read(buf.clear(), pos)) > 0) {
+                for (int i = 0; i < n; i++) {
+                    if (buf.get(i) == '\n') rows++;
+                }
+                buf.flip();
+                while (buf.hasRemaining()) dst.write(buf);
+                pos += n;
+            }
+            dst.force(true);
+        }
+        return rows;
+    }
+
+    private static long timeOf(MetadataManager.Row row) {
+        try {
+            return Instant.parse(row.createdUtc).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+}
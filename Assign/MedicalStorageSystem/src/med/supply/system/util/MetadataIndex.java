@@ -0,0 +1,228 @@
+package med.supply.system.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Queryable index over a metadata CSV, by path, kind and createdUtc.
+ * Only the row's byte offset, time and kind are held per row (plus per-path and per-kind id
+ * lists); matching rows are read back from the CSV with positional reads, so memory stays
+ * small even for millions of rows. The index is loaded once and then kept current by
+ * listening to the file's {@link MetadataAppender}; get the shared instance from
+ * {@link MetadataManager#index(Path)}.
+ */
+public class MetadataIndex implements MetadataAppender.Listener {
+    private final Path csv;
+    private long loadedEnd; // rows starting before this offset came from load()
+
+    // Per row, in file order.
+    private int size;
+    private long[] offsets = new long[1024];
+    private long[] times = new long[1024];      // epoch millis, Long.MIN_VALUE if unparsable
+    private long[] prefixMax = new long[1024];  // max time of rows [0, i]; never decreases
+    private byte[] kinds = new byte[1024];
+    private long maxDisorder;                   // how far a row's time may lag behind prefixMax
+
+    private final List<String> kindNames = new ArrayList<>();
+    private final Map<String, Integer> kindIds = new HashMap<>();
+    private final List<Ids> byKind = new ArrayList<>();
+    private final Map<String, Ids> byPath = new HashMap<>();
+
+    MetadataIndex(Path csv) {
+        this.csv = csv;
+    }
+
+    /** Reads every row currently in the file; rows appended meanwhile arrive via the listener. */
+    synchronized void load() throws IOException {
+        if (!Files.exists(csv)) return;
+        loadedEnd = MetadataManager.forEachLine(csv, Long.MAX_VALUE, this::index);
+    }
+
+    /** After compaction every offset changed: start over from the new file. */
+    @Override
+    public synchronized void replaced() throws IOException {
+        size = 0;
+        maxDisorder = 0;
+        loadedEnd = 0;
+        kindNames.clear();
+        kindIds.clear();
+        byKind.clear();
+        byPath.clear();
+        load();
+    }
+
+    @Override
+    public synchronized void appended(long offset, String row) {
+        if (offset < loadedEnd) return; // already read by load()
+        index(offset, row.endsWith("\n") ? row.substring(0, row.length() - 1) : row);
+    }
+
+    private void index(long offset, String line) {
+        MetadataManager.Row row = MetadataManager.parseRow(line);
+        if (row == null || (row.path.equals("path") && row.kind.equals("kind"))) return;
+        if (size == offsets.length) grow();
+        int id = size++;
+        offsets[id] = offset;
+        long t = parseTime(row.createdUtc);
+        times[id] = t;
+        long max = id == 0 ? t : Math.max(prefixMax[id - 1], t);
+        prefixMax[id] = max;
+        if (t != Long.MIN_VALUE) maxDisorder = Math.max(maxDisorder, max - t);
+        Integer kind = kindIds.get(row.kind);
+        if (kind == null) {
+            if (kindNames.size() == 256) throw new IllegalStateException("Too many metadata kinds");
+            kind = kindNames.size();
+            kindNames.add(row.kind);
+            kindIds.put(row.kind, kind);
+            byKind.add(new Ids());
+        }
+        kinds[id] = (byte) kind.intValue();
+        byKind.get(kind).add(id);
+        byPath.computeIfAbsent(row.path, k -> new Ids()).add(id);
+    }
+
+    private void grow() {
+        int n = offsets.length * 2;
+        offsets = Arrays.copyOf(offsets, n);
+        times = Arrays.copyOf(times, n);
+        prefixMax = Arrays.copyOf(prefixMax, n);
+        kinds = Arrays.copyOf(kinds, n);
+    }
+
+    private static long parseTime(String createdUtc) {
+        try {
+            return Instant.parse(createdUtc).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /** Every row about {@code file}, oldest first. */
+    public synchronized List<MetadataManager.Row> byPath(Path file) throws IOException {
+        Ids ids = byPath.get(file.toString());
+        return ids == null ? new ArrayList<>() : read(ids.a, ids.n);
+    }
+
+    /** Newest row about {@code file} of {@code kind} (e.g. when it was archived), or null. */
+    public synchronized MetadataManager.Row latest(Path file, String kind) throws IOException {
+        Ids ids = byPath.get(file.toString());
+        Integer k = kindIds.get(kind);
+        if (ids == null || k == null) return null;
+        for (int i = ids.n - 1; i >= 0; i--) {
+            if ((kinds[ids.a[i]] & 0xFF) == k) return read(new int[]{ids.a[i]}, 1).get(0);
+        }
+        return null;
+    }
+
+    /** Every row of {@code kind} (LOG, MOVE, DELETE, ARCHIVE, ...), oldest first. */
+    public synchronized List<MetadataManager.Row> byKind(String kind) throws IOException {
+        Integer k = kindIds.get(kind);
+        if (k == null) return new ArrayList<>();
+        Ids ids = byKind.get(k);
+        return read(ids.a, ids.n);
+    }
+
+    /** Rows created within {@code [from, to]}, in file order. */
+    public synchronized List<MetadataManager.Row> between(Instant from, Instant to) throws IOException {
+        return between(-1, from, to);
+    }
+
+    /** Rows of {@code kind} created within {@code [from, to]}, e.g. deletions of last week. */
+    public synchronized List<MetadataManager.Row> byKindBetween(String kind, Instant from, Instant to)
+            throws IOException {
+        Integer k = kindIds.get(kind);
+        return k == null ? new ArrayList<>() : between(k, from, to);
+    }
+
+    /**
+     * Rows are nearly in time order (concurrent appenders may swap neighbours), so the range is
+     * located by binary search on the running maximum, widened by the largest lag seen.
+     */
+    private List<MetadataManager.Row> between(int kind, Instant from, Instant to) throws IOException {
+        long lo = from.toEpochMilli();
+        long hi = to.toEpochMilli();
+        int start = firstPrefixMaxAtLeast(lo);
+        int end = hi >= Long.MAX_VALUE - maxDisorder ? size : firstPrefixMaxAtLeast(hi + maxDisorder + 1);
+        int[] hits = new int[Math.max(0, end - start)];
+        int n = 0;
+        for (int i = start; i < end; i++) {
+            if (times[i] >= lo && times[i] <= hi && (kind < 0 || (kinds[i] & 0xFF) == kind)) {
+                hits[n++] = i;
+            }
+        }
+        return read(hits, n);
+    }
+
+    private int firstPrefixMaxAtLeast(long t) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (prefixMax[mid] < t) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /** Reads rows {@code ids[0, n)} (ascending) back from the CSV. */
+    private List<MetadataManager.Row> read(int[] ids, int n) throws IOException {
+        List<MetadataManager.Row> out = new ArrayList<>(n);
+        if (n == 0) return out;
+        try (FileChannel ch = FileChannel.open(csv, StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocate(512);
+            for (int i = 0; i < n; i++) {
+                MetadataManager.Row row = MetadataManager.parseRow(readLine(ch, offsets[ids[i]], buf));
+                if (row != null) out.add(row);
+            }
+        }
+        return out;
+    }
+
+    private static String readLine(FileChannel ch, long offset, ByteBuffer buf) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        long pos = offset;
+        while (true) {
+            buf.clear();
+            int n = ch.read(buf, pos);
+            if (n <= 0) break;
+            byte[] a = buf.array();
+            for (int i = 0; i < n; i++) {
+                if (a[i] == '\n') {
+                    line.write(a, 0, i);
+                    return line.toString(StandardCharsets.UTF_8);
+                }
+            }
+            line.write(a, 0, n);
+            pos += n;
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    /** Growable list of row ids. */
+    private static final class Ids {
+        int[] a = new int[4];
+        int n;
+
+        void add(int id) {
+            if (n == a.length) a = Arrays.copyOf(a, n * 2);
+            a[n++] = id;
+        }
+    }
+}
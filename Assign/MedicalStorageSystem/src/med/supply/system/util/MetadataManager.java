@@ -1,17 +1,63 @@
 package med.supply.system.util;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 public class MetadataManager {
+    private static final Map<Path, MetadataAppender> APPENDERS = new ConcurrentHashMap<>();
+    private static final Map<Path, MetadataIndex> INDEXES = new ConcurrentHashMap<>();
+
+    /** Appends one row; concurrent calls for the same file are group-committed, see {@link MetadataAppender}. */
     public static void append(Path metadataCsv, Path filePath, String kind, String notes) throws IOException {
-        String row = String.join(",", escape(filePath.toString()), escape(Instant.now().toString()),
+        appender(metadataCsv).append(formatRow(filePath, kind, notes));
+    }
+
+    /** The shared appender of {@code metadataCsv}; configure its durability here. */
+    public static MetadataAppender appender(Path metadataCsv) {
+        return APPENDERS.computeIfAbsent(metadataCsv.toAbsolutePath().normalize(), MetadataAppender::new);
+    }
+
+    /**
+     * The shared query index of {@code metadataCsv}, loaded on first use and kept current
+     * by every later {@link #append}.
+     */
+    public static MetadataIndex index(Path metadataCsv) throws IOException {
+        Path key = metadataCsv.toAbsolutePath().normalize();
+        MetadataIndex idx = INDEXES.get(key);
+        if (idx != null) return idx;
+        synchronized (INDEXES) {
+            idx = INDEXES.get(key);
+            if (idx == null) {
+                idx = new MetadataIndex(key);
+                appender(key).addListener(idx); // before load(), so no row slips between the two
+                try {
+                    idx.load();
+                } catch (IOException e) {
+                    appender(key).removeListener(idx);
+                    throw e;
+                }
+                INDEXES.put(key, idx);
+            }
+            return idx;
+        }
+    }
+
+    static String formatRow(Path filePath, String kind, String notes) {
+        return String.join(",", escape(filePath.toString()), escape(Instant.now().toString()),
                 escape(kind), escape(notes)) + "\n";
-        Files.writeString(metadataCsv, row, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
     }
 
     private static String escape(String s) {
@@ -21,6 +67,105 @@ public class MetadataManager {
         return s;
     }
 
+    /** One row of the metadata CSV. */
+    public static final class Row {
+        public final String path;
+        public final String createdUtc;
+        public final String kind;
+        public final String notes;
+
+        public Row(String path, String createdUtc, String kind, String notes) {
+            this.path = path;
+            this.createdUtc = createdUtc;
+            this.kind = kind;
+            this.notes = notes;
+        }
+    }
+
+    /** Streams every row of {@code metadataCsv} in file order, skipping the header and malformed lines. */
+    public static void forEachRow(Path metadataCsv, Consumer<Row> action) throws IOException {
+        try (BufferedReader r = Files.newBufferedReader(metadataCsv, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                Row row = parseRow(line);
+                if (row != null && !(row.path.equals("path") && row.kind.equals("kind"))) {
+                    action.accept(row);
+                }
+            }
+        }
+    }
+
+    /** Receives one line of a metadata CSV and the byte offset where it starts. */
+    interface LineVisitor {
+        void line(long offset, String text) throws IOException;
+    }
+
+    /**
+     * Visits every complete line within the first {@code limit} bytes of {@code metadataCsv}.
+     *
+     * @return offset just past the last complete line visited
+     */
+    static long forEachLine(Path metadataCsv, long limit, LineVisitor visitor) throws IOException {
+        try (FileChannel ch = FileChannel.open(metadataCsv, StandardOpenOption.READ)) {
+            long end = Math.min(limit, ch.size());
+            ByteBuffer block = ByteBuffer.allocate(64 * 1024);
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            long pos = 0;
+            long lineStart = 0;
+            while (pos < end) {
+                block.clear().limit((int) Math.min(block.capacity(), end - pos));
+                int n = ch.read(block, pos);
+                if (n <= 0) break;
+                byte[] a = block.array();
+                int from = 0;
+                for (int i = 0; i < n; i++) {
+                    if (a[i] == '\n') {
+                        line.write(a, from, i - from);
+                        visitor.line(lineStart, line.toString(StandardCharsets.UTF_8));
+                        line.reset();
+                        from = i + 1;
+                        lineStart = pos + i + 1;
+                    }
+                }
+                line.write(a, from, n - from);
+                pos += n;
+            }
+            return lineStart;
+        }
+    }
+
+    /** Reverses {@link #escape}: splits on commas outside quotes and un-doubles inner quotes. */
+    public static Row parseRow(String line) {
+        List<String> fields = new ArrayList<>(4);
+        StringBuilder cur = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        cur.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    cur.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(cur.toString());
+                cur.setLength(0);
+            } else {
+                cur.append(c);
+            }
+        }
+        fields.add(cur.toString());
+        if (fields.size() != 4) return null;
+        return new Row(fields.get(0), fields.get(1), fields.get(2), fields.get(3));
+    }
+
     public static void move(Path from, Path to, Path metaIndex) throws IOException {
         Files.createDirectories(to.getParent());
         Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
@@ -49,4 +194,53 @@ public class MetadataManager {
         append(metaIndex, zipTarget, "ARCHIVE", "archived " + sourceDir);
         return zipTarget;
     }
+
+    /**
+     * Same archive as {@link #archiveZip} but entries are deflated on {@code threads} workers
+     * and written in sorted path order; see {@link ParallelZipArchiver}.
+     *
+     * @param level deflate level 0-9, or -1 for the default
+     */
+    public static ParallelZipArchiver.Result archiveZipParallel(Path sourceDir, Path zipTarget, Path metaIndex,
+                                                                int threads, int level) throws IOException {
+        ParallelZipArchiver.Result result = new ParallelZipArchiver(threads, level).archive(sourceDir, zipTarget);
+        append(metaIndex, zipTarget, "ARCHIVE", "archived " + sourceDir);
+        return result;
+    }
+
+    /**
+     * Archives only what changed in {@code sourceDir} since the latest archive in the zip's
+     * directory; see {@link IncrementalArchiver}. Records an ARCHIVE row unless nothing changed.
+     */
+    public static IncrementalArchiver.Result archiveIncremental(Path sourceDir, Path zipTarget, Path metaIndex,
+                                                                int threads, int level) throws IOException {
+        IncrementalArchiver archiver = new IncrementalArchiver(zipTarget.toAbsolutePath().getParent(),
+                new ParallelZipArchiver(threads, level));
+        IncrementalArchiver.Result result = archiver.archive(sourceDir, zipTarget);
+        if (result.zip != null) {
+            append(metaIndex, zipTarget, "ARCHIVE", "incremental archive of " + sourceDir
+                    + (result.parents.isEmpty() ? "" : " (parents " + String.join(";", result.parents) + ")"));
+        }
+        return result;
+    }
+
+    /**
+     * Stores {@code sourceDir} in the deduplicating store as archive {@code name}; see
+     * {@link DedupArchiveStore}. The ARCHIVE row points at the archive's manifest.
+     */
+    public static DedupArchiveStore.Result archiveDedup(Path sourceDir, DedupArchiveStore store, String name,
+                                                        Path metaIndex) throws IOException {
+        DedupArchiveStore.Result result = store.put(name, sourceDir);
+        append(metaIndex, store.root().resolve("manifests").resolve(name + ".csv"), "ARCHIVE",
+                "dedup archive of " + sourceDir);
+        return result;
+    }
+
+    /** Exports a stored archive as a ZIP in {@link #archiveZip} layout, e.g. for auditors. */
+    public static Path exportDedupZip(DedupArchiveStore store, String name, Path zipTarget, Path metaIndex)
+            throws IOException {
+        store.exportZip(name, zipTarget);
+        append(metaIndex, zipTarget, "ARCHIVE", "exported " + name + " from " + store.root());
+        return zipTarget;
+    }
 }
@@ -0,0 +1,455 @@
+package med.supply.system.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Builds a standard ZIP of a directory tree with entries deflated in parallel.
+ * Workers each deflate one file (raw deflate plus CRC-32), keeping up to
+ * {@value #SPILL_BYTES} bytes of its output in memory and spilling larger entries to a
+ * temporary file next to the archive; the calling thread writes the finished entries in sorted
+ * path order, so the archive is the same whatever the thread count. At most
+ * {@code 2 * threads} compressed entries are pending at once.
+ * Entry times are the files' modification times, so repeated runs over unchanged files
+ * produce identical archives. Like {@link java.util.zip.ZipOutputStream}, the writer switches
+ * to ZIP64 records only where a count, size or offset does not fit the classic fields.
+ */
+public class ParallelZipArchiver {
+    private static final int BUFFER = 64 * 1024;
+    private static final int SPILL_BYTES = 4 * 1024 * 1024;
+
+    /** One stored entry as it was actually read. */
+    public static final class Archived {
+        public final String name;
+        public final long size;
+        public final long crc;
+
+        Archived(String name, long size, long crc) {
+            this.name = name;
+            this.size = size;
+            this.crc = crc;
+        }
+    }
+
+    /** What one archive run did and how fast. */
+    public static final class Result {
+        public final Path zip;
+        public final int entries;
+        public final List<Archived> files;
+        public final long bytesIn;
+        public final long bytesOut;
+        public final long millis;
+        public final int threads;
+        public final int level;
+
+        Result(Path zip, List<Archived> files, long bytesIn, long bytesOut, long millis, int threads, int level) {
+            this.zip = zip;
+            this.entries = files.size();
+            this.files = files;
+            this.bytesIn = bytesIn;
+            this.bytesOut = bytesOut;
+            this.millis = millis;
+            this.threads = threads;
+            this.level = level;
+        }
+
+        /** Uncompressed input processed per second, in MiB. */
+        public double mbPerSecond() {
+            return millis == 0 ? 0 : bytesIn / 1048576.0 / (millis / 1000.0);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d entries, %d -> %d bytes in %d ms (%.1f MiB/s, %d threads, level %d)",
+                    entries, bytesIn, bytesOut, millis, mbPerSecond(), threads, level);
+        }
+    }
+
+    private final int threads;
+    private final int level;
+
+    /**
+     * @param threads number of compression workers
+     * @param level   deflate level 0-9, or -1 for the default
+     */
+    public ParallelZipArchiver(int threads, int level) {
+        if (threads < 1) throw new IllegalArgumentException("threads must be positive");
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("level must be -1..9");
+        }
+        this.threads = threads;
+        this.level = level;
+    }
+
+    /** Archives every regular file under {@code sourceDir}. */
+    public Result archive(Path sourceDir, Path zipTarget) throws IOException {
+        List<Path> files;
+        try (Stream<Path> s = Files.walk(sourceDir)) {
+            files = s.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        return archive(sourceDir, files, zipTarget);
+    }
+
+    /** Archives just {@code files}, which must lie under {@code sourceDir}; entries are named relative to it. */
+    public Result archive(Path sourceDir, List<Path> files, Path zipTarget) throws IOException {
+        long started = System.nanoTime();
+        files = new ArrayList<>(files);
+        files.sort(null);
+        Path dir = Files.createDirectories(zipTarget.toAbsolutePath().getParent());
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "zip-deflater");
+            t.setDaemon(true);
+            return t;
+        });
+        List<Entry> written = new ArrayList<>(files.size());
+        List<Archived> archived = new ArrayList<>(files.size());
+        long bytesIn = 0;
+        Deque<Future<Entry>> window = new ArrayDeque<>();
+        try (CountingOutputStream out = new CountingOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(zipTarget), BUFFER))) {
+            int next = 0;
+            while (next < files.size() || !window.isEmpty()) {
+                while (next < files.size() && window.size() < 2 * threads) {
+                    Path f = files.get(next++);
+                    String name = sourceDir.relativize(f).toString().replace('\\', '/');
+                    window.add(pool.submit(() -> deflate(f, name, dir)));
+                }
+                Entry e = await(window.poll());
+                try {
+                    e.offset = out.count;
+                    writeLocalHeader(out, e);
+                    e.data.writeTo(out);
+                } finally {
+                    e.data.discard();
+                    e.data = null; // keep only the header fields for the central directory
+                }
+                bytesIn += e.size;
+                written.add(e);
+                archived.add(new Archived(e.entryName, e.size, e.crc));
+            }
+            long cdStart = out.count;
+            for (Entry e : written) {
+                writeCentralHeader(out, e);
+            }
+            writeEnd(out, written.size(), out.count - cdStart, cdStart);
+        } finally {
+            pool.shutdownNow();
+            discardPending(pool, window);
+        }
+        long millis = (System.nanoTime() - started) / 1_000_000;
+        return new Result(zipTarget, archived, bytesIn, Files.size(zipTarget), millis, threads, level);
+    }
+
+    private static Entry await(Future<Entry> f) throws IOException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while archiving");
+        } catch (ExecutionException e) {
+            Throwable c = e.getCause();
+            if (c instanceof IOException io) throw io;
+            throw new IOException(c);
+        }
+    }
+
+    /** Deletes the spill files of entries that were deflated but never written (after a failure). */
+    private static void discardPending(ExecutorService pool, Deque<Future<Entry>> window) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                break;
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        for (Future<Entry> f : window) {
+            if (f.isDone() && !f.isCancelled()) {
+                try {
+                    f.get().data.discard();
+                } catch (InterruptedException | ExecutionException ex) {
+                    // the worker failed and cleaned up after itself
+                }
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    private Entry deflate(Path file, String name, Path spillDir) throws IOException {
+        Entry e = new Entry(name, Files.getLastModifiedTime(file).toMillis());
+        Deflater d = new Deflater(level, true);
+        CRC32 crc = new CRC32();
+        Packed packed = new Packed(spillDir);
+        boolean done = false;
+        byte[] in = new byte[BUFFER];
+        byte[] buf = new byte[BUFFER];
+        try (InputStream is = Files.newInputStream(file)) {
+            int n;
+            while ((n = is.read(in)) > 0) {
+                crc.update(in, 0, n);
+                e.size += n;
+                d.setInput(in, 0, n);
+                while (!d.needsInput()) {
+                    packed.write(buf, 0, d.deflate(buf));
+                }
+            }
+            d.finish();
+            while (!d.finished()) {
+                packed.write(buf, 0, d.deflate(buf));
+            }
+            packed.close();
+            done = true;
+        } finally {
+            d.end();
+            if (!done) packed.discard();
+        }
+        e.crc = crc.getValue();
+        e.data = packed;
+        e.compressedSize = packed.size;
+        return e;
+    }
+
+    // -----------------------------------------------------------
+    // ZIP records (APPNOTE 4.3), little-endian
+    // -----------------------------------------------------------
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final int METHOD_DEFLATED = 8;
+    private static final int VERSION = 20;
+    private static final int VERSION_ZIP64 = 45;
+    private static final int ZIP64_EXTRA = 0x0001;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    /** A size too large for the local header carries both sizes in a ZIP64 extra field. */
+    private static void writeLocalHeader(OutputStream out, Entry e) throws IOException {
+        boolean zip64 = e.size >= ZIP64_MAGIC || e.compressedSize >= ZIP64_MAGIC;
+        int32(out, 0x04034b50);
+        int16(out, zip64 ? VERSION_ZIP64 : VERSION);
+        int16(out, FLAG_UTF8);
+        int16(out, METHOD_DEFLATED);
+        int16(out, e.dosTime);
+        int16(out, e.dosDate);
+        int32(out, e.crc);
+        int32(out, zip64 ? ZIP64_MAGIC : e.compressedSize);
+        int32(out, zip64 ? ZIP64_MAGIC : e.size);
+        int16(out, e.name.length);
+        int16(out, zip64 ? 20 : 0);
+        out.write(e.name);
+        if (zip64) {
+            int16(out, ZIP64_EXTRA);
+            int16(out, 16);
+            int64(out, e.size);
+            int64(out, e.compressedSize);
+        }
+    }
+
+    /** Only the fields that overflow go into the ZIP64 extra field, in the order size, compressed size, offset. */
+    private static void writeCentralHeader(OutputStream out, Entry e) throws IOException {
+        boolean bigSize = e.size >= ZIP64_MAGIC;
+        boolean bigCompressed = e.compressedSize >= ZIP64_MAGIC;
+        boolean bigOffset = e.offset >= ZIP64_MAGIC;
+        int extra = (bigSize ? 8 : 0) + (bigCompressed ? 8 : 0) + (bigOffset ? 8 : 0);
+        int version = extra > 0 ? VERSION_ZIP64 : VERSION;
+        int32(out, 0x02014b50);
+        int16(out, version);
+        int16(out, version);
+        int16(out, FLAG_UTF8);
+        int16(out, METHOD_DEFLATED);
+        int16(out, e.dosTime);
+        int16(out, e.dosDate);
+        int32(out, e.crc);
+        int32(out, bigCompressed ? ZIP64_MAGIC : e.compressedSize);
+        int32(out, bigSize ? ZIP64_MAGIC : e.size);
+        int16(out, e.name.length);
+        int16(out, extra > 0 ? 4 + extra : 0);
+        int16(out, 0); // comment
+        int16(out, 0); // disk
+        int16(out, 0); // internal attributes
+        int32(out, 0); // external attributes
+        int32(out, bigOffset ? ZIP64_MAGIC : e.offset);
+        out.write(e.name);
+        if (extra > 0) {
+            int16(out, ZIP64_EXTRA);
+            int16(out, extra);
+            if (bigSize) int64(out, e.size);
+            if (bigCompressed) int64(out, e.compressedSize);
+            if (bigOffset) int64(out, e.offset);
+        }
+    }
+
+    /** Precedes the end record with a ZIP64 end record and locator when a field overflows. */
+    private static void writeEnd(CountingOutputStream out, int entries, long cdSize, long cdStart) throws IOException {
+        if (entries >= ZIP64_MAGIC_COUNT || cdSize >= ZIP64_MAGIC || cdStart >= ZIP64_MAGIC) {
+            long zip64End = out.count;
+            int32(out, 0x06064b50);
+            int64(out, 44); // size of the rest of this record
+            int16(out, VERSION_ZIP64);
+            int16(out, VERSION_ZIP64);
+            int32(out, 0);
+            int32(out, 0);
+            int64(out, entries);
+            int64(out, entries);
+            int64(out, cdSize);
+            int64(out, cdStart);
+
+            int32(out, 0x07064b50);
+            int32(out, 0);
+            int64(out, zip64End);
+            int32(out, 1);
+        }
+        int32(out, 0x06054b50);
+        int16(out, 0);
+        int16(out, 0);
+        int16(out, Math.min(entries, ZIP64_MAGIC_COUNT));
+        int16(out, Math.min(entries, ZIP64_MAGIC_COUNT));
+        int32(out, Math.min(cdSize, ZIP64_MAGIC));
+        int32(out, Math.min(cdStart, ZIP64_MAGIC));
+        int16(out, 0);
+    }
+
+    private static void int16(OutputStream out, int v) throws IOException {
+        out.write(v & 0xFF);
+        out.write((v >>> 8) & 0xFF);
+    }
+
+    private static void int32(OutputStream out, long v) throws IOException {
+        int16(out, (int) (v & 0xFFFF));
+        int16(out, (int) ((v >>> 16) & 0xFFFF));
+    }
+
+    private static void int64(OutputStream out, long v) throws IOException {
+        int32(out, v & 0xFFFFFFFFL);
+        int32(out, v >>> 32);
+    }
+
+    private static final class Entry {
+        final String entryName;
+        final byte[] name;
+        final int dosTime;
+        final int dosDate;
+        long crc;
+        long size;
+        long compressedSize;
+        long offset;
+        Packed data;
+
+        Entry(String name, long modifiedMillis) {
+            this.entryName = name;
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+            LocalDateTime t = LocalDateTime.ofInstant(Instant.ofEpochMilli(modifiedMillis),
+                    ZoneId.systemDefault());
+            if (t.getYear() < 1980) t = LocalDateTime.of(1980, 1, 1, 0, 0);
+            this.dosTime = (t.getHour() << 11) | (t.getMinute() << 5) | (t.getSecond() / 2);
+            this.dosDate = ((t.getYear() - 1980) << 9) | (t.getMonthValue() << 5) | t.getDayOfMonth();
+        }
+    }
+
+    /** Deflated bytes of one entry: in memory up to {@link #SPILL_BYTES}, beyond that in a temp file. */
+    private static final class Packed extends OutputStream {
+        private final Path spillDir;
+        private ByteArrayOutputStream mem = new ByteArrayOutputStream();
+        private Path file;
+        private OutputStream fileOut;
+        long size;
+
+        Packed(Path spillDir) {
+            this.spillDir = spillDir;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (file == null && mem.size() + len > SPILL_BYTES) {
+                file = Files.createTempFile(spillDir, "zip-entry-", ".tmp");
+                fileOut = new BufferedOutputStream(Files.newOutputStream(file), BUFFER);
+                mem.writeTo(fileOut);
+                mem = null;
+            }
+            if (file == null) {
+                mem.write(b, off, len);
+            } else {
+                fileOut.write(b, off, len);
+            }
+            size += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (fileOut != null) fileOut.close();
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            if (file == null) {
+                mem.writeTo(out);
+            } else {
+                Files.copy(file, out);
+            }
+        }
+
+        /** Releases the bytes; best effort, as this also runs while a failure is propagating. */
+        void discard() {
+            mem = null;
+            if (file == null) return;
+            try {
+                if (fileOut != null) fileOut.close();
+            } catch (IOException ignored) {
+                // the file is deleted anyway
+            }
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {
+                // leaves a stray temp file behind, nothing worse
+            }
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -13,8 +13,11 @@ public class PathsConfig {
     public final Path logsSystem = logsRoot.resolve("system");
     public final Path metaRoot = root.resolve("metadata");
     public final Path archiveRoot = root.resolve("archive");
+    public final Path archiveStore = archiveRoot.resolve("store");
     public final Path exchangeRoot = root.resolve("exchange");
+    public final Path stateRoot = root.resolve("state");
     public final Path metaIndex = metaRoot.resolve("log_metadata.csv");
+    public final Path timeIndexRoot = metaRoot.resolve("time-index");
 
     public void ensure() throws IOException {
         Files.createDirectories(logsVehicles);
@@ -23,6 +26,7 @@ public class PathsConfig {
         Files.createDirectories(metaRoot);
         Files.createDirectories(archiveRoot);
         Files.createDirectories(exchangeRoot);
+        Files.createDirectories(stateRoot);
         if (!Files.exists(metaIndex)) {
             Files.writeString(metaIndex, "path,createdUtc,kind,notes\n", StandardCharsets.UTF_8,
                     StandardOpenOption.CREATE, StandardOpenOption.APPEND);
@@ -13,4 +13,12 @@ public class RegexUtils {
     public static boolean isIsoDate(String s) {
         return s != null && DATE.matcher(s).matches();
     }
+
+    /** Compiles a log search expression; {@code literal} text is matched verbatim. */
+    public static Pattern searchPattern(String expr, boolean literal) {
+        if (expr == null || expr.isEmpty()) {
+            throw new IllegalArgumentException("Search pattern must not be empty");
+        }
+        return literal ? Pattern.compile(Pattern.quote(expr)) : Pattern.compile(expr);
+    }
 }